@@ -3,6 +3,9 @@ package it.gov.pagopa.gpd.upload.config;
 import com.azure.cosmos.CosmosClient;
 import com.azure.cosmos.CosmosClientBuilder;
 import com.azure.cosmos.CosmosContainer;
+import com.azure.cosmos.models.CosmosClientTelemetryConfig;
+import com.azure.cosmos.models.CosmosMicrometerMetricsOptions;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micronaut.context.annotation.Bean;
 import io.micronaut.context.annotation.Factory;
 import io.micronaut.context.annotation.Value;
@@ -14,12 +17,19 @@ public class CosmosClientConfig {
             @Value("${cosmos.uri}") String cosmosURI,
             @Value("${cosmos.key}") String cosmosKey,
             @Value("${cosmos.database.name}") String databaseName,
-            @Value("${cosmos.container.name}") String containerName
+            @Value("${cosmos.container.name}") String containerName,
+            @Value("${cosmos.metrics.enabled:true}") boolean metricsEnabled,
+            MeterRegistry meterRegistry
     ) {
-        CosmosClient cosmosClient = new CosmosClientBuilder()
+        CosmosClientBuilder builder = new CosmosClientBuilder()
                 .endpoint(cosmosURI)
-                .key(cosmosKey)
-                .buildClient();
+                .key(cosmosKey);
+        if (metricsEnabled) {
+            // request units and latency of each operation, e.g. cosmos.client.op.RUs tagged by Operation (Document/Read, Document/Query)
+            builder.clientTelemetryConfig(new CosmosClientTelemetryConfig()
+                    .metricsOptions(new CosmosMicrometerMetricsOptions().meterRegistry(meterRegistry)));
+        }
+        CosmosClient cosmosClient = builder.buildClient();
         return cosmosClient.getDatabase(databaseName).getContainer(containerName);
     }
 }
@@ -0,0 +1,39 @@
+package it.gov.pagopa.gpd.upload.config;
+
+import com.azure.storage.queue.QueueClient;
+import com.azure.storage.queue.QueueClientBuilder;
+import io.micronaut.context.annotation.Bean;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Primary;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Named;
+
+import static it.gov.pagopa.gpd.upload.repository.WebhookQueueRepository.WEBHOOK_QUEUE;
+
+@Factory
+class QueueStorageClientConfig {
+
+    @Bean
+    @Primary
+    QueueClient uploadQueueClientBean(
+            @Value("${blob.sas.connection}") String connectionString,
+            @Value("${upload.async.queue-name:gpd-upload-pending}") String queueName
+    ) {
+        return new QueueClientBuilder()
+                .connectionString(connectionString)
+                .queueName(queueName)
+                .buildClient();
+    }
+
+    @Bean
+    @Named(WEBHOOK_QUEUE)
+    QueueClient webhookQueueClientBean(
+            @Value("${blob.sas.connection}") String connectionString,
+            @Value("${upload.webhook.queue-name:gpd-upload-webhooks}") String queueName
+    ) {
+        return new QueueClientBuilder()
+                .connectionString(connectionString)
+                .queueName(queueName)
+                .buildClient();
+    }
+}
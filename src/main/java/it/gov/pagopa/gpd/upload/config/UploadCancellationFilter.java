@@ -0,0 +1,54 @@
+package it.gov.pagopa.gpd.upload.config;
+
+import io.micronaut.http.HttpMethod;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Filter;
+import io.micronaut.http.filter.HttpServerFilter;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.micronaut.http.server.netty.NettyHttpRequest;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.reactivex.rxjava3.core.Flowable;
+import it.gov.pagopa.gpd.upload.service.CancellationService;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
+import jakarta.inject.Inject;
+import org.reactivestreams.Publisher;
+
+/**
+ * Binds an {@link UploadCancellation} token to each upload request.
+ * <p>
+ * The token is cancelled as soon as the client connection is closed; when the response is completed
+ * without the upload being accepted (e.g. an error was returned) the token is cancelled as well,
+ * so that the blocks already staged are never committed.
+ */
+@Filter(patterns = {UploadPreCheckFilter.V1_UPLOAD_PATH, UploadPreCheckFilter.V2_UPLOAD_PATH, UploadPreCheckFilter.V2_BROKER_UPLOAD_PATH,
+        UploadPreCheckFilter.V2_URL_UPLOAD_PATH, UploadPreCheckFilter.V2_SESSION_FINALIZE_PATH},
+        methods = {HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE})
+public class UploadCancellationFilter implements HttpServerFilter {
+
+    @Inject
+    CancellationService cancellationService;
+
+    @Override
+    public Publisher<MutableHttpResponse<?>> doFilter(HttpRequest<?> request, ServerFilterChain chain) {
+        UploadCancellation cancellation = cancellationService.create(request.getMethodName() + " " + request.getPath(), request.getContentLength());
+        request.setAttribute(UploadCancellation.ATTRIBUTE, cancellation);
+
+        if (!(request instanceof NettyHttpRequest<?> nettyRequest)) {
+            return Flowable.fromPublisher(chain.proceed(request))
+                    .doFinally(() -> cancellation.cancel(UploadCancellation.Reason.REQUEST_FAILED));
+        }
+
+        Channel channel = nettyRequest.getChannelHandlerContext().channel();
+        ChannelFutureListener onClose = future -> cancellation.cancel(UploadCancellation.Reason.CLIENT_DISCONNECTED);
+        channel.closeFuture().addListener(onClose);
+
+        return Flowable.fromPublisher(chain.proceed(request))
+                .doOnCancel(() -> cancellation.cancel(UploadCancellation.Reason.CLIENT_DISCONNECTED))
+                .doFinally(() -> {
+                    channel.closeFuture().removeListener(onClose);
+                    cancellation.cancel(UploadCancellation.Reason.REQUEST_FAILED);
+                });
+    }
+}
@@ -0,0 +1,39 @@
+package it.gov.pagopa.gpd.upload.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micronaut.context.annotation.Bean;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor of the blocking storage calls of an upload (block staging, Status creation), kept apart from the
+ * common pool so that uploads neither starve nor are starved by other asynchronous work, and monitored as
+ * executor {@value #UPLOAD_EXECUTOR}.
+ */
+@Factory
+public class UploadExecutorConfig {
+    public static final String UPLOAD_EXECUTOR = "upload";
+
+    @Singleton
+    @Named(UPLOAD_EXECUTOR)
+    @Bean(preDestroy = "shutdown")
+    ExecutorService uploadExecutorBean(
+            MeterRegistry meterRegistry,
+            @Value("${upload.executor.threads:16}") int threads
+    ) {
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "upload-executor-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, UPLOAD_EXECUTOR);
+    }
+}
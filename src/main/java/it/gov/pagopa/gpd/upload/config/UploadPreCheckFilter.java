@@ -0,0 +1,125 @@
+package it.gov.pagopa.gpd.upload.config;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpMethod;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Filter;
+import io.micronaut.http.filter.HttpServerFilter;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.reactivex.rxjava3.core.Flowable;
+import it.gov.pagopa.gpd.upload.model.ProblemJson;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.service.AdmissionService;
+import it.gov.pagopa.gpd.upload.service.UploadLaneExecutor.Lane;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Rejects invalid upload requests using only the request line and headers.
+ * <p>
+ * The filter runs before the multipart body is bound, so a client sending {@code Expect: 100-continue}
+ * receives the final error status instead of {@code 100 Continue} and never transmits the file.
+ */
+@Slf4j
+@Filter(patterns = {UploadPreCheckFilter.V1_UPLOAD_PATH, UploadPreCheckFilter.V2_UPLOAD_PATH, UploadPreCheckFilter.V2_BROKER_UPLOAD_PATH,
+        UploadPreCheckFilter.V2_URL_UPLOAD_PATH, UploadPreCheckFilter.V2_SESSION_PATH},
+        methods = {HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE})
+public class UploadPreCheckFilter implements HttpServerFilter {
+    static final String V1_UPLOAD_PATH = "/brokers/*/organizations/*/debtpositions/file";
+    static final String V2_UPLOAD_PATH = "/v2/brokers/*/organizations/*/debtpositions/file";
+    static final String V2_BROKER_UPLOAD_PATH = "/v2/brokers/*/debtpositions/file";
+    static final String V2_URL_UPLOAD_PATH = "/v2/brokers/*/organizations/*/debtpositions/url";
+    static final String V2_SESSION_PATH = "/v2/brokers/*/organizations/*/debtpositions/sessions/**";
+    static final String V2_SESSION_FINALIZE_PATH = "/v2/brokers/*/organizations/*/debtpositions/sessions/*/finalize";
+
+    // the fileId is built as <broker>_<organization>_<id>, so codes can't contain the '_' separator
+    private static final Pattern CODE_PATTERN = Pattern.compile("[A-Za-z0-9-]{1,64}");
+    // multipart boundaries and part headers sent around the file content
+    private static final long MULTIPART_FRAMING_ALLOWANCE = 8192;
+
+    @Inject
+    AdmissionService admissionService;
+
+    @Value("${micronaut.server.multipart.maxFileSize}")
+    private long maxFileSize;
+
+    @Value("${post.file.response.headers.retry_after.millis}")
+    private int retryAfter;
+
+    @Override
+    public Publisher<MutableHttpResponse<?>> doFilter(HttpRequest<?> request, ServerFilterChain chain) {
+        List<String> segments = Arrays.asList(request.getPath().split("/"));
+        String brokerCode = segmentAfter(segments, "brokers");
+        String organizationFiscalCode = segmentAfter(segments, "organizations");
+
+        // broker-level uploads carry the organization fiscal codes in the file
+        boolean organizationScoped = segments.contains("organizations");
+        if (!isValidCode(brokerCode) || (organizationScoped && !isValidCode(organizationFiscalCode))) {
+            return reject(HttpStatus.BAD_REQUEST, "INVALID PATH VARIABLES",
+                    "Broker code and organization fiscal code must be alphanumeric (hyphen allowed)");
+        }
+
+        String serviceType = request.getParameters().get("serviceType");
+        if (serviceType != null && Arrays.stream(ServiceType.values()).noneMatch(st -> st.name().equalsIgnoreCase(serviceType))) {
+            return reject(HttpStatus.BAD_REQUEST, "INVALID SERVICE TYPE", "Unsupported service type: " + serviceType);
+        }
+
+        long contentLength = request.getContentLength();
+        if (contentLength > maxFileSize + MULTIPART_FRAMING_ALLOWANCE) {
+            return reject(HttpStatus.REQUEST_ENTITY_TOO_LARGE, "FILE TOO LARGE",
+                    String.format("Declared content length %d exceeds the maximum file size of %d bytes", contentLength, maxFileSize));
+        }
+
+        // the body of a URL upload or of a session request is not the file: a URL upload is admitted by the size of
+        // its source once read, the finalize of a session by the size it declared, its chunks are not admitted
+        if (!isAdmittedByContentLength(segments))
+            return chain.proceed(request);
+
+        Lane lane = admissionService.classify(contentLength);
+        if (!admissionService.tryAcquire(lane)) {
+            return Flowable.<MutableHttpResponse<?>>just(HttpResponse.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms")
+                    .body(problem(HttpStatus.TOO_MANY_REQUESTS, "TOO MANY UPLOADS",
+                            String.format("Upload capacity for %s files exhausted, retry later", lane.name().toLowerCase()))));
+        }
+
+        return Flowable.fromPublisher(chain.proceed(request))
+                .doFinally(() -> admissionService.release(lane));
+    }
+
+    static String segmentAfter(List<String> segments, String name) {
+        int index = segments.indexOf(name);
+        return index >= 0 && index + 1 < segments.size() ? segments.get(index + 1) : null;
+    }
+
+    private static boolean isAdmittedByContentLength(List<String> segments) {
+        String resource = segmentAfter(segments, "debtpositions");
+        return !"url".equals(resource) && !"sessions".equals(resource);
+    }
+
+    private static boolean isValidCode(String code) {
+        return code != null && CODE_PATTERN.matcher(code).matches();
+    }
+
+    private static Publisher<MutableHttpResponse<?>> reject(HttpStatus status, String title, String detail) {
+        log.error("[Error][UploadPreCheckFilter@doFilter] {}: {}", title, detail);
+        return Flowable.<MutableHttpResponse<?>>just(HttpResponse.status(status).body(problem(status, title, detail)));
+    }
+
+    private static ProblemJson problem(HttpStatus status, String title, String detail) {
+        return ProblemJson.builder()
+                .status(status.getCode())
+                .title(title)
+                .detail(detail)
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+package it.gov.pagopa.gpd.upload.config;
+
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpMethod;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Filter;
+import io.micronaut.http.filter.HttpServerFilter;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.reactivex.rxjava3.core.Flowable;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.BrokerUploadDTO;
+import it.gov.pagopa.gpd.upload.service.WebhookService;
+import jakarta.inject.Inject;
+import org.reactivestreams.Publisher;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static it.gov.pagopa.gpd.upload.config.UploadPreCheckFilter.segmentAfter;
+
+/**
+ * Hands the accepted uploads to the {@link WebhookService}, that watches them if their broker registered a
+ * completion webhook. The fileIds are read from the Location of the status, or from the body of the broker-level
+ * uploads. The service type is the one set by the controller as response attribute, else the query parameter.
+ */
+@Filter(patterns = {UploadPreCheckFilter.V1_UPLOAD_PATH, UploadPreCheckFilter.V2_UPLOAD_PATH, UploadPreCheckFilter.V2_BROKER_UPLOAD_PATH,
+        UploadPreCheckFilter.V2_URL_UPLOAD_PATH, UploadPreCheckFilter.V2_SESSION_FINALIZE_PATH},
+        methods = {HttpMethod.POST, HttpMethod.PUT, HttpMethod.DELETE})
+public class UploadWebhookFilter implements HttpServerFilter {
+    public static final String SERVICE_TYPE_ATTRIBUTE = "gpd.upload.service-type";
+
+    @Inject
+    WebhookService webhookService;
+
+    @Override
+    public Publisher<MutableHttpResponse<?>> doFilter(HttpRequest<?> request, ServerFilterChain chain) {
+        return Flowable.fromPublisher(chain.proceed(request)).doOnNext(response -> {
+            if (response.getStatus() != HttpStatus.ACCEPTED)
+                return;
+            String brokerCode = segmentAfter(Arrays.asList(request.getPath().split("/")), "brokers");
+            ServiceType serviceType = response.getAttribute(SERVICE_TYPE_ATTRIBUTE, ServiceType.class)
+                    .orElseGet(() -> request.getParameters().getFirst("serviceType")
+                            .map(value -> ServiceType.valueOf(value.toUpperCase(Locale.ROOT)))
+                            .orElse(ServiceType.GPD));
+
+            response.getBody(BrokerUploadDTO.class).ifPresentOrElse(
+                    body -> body.getFileIds().forEach((organizationFiscalCode, fileId) ->
+                            webhookService.onAccepted(brokerCode, organizationFiscalCode, fileId, serviceType)),
+                    () -> response.getHeaders().getFirst(HttpHeaders.LOCATION).ifPresent(location -> {
+                        // brokers/{broker}/organizations/{organization}/debtpositions/file/{fileId}/status
+                        List<String> segments = Arrays.asList(location.split("/"));
+                        String organizationFiscalCode = segmentAfter(segments, "organizations");
+                        String fileId = segmentAfter(segments, "file");
+                        if (organizationFiscalCode != null && fileId != null)
+                            webhookService.onAccepted(brokerCode, organizationFiscalCode, fileId, serviceType);
+                    }));
+        });
+    }
+}
@@ -1,5 +1,6 @@
 package it.gov.pagopa.gpd.upload.controller.external.v1;
 
+import io.micronaut.http.HttpHeaders;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.HttpStatus;
 import io.micronaut.http.MediaType;
@@ -29,9 +30,12 @@ import it.gov.pagopa.gpd.upload.model.ProblemJson;
 import it.gov.pagopa.gpd.upload.model.v1.UploadReport;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
 import it.gov.pagopa.gpd.upload.model.v1.UploadStatus;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
 import it.gov.pagopa.gpd.upload.service.BlobService;
 import it.gov.pagopa.gpd.upload.service.StatusService;
 import it.gov.pagopa.gpd.upload.utils.CommonCheck;
+import it.gov.pagopa.gpd.upload.utils.EntityTag;
+import it.gov.pagopa.gpd.upload.utils.ReportStream;
 import jakarta.annotation.Nullable;
 import jakarta.inject.Inject;
 import jakarta.validation.constraints.NotBlank;
@@ -39,6 +43,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.Optional;
 
 import static io.micronaut.http.HttpStatus.NOT_FOUND;
 
@@ -58,6 +63,7 @@ public class CheckUploadController {
 	@Operation(summary = "Returns the debt positions upload status.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "get-debt-positions-upload-status")
 	@ApiResponses(value = {
 			@ApiResponse(responseCode = "200", description = "Upload found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadStatus.class))),
+			@ApiResponse(responseCode = "304", description = "Not modified since the given ETag."),
 			@ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
 			@ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
 			@ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
@@ -73,18 +79,25 @@ public class CheckUploadController {
 			@NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
 			@Parameter(description = "The unique identifier for file upload", required = true)
 			@NotBlank @PathVariable(name = "upload-id") String uploadId,
-			@Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+			@Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+			@Parameter(description = "The ETag of the status already received, to get 304 while it does not change")
+			@Header(HttpHeaders.IF_NONE_MATCH) @Nullable String ifNoneMatch
 			) {
 		UploadStatus uploadStatus = statusService.getUploadStatus(brokerCode, uploadId, organizationFiscalCode, serviceType);
+		String etag = EntityTag.of(uploadStatus);
+		if (EntityTag.matches(ifNoneMatch, etag))
+			return EntityTag.notModified(etag);
 
 		return HttpResponse.status(HttpStatus.OK)
 				.contentType(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.ETAG, etag)
 				.body(uploadStatus);
 	}
 
 	@Operation(summary = "Returns the debt positions upload report.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "get-debt-positions-upload-report")
 	@ApiResponses(value = {
 			@ApiResponse(responseCode = "200", description = "Upload report found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadReport.class))),
+			@ApiResponse(responseCode = "304", description = "Not modified since the given ETag."),
 			@ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
 			@ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
 			@ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
@@ -93,29 +106,60 @@ public class CheckUploadController {
 			@ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
 	@Get(value = BASE_PATH + "file/{upload-id}/report",
 	produces = MediaType.APPLICATION_JSON)
-	HttpResponse<UploadReport> getUploadReport(
+	HttpResponse<?> getUploadReport(
 			@Parameter(description = "The broker code", required = true)
 			@NotBlank @PathVariable(name = "broker-code") String brokerCode,
 			@Parameter(description = "The organization fiscal code", required = true)
 			@NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
 			@Parameter(description = "The unique identifier for file upload", required = true)
 			@NotBlank @PathVariable(name = "upload-id") String fileID,
-			@Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+			@Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+			@Parameter(description = "The ETag of the report already received, to get 304 while it does not change")
+			@Header(HttpHeaders.IF_NONE_MATCH) @Nullable String ifNoneMatch
 			) {
-		UploadReport uploadReport = null;
+		// the unchanged report is confirmed from the cached report, without sending it
+		if (ifNoneMatch != null) {
+			String etag = getReportETag(brokerCode, organizationFiscalCode, fileID, serviceType);
+			if (EntityTag.matches(ifNoneMatch, etag))
+				return EntityTag.notModified(etag);
+		}
+
+		UploadReport uploadReport;
+		String etag;
 		try {
 			uploadReport = statusService.getReportV1(brokerCode, organizationFiscalCode, fileID, serviceType);
+			etag = EntityTag.of(uploadReport);
 		} catch (AppException e) {
-			if (e.getHttpStatus() == NOT_FOUND) {
-				uploadReport = blobService.getReportV1(brokerCode, organizationFiscalCode, fileID, serviceType);
-			}
-			if (uploadReport == null)
+			if (e.getHttpStatus() != NOT_FOUND)
 				throw e;
+			// a report blob is tagged by its version, the large one is transcoded while sent, without being read before
+			Optional<BlobStorageRepository.ContentBlob> reportBlob = blobService.getLargeReport(brokerCode, organizationFiscalCode, fileID, serviceType, ReportStream.Shape.V1);
+			if (reportBlob.isPresent()) {
+				etag = EntityTag.of(ReportStream.Shape.V1, reportBlob.get().getETag());
+				if (EntityTag.matches(ifNoneMatch, etag))
+					return EntityTag.notModified(etag);
+				return ReportStream.transcode(reportBlob.get().openInputStream(), ReportStream.Shape.V1).toResponse(etag);
+			}
+			BlobService.BlobReport<UploadReport> blobReport = blobService.getReportV1(brokerCode, organizationFiscalCode, fileID, serviceType);
+			uploadReport = blobReport.report();
+			etag = EntityTag.of(ReportStream.Shape.V1, blobReport.eTag());
 		}
 
-		return HttpResponse.status(HttpStatus.OK)
-				.contentType(MediaType.APPLICATION_JSON)
-				.body(uploadReport);
+		if (EntityTag.matches(ifNoneMatch, etag))
+			return EntityTag.notModified(etag);
+
+		return ReportStream.of(uploadReport).toResponse(etag);
+	}
+
+	// the report no longer in the Status container is compared once read from the blob
+	private String getReportETag(String brokerCode, String organizationFiscalCode, String fileId, ServiceType serviceType) {
+		try {
+			return statusService.getReportETagV1(brokerCode, organizationFiscalCode, fileId, serviceType);
+		} catch (AppException e) {
+			if (e.getHttpStatus() == NOT_FOUND)
+				return null;
+			throw e;
+		}
 	}
 
 	// =========================
@@ -26,13 +26,18 @@ import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.ProblemJson;
 import it.gov.pagopa.gpd.upload.model.UploadOperation;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.service.AsyncUploadService;
 import it.gov.pagopa.gpd.upload.service.BlobService;
+import it.gov.pagopa.gpd.upload.service.UploadLaneExecutor;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
 import jakarta.inject.Inject;
 import jakarta.validation.constraints.NotBlank;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import static it.gov.pagopa.gpd.upload.utils.Constants.CREATE_UPDATE_FILE_DESCRIPTION;
 import static it.gov.pagopa.gpd.upload.utils.Constants.DELETE_FILE_DESCRIPTION;
@@ -46,6 +51,10 @@ import static it.gov.pagopa.gpd.upload.utils.Constants.DELETE_FILE_DESCRIPTION;
 public class FileUploadController {
     @Inject
     BlobService blobService;
+    @Inject
+    UploadLaneExecutor uploadLaneExecutor;
+    @Inject
+    AsyncUploadService asyncUploadService;
     private static final String BASE_PATH = "brokers/{broker-code}/organizations/{organization-fiscal-code}/debtpositions/file";
     @Value("${post.file.response.headers.retry_after.millis}")
     private int retryAfter;
@@ -62,7 +71,7 @@ public class FileUploadController {
             @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Post(BASE_PATH)
-    public HttpResponse createDebtPositionsByFileUpload(
+    public CompletableFuture<HttpResponse> createDebtPositionsByFileUpload(
             @Parameter(description = "The broker code", required = true)
             @NotBlank @PathVariable(name = "broker-code") String brokerCode,
             @Parameter(description = "The organization fiscal code", required = true)
@@ -78,21 +87,28 @@ public class FileUploadController {
                             )
                     )
             ) CompletedFileUpload file,
-            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
     ) {
         if (null == file)
             throw new AppException(HttpStatus.BAD_REQUEST, "EMPTY FILE", "The zip file is missing");
-        String uploadID = blobService.upsert(brokerCode, organizationFiscalCode, UploadOperation.CREATE, file, serviceType);
-        log.debug("[CREATE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
-        String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
+        CompletableFuture<String> upload = asyncUploadService.isEnabled()
+                ? CompletableFuture.completedFuture(asyncUploadService.accept(brokerCode, organizationFiscalCode, UploadOperation.CREATE, file, serviceType, cancellation))
+                : uploadLaneExecutor.submit(file.getSize(),
+                        () -> blobService.upsert(brokerCode, organizationFiscalCode, UploadOperation.CREATE, file, serviceType, cancellation))
+                        .thenCompose(Function.identity());
+        return upload.thenApply(uploadID -> {
+            log.debug("[CREATE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
+            String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
 
-        try {
-            HttpResponse response = HttpResponse.accepted(new URI(uri));
-            return response.toMutableResponse()
-                    .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
-        } catch (URISyntaxException e) {
-            throw new AppException(AppError.INTERNAL_ERROR);
-        }
+            try {
+                HttpResponse response = HttpResponse.accepted(new URI(uri));
+                return response.toMutableResponse()
+                        .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
+            } catch (URISyntaxException e) {
+                throw new AppException(AppError.INTERNAL_ERROR);
+            }
+        });
     }
 
     @Operation(summary = "The Organization updates the debt positions listed in the file.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "update-debt-positions-by-file-upload")
@@ -105,7 +121,7 @@ public class FileUploadController {
             @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Put(BASE_PATH)
-    public HttpResponse updateDebtPositionsByFileUpload(
+    public CompletableFuture<HttpResponse> updateDebtPositionsByFileUpload(
             @Parameter(description = "The broker code", required = true)
             @NotBlank @PathVariable(name = "broker-code") String brokerCode,
             @Parameter(description = "The organization fiscal code", required = true)
@@ -114,21 +130,28 @@ public class FileUploadController {
                     description = CREATE_UPDATE_FILE_DESCRIPTION,
                     content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM)
             ) CompletedFileUpload file,
-            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
     ) {
         if (null == file)
             throw new AppException(HttpStatus.BAD_REQUEST, "EMPTY FILE", "The zip file is missing");
-        String uploadID = blobService.upsert(brokerCode, organizationFiscalCode, UploadOperation.UPDATE, file, serviceType);
-        log.debug("[UPDATE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
-        String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
+        CompletableFuture<String> upload = asyncUploadService.isEnabled()
+                ? CompletableFuture.completedFuture(asyncUploadService.accept(brokerCode, organizationFiscalCode, UploadOperation.UPDATE, file, serviceType, cancellation))
+                : uploadLaneExecutor.submit(file.getSize(),
+                        () -> blobService.upsert(brokerCode, organizationFiscalCode, UploadOperation.UPDATE, file, serviceType, cancellation))
+                        .thenCompose(Function.identity());
+        return upload.thenApply(uploadID -> {
+            log.debug("[UPDATE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
+            String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
 
-        try {
-            HttpResponse response = HttpResponse.accepted(new URI(uri));
-            return response.toMutableResponse()
-                    .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
-        } catch (URISyntaxException e) {
-            throw new AppException(AppError.INTERNAL_ERROR);
-        }
+            try {
+                HttpResponse response = HttpResponse.accepted(new URI(uri));
+                return response.toMutableResponse()
+                        .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
+            } catch (URISyntaxException e) {
+                throw new AppException(AppError.INTERNAL_ERROR);
+            }
+        });
     }
 
     @Operation(summary = "The Organization deletes the debt positions based on IUPD listed in the file.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "delete-debt-positions-by-file-upload")
@@ -141,7 +164,7 @@ public class FileUploadController {
             @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Delete(BASE_PATH)
-    public HttpResponse deleteDebtPositionsByFileUpload(
+    public CompletableFuture<HttpResponse> deleteDebtPositionsByFileUpload(
             @Parameter(description = "The broker code", required = true)
             @NotBlank @PathVariable(name = "broker-code") String brokerCode,
             @Parameter(description = "The organization fiscal code", required = true)
@@ -150,20 +173,26 @@ public class FileUploadController {
                     description = DELETE_FILE_DESCRIPTION,
                     content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM)
             ) CompletedFileUpload file,
-            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
     ) {
         if (null == file)
             throw new AppException(HttpStatus.BAD_REQUEST, "EMPTY FILE", "The zip file is missing");
-        String uploadID = blobService.delete(brokerCode, organizationFiscalCode, UploadOperation.DELETE, file, serviceType);
-        log.debug("[DELETE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
-        String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
+        CompletableFuture<String> upload = asyncUploadService.isEnabled()
+                ? CompletableFuture.completedFuture(asyncUploadService.accept(brokerCode, organizationFiscalCode, UploadOperation.DELETE, file, serviceType, cancellation))
+                : uploadLaneExecutor.submit(file.getSize(),
+                        () -> blobService.delete(brokerCode, organizationFiscalCode, UploadOperation.DELETE, file, serviceType, cancellation));
+        return upload.thenApply(uploadID -> {
+            log.debug("[DELETE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
+            String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
 
-        try {
-            HttpResponse response = HttpResponse.accepted(new URI(uri));
-            return response.toMutableResponse()
-                    .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
-        } catch (URISyntaxException e) {
-            throw new AppException(AppError.INTERNAL_ERROR);
-        }
+            try {
+                HttpResponse response = HttpResponse.accepted(new URI(uri));
+                return response.toMutableResponse()
+                        .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
+            } catch (URISyntaxException e) {
+                throw new AppException(AppError.INTERNAL_ERROR);
+            }
+        });
     }
 }
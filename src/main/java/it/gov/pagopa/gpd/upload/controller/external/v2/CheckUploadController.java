@@ -1,14 +1,21 @@
 package it.gov.pagopa.gpd.upload.controller.external.v2;
 
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpHeaders;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.HttpStatus;
 import io.micronaut.http.MediaType;
 import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Consumes;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Get;
 import io.micronaut.http.annotation.Header;
 import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.Post;
+import io.micronaut.http.annotation.Produces;
 import io.micronaut.http.annotation.QueryValue;
+import io.micronaut.http.sse.Event;
 import io.micronaut.openapi.annotation.OpenAPIGroup;
 import io.micronaut.scheduling.TaskExecutors;
 import io.micronaut.scheduling.annotation.ExecuteOn;
@@ -27,20 +34,35 @@ import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.FileIdListResponse;
 import it.gov.pagopa.gpd.upload.model.ProblemJson;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.UploadOutcomesDTO;
 import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadReportPageDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusBatchDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusBatchModel;
 import it.gov.pagopa.gpd.upload.model.v2.UploadStatusDTO;
+import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
 import it.gov.pagopa.gpd.upload.service.BlobService;
 import it.gov.pagopa.gpd.upload.service.StatusService;
+import it.gov.pagopa.gpd.upload.service.StatusWatcher;
 import it.gov.pagopa.gpd.upload.utils.CommonCheck;
+import it.gov.pagopa.gpd.upload.utils.EntityTag;
+import it.gov.pagopa.gpd.upload.utils.ReportPager;
+import it.gov.pagopa.gpd.upload.utils.ReportStream;
 import jakarta.annotation.Nullable;
 import jakarta.inject.Inject;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
 
 import static io.micronaut.http.HttpStatus.NOT_FOUND;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Tag(name = "Massive operation observability APIs - v2")
 @ExecuteOn(TaskExecutors.IO)
@@ -53,12 +75,19 @@ public class CheckUploadController {
     BlobService blobService;
     @Inject
     StatusService statusService;
+    @Inject
+    StatusWatcher statusWatcher;
+    @Value("${upload.watch.max-wait-ms:30000}")
+    private long maxWaitForChange;
+    @Value("${upload.watch.max-stream-ms:600000}")
+    private long maxEventStream;
 
     private static final String BASE_PATH = "v2/brokers/{broker-code}/organizations/{organization-fiscal-code}/debtpositions/";
 
     @Operation(summary = "Returns the debt positions upload status.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "get-debt-positions-upload-status")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Upload found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadStatusDTO.class))),
+            @ApiResponse(responseCode = "304", description = "Not modified since the given ETag."),
             @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
             @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
             @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
@@ -67,25 +96,96 @@ public class CheckUploadController {
             @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
     @Get(value = BASE_PATH + "file/{file-id}/status",
             produces = MediaType.APPLICATION_JSON)
-    HttpResponse<UploadStatusDTO> getUploadStatus(
+    CompletableFuture<HttpResponse<UploadStatusDTO>> getUploadStatus(
             @Parameter(description = "The broker code", required = true)
             @NotBlank @PathVariable(name = "broker-code") String brokerCode,
             @Parameter(description = "The organization fiscal code", required = true)
             @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
             @Parameter(description = "The unique identifier for file upload", required = true)
             @NotBlank @PathVariable(name = "file-id") String fileId,
-            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(description = "The ETag of the status already received, to get 304 while it does not change")
+            @Header(HttpHeaders.IF_NONE_MATCH) @Nullable String ifNoneMatch,
+            @Parameter(description = "The milliseconds to wait for a change of the status before answering (long-poll), at most 30000")
+            @QueryValue(value = "waitForChangeMs", defaultValue = "0") long waitForChangeMs
     ) {
         UploadStatusDTO uploadStatus = statusService.getUploadStatusV2(brokerCode, fileId, organizationFiscalCode, serviceType);
+        String etag = EntityTag.of(uploadStatus);
+
+        // long-poll: the status already received (or the current one) is answered only once changed or after the wait
+        if (waitForChangeMs > 0 && !StatusWatcher.isEnded(uploadStatus) && (ifNoneMatch == null || EntityTag.matches(ifNoneMatch, etag))) {
+            return statusWatcher.awaitChange(brokerCode, organizationFiscalCode, fileId, serviceType, etag, Math.min(waitForChangeMs, maxWaitForChange))
+                    .thenApply(changed -> toStatusResponse(changed != null ? changed : uploadStatus, ifNoneMatch));
+        }
+        return CompletableFuture.completedFuture(toStatusResponse(uploadStatus, ifNoneMatch));
+    }
+
+    @Operation(summary = "Returns the upload status of many files of the organization in one request.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "get-debt-positions-upload-statuses")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Statuses returned, the uploads not found are marked with status code 404.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadStatusBatchDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Post(BASE_PATH + "files/status")
+    HttpResponse<UploadStatusBatchDTO> getUploadStatuses(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Valid @Body UploadStatusBatchModel uploadStatusBatch,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+    ) {
+        return HttpResponse.ok(UploadStatusBatchDTO.builder()
+                .statuses(statusService.getUploadStatusesV2(brokerCode, organizationFiscalCode, uploadStatusBatch.getFileIds(), serviceType))
+                .build());
+    }
+
+    @Operation(summary = "Streams the debt positions upload status as Server-Sent Events: the current one, then each change until the upload ends.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "get-debt-positions-upload-status-events")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Upload found.", content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM, schema = @Schema(implementation = UploadStatusDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "404", description = "Upload not found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Get(value = BASE_PATH + "file/{file-id}/status/events",
+            produces = MediaType.TEXT_EVENT_STREAM)
+    Publisher<Event<UploadStatusDTO>> getUploadStatusEvents(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Parameter(description = "The unique identifier for file upload", required = true)
+            @NotBlank @PathVariable(name = "file-id") String fileId,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+    ) {
+        // the missing upload is answered with 404 before the stream starts
+        statusService.getUploadStatusV2(brokerCode, fileId, organizationFiscalCode, serviceType);
+
+        return statusWatcher.watch(brokerCode, organizationFiscalCode, fileId, serviceType, maxEventStream)
+                .map(status -> Event.of(status).id(EntityTag.of(status)).name("status"));
+    }
+
+    private static HttpResponse<UploadStatusDTO> toStatusResponse(UploadStatusDTO uploadStatus, String ifNoneMatch) {
+        String etag = EntityTag.of(uploadStatus);
+        if (EntityTag.matches(ifNoneMatch, etag))
+            return EntityTag.notModified(etag);
 
         return HttpResponse.status(HttpStatus.OK)
                 .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ETAG, etag)
                 .body(uploadStatus);
     }
 
     @Operation(summary = "Returns the debt positions upload report.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "get-debt-positions-upload-report")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Upload report found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadReportDTO.class))),
+            @ApiResponse(responseCode = "304", description = "Not modified since the given ETag."),
             @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
             @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
             @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
@@ -95,33 +195,144 @@ public class CheckUploadController {
             @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
     @Get(value = BASE_PATH + "file/{file-id}/report",
             produces = MediaType.APPLICATION_JSON)
-    HttpResponse<UploadReportDTO> getUploadReport(
+    HttpResponse<?> getUploadReport(
             @Parameter(description = "The broker code", required = true)
             @NotBlank @PathVariable(name = "broker-code") String brokerCode,
             @Parameter(description = "The organization fiscal code", required = true)
             @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
             @Parameter(description = "The unique identifier for file upload", required = true)
             @NotBlank @PathVariable(name = "file-id") String uploadID,
-            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(description = "The ETag of the report already received, to get 304 while it does not change")
+            @Header(HttpHeaders.IF_NONE_MATCH) @Nullable String ifNoneMatch
     ) {
-        UploadReportDTO uploadReport = null;
+        // the unchanged report is confirmed from the cached report, without sending it
+        if (ifNoneMatch != null) {
+            String etag = getReportETag(brokerCode, organizationFiscalCode, uploadID, serviceType);
+            if (EntityTag.matches(ifNoneMatch, etag))
+                return EntityTag.notModified(etag);
+        }
+
+        UploadReportDTO uploadReport;
+        String etag;
         try {
             uploadReport = statusService.getReportV2(brokerCode, organizationFiscalCode, uploadID, serviceType);
+            etag = EntityTag.of(uploadReport);
         } catch (AppException e) {
-            if (e.getHttpStatus() == NOT_FOUND) {
-                uploadReport = blobService.getReportV2(brokerCode, organizationFiscalCode, uploadID, serviceType);
+            if (e.getHttpStatus() != NOT_FOUND)
+                throw e;
+            // a report blob, written once the upload ended, is tagged by its version: the large one is transcoded while sent
+            Optional<BlobStorageRepository.ContentBlob> reportBlob = blobService.getLargeReport(brokerCode, organizationFiscalCode, uploadID, serviceType, ReportStream.Shape.V2);
+            if (reportBlob.isPresent()) {
+                etag = EntityTag.of(ReportStream.Shape.V2, reportBlob.get().getETag());
+                if (EntityTag.matches(ifNoneMatch, etag))
+                    return EntityTag.notModified(etag);
+                return ReportStream.transcode(reportBlob.get().openInputStream(), ReportStream.Shape.V2).toResponse(etag);
             }
-            if (uploadReport == null)
+            BlobService.BlobReport<UploadReportDTO> blobReport = blobService.getReportV2(brokerCode, organizationFiscalCode, uploadID, serviceType);
+            uploadReport = blobReport.report();
+            etag = EntityTag.of(ReportStream.Shape.V2, blobReport.eTag());
+        }
+        checkGenerated(uploadReport);
+
+        if (EntityTag.matches(ifNoneMatch, etag))
+            return EntityTag.notModified(etag);
+
+        return ReportStream.of(uploadReport).toResponse(etag);
+    }
+
+    @Operation(summary = "Returns a page of the IUPDs of the debt positions upload report, restricted to the responses matching the filters, or their counts only.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "get-debt-positions-upload-report-page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Upload report page found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadReportPageDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "404", description = "Upload report not found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "409", description = "The report changed since the continuation token was issued.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "425", description = "The report has not been generated yet, wait for the operations to complete.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Get(value = BASE_PATH + "file/{file-id}/report/responses",
+            produces = MediaType.APPLICATION_JSON)
+    HttpResponse<UploadReportPageDTO> getUploadReportPage(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Parameter(description = "The unique identifier for file upload", required = true)
+            @NotBlank @PathVariable(name = "file-id") String uploadID,
+            @Parameter(description = "Class of the status codes of the responses, one of 1xx, 2xx, 3xx, 4xx, 5xx", required = false, example = "4xx")
+            @QueryValue(value = "statusClass", defaultValue = "") String statusClass,
+            @Parameter(description = "Text contained in the status message of the responses, ignoring the case", required = false)
+            @QueryValue(value = "statusMessage", defaultValue = "") String statusMessage,
+            @Parameter(description = "Max IUPDs per page (default 1000, min 1, max 10000)", required = false)
+            @QueryValue(value = "size", defaultValue = "1000") Integer size,
+            @Parameter(description = "True to return the counts by status code and message only, without IUPDs", required = false)
+            @QueryValue(value = "summaryOnly", defaultValue = "false") boolean summaryOnly,
+            @Parameter(description = "Continuation token (opaque). Pass it back to get the next page.", required = false)
+            @Header("x-continuation-token") @Nullable String continuationToken,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+    ) {
+        if (size == null || size < 1 || size > 10000) {
+            throw new AppException(
+                    HttpStatus.BAD_REQUEST,
+                    "BAD_REQUEST",
+                    "Invalid size: must be between 1 and 10000 (default 1000)"
+            );
+        }
+
+        UploadReportPageDTO page;
+        String etag;
+        try {
+            UploadReportDTO uploadReport = statusService.getReportV2(brokerCode, organizationFiscalCode, uploadID, serviceType);
+            checkGenerated(uploadReport);
+            etag = EntityTag.of(uploadReport);
+            page = ReportPager.page(uploadReport, etag, statusClass, statusMessage, continuationToken, size, summaryOnly);
+        } catch (AppException e) {
+            if (e.getHttpStatus() != NOT_FOUND)
                 throw e;
+            // the report no longer in the Status container is paged from the blob, the large one while it is read
+            Optional<BlobStorageRepository.ContentBlob> reportBlob = blobService.getLargeReport(brokerCode, organizationFiscalCode, uploadID, serviceType, ReportStream.Shape.V2);
+            if (reportBlob.isPresent()) {
+                etag = EntityTag.of(ReportStream.Shape.V2, reportBlob.get().getETag());
+                page = ReportPager.page(reportBlob.get().openInputStream(), etag, statusClass, statusMessage, continuationToken, size, summaryOnly);
+                checkGenerated(page.getEndTime());
+            } else {
+                BlobService.BlobReport<UploadReportDTO> blobReport = blobService.getReportV2(brokerCode, organizationFiscalCode, uploadID, serviceType);
+                checkGenerated(blobReport.report());
+                etag = EntityTag.of(ReportStream.Shape.V2, blobReport.eTag());
+                page = ReportPager.page(blobReport.report(), etag, statusClass, statusMessage, continuationToken, size, summaryOnly);
+            }
         }
 
-        if(uploadReport != null && uploadReport.getEndTime() == null){
+        MutableHttpResponse<UploadReportPageDTO> response = HttpResponse.ok(page)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ETAG, etag);
+        if (page.getContinuationToken() != null)
+            response = response.header("x-continuation-token", page.getContinuationToken());
+        return response;
+    }
+
+    private static void checkGenerated(UploadReportDTO uploadReport) {
+        if (uploadReport != null)
+            checkGenerated(uploadReport.getEndTime());
+    }
+
+    private static void checkGenerated(LocalDateTime endTime) {
+        if (endTime == null) {
             throw new AppException(HttpStatus.TOO_EARLY, "Too Early", "The report has not been generated yet, wait for the operations to complete.");
         }
+    }
 
-        return HttpResponse.status(HttpStatus.OK)
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(uploadReport);
+    // the report no longer in the Status container is compared once read from the blob
+    private String getReportETag(String brokerCode, String organizationFiscalCode, String fileId, ServiceType serviceType) {
+        try {
+            return statusService.getReportETagV2(brokerCode, organizationFiscalCode, fileId, serviceType);
+        } catch (AppException e) {
+            if (e.getHttpStatus() == NOT_FOUND)
+                return null;
+            throw e;
+        }
     }
 
     // =========================
@@ -164,6 +375,110 @@ public class CheckUploadController {
             @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
     ) {
 
+        final DateRange range = parseRange(fromDateStr, toDateStr);
+        validateSize(size);
+
+        // Retention check: reject ranges older than (now - 60-days)
+        CommonCheck.enforceRetention(range.from(), range.to());
+
+        // Service call
+        FileIdListResponse res = statusService.getFileIdList(
+                brokerCode, organizationFiscalCode, range.from(), range.to(), size, continuationToken, serviceType
+        );
+
+        return toFileIdListResponse(res);
+    }
+
+    @Operation(
+            summary = "Returns the list of fileIds for a broker/organization in the given date range (max 7 days) whose upload has the given operation status: a split upload is listed through its sub-uploads.",
+            security = {@SecurityRequirement(name = "ApiKey")},
+            operationId = "get-debt-positions-fileids-by-outcome"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "FileIds retrieved.",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = FileIdListResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request.",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "410", description = "Gone",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))
+    })
+    @Get(value = BASE_PATH + "files/outcomes/{operation-status}", produces = MediaType.APPLICATION_JSON)
+    public HttpResponse<FileIdListResponse> getFileIdListByOutcome(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Parameter(description = "The operation status of the uploads", required = true)
+            @PathVariable(name = "operation-status") OperationStatus operationStatus,
+            @Parameter(description = "Start date (YYYY-MM-DD), Europe/Rome", required = false, example = "2025-09-01")
+            @QueryValue(value = "from", defaultValue = "") String fromDateStr,
+            @Parameter(description = "End date (YYYY-MM-DD), Europe/Rome", required = false, example = "2025-09-06")
+            @QueryValue(value = "to", defaultValue = "") String toDateStr,
+            @Parameter(description = "Max items per page (default 100, min 100, max 500)", required = false)
+            @QueryValue(value = "size", defaultValue = "100") Integer size,
+            @Parameter(description = "Continuation token (opaque). Pass it back to get the next page.", required = false)
+            @Header("x-continuation-token") @Nullable String continuationToken,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+    ) {
+        final DateRange range = parseRange(fromDateStr, toDateStr);
+        validateSize(size);
+
+        // Retention check: reject ranges older than (now - 60-days)
+        CommonCheck.enforceRetention(range.from(), range.to());
+
+        FileIdListResponse res = statusService.getFileIdList(
+                brokerCode, organizationFiscalCode, range.from(), range.to(), size, continuationToken, serviceType, operationStatus
+        );
+
+        return toFileIdListResponse(res);
+    }
+
+    @Operation(
+            summary = "Returns the number of uploads by operation status and of debt positions by outcome for a broker/organization in the given date range (max 7 days).",
+            security = {@SecurityRequirement(name = "ApiKey")},
+            operationId = "get-debt-positions-upload-outcomes"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Outcomes counted.",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadOutcomesDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Bad request.",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "410", description = "Gone",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))
+    })
+    @Get(value = BASE_PATH + "files/outcomes", produces = MediaType.APPLICATION_JSON)
+    public HttpResponse<UploadOutcomesDTO> getOutcomes(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Parameter(description = "Start date (YYYY-MM-DD), Europe/Rome", required = false, example = "2025-09-01")
+            @QueryValue(value = "from", defaultValue = "") String fromDateStr,
+            @Parameter(description = "End date (YYYY-MM-DD), Europe/Rome", required = false, example = "2025-09-06")
+            @QueryValue(value = "to", defaultValue = "") String toDateStr,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+    ) {
+        final DateRange range = parseRange(fromDateStr, toDateStr);
+        CommonCheck.enforceRetention(range.from(), range.to());
+        return HttpResponse.ok(statusService.getOutcomes(brokerCode, organizationFiscalCode, range.from(), range.to(), serviceType));
+    }
+
+    private record DateRange(LocalDate from, LocalDate to) {
+    }
+
+    private static DateRange parseRange(String fromDateStr, String toDateStr) {
         // Parse & defaults for dates (calendar date, Europe/Rome), inclusive range [from, to]
         final LocalDate toDate = CommonCheck.parseOrDefaultToDate(toDateStr);
         final LocalDate fromDate = CommonCheck.parseOrDefaultFromDate(fromDateStr, toDate);
@@ -177,7 +492,10 @@ public class CheckUploadController {
                     "Invalid range: ensure 1 ≤ (to - from + 1) ≤ 7 and from ≤ to"
             );
         }
+        return new DateRange(fromDate, toDate);
+    }
 
+    private static void validateSize(Integer size) {
         // Validate size: default 100, min 100, max 500
         if (size == null || size < 100 || size > 500) {
             throw new AppException(
@@ -186,15 +504,9 @@ public class CheckUploadController {
                     "Invalid size: must be between 100 and 500 (default 100)"
             );
         }
+    }
 
-        // Retention check: reject ranges older than (now - 60-days)
-        CommonCheck.enforceRetention(fromDate, toDate);
-
-        // Service call
-        FileIdListResponse res = statusService.getFileIdList(
-                brokerCode, organizationFiscalCode, fromDate, toDate, size, continuationToken, serviceType
-        );
-
+    private static MutableHttpResponse<FileIdListResponse> toFileIdListResponse(FileIdListResponse res) {
         // Prepare response
         MutableHttpResponse<FileIdListResponse> response = HttpResponse.ok(res)
                 .contentType(MediaType.APPLICATION_JSON);
@@ -26,14 +26,25 @@ import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.ProblemJson;
 import it.gov.pagopa.gpd.upload.model.UploadOperation;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.BrokerUploadDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadUrlModel;
+import it.gov.pagopa.gpd.upload.service.AsyncUploadService;
 import it.gov.pagopa.gpd.upload.service.BlobService;
+import it.gov.pagopa.gpd.upload.service.UploadLaneExecutor;
+import it.gov.pagopa.gpd.upload.service.UrlUploadService;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
 import jakarta.inject.Inject;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
+import static it.gov.pagopa.gpd.upload.utils.Constants.BROKER_FILE_DESCRIPTION;
 import static it.gov.pagopa.gpd.upload.utils.Constants.CREATE_UPDATE_FILE_DESCRIPTION;
 import static it.gov.pagopa.gpd.upload.utils.Constants.DELETE_FILE_DESCRIPTION;
 
@@ -46,7 +57,15 @@ import static it.gov.pagopa.gpd.upload.utils.Constants.DELETE_FILE_DESCRIPTION;
 public class FileUploadController {
     @Inject
     BlobService blobService;
+    @Inject
+    UploadLaneExecutor uploadLaneExecutor;
+    @Inject
+    AsyncUploadService asyncUploadService;
+    @Inject
+    UrlUploadService urlUploadService;
     private static final String BASE_PATH = "v2/brokers/{broker-code}/organizations/{organization-fiscal-code}/debtpositions/file";
+    private static final String BROKER_PATH = "v2/brokers/{broker-code}/debtpositions/file";
+    private static final String URL_PATH = "v2/brokers/{broker-code}/organizations/{organization-fiscal-code}/debtpositions/url";
     @Value("${post.file.response.headers.retry_after.millis}")
     private int retryAfter;
 
@@ -60,7 +79,7 @@ public class FileUploadController {
             @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Post(BASE_PATH)
-    public HttpResponse createDebtPositionsByFileUpload(
+    public CompletableFuture<HttpResponse> createDebtPositionsByFileUpload(
             @Parameter(description = "The broker code", required = true)
             @NotBlank @PathVariable(name = "broker-code") String brokerCode,
             @Parameter(description = "The organization fiscal code", required = true)
@@ -69,21 +88,28 @@ public class FileUploadController {
                     description = CREATE_UPDATE_FILE_DESCRIPTION,
                     content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM)
             ) CompletedFileUpload file,
-            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
     ) {
         if (null == file)
             throw new AppException(HttpStatus.BAD_REQUEST, "EMPTY FILE", "The zip file is missing");
-        String uploadID = blobService.upsert(brokerCode, organizationFiscalCode, UploadOperation.CREATE, file, serviceType);
-        log.debug("[CREATE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
-        String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
-
-        try {
-            HttpResponse response = HttpResponse.accepted(new URI(uri));
-            return response.toMutableResponse()
-                    .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
-        } catch (URISyntaxException e) {
-            throw new AppException(AppError.INTERNAL_ERROR);
-        }
+        CompletableFuture<String> upload = asyncUploadService.isEnabled()
+                ? CompletableFuture.completedFuture(asyncUploadService.accept(brokerCode, organizationFiscalCode, UploadOperation.CREATE, file, serviceType, cancellation))
+                : uploadLaneExecutor.submit(file.getSize(),
+                        () -> blobService.upsert(brokerCode, organizationFiscalCode, UploadOperation.CREATE, file, serviceType, cancellation))
+                        .thenCompose(Function.identity());
+        return upload.thenApply(uploadID -> {
+            log.debug("[CREATE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
+            String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
+
+            try {
+                HttpResponse response = HttpResponse.accepted(new URI(uri));
+                return response.toMutableResponse()
+                        .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
+            } catch (URISyntaxException e) {
+                throw new AppException(AppError.INTERNAL_ERROR);
+            }
+        });
     }
 
     @Operation(summary = "The Organization updates the debt positions listed in the file.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "update-debt-positions-by-file-upload")
@@ -96,7 +122,7 @@ public class FileUploadController {
             @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Put(BASE_PATH)
-    public HttpResponse updateDebtPositionsByFileUpload(
+    public CompletableFuture<HttpResponse> updateDebtPositionsByFileUpload(
             @Parameter(description = "The broker code", required = true)
             @NotBlank @PathVariable(name = "broker-code") String brokerCode,
             @Parameter(description = "The organization fiscal code", required = true)
@@ -105,21 +131,28 @@ public class FileUploadController {
                     description = CREATE_UPDATE_FILE_DESCRIPTION,
                     content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM)
             ) CompletedFileUpload file,
-            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
     ) {
         if (null == file)
             throw new AppException(HttpStatus.BAD_REQUEST, "EMPTY FILE", "The zip file is missing");
-        String uploadID = blobService.upsert(brokerCode, organizationFiscalCode, UploadOperation.UPDATE, file, serviceType);
-        log.debug("[UPDATE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
-        String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
-
-        try {
-            HttpResponse response = HttpResponse.accepted(new URI(uri));
-            return response.toMutableResponse()
-                    .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
-        } catch (URISyntaxException e) {
-            throw new AppException(AppError.INTERNAL_ERROR);
-        }
+        CompletableFuture<String> upload = asyncUploadService.isEnabled()
+                ? CompletableFuture.completedFuture(asyncUploadService.accept(brokerCode, organizationFiscalCode, UploadOperation.UPDATE, file, serviceType, cancellation))
+                : uploadLaneExecutor.submit(file.getSize(),
+                        () -> blobService.upsert(brokerCode, organizationFiscalCode, UploadOperation.UPDATE, file, serviceType, cancellation))
+                        .thenCompose(Function.identity());
+        return upload.thenApply(uploadID -> {
+            log.debug("[UPDATE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
+            String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
+
+            try {
+                HttpResponse response = HttpResponse.accepted(new URI(uri));
+                return response.toMutableResponse()
+                        .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
+            } catch (URISyntaxException e) {
+                throw new AppException(AppError.INTERNAL_ERROR);
+            }
+        });
     }
 
     @Operation(summary = "The Organization deletes the debt positions based on IUPD listed in the file.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "delete-debt-positions-by-file-upload")
@@ -132,7 +165,7 @@ public class FileUploadController {
             @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Delete(BASE_PATH)
-    public HttpResponse deleteDebtPositionsByFileUpload(
+    public CompletableFuture<HttpResponse> deleteDebtPositionsByFileUpload(
             @Parameter(description = "The broker code", required = true)
             @NotBlank @PathVariable(name = "broker-code") String brokerCode,
             @Parameter(description = "The organization fiscal code", required = true)
@@ -141,20 +174,170 @@ public class FileUploadController {
                     description = DELETE_FILE_DESCRIPTION,
                     content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM)
             ) CompletedFileUpload file,
-            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
     ) {
         if (null == file)
             throw new AppException(HttpStatus.BAD_REQUEST, "EMPTY FILE", "The zip file is missing");
-        String uploadID = blobService.delete(brokerCode, organizationFiscalCode, UploadOperation.DELETE, file, serviceType);
-        log.debug("[DELETE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
-        String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
-
-        try {
-            HttpResponse response = HttpResponse.accepted(new URI(uri));
-            return response.toMutableResponse()
-                    .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
-        } catch (URISyntaxException e) {
-            throw new AppException(AppError.INTERNAL_ERROR);
-        }
+        CompletableFuture<String> upload = asyncUploadService.isEnabled()
+                ? CompletableFuture.completedFuture(asyncUploadService.accept(brokerCode, organizationFiscalCode, UploadOperation.DELETE, file, serviceType, cancellation))
+                : uploadLaneExecutor.submit(file.getSize(),
+                        () -> blobService.delete(brokerCode, organizationFiscalCode, UploadOperation.DELETE, file, serviceType, cancellation));
+        return upload.thenApply(uploadID -> {
+            log.debug("[DELETE by file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded");
+            String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
+
+            try {
+                HttpResponse response = HttpResponse.accepted(new URI(uri));
+                return response.toMutableResponse()
+                        .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
+            } catch (URISyntaxException e) {
+                throw new AppException(AppError.INTERNAL_ERROR);
+            }
+        });
+    }
+
+    @Operation(summary = "The Broker creates the debt positions of many organizations listed in the file.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "create-broker-debt-positions-by-file-upload")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Request accepted.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = BrokerUploadDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Post(BROKER_PATH)
+    public CompletableFuture<HttpResponse<BrokerUploadDTO>> createBrokerDebtPositionsByFileUpload(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(
+                    description = BROKER_FILE_DESCRIPTION,
+                    content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM)
+            ) CompletedFileUpload file,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
+    ) {
+        return brokerUpload(brokerCode, UploadOperation.CREATE, file, serviceType, cancellation);
+    }
+
+    @Operation(summary = "The Broker updates the debt positions of many organizations listed in the file.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "update-broker-debt-positions-by-file-upload")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Request accepted.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = BrokerUploadDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Put(BROKER_PATH)
+    public CompletableFuture<HttpResponse<BrokerUploadDTO>> updateBrokerDebtPositionsByFileUpload(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(
+                    description = BROKER_FILE_DESCRIPTION,
+                    content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM)
+            ) CompletedFileUpload file,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
+    ) {
+        return brokerUpload(brokerCode, UploadOperation.UPDATE, file, serviceType, cancellation);
+    }
+
+    @Operation(summary = "The Organization creates the debt positions listed in the ZIP file at the given URL.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "create-debt-positions-by-url-upload")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Request accepted."),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "413", description = "File too large.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Post(URL_PATH)
+    public CompletableFuture<HttpResponse> createDebtPositionsByUrlUpload(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Valid @Body UploadUrlModel uploadUrl,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
+    ) {
+        return urlUpload(brokerCode, organizationFiscalCode, UploadOperation.CREATE, uploadUrl, serviceType, cancellation);
+    }
+
+    @Operation(summary = "The Organization updates the debt positions listed in the ZIP file at the given URL.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "update-debt-positions-by-url-upload")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Request accepted."),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "413", description = "File too large.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Put(URL_PATH)
+    public CompletableFuture<HttpResponse> updateDebtPositionsByUrlUpload(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Valid @Body UploadUrlModel uploadUrl,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
+    ) {
+        return urlUpload(brokerCode, organizationFiscalCode, UploadOperation.UPDATE, uploadUrl, serviceType, cancellation);
+    }
+
+    @Operation(summary = "The Organization deletes the debt positions based on IUPD listed in the ZIP file at the given URL.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "delete-debt-positions-by-url-upload")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Request accepted."),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "413", description = "File too large.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Delete(URL_PATH)
+    public CompletableFuture<HttpResponse> deleteDebtPositionsByUrlUpload(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Valid @Body UploadUrlModel uploadUrl,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
+    ) {
+        return urlUpload(brokerCode, organizationFiscalCode, UploadOperation.DELETE, uploadUrl, serviceType, cancellation);
+    }
+
+    private CompletableFuture<HttpResponse> urlUpload(String brokerCode, String organizationFiscalCode, UploadOperation uploadOperation, UploadUrlModel uploadUrl, ServiceType serviceType, UploadCancellation cancellation) {
+        return urlUploadService.upload(brokerCode, organizationFiscalCode, uploadOperation, uploadUrl.getUrl(), serviceType, cancellation).thenApply(uploadID -> {
+            log.debug("[" + uploadOperation + " by URL UPLOAD] The file at the given URL has been uploaded");
+            String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
+
+            try {
+                HttpResponse response = HttpResponse.accepted(new URI(uri));
+                return response.toMutableResponse()
+                        .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
+            } catch (URISyntaxException e) {
+                throw new AppException(AppError.INTERNAL_ERROR);
+            }
+        });
+    }
+
+    private CompletableFuture<HttpResponse<BrokerUploadDTO>> brokerUpload(String brokerCode, UploadOperation uploadOperation, CompletedFileUpload file, ServiceType serviceType, UploadCancellation cancellation) {
+        if (null == file)
+            throw new AppException(HttpStatus.BAD_REQUEST, "EMPTY FILE", "The zip file is missing");
+        return uploadLaneExecutor.submit(file.getSize(), () -> blobService.upsert(brokerCode, uploadOperation, file, serviceType, cancellation))
+                .thenApply(fileIds -> {
+                    log.debug("[" + uploadOperation + " by broker file UPLOAD] A file with name: " + file.getFilename() + " has been uploaded for " + fileIds.size() + " organizations");
+                    return HttpResponse.<BrokerUploadDTO>accepted()
+                            .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms")
+                            .body(BrokerUploadDTO.builder().fileIds(fileIds).build());
+                });
     }
 }
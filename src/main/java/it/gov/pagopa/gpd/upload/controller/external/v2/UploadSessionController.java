@@ -0,0 +1,164 @@
+package it.gov.pagopa.gpd.upload.controller.external.v2;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.*;
+import io.micronaut.openapi.annotation.OpenAPIGroup;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.ExecuteOn;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.SecuritySchemeIn;
+import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.security.SecurityScheme;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import it.gov.pagopa.gpd.upload.config.UploadWebhookFilter;
+import it.gov.pagopa.gpd.upload.exception.AppError;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.ProblemJson;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.UploadSessionDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadSessionModel;
+import it.gov.pagopa.gpd.upload.service.UploadSessionService;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
+import jakarta.inject.Inject;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
+
+@Tag(name = "Massive operation APIs for Debt Positions - v2")
+@ExecuteOn(TaskExecutors.IO)
+@Controller()
+@Slf4j
+@OpenAPIGroup(exclude = "external-v1")
+@SecurityScheme(name = "ApiKey", type = SecuritySchemeType.APIKEY, in = SecuritySchemeIn.HEADER)
+public class UploadSessionController {
+    @Inject
+    UploadSessionService uploadSessionService;
+    private static final String BASE_PATH = "v2/brokers/{broker-code}/organizations/{organization-fiscal-code}/debtpositions/sessions";
+    @Value("${post.file.response.headers.retry_after.millis}")
+    private int retryAfter;
+
+    @Operation(summary = "The Organization starts the resumable upload of a ZIP file sent in chunks.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "create-upload-session")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Session created.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadSessionDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "413", description = "File too large.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Post(BASE_PATH)
+    public HttpResponse<UploadSessionDTO> createUploadSession(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Valid @Body UploadSessionModel uploadSession,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+    ) {
+        UploadSessionDTO session = uploadSessionService.create(brokerCode, organizationFiscalCode, uploadSession.getSize(), serviceType);
+        return HttpResponse.created(session);
+    }
+
+    @Operation(summary = "Returns the byte ranges of the ZIP file received by the upload session.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "get-upload-session")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Session found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadSessionDTO.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "404", description = "Session not found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Get(value = BASE_PATH + "/{session-id}", produces = MediaType.APPLICATION_JSON)
+    public HttpResponse<UploadSessionDTO> getUploadSession(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Parameter(description = "The upload session identifier", required = true)
+            @NotBlank @PathVariable(name = "session-id") String sessionId
+    ) {
+        return HttpResponse.ok(uploadSessionService.get(brokerCode, organizationFiscalCode, sessionId));
+    }
+
+    @Operation(summary = "Sends the chunk of the ZIP file starting at the given offset; a chunk sent again replaces the previous one.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "put-upload-session-chunk")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Chunk received.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadSessionDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "404", description = "Session not found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Put(BASE_PATH + "/{session-id}/chunks")
+    public HttpResponse<UploadSessionDTO> putUploadSessionChunk(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Parameter(description = "The upload session identifier", required = true)
+            @NotBlank @PathVariable(name = "session-id") String sessionId,
+            @Parameter(description = "The offset in the ZIP file of the first byte of the chunk", required = true)
+            @QueryValue long offset,
+            @Body byte[] chunk
+    ) {
+        return HttpResponse.ok(uploadSessionService.putChunk(brokerCode, organizationFiscalCode, sessionId, offset, chunk));
+    }
+
+    @Operation(summary = "Ends the upload session, processing the received ZIP file with the given operation.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "finalize-upload-session")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Request accepted."),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "404", description = "Session not found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "409", description = "Some chunks were not received.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Post(BASE_PATH + "/{session-id}/finalize")
+    public CompletableFuture<HttpResponse> finalizeUploadSession(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Parameter(description = "The upload session identifier", required = true)
+            @NotBlank @PathVariable(name = "session-id") String sessionId,
+            @Parameter(description = "The operation on the debt positions listed in the file", required = true)
+            @QueryValue UploadOperation operation,
+            @Parameter(hidden = true) @RequestAttribute(UploadCancellation.ATTRIBUTE) UploadCancellation cancellation
+    ) {
+        return uploadSessionService.finalizeSession(brokerCode, organizationFiscalCode, sessionId, operation, cancellation).thenApply(finalized -> {
+            String uploadID = finalized.fileId();
+            log.debug("[" + operation + " by upload SESSION] The file of session " + sessionId + " has been uploaded");
+            String uri = "brokers/" + brokerCode + "/organizations/" + organizationFiscalCode + "/debtpositions/file/" + uploadID + "/status";
+
+            try {
+                HttpResponse response = HttpResponse.accepted(new URI(uri));
+                MutableHttpResponse<?> mutableResponse = response.toMutableResponse()
+                        .header(HttpHeaders.RETRY_AFTER, retryAfter + " ms");
+                // the service type of the session, not a query parameter of this request
+                mutableResponse.setAttribute(UploadWebhookFilter.SERVICE_TYPE_ATTRIBUTE, finalized.serviceType());
+                return mutableResponse;
+            } catch (URISyntaxException e) {
+                throw new AppException(AppError.INTERNAL_ERROR);
+            }
+        });
+    }
+}
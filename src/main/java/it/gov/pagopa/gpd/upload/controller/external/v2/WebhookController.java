@@ -0,0 +1,105 @@
+package it.gov.pagopa.gpd.upload.controller.external.v2;
+
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.annotation.*;
+import io.micronaut.openapi.annotation.OpenAPIGroup;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.ExecuteOn;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.SecuritySchemeIn;
+import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.security.SecurityScheme;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import it.gov.pagopa.gpd.upload.model.ProblemJson;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.WebhookDTO;
+import it.gov.pagopa.gpd.upload.model.v2.WebhookModel;
+import it.gov.pagopa.gpd.upload.service.WebhookService;
+import jakarta.inject.Inject;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import lombok.extern.slf4j.Slf4j;
+
+@Tag(name = "Massive operation APIs for Debt Positions - v2")
+@ExecuteOn(TaskExecutors.IO)
+@Controller()
+@Slf4j
+@OpenAPIGroup(exclude = "external-v1")
+@SecurityScheme(name = "ApiKey", type = SecuritySchemeType.APIKEY, in = SecuritySchemeIn.HEADER)
+public class WebhookController {
+    @Inject
+    WebhookService webhookService;
+    private static final String BROKER_PATH = "v2/brokers/{broker-code}/webhook";
+    private static final String UPLOAD_PATH = "v2/brokers/{broker-code}/organizations/{organization-fiscal-code}/debtpositions/file/{file-id}/webhook";
+
+    @Operation(summary = "The Broker registers the URL notified once each of its next uploads has ended, instead of polling their status.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "put-broker-webhook")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Webhook registered.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = WebhookDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "501", description = "Webhooks not enabled.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Put(BROKER_PATH)
+    public HttpResponse<WebhookDTO> putBrokerWebhook(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Valid @Body WebhookModel webhook
+    ) {
+        return HttpResponse.ok(webhookService.registerBroker(brokerCode, webhook.getUrl()));
+    }
+
+    @Operation(summary = "The Broker removes the URL notified once each of its uploads has ended.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "delete-broker-webhook")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Webhook removed."),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "404", description = "Webhook not found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "501", description = "Webhooks not enabled.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Delete(BROKER_PATH)
+    public HttpResponse<Void> deleteBrokerWebhook(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode
+    ) {
+        webhookService.unregisterBroker(brokerCode);
+        return HttpResponse.noContent();
+    }
+
+    @Operation(summary = "The Organization registers the URL notified once the upload has ended, instead of polling its status.", security = {@SecurityRequirement(name = "ApiKey")}, operationId = "put-upload-webhook")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Webhook registered.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = WebhookDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Malformed request.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "401", description = "Wrong or missing function key.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden", content = @Content(schema = @Schema())),
+            @ApiResponse(responseCode = "404", description = "Upload not found.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "429", description = "Too many requests.", content = @Content(mediaType = MediaType.TEXT_JSON)),
+            @ApiResponse(responseCode = "500", description = "Service unavailable.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class))),
+            @ApiResponse(responseCode = "501", description = "Webhooks not enabled.", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ProblemJson.class)))})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Put(UPLOAD_PATH)
+    public HttpResponse<WebhookDTO> putUploadWebhook(
+            @Parameter(description = "The broker code", required = true)
+            @NotBlank @PathVariable(name = "broker-code") String brokerCode,
+            @Parameter(description = "The organization fiscal code", required = true)
+            @NotBlank @PathVariable(name = "organization-fiscal-code") String organizationFiscalCode,
+            @Parameter(description = "The unique identifier for file upload", required = true)
+            @NotBlank @PathVariable(name = "file-id") String fileId,
+            @Valid @Body WebhookModel webhook,
+            @Parameter(description = "GPD or ACA", hidden = true) @QueryValue(defaultValue = "GPD") ServiceType serviceType
+    ) {
+        return HttpResponse.ok(webhookService.registerUpload(brokerCode, organizationFiscalCode, fileId, serviceType, webhook.getUrl()));
+    }
+}
@@ -1,9 +1,12 @@
 package it.gov.pagopa.gpd.upload.entity;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
 import lombok.*;
 
+import java.util.List;
+
 @Builder(toBuilder = true)
 @Getter
 @Setter
@@ -17,4 +20,19 @@ public class Status {
     public String fiscalCode;
     public Upload upload;
     private ServiceType serviceType;
+    // fileIds of the sub-uploads of a split upload, the parent has no input of its own
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> children;
+    // fileId of the split upload a sub-upload belongs to
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String parent;
+    // set while the archive of an upload accepted in asynchronous mode is waiting to be processed
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean pending;
+    // fileId of the upload the archive of a pending upload is processed into, recorded right before its commit
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String processedUpload;
+    // IUPDs of a combined upload in input order, locating the positions of each request merged into it
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> inputIUPDs;
 }
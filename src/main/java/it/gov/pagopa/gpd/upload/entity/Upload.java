@@ -1,12 +1,18 @@
 package it.gov.pagopa.gpd.upload.entity;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.*;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Builder(toBuilder = true)
 @Getter
@@ -23,20 +29,72 @@ public class Upload {
     private LocalDateTime start;
     @JsonFormat(pattern="yyyy-MM-dd HH:mm:ss")
     private LocalDateTime end;
+    // not part of the document nor of the builder: rebuilt from the responses whenever they were replaced or changed
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final transient ResponseIndex index = new ResponseIndex();
 
-    public void addResponse(ResponseEntry responseEntry) {
+    public synchronized void addResponse(ResponseEntry responseEntry) {
         if(responses == null) responses = new ArrayList<>();
         // regardless of the condition increments the current counter because a list of IUPDs was processed
         current += responseEntry.requestIDs.size();
-        for (ResponseEntry existingEntry : responses) {
-            if (existingEntry.statusCode.equals(responseEntry.statusCode) && existingEntry.statusMessage.equals(responseEntry.statusMessage)) {
-                List<String> requestIDs = new ArrayList<>(existingEntry.requestIDs);
-                requestIDs.addAll(responseEntry.requestIDs);
-                existingEntry.requestIDs = requestIDs;
-                return; // No need to continue checking once a match is found
-            }
+        index.syncWith(responses);
+        ResponseEntry existingEntry = index.get(responseEntry);
+        if (existingEntry != null) {
+            // appended in place, the IUPDs of an entry are copied once, the first time another batch is merged into it
+            index.ownedRequestIDs(existingEntry).addAll(responseEntry.requestIDs);
+            return;
         }
         // If no match is found, add the new response entry to the list
         responses.add(responseEntry);
+        index.put(responseEntry);
+    }
+
+    private record ResponseKey(Integer statusCode, String statusMessage) {
+        private static ResponseKey of(ResponseEntry responseEntry) {
+            return new ResponseKey(responseEntry.statusCode, responseEntry.statusMessage);
+        }
+    }
+
+    /*
+     * The entries of the responses by status code and message, so that merging a batch does not scan them, and the
+     * IUPD lists already copied by the merge, which are appended in place. The requestIDs given by the callers may be
+     * immutable or still in use, so they are never appended to.
+     */
+    private static final class ResponseIndex {
+        private final Map<ResponseKey, ResponseEntry> entries = new HashMap<>();
+        private final Set<List<String>> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        private List<ResponseEntry> indexed;
+        private int indexedSize;
+
+        // the responses are a plain list of the document: a new or changed one is indexed again
+        private void syncWith(List<ResponseEntry> responses) {
+            if (responses == indexed && responses.size() == indexedSize)
+                return;
+            entries.clear();
+            owned.clear();
+            for (ResponseEntry responseEntry : responses)
+                entries.putIfAbsent(ResponseKey.of(responseEntry), responseEntry);
+            indexed = responses;
+            indexedSize = responses.size();
+        }
+
+        private ResponseEntry get(ResponseEntry responseEntry) {
+            return entries.get(ResponseKey.of(responseEntry));
+        }
+
+        private void put(ResponseEntry responseEntry) {
+            entries.put(ResponseKey.of(responseEntry), responseEntry);
+            indexedSize++;
+        }
+
+        private List<String> ownedRequestIDs(ResponseEntry responseEntry) {
+            if (!owned.contains(responseEntry.requestIDs)) {
+                responseEntry.requestIDs = new ArrayList<>(responseEntry.requestIDs);
+                owned.add(responseEntry.requestIDs);
+            }
+            return responseEntry.requestIDs;
+        }
     }
 }
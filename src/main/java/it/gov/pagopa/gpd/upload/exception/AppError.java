@@ -10,6 +10,7 @@ public enum AppError {
     ORGANIZATION_NOT_FOUND(HttpStatus.NOT_FOUND, "Organization not found", "Not found the Organization Fiscal Code %s"),
     ORGANIZATION_DUPLICATED(HttpStatus.CONFLICT, "Organization with the specified organization fiscal code already exists in the system", "Already exists an organization with Organization Fiscal Code %s"),
     BLOB_NOT_FOUND(HttpStatus.NOT_FOUND, "Upload blob not found", "The blob for the given upload id %s does not exist for %s"),
+    UPLOAD_CANCELLED(HttpStatus.SERVICE_UNAVAILABLE, "Upload cancelled", "Upload processing cancelled during %s phase: %s"),
     INTERNAL_ERROR(HttpStatus.INTERNAL_SERVER_ERROR, "Error enrollment processing ", "Error enrollment processing  [Organization Fiscal Code = %s]"),
     UNKNOWN(null, "UnknownError", "Unknown error");
 
@@ -0,0 +1,22 @@
+package it.gov.pagopa.gpd.upload.model;
+
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Work item of an upload accepted in asynchronous mode: the archive to process is the one stored for {@code fileId}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AsyncUploadMessage {
+    private String fileId;
+    private String brokerCode;
+    private String organizationFiscalCode;
+    private UploadOperation uploadOperation;
+    private ServiceType serviceType;
+}
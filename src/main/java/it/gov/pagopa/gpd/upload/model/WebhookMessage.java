@@ -0,0 +1,26 @@
+package it.gov.pagopa.gpd.upload.model;
+
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Work item of an upload whose end is notified to {@code url}: it's checked until the upload ends or
+ * {@code watchUntil} (epoch milliseconds) passes, then the notification is delivered, retried up to a maximum of
+ * {@code attempts}.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebhookMessage {
+    private String fileId;
+    private String brokerCode;
+    private String organizationFiscalCode;
+    private ServiceType serviceType;
+    private String url;
+    private long watchUntil;
+    private int attempts;
+}
@@ -0,0 +1,19 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.Map;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonSerialize
+@ToString
+@Builder(toBuilder = true)
+public class BrokerUploadDTO {
+    @Schema(description = "The fileId of the upload of each organization, by organization fiscal code")
+    private Map<String, String> fileIds;
+}
@@ -0,0 +1,20 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonSerialize
+@ToString
+@EqualsAndHashCode
+@Builder(toBuilder = true)
+public class ChunkRangeDTO {
+    @Schema(description = "The offset of the first byte of the range")
+    private long offset;
+    @Schema(description = "The number of bytes of the range")
+    private long length;
+}
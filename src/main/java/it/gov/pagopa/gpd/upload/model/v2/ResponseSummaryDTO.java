@@ -0,0 +1,21 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Builder(toBuilder = true)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@JsonSerialize
+public class ResponseSummaryDTO {
+    @Schema(example = "400")
+    private Integer statusCode;
+    @Schema(example = "Bad request caused by invalid email address")
+    private String statusMessage;
+    @Schema(description = "Number of IUPDs with this status code and message")
+    private int count;
+}
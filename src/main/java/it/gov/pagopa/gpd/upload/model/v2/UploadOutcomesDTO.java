@@ -0,0 +1,29 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonSerialize
+@ToString
+@Builder(toBuilder = true)
+public class UploadOutcomesDTO {
+    @Schema(example = "2025-09-01")
+    private LocalDate from;
+    @Schema(example = "2025-09-06")
+    private LocalDate to;
+    @Schema(description = "Number of uploads by operation status, a split upload is counted through its sub-uploads")
+    private Map<OperationStatus, Long> uploads;
+    @Schema(description = "Number of debt positions processed successfully, the ones skipped because unchanged included")
+    private long succeededItem;
+    @Schema(description = "Number of debt positions whose processing failed")
+    private long failedItem;
+}
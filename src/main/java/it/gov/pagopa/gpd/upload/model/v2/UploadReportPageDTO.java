@@ -0,0 +1,48 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Builder(toBuilder = true)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@JsonSerialize
+public class UploadReportPageDTO {
+    private String fileId;
+    private int processedItem;
+    private int submittedItem;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS")
+    @Schema(example = "2024-10-08T14:55:16.302Z")
+    private LocalDateTime startTime;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS")
+    private LocalDateTime endTime;
+
+    @Schema(description = "Number of IUPDs by status code and message, of the responses matching the filters")
+    private List<ResponseSummaryDTO> summary;
+
+    @Schema(description = "The IUPDs of this page, by status code and message; missing in summary mode")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<ResponseEntryDTO> responses;
+
+    @Schema(description = "Number of IUPDs in this page")
+    private int size;
+
+    @Schema(description = "True if another page is available (x-continuation-token present)")
+    private boolean hasMore;
+
+    @Schema(hidden = true) // do not put it in the body; it is put in the output header
+    @JsonIgnore
+    private String continuationToken;
+}
@@ -0,0 +1,25 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonSerialize
+@ToString
+@Builder(toBuilder = true)
+public class UploadSessionDTO {
+    @Schema(description = "The identifier of the session, that becomes the fileId of the upload once finalized")
+    private String sessionId;
+    @Schema(description = "The size in bytes of the ZIP file")
+    private long size;
+    @Schema(description = "The byte ranges of the ZIP file received so far")
+    private List<ChunkRangeDTO> receivedRanges;
+    @Schema(description = "True when the whole ZIP file was received and the session can be finalized")
+    private boolean complete;
+}
@@ -0,0 +1,22 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import io.micronaut.core.annotation.Introspected;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Introspected
+public class UploadSessionModel {
+    @NotNull
+    @Positive
+    @Schema(description = "The size in bytes of the ZIP file to be uploaded")
+    private Long size;
+}
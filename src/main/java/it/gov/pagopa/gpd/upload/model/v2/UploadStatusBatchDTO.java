@@ -0,0 +1,19 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonSerialize
+@ToString
+@Builder(toBuilder = true)
+public class UploadStatusBatchDTO {
+    @Schema(description = "The statuses in the order of the requested fileIds, without duplicates")
+    private List<UploadStatusItemDTO> statuses;
+}
@@ -0,0 +1,27 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import io.micronaut.core.annotation.Introspected;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Introspected
+public class UploadStatusBatchModel {
+    public static final int MAX_FILE_IDS = 500;
+
+    @NotEmpty
+    @Size(min = 1, max = MAX_FILE_IDS, message = "The list of fileIds must contain at least one element and at the most " + MAX_FILE_IDS)
+    @Schema(description = "The unique identifiers of the file uploads, at most 500")
+    private List<@NotBlank String> fileIds;
+}
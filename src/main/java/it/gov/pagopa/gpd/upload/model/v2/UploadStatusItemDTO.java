@@ -0,0 +1,21 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonSerialize
+@ToString
+@Builder(toBuilder = true)
+public class UploadStatusItemDTO {
+    @Schema(description = "The unique identifier of the file upload")
+    private String fileId;
+    @Schema(description = "200 if the upload was found, 404 otherwise")
+    private int statusCode;
+    @Schema(description = "The upload status, missing if not found")
+    private UploadStatusDTO status;
+}
@@ -0,0 +1,19 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonSerialize
+@ToString(exclude = "secret")
+@Builder(toBuilder = true)
+public class WebhookDTO {
+    @Schema(description = "The URL notified once the uploads end")
+    private String url;
+    @Schema(description = "The secret of the broker signing the notifications: the X-Signature header is the hex HMAC-SHA256 of '<X-Signature-Timestamp>.<body>'")
+    private String secret;
+}
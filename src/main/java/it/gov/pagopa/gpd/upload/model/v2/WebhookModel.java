@@ -0,0 +1,20 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import io.micronaut.core.annotation.Introspected;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Introspected
+public class WebhookModel {
+    @NotBlank
+    @Schema(description = "The HTTPS URL notified with a POST once the uploads end")
+    private String url;
+}
@@ -0,0 +1,25 @@
+package it.gov.pagopa.gpd.upload.model.v2;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonSerialize
+@ToString
+@Builder(toBuilder = true)
+public class WebhookNotificationDTO {
+    @Schema(description = "The unique identifier of the file upload")
+    private String fileId;
+    private String brokerCode;
+    private String organizationFiscalCode;
+    private ServiceType serviceType;
+    private OperationStatus operationStatus;
+    private int processedItem;
+    private int submittedItem;
+}
@@ -1,5 +1,19 @@
 package it.gov.pagopa.gpd.upload.model.v2.enumeration;
 
 public enum OperationStatus {
-    IN_PROGRESS, COMPLETED, COMPLETED_WITH_WARNINGS, COMPLETED_UNSUCCESSFULLY
+    PENDING, IN_PROGRESS, COMPLETED, COMPLETED_WITH_WARNINGS, COMPLETED_UNSUCCESSFULLY;
+
+    /**
+     * The outcome of an upload, from its Status or from its outcome row, and the rule of the outcome filter of the
+     * Status queries: an upload processed without failed responses, even without any response, is completed.
+     */
+    public static OperationStatus of(boolean pending, boolean processed, boolean anyFailed, boolean anySucceeded) {
+        if (pending)
+            return PENDING;
+        if (!processed)
+            return IN_PROGRESS;
+        if (!anyFailed)
+            return COMPLETED;
+        return anySucceeded ? COMPLETED_WITH_WARNINGS : COMPLETED_UNSUCCESSFULLY;
+    }
 }
@@ -2,17 +2,31 @@ package it.gov.pagopa.gpd.upload.repository;
 
 import com.azure.core.util.BinaryData;
 import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobClientBuilder;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.Block;
+import com.azure.storage.blob.models.BlockList;
+import com.azure.storage.blob.models.BlockListType;
+import com.azure.storage.blob.models.BlobDownloadContentResponse;
 import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.options.BlobInputStreamOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
 import com.azure.storage.blob.specialized.BlockBlobClient;
 import io.micronaut.context.annotation.Context;
 import io.micronaut.http.HttpStatus;
 import it.gov.pagopa.gpd.upload.exception.AppError;
 import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.utils.FileIdGenerator;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.ByteArrayInputStream;
@@ -21,69 +35,135 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
+import static it.gov.pagopa.gpd.upload.config.UploadExecutorConfig.UPLOAD_EXECUTOR;
+import static it.gov.pagopa.gpd.upload.utils.Constants.ARCHIVE_DIRECTORY;
+import static it.gov.pagopa.gpd.upload.utils.Constants.INDEX_DIRECTORY;
 import static it.gov.pagopa.gpd.upload.utils.Constants.INPUT_DIRECTORY;
+import static it.gov.pagopa.gpd.upload.utils.Constants.POSITION_HASH_INDEX;
 import static it.gov.pagopa.gpd.upload.utils.Constants.SERVICE_TYPE_METADATA;
+import static it.gov.pagopa.gpd.upload.utils.Constants.SESSION_DIRECTORY;
+import static it.gov.pagopa.gpd.upload.utils.Constants.SESSION_SIZE_METADATA;
+import static it.gov.pagopa.gpd.upload.utils.Constants.WEBHOOK_BLOB;
 
 @Context
 @Singleton
 @Slf4j
 public class BlobStorageRepository {
     private final BlobServiceClient blobServiceClient;
+    private final ExecutorService uploadExecutor;
     @Inject
-    public BlobStorageRepository(BlobServiceClient blobServiceClient) {
+    public BlobStorageRepository(BlobServiceClient blobServiceClient, @Named(UPLOAD_EXECUTOR) ExecutorService uploadExecutor) {
         this.blobServiceClient = blobServiceClient;
+        this.uploadExecutor = uploadExecutor;
     }
 
-    public String upload(String broker, String fiscalCode, InputStream inputStream, ServiceType serviceType) {
-        blobServiceClient.createBlobContainerIfNotExists(broker);
-        BlobContainerClient container = blobServiceClient.getBlobContainerClient(broker + "/" + fiscalCode + "/" + INPUT_DIRECTORY);
-        String key = this.createRandomName(broker + "_" + fiscalCode);
-        Map<String, String> metadata = Map.of(SERVICE_TYPE_METADATA, serviceType.name());
-
-        BlobClient blobClient = container.getBlobClient(key + ".json");
-        // retry in case of pseudo random collision
-        while (blobClient.exists()) {
-            key = this.createRandomName(fiscalCode);
-            blobClient = container.getBlobClient(key);
-        }
-
+    /**
+     * Uploads the input of the given fileId, overwriting it if already uploaded.
+     * @return a future completed when the input is committed, or discarded because the upload was cancelled,
+     * and failed if the blocks could not be staged within the staging deadline
+     */
+    public CompletableFuture<Void> upload(String broker, String fiscalCode, String fileId, InputStream inputStream, ServiceType serviceType, UploadCancellation cancellation) {
+        BlobClient blobClient = getInputBlobClient(broker, fiscalCode, fileId);
         BlockBlobClient blockBlobClient = blobClient.getBlockBlobClient();
 
-        CompletableFuture<String> uploadFuture = uploadFileAsync(blockBlobClient, inputStream);
-
-        uploadFuture.thenAccept(blobName -> {
-            // Handle the result asynchronously
-            String[] blobNameSplit = blobName.split("/");
-            String fileName = blobNameSplit[blobNameSplit.length - 1];
-            container.getBlobClient(fileName).setMetadata(metadata);
-            log.debug("Asynchronous upload completed for blob {}", blobName);
+        return uploadFileAsync(blobClient, blockBlobClient, inputStream, cancellation).thenAcceptBoth(cancellation.decision(), (input, committed) -> {
+            if (Boolean.FALSE.equals(committed)) {
+                log.info("Upload {} cancelled, staged blocks discarded", blockBlobClient.getBlobName());
+                return;
+            }
+            cancellation.stagingCheckpoint();
+            commit(input, serviceType);
         }).exceptionally(ex -> {
+            if (cancellation.isCancelled()) {
+                log.info("Upload {} cancelled while staging blocks: {}", blockBlobClient.getBlobName(), ex.getMessage());
+                return null;
+            }
             log.error("[Error][BlobStorageRepository@upload] Exception while uploading file asynchronously: {}", ex.getMessage());
-            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL_SERVER_ERROR", "Error uploading file asynchronously", ex);
+            throw toAppException(ex);
+        });
+    }
+
+    /**
+     * Stages the blocks of the input of the given fileId without committing them, for the uploads made of many inputs
+     * that are committed only once all of them are staged.
+     * @return a future completed with the staged input, to be committed with {@link #commit}, and failed if the blocks
+     * could not be staged within the staging deadline or the upload was cancelled
+     */
+    public CompletableFuture<StagedInput> stage(String broker, String fiscalCode, String fileId, InputStream inputStream, UploadCancellation cancellation) {
+        BlobClient blobClient = getInputBlobClient(broker, fiscalCode, fileId);
+        return uploadFileAsync(blobClient, blobClient.getBlockBlobClient(), inputStream, cancellation).exceptionally(ex -> {
+            log.error("[Error][BlobStorageRepository@stage] Exception while staging file asynchronously: {}", ex.getMessage());
+            throw toAppException(ex);
         });
+    }
+
+    /**
+     * Commits the block list of a staged input, which is then visible to its processing.
+     */
+    public void commit(StagedInput input, ServiceType serviceType) {
+        try {
+            input.blockBlobClient().commitBlockList(input.blockIds());
+            input.blobClient().setMetadata(Map.of(SERVICE_TYPE_METADATA, serviceType.name()));
+        } catch (BlobStorageException e) {
+            log.error("[Error][BlobStorageRepository@commit] Exception while committing file: {}", e.getMessage());
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL_SERVER_ERROR", "Error uploading file asynchronously", e);
+        }
+        log.debug("Asynchronous upload completed for blob {}", input.blockBlobClient().getBlobName());
+    }
+
+    /*
+     * Removes the input of an upload that failed after its commit, if it was committed.
+     */
+    public void deleteInput(String broker, String fiscalCode, String fileId) {
+        blobServiceClient.getBlobContainerClient(broker + "/" + fiscalCode + "/" + INPUT_DIRECTORY)
+                .getBlobClient(fileId + ".json").deleteIfExists();
+    }
+
+    private BlobClient getInputBlobClient(String broker, String fiscalCode, String fileId) {
+        blobServiceClient.createBlobContainerIfNotExists(broker);
+        return blobServiceClient.getBlobContainerClient(broker + "/" + fiscalCode + "/" + INPUT_DIRECTORY).getBlobClient(fileId + ".json");
+    }
 
-        return key;
+    private static AppException toAppException(Throwable ex) {
+        if (ex instanceof AppException appException)
+            return appException;
+        if (ex.getCause() instanceof AppException appException)
+            return appException;
+        return new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL_SERVER_ERROR", "Error uploading file asynchronously", ex);
     }
 
-    private CompletableFuture<String> uploadFileAsync(BlockBlobClient blockBlobClient, InputStream inputStream) {
+    /*
+     * Blocks are staged as soon as possible, but the block list is committed only when the upload is
+     * committed: uncommitted blocks of a cancelled upload are garbage collected by the storage account.
+     */
+    private CompletableFuture<StagedInput> uploadFileAsync(BlobClient blobClient, BlockBlobClient blockBlobClient, InputStream inputStream, UploadCancellation cancellation) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                return this.uploadFileBlocksAsBlockBlob(blockBlobClient, inputStream);
+                return new StagedInput(blobClient, blockBlobClient, this.stageFileBlocks(blockBlobClient, inputStream, cancellation));
             } catch (IOException e) {
                 throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL_SERVER_ERROR", "Error uploading file asynchronously", e);
             }
-        });
+        }, uploadExecutor);
+    }
+
+    public String newFileId(String broker, String fiscalCode) {
+        return this.createRandomName(broker + "_" + fiscalCode);
     }
 
+    // time-ordered, so the fileIds of an organization sort by upload time
     private String createRandomName(String namePrefix) {
-        return namePrefix + "_" + UUID.randomUUID().toString().replace("-", "");
+        return namePrefix + "_" + FileIdGenerator.next();
     }
 
-    private String uploadFileBlocksAsBlockBlob(BlockBlobClient blockBlob, InputStream inputStream) throws IOException {
+    // staging may go on after the commit, when only its own deadline can still stop it
+    private List<String> stageFileBlocks(BlockBlobClient blockBlob, InputStream inputStream, UploadCancellation cancellation) throws IOException {
         ByteArrayInputStream byteInputStream = null;
         int blockSize = 1024 * 1024;
 
@@ -95,6 +175,7 @@ public class BlobStorageRepository {
             ArrayList<String> blockList = new ArrayList<>();
             byte[] bytes = inputStream.readNBytes(blockSize);
             while (bytes.length == blockSize) {
+                cancellation.stagingCheckpoint();
                 byteInputStream = new ByteArrayInputStream(bytes);
                 blockId = String.format("%05d", blockNum); // 5-digit number
                 blockIdEncoded = Base64.getEncoder().encodeToString(blockId.getBytes());
@@ -103,14 +184,13 @@ public class BlobStorageRepository {
                 blockNum++;
                 bytes = inputStream.readNBytes(blockSize);
             }
+            cancellation.stagingCheckpoint();
             blockId = String.format("%05d", blockNum); // 5-digit number
             blockIdEncoded = Base64.getEncoder().encodeToString(blockId.getBytes());
             byteInputStream = new ByteArrayInputStream(bytes); // add last block based on remaining bytes
             blockBlob.stageBlock(blockIdEncoded, byteInputStream, bytes.length);
             blockList.add(blockIdEncoded);
-
-            // Commit the blocks
-            blockBlob.commitBlockList(blockList);
+            return blockList;
         } finally {
             // Close the file output stream writer
             if (inputStream != null) {
@@ -120,10 +200,16 @@ public class BlobStorageRepository {
                 byteInputStream.close();
             }
         }
-        return blockBlob.getBlobName();
     }
 
     public BinaryData downloadContent(String broker, String uploadKey, String blobPath, ServiceType serviceType) {
+        return getContent(broker, uploadKey, blobPath, serviceType).blobClient.downloadContent();
+    }
+
+    /**
+     * The content blob of the upload, checked as for its download, to be read as a stream.
+     */
+    public ContentBlob getContent(String broker, String uploadKey, String blobPath, ServiceType serviceType) {
         BlobContainerClient blobContainerClient = blobServiceClient.getBlobContainerClient(broker);
 
         if (!blobContainerClient.exists()) {
@@ -146,6 +232,313 @@ public class BlobStorageRepository {
             throw new AppException(AppError.BLOB_NOT_FOUND, uploadKey, serviceType);
         }
 
-        return blobClient.downloadContent();
+        return new ContentBlob(blobClient, properties.getBlobSize(), properties.getETag());
+    }
+
+    /*
+     * The archive of an upload accepted but not yet processed, as sent by the client.
+     */
+    public void uploadArchive(String broker, String fiscalCode, String fileId, InputStream inputStream, long length) {
+        blobServiceClient.createBlobContainerIfNotExists(broker);
+        getArchiveBlobClient(broker, fiscalCode, fileId).upload(inputStream, length, false);
+    }
+
+    public Optional<BinaryData> downloadArchive(String broker, String fiscalCode, String fileId) {
+        try {
+            return Optional.of(getArchiveBlobClient(broker, fiscalCode, fileId).downloadContent());
+        } catch (BlobStorageException ex) {
+            if (ex.getStatusCode() == HttpStatus.NOT_FOUND.getCode())
+                return Optional.empty();
+            throw ex;
+        }
+    }
+
+    public void deleteArchive(String broker, String fiscalCode, String fileId) {
+        getArchiveBlobClient(broker, fiscalCode, fileId).deleteIfExists();
+    }
+
+    /*
+     * A resumable upload session: the chunks are staged as blocks of the archive blob of the upload, committed at
+     * finalize, while the session descriptor keeps the declared size, the service type and the ranges received.
+     */
+    public void createSession(String broker, String fiscalCode, String fileId, long size, ServiceType serviceType) {
+        blobServiceClient.createBlobContainerIfNotExists(broker);
+        getSessionBlobClient(broker, fiscalCode, fileId).uploadWithResponse(
+                new BlobParallelUploadOptions(BinaryData.fromBytes(new byte[0]))
+                        .setMetadata(sessionMetadata(size, serviceType))
+                        .setRequestConditions(new BlobRequestConditions().setIfNoneMatch("*")),
+                null, com.azure.core.util.Context.NONE);
+    }
+
+    public Optional<SessionBlob> getSession(String broker, String fiscalCode, String fileId) {
+        BlobDownloadContentResponse response;
+        try {
+            response = getSessionBlobClient(broker, fiscalCode, fileId).downloadContentWithResponse(null, null, null, com.azure.core.util.Context.NONE);
+        } catch (BlobStorageException ex) {
+            if (ex.getStatusCode() == HttpStatus.NOT_FOUND.getCode())
+                return Optional.empty();
+            throw ex;
+        }
+
+        Map<String, String> metadata = response.getDeserializedHeaders().getMetadata();
+        List<ReceivedRange> received = new ArrayList<>();
+        for (String line : response.getValue().toString().split("\n")) {
+            if (line.isEmpty())
+                continue;
+            String[] range = line.split(",");
+            received.add(new ReceivedRange(Long.parseLong(range[0]), Long.parseLong(range[1])));
+        }
+        return Optional.of(new SessionBlob(Long.parseLong(metadata.get(SESSION_SIZE_METADATA)),
+                ServiceType.valueOf(metadata.get(SERVICE_TYPE_METADATA)), received, response.getDeserializedHeaders().getETag()));
+    }
+
+    /**
+     * @param session the session read before
+     * @return {@code false} if the session was changed in the meantime
+     */
+    public boolean updateSession(String broker, String fiscalCode, String fileId, SessionBlob session, List<ReceivedRange> received) {
+        StringBuilder content = new StringBuilder();
+        for (ReceivedRange range : received)
+            content.append(range.offset()).append(',').append(range.length()).append('\n');
+        try {
+            getSessionBlobClient(broker, fiscalCode, fileId).uploadWithResponse(
+                    new BlobParallelUploadOptions(BinaryData.fromString(content.toString()))
+                            .setMetadata(sessionMetadata(session.getSize(), session.getServiceType()))
+                            .setRequestConditions(new BlobRequestConditions().setIfMatch(session.getETag())),
+                    null, com.azure.core.util.Context.NONE);
+            return true;
+        } catch (BlobStorageException ex) {
+            if (ex.getStatusCode() == HttpStatus.PRECONDITION_FAILED.getCode())
+                return false;
+            throw ex;
+        }
+    }
+
+    /*
+     * The block id is derived from the offset, so a chunk sent again replaces the one staged before.
+     */
+    public void stageChunk(String broker, String fiscalCode, String fileId, long offset, byte[] chunk) {
+        getArchiveBlobClient(broker, fiscalCode, fileId).getBlockBlobClient()
+                .stageBlock(encodeChunkOffset(offset), new ByteArrayInputStream(chunk), chunk.length);
+    }
+
+    /*
+     * The chunks staged for the session, including the ones committed by a finalize that failed afterwards:
+     * a chunk staged again replaces the committed one.
+     */
+    public List<StagedChunk> listStagedChunks(String broker, String fiscalCode, String fileId) {
+        Map<String, StagedChunk> chunks = new HashMap<>();
+        try {
+            BlockList blockList = getArchiveBlobClient(broker, fiscalCode, fileId).getBlockBlobClient().listBlocks(BlockListType.ALL);
+            for (Block block : blockList.getCommittedBlocks())
+                chunks.put(block.getName(), new StagedChunk(block.getName(), decodeChunkOffset(block.getName()), block.getSizeLong()));
+            for (Block block : blockList.getUncommittedBlocks())
+                chunks.put(block.getName(), new StagedChunk(block.getName(), decodeChunkOffset(block.getName()), block.getSizeLong()));
+        } catch (BlobStorageException ex) {
+            // no chunk staged yet
+            if (ex.getStatusCode() != HttpStatus.NOT_FOUND.getCode())
+                throw ex;
+        }
+        return new ArrayList<>(chunks.values());
+    }
+
+    /*
+     * Commits the given chunks, in order, as archive of the upload: staged chunks not listed are discarded.
+     */
+    public void commitSession(String broker, String fiscalCode, String fileId, List<String> blockIds) {
+        getArchiveBlobClient(broker, fiscalCode, fileId).getBlockBlobClient().commitBlockList(blockIds, true);
+    }
+
+    public void deleteSession(String broker, String fiscalCode, String fileId) {
+        getSessionBlobClient(broker, fiscalCode, fileId).deleteIfExists();
+    }
+
+    private BlobClient getSessionBlobClient(String broker, String fiscalCode, String fileId) {
+        return blobServiceClient.getBlobContainerClient(broker)
+                .getBlobClient(String.format("%s/%s/%s", fiscalCode, SESSION_DIRECTORY, fileId));
+    }
+
+    private static Map<String, String> sessionMetadata(long size, ServiceType serviceType) {
+        return Map.of(SESSION_SIZE_METADATA, String.valueOf(size), SERVICE_TYPE_METADATA, serviceType.name());
+    }
+
+    private static String encodeChunkOffset(long offset) {
+        // block ids of a blob must have the same length
+        return Base64.getEncoder().encodeToString(String.format("%019d", offset).getBytes());
+    }
+
+    private static long decodeChunkOffset(String blockId) {
+        return Long.parseLong(new String(Base64.getDecoder().decode(blockId)));
+    }
+
+    /*
+     * Server-side copy of a client-provided blob as archive of the upload, the content never passes through the service.
+     */
+    public void copyArchiveFromUrl(String broker, String fiscalCode, String fileId, String sourceUrl) {
+        blobServiceClient.createBlobContainerIfNotExists(broker);
+        try {
+            getArchiveBlobClient(broker, fiscalCode, fileId).getBlockBlobClient().uploadFromUrl(sourceUrl, false);
+        } catch (BlobStorageException ex) {
+            throw sourceNotAvailable(ex);
+        }
+    }
+
+    /**
+     * @param sourceUrl URL of a client-provided blob, with a SAS granting read access
+     */
+    public SourceBlob getSource(String sourceUrl) {
+        try {
+            BlobClient source = new BlobClientBuilder().endpoint(sourceUrl).buildClient();
+            return new SourceBlob(source, source.getProperties().getBlobSize());
+        } catch (BlobStorageException ex) {
+            throw sourceNotAvailable(ex);
+        }
+    }
+
+    private static AppException sourceNotAvailable(BlobStorageException ex) {
+        log.error("[Error][BlobStorageRepository@source] The source blob is not available: {}", ex.getStatusCode());
+        // the client-provided blob is missing or its SAS doesn't grant read access
+        if (ex.getStatusCode() == HttpStatus.NOT_FOUND.getCode() || ex.getStatusCode() == HttpStatus.FORBIDDEN.getCode()
+                || ex.getStatusCode() == HttpStatus.UNAUTHORIZED.getCode())
+            return new AppException(HttpStatus.BAD_REQUEST, "SOURCE NOT AVAILABLE", "The file at the given URL is not readable", ex);
+        return new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Error reading the file at the given URL", ex);
+    }
+
+    private BlobClient getArchiveBlobClient(String broker, String fiscalCode, String fileId) {
+        return blobServiceClient.getBlobContainerClient(broker)
+                .getBlobClient(String.format("%s/%s/%s.zip", fiscalCode, ARCHIVE_DIRECTORY, fileId));
+    }
+
+    public Optional<IndexBlob> downloadIndex(String broker, String fiscalCode, ServiceType serviceType) {
+        BlobClient blobClient = getIndexBlobClient(broker, fiscalCode, serviceType);
+        try {
+            BlobDownloadContentResponse response = blobClient.downloadContentWithResponse(null, null, null, com.azure.core.util.Context.NONE);
+            return Optional.of(new IndexBlob(response.getValue().toBytes(), response.getDeserializedHeaders().getETag()));
+        } catch (BlobStorageException ex) {
+            if (ex.getStatusCode() == HttpStatus.NOT_FOUND.getCode())
+                return Optional.empty();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param eTag the ETag of the index read before, {@code null} if it didn't exist
+     * @return {@code false} if the index was changed in the meantime
+     */
+    public boolean uploadIndex(String broker, String fiscalCode, ServiceType serviceType, byte[] content, String eTag) {
+        blobServiceClient.createBlobContainerIfNotExists(broker);
+        BlobRequestConditions conditions = eTag == null
+                ? new BlobRequestConditions().setIfNoneMatch("*")
+                : new BlobRequestConditions().setIfMatch(eTag);
+        try {
+            getIndexBlobClient(broker, fiscalCode, serviceType).uploadWithResponse(
+                    new BlobParallelUploadOptions(BinaryData.fromBytes(content)).setRequestConditions(conditions), null, com.azure.core.util.Context.NONE);
+            return true;
+        } catch (BlobStorageException ex) {
+            if (ex.getStatusCode() == HttpStatus.PRECONDITION_FAILED.getCode() || ex.getStatusCode() == HttpStatus.CONFLICT.getCode())
+                return false;
+            throw ex;
+        }
+    }
+
+    public void deleteIndex(String broker, String fiscalCode, ServiceType serviceType) {
+        getIndexBlobClient(broker, fiscalCode, serviceType).deleteIfExists();
+    }
+
+    private BlobClient getIndexBlobClient(String broker, String fiscalCode, ServiceType serviceType) {
+        return blobServiceClient.getBlobContainerClient(broker)
+                .getBlobClient(String.format("%s/%s/%s", fiscalCode, INDEX_DIRECTORY, String.format(POSITION_HASH_INDEX, serviceType.name().toLowerCase())));
+    }
+
+    public Optional<BinaryData> downloadWebhook(String broker) {
+        try {
+            return Optional.of(getWebhookBlobClient(broker).downloadContent());
+        } catch (BlobStorageException ex) {
+            if (ex.getStatusCode() == HttpStatus.NOT_FOUND.getCode())
+                return Optional.empty();
+            throw ex;
+        }
+    }
+
+    public void uploadWebhook(String broker, byte[] content) {
+        blobServiceClient.createBlobContainerIfNotExists(broker);
+        getWebhookBlobClient(broker).upload(BinaryData.fromBytes(content), true);
+    }
+
+    public void deleteWebhook(String broker) {
+        getWebhookBlobClient(broker).deleteIfExists();
+    }
+
+    // organization paths start with the fiscal code, which can't contain '.'
+    private BlobClient getWebhookBlobClient(String broker) {
+        return blobServiceClient.getBlobContainerClient(broker).getBlobClient(WEBHOOK_BLOB);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class SessionBlob {
+        private final long size;
+        private final ServiceType serviceType;
+        // the ranges of the file received, sorted and merged
+        private final List<ReceivedRange> received;
+        private final String eTag;
+    }
+
+    /**
+     * The staged blocks of an input, not yet committed.
+     */
+    public record StagedInput(BlobClient blobClient, BlockBlobClient blockBlobClient, List<String> blockIds) {
+    }
+
+    public record ReceivedRange(long offset, long length) {
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class StagedChunk {
+        private final String blockId;
+        private final long offset;
+        private final long length;
+    }
+
+    @AllArgsConstructor
+    public static class SourceBlob {
+        private final BlobClient blobClient;
+        @Getter
+        private final long size;
+
+        public String getName() {
+            return blobClient.getBlobName();
+        }
+
+        public InputStream openInputStream() {
+            try {
+                return blobClient.openInputStream();
+            } catch (BlobStorageException ex) {
+                throw sourceNotAvailable(ex);
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    public static class ContentBlob {
+        private final BlobClient blobClient;
+        @Getter
+        private final long size;
+        @Getter
+        private final String eTag;
+
+        // the content read is the version checked, a later overwrite fails the read instead of mixing the two
+        public InputStream openInputStream() {
+            return blobClient.openInputStream(new BlobInputStreamOptions()
+                    .setRequestConditions(new BlobRequestConditions().setIfMatch(eTag)));
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class IndexBlob {
+        private final byte[] content;
+        private final String eTag;
     }
 }
@@ -2,7 +2,10 @@ package it.gov.pagopa.gpd.upload.repository;
 
 import com.azure.cosmos.CosmosContainer;
 import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosItemIdentity;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
 import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.CosmosPatchOperations;
 import com.azure.cosmos.models.CosmosQueryRequestOptions;
 import com.azure.cosmos.models.FeedResponse;
 import com.azure.cosmos.models.PartitionKey;
@@ -10,19 +13,25 @@ import com.azure.cosmos.models.SqlParameter;
 import com.azure.cosmos.models.SqlQuerySpec;
 import com.azure.cosmos.util.CosmosPagedIterable;
 import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Value;
 import io.micronaut.http.HttpStatus;
 import it.gov.pagopa.gpd.upload.entity.Status;
 import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
+import it.gov.pagopa.gpd.upload.utils.FileIdGenerator;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import static io.micronaut.http.HttpStatus.NOT_FOUND;
 
@@ -30,6 +39,11 @@ import static io.micronaut.http.HttpStatus.NOT_FOUND;
 @Context
 @Slf4j
 public class StatusRepository {
+    // fileIds sort by upload time: listing ranges on the id instead of sorting on upload.start,
+    // to be enabled once the fileIds generated before the time-ordered ones are past the listing retention
+    @Value("${upload.file-id.list-by-id:false}")
+    private boolean listById;
+
     private final CosmosContainer container;
     @Inject
     public StatusRepository(CosmosContainer container) {
@@ -78,6 +92,29 @@ public class StatusRepository {
         }
     }
 
+    // only the parent is written, so the fields updated meanwhile by the blob-consumer function are kept
+    public void setParent(String id, String fiscalCode, String parent) {
+        try {
+            container.patchItem(id, new PartitionKey(fiscalCode), CosmosPatchOperations.create().set("/parent", parent), Status.class);
+        } catch (CosmosException ex) {
+            log.error("[Error][StatusRepository@setParent] The Status patch was not successful: {}", ex.getStatusCode());
+            if(ex.getStatusCode() == NOT_FOUND.getCode())
+                throw new AppException(NOT_FOUND, "STATUS NOT FOUND", String.format("The Status for given fileId %s does not exist", id));
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.INTERNAL_SERVER_ERROR.name(), "Status patch failed");
+        }
+    }
+
+    public void delete(String id, String fiscalCode) {
+        try {
+            container.deleteItem(id, new PartitionKey(fiscalCode), new CosmosItemRequestOptions());
+        } catch (CosmosException ex) {
+            if(ex.getStatusCode() == NOT_FOUND.getCode())
+                return; // never created or already deleted
+            log.error("[Error][StatusRepository@delete] The Status deletion was not successful: {}", ex.getStatusCode());
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.INTERNAL_SERVER_ERROR.name(), "Status deletion failed");
+        }
+    }
+
     public Status findStatusById(String id, String fiscalCode) {
         try {
             CosmosItemResponse<Status> response = container.readItem(id, new PartitionKey(fiscalCode), Status.class);
@@ -93,6 +130,84 @@ public class StatusRepository {
         }
     }
 
+    // the Status without the IUPDs of its responses, which keep only their status code and message
+    private static final String COUNTERS_PROJECTION =
+            "SELECT c.id, c.brokerID, c.fiscalCode, c.serviceType, c.children, c.parent, c.pending, " +
+                    "{\"current\": c.upload.current, \"total\": c.upload.total, \"start\": c.upload.start, \"end\": c.upload[\"end\"], " +
+                    " \"responses\": (IS_DEFINED(c.upload.responses) " +
+                    "     ? ARRAY(SELECT VALUE {\"statusCode\": r.statusCode, \"statusMessage\": r.statusMessage, \"requestIDs\": []} FROM r IN c.upload.responses) " +
+                    "     : null)} AS upload " +
+                    "FROM c ";
+
+    /**
+     * Reads the Status without the IUPDs of its responses, which can be hundreds of KB, so the response of a status
+     * poll does not grow with the size of the upload: the responses keep only their status code and message.
+     */
+    public Status findStatusCountersById(String id, String fiscalCode) {
+        final String sql = COUNTERS_PROJECTION + "WHERE c.id = @id";
+        final CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
+        options.setPartitionKey(new PartitionKey(fiscalCode));
+
+        List<Status> statusList;
+        try {
+            statusList = container.queryItems(new SqlQuerySpec(sql, List.of(new SqlParameter("@id", id))), options, Status.class)
+                    .stream().toList();
+        } catch (CosmosException ex) {
+            log.error("[Error][StatusRepository@findStatusCountersById] The Status retrieval was not successful: {}", ex.getStatusCode());
+            if(ex.getStatusCode() == HttpStatus.INTERNAL_SERVER_ERROR.getCode())
+                throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.INTERNAL_SERVER_ERROR.name(),
+                        String.format("The Status for given fileId %s is not available", id));
+            else throw new AppException(HttpStatus.valueOf(ex.getStatusCode()), String.valueOf(ex.getStatusCode()), "Status retrieval failed");
+        }
+        if (statusList.isEmpty())
+            throw new AppException(NOT_FOUND, "STATUS NOT FOUND", String.format("The Status for given fileId %s does not exist", id));
+        return statusList.get(0);
+    }
+
+    /**
+     * Reads many Status of the organization with a single request, by point reads in its partition: the missing ids are
+     * just not returned.
+     */
+    public List<Status> findStatusesByIds(List<String> ids, String fiscalCode) {
+        final PartitionKey partitionKey = new PartitionKey(fiscalCode);
+        final List<CosmosItemIdentity> identities = ids.stream()
+                .map(id -> new CosmosItemIdentity(partitionKey, id))
+                .toList();
+
+        try {
+            return container.readMany(identities, Status.class).getResults();
+        } catch (CosmosException ex) {
+            log.error("[Error][StatusRepository@findStatusesByIds] The Status retrieval was not successful: {}", ex.getStatusCode());
+            if(ex.getStatusCode() == HttpStatus.INTERNAL_SERVER_ERROR.getCode())
+                throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.INTERNAL_SERVER_ERROR.name(), "The Status retrieval was not successful");
+            else throw new AppException(HttpStatus.valueOf(ex.getStatusCode()), String.valueOf(ex.getStatusCode()), "Status retrieval failed");
+        }
+    }
+
+    /**
+     * Reads many Status of the organization with only their successful responses, in a single query in its partition:
+     * the missing ids are just not returned.
+     */
+    public List<Status> findSucceededResponsesByIds(List<String> ids, String fiscalCode) {
+        final String sql = "SELECT c.id, c.brokerID, c.fiscalCode, " +
+                "{\"responses\": (IS_DEFINED(c.upload.responses) " +
+                "     ? ARRAY(SELECT VALUE r FROM r IN c.upload.responses WHERE r.statusCode >= 200 AND r.statusCode < 300) " +
+                "     : null)} AS upload " +
+                "FROM c WHERE ARRAY_CONTAINS(@ids, c.id)";
+        final CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
+        options.setPartitionKey(new PartitionKey(fiscalCode));
+
+        try {
+            return container.queryItems(new SqlQuerySpec(sql, List.of(new SqlParameter("@ids", ids))), options, Status.class)
+                    .stream().toList();
+        } catch (CosmosException ex) {
+            log.error("[Error][StatusRepository@findSucceededResponsesByIds] The Status retrieval was not successful: {}", ex.getStatusCode());
+            if(ex.getStatusCode() == HttpStatus.INTERNAL_SERVER_ERROR.getCode())
+                throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.INTERNAL_SERVER_ERROR.name(), "The Status retrieval was not successful");
+            else throw new AppException(HttpStatus.valueOf(ex.getStatusCode()), String.valueOf(ex.getStatusCode()), "Status retrieval failed");
+        }
+    }
+
     public List<Status> find(String query) {
         try {
             CosmosPagedIterable<Status> response = container.queryItems(new SqlQuerySpec(query), new CosmosQueryRequestOptions(), Status.class);
@@ -134,31 +249,35 @@ public class StatusRepository {
             String continuationToken,
             ServiceType serviceType
     ) {
-        try {
-            // Serialize dates to ISO-8601
-            final DateTimeFormatter iso = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
-            final String fromIso = from.format(iso);
-            final String toIso   = to.format(iso);
+        return findFileIdsPage(brokerCode, organizationFiscalCode, from, to, size, continuationToken, serviceType, null);
+    }
 
+    /**
+     * @param operationStatus when given, only the uploads holding positions with that outcome are listed: a split
+     *                        upload is listed through its sub-uploads, whose outcomes differ
+     */
+    public FileIdsPage findFileIdsPage(
+            String brokerCode,
+            String organizationFiscalCode,
+            LocalDateTime from,
+            LocalDateTime to,
+            int size,
+            String continuationToken,
+            ServiceType serviceType,
+            OperationStatus operationStatus
+    ) {
+        try {
             final List<SqlParameter> params = new ArrayList<>();
-            params.add(new SqlParameter("@broker", brokerCode));
-            params.add(new SqlParameter("@org", organizationFiscalCode));
-            params.add(new SqlParameter("@from", fromIso));
-            params.add(new SqlParameter("@to", toIso));
-            params.add(new SqlParameter("@serviceType", serviceType.name())); // "GPD" or "ACA"
 
-            // Query: Return ONLY the id, sort by start DESC (newest)
+            // Query: Return ONLY the id, sort by start (or the time-ordered id) DESC (newest)
             final String sql =
             		"SELECT VALUE c.id " +
             				"FROM c " +
-            				"WHERE c.brokerID = @broker " +
-            				"  AND c.fiscalCode = @org " +
-            				"  AND (c.serviceType = @serviceType " +
-            				"       OR (@serviceType = 'GPD' AND NOT IS_DEFINED(c.serviceType))) " + // includes docs without serviceType only if @serviceType = 'GPD'
-            				"  AND c.upload.start >= @from " +
-            				"  AND c.upload.start <= @to " +
-            				"ORDER BY c.upload.start DESC";
-
+            				rangeFilter(params, brokerCode, organizationFiscalCode, from, to, serviceType) +
+            				(operationStatus == null
+            						? "  AND NOT IS_DEFINED(c.parent) " // sub-uploads are reported through their parent
+            						: "  AND NOT IS_DEFINED(c.children) AND " + outcomeFilter(operationStatus) + " ") +
+            				(listById ? "ORDER BY c.id DESC" : "ORDER BY c.upload.start DESC");
 
             final SqlQuerySpec spec = new SqlQuerySpec(sql, params);
             final CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
@@ -167,8 +286,8 @@ public class StatusRepository {
             // options.setQueryMetricsEnabled(true);
 
             log.debug("[findFileIdsPage] SQL:\n{}", sql);
-            log.debug("[findFileIdsPage] params: @broker={}, @org={}, @serviceType={}, @from={}, @to={}, size={}, cont.len={}",
-                    brokerCode, organizationFiscalCode, serviceType.name(), fromIso, toIso, size,
+            log.debug("[findFileIdsPage] params: @broker={}, @org={}, @serviceType={}, @from={}, @to={}, operationStatus={}, size={}, cont.len={}",
+                    brokerCode, organizationFiscalCode, serviceType.name(), from, to, operationStatus, size,
                     continuationToken == null ? 0 : continuationToken.length());
 
             // Take ONLY the first page of the batch to comply with 'size'
@@ -201,4 +320,133 @@ public class StatusRepository {
         }
     }
 
+    // the inputs of the outcome of each upload, without its IUPDs
+    private static final String OUTCOME_PROJECTION =
+            "SELECT c.pending, c.upload.current, c.upload.total, " +
+                    "(IS_DEFINED(c.upload.responses) " +
+                    "     ? ARRAY(SELECT VALUE {\"statusCode\": r.statusCode, \"items\": ARRAY_LENGTH(r.requestIDs)} FROM r IN c.upload.responses) " +
+                    "     : []) AS responses " +
+                    "FROM c ";
+
+    /**
+     * Counts the uploads holding positions by outcome and their IUPDs by success, with a single query in the partition
+     * of the organization: a split upload is counted through its sub-uploads.
+     * <p>
+     * The outcome needs the status codes of the responses, and Cosmos does not group by subqueries, so the query
+     * projects the outcome inputs of each upload and the uploads are grouped here.
+     */
+    public Outcomes countOutcomes(
+            String brokerCode,
+            String organizationFiscalCode,
+            LocalDateTime from,
+            LocalDateTime to,
+            ServiceType serviceType
+    ) {
+        try {
+            final List<SqlParameter> params = new ArrayList<>();
+            final String sql = OUTCOME_PROJECTION +
+                    rangeFilter(params, brokerCode, organizationFiscalCode, from, to, serviceType) +
+                    "  AND NOT IS_DEFINED(c.children) ";
+            final CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
+            options.setPartitionKey(new PartitionKey(organizationFiscalCode));
+
+            Map<OperationStatus, Long> uploads = new EnumMap<>(OperationStatus.class);
+            for (OperationStatus operationStatus : OperationStatus.values())
+                uploads.put(operationStatus, 0L);
+            long succeeded = 0;
+            long failed = 0;
+            List<OutcomeRow> rows = container.queryItems(new SqlQuerySpec(sql, params), options, OutcomeRow.class)
+                    .stream().toList();
+            for (OutcomeRow row : rows) {
+                uploads.merge(row.outcome(), 1L, Long::sum);
+                // 304, the positions skipped because unchanged, is a success as for the outcome of the upload
+                for (OutcomeRow.Response response : row.responses()) {
+                    if (response.statusCode() < 400)
+                        succeeded += response.items();
+                    else
+                        failed += response.items();
+                }
+            }
+            return new Outcomes(uploads, succeeded, failed);
+        } catch (CosmosException ex) {
+            log.error("[Error][StatusRepository@countOutcomes] Retrieval failed: {}", ex.getStatusCode(), ex);
+            if (ex.getStatusCode() == HttpStatus.INTERNAL_SERVER_ERROR.getCode()) {
+                throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR,
+                        HttpStatus.INTERNAL_SERVER_ERROR.name(),
+                        "Outcome retrieval unavailable");
+            } else {
+                throw new AppException(HttpStatus.valueOf(ex.getStatusCode()),
+                        String.valueOf(ex.getStatusCode()),
+                        "Outcome retrieval failed");
+            }
+        }
+    }
+
+    public record Outcomes(Map<OperationStatus, Long> uploads, long succeededItems, long failedItems) {
+    }
+
+    /**
+     * The outcome inputs of an upload, its outcome as {@link #outcomeFilter} evaluates it.
+     */
+    public record OutcomeRow(Boolean pending, int current, int total, List<Response> responses) {
+        public OutcomeRow {
+            responses = responses == null ? List.of() : responses;
+        }
+
+        public OperationStatus outcome() {
+            return OperationStatus.of(
+                    Boolean.TRUE.equals(pending),
+                    current == total,
+                    responses.stream().anyMatch(response -> response.statusCode() >= 400),
+                    responses.stream().anyMatch(response -> response.statusCode() < 400));
+        }
+
+        public record Response(int statusCode, int items) {
+        }
+    }
+
+    // the uploads of the broker for the organization and service type started in the range
+    private String rangeFilter(List<SqlParameter> params, String brokerCode, String organizationFiscalCode,
+                               LocalDateTime from, LocalDateTime to, ServiceType serviceType) {
+        params.add(new SqlParameter("@broker", brokerCode));
+        params.add(new SqlParameter("@org", organizationFiscalCode));
+        params.add(new SqlParameter("@serviceType", serviceType.name())); // "GPD" or "ACA"
+        if (listById) {
+            // the range bounds are local date-times, as upload.start
+            final String prefix = brokerCode + "_" + organizationFiscalCode + "_";
+            params.add(new SqlParameter("@fromId", prefix + FileIdGenerator.lowerBound(from.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())));
+            params.add(new SqlParameter("@toId", prefix + FileIdGenerator.upperBound(to.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())));
+        } else {
+            // Serialize dates to ISO-8601
+            final DateTimeFormatter iso = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+            params.add(new SqlParameter("@from", from.format(iso)));
+            params.add(new SqlParameter("@to", to.format(iso)));
+        }
+        return "WHERE c.brokerID = @broker " +
+                "  AND c.fiscalCode = @org " +
+                "  AND (c.serviceType = @serviceType " +
+                "       OR (@serviceType = 'GPD' AND NOT IS_DEFINED(c.serviceType))) " + // includes docs without serviceType only if @serviceType = 'GPD'
+                (listById
+                        ? "  AND c.id >= @fromId AND c.id <= @toId "
+                        : "  AND c.upload.start >= @from AND c.upload.start <= @to ");
+    }
+
+    /*
+     * The rule of OperationStatus.of as a filter. The outcome is not stored on the Status, whose responses are written
+     * by the blob-consumer function, so the subqueries on the responses are evaluated on every upload in the range.
+     */
+    private static String outcomeFilter(OperationStatus operationStatus) {
+        final String notPending = "NOT IS_DEFINED(c.pending) ";
+        final String processed = "AND c.upload.current = c.upload.total ";
+        final String anyFailed = "EXISTS(SELECT VALUE r FROM r IN c.upload.responses WHERE r.statusCode >= 400) ";
+        final String anySucceeded = "EXISTS(SELECT VALUE r FROM r IN c.upload.responses WHERE r.statusCode < 400) ";
+        return "(" + switch (operationStatus) {
+            case PENDING -> "c.pending = true ";
+            case IN_PROGRESS -> notPending + "AND c.upload.current != c.upload.total ";
+            case COMPLETED -> notPending + processed + "AND NOT " + anyFailed;
+            case COMPLETED_WITH_WARNINGS -> notPending + processed + "AND " + anyFailed + "AND " + anySucceeded;
+            case COMPLETED_UNSUCCESSFULLY -> notPending + processed + "AND " + anyFailed + "AND NOT " + anySucceeded;
+        } + ") ";
+    }
+
 }
@@ -0,0 +1,62 @@
+package it.gov.pagopa.gpd.upload.repository;
+
+import com.azure.storage.queue.QueueClient;
+import com.azure.storage.queue.models.QueueMessageItem;
+import com.azure.storage.queue.models.QueueStorageException;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Work queue of the uploads accepted but not yet processed. It's a Storage Queue of the same account of the blobs,
+ * so Azurite can stand in for it locally.
+ */
+@Singleton
+@Context
+@Slf4j
+public class UploadQueueRepository {
+    private final QueueClient queueClient;
+    private final AtomicBoolean created = new AtomicBoolean();
+
+    @Inject
+    public UploadQueueRepository(QueueClient queueClient) {
+        this.queueClient = queueClient;
+    }
+
+    public void send(String message) {
+        try {
+            createIfNotExists();
+            queueClient.sendMessage(message);
+        } catch (QueueStorageException ex) {
+            log.error("[Error][UploadQueueRepository@send] The message sending was not successful: {}", ex.getStatusCode());
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.INTERNAL_SERVER_ERROR.name(), "Upload queue unavailable");
+        }
+    }
+
+    /**
+     * @param visibilityTimeout time the received messages are hidden to the other consumers, they are delivered
+     *                          again if not deleted in the meantime
+     */
+    public List<QueueMessageItem> receive(int maxMessages, Duration visibilityTimeout) {
+        createIfNotExists();
+        return queueClient.receiveMessages(maxMessages, visibilityTimeout, null, com.azure.core.util.Context.NONE).stream().toList();
+    }
+
+    public void delete(QueueMessageItem message) {
+        queueClient.deleteMessage(message.getMessageId(), message.getPopReceipt());
+    }
+
+    private void createIfNotExists() {
+        if (!created.get()) {
+            queueClient.createIfNotExists();
+            created.set(true);
+        }
+    }
+}
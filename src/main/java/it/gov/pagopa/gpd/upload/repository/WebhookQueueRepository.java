@@ -0,0 +1,70 @@
+package it.gov.pagopa.gpd.upload.repository;
+
+import com.azure.storage.queue.QueueClient;
+import com.azure.storage.queue.models.QueueMessageItem;
+import com.azure.storage.queue.models.QueueStorageException;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Retry queue of the completion webhooks: a message stays in the queue, hidden between the checks, until the
+ * upload has ended and its notification is delivered, so that pending deliveries survive the restarts.
+ */
+@Singleton
+@Slf4j
+public class WebhookQueueRepository {
+    public static final String WEBHOOK_QUEUE = "webhook-queue";
+
+    private final QueueClient queueClient;
+    private final AtomicBoolean created = new AtomicBoolean();
+
+    @Inject
+    public WebhookQueueRepository(@Named(WEBHOOK_QUEUE) QueueClient queueClient) {
+        this.queueClient = queueClient;
+    }
+
+    public void send(String message) {
+        try {
+            createIfNotExists();
+            queueClient.sendMessage(message);
+        } catch (QueueStorageException ex) {
+            log.error("[Error][WebhookQueueRepository@send] The message sending was not successful: {}", ex.getStatusCode());
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.INTERNAL_SERVER_ERROR.name(), "Webhook queue unavailable");
+        }
+    }
+
+    /**
+     * @param visibilityTimeout time the received messages are hidden to the other consumers, they are delivered
+     *                          again if not deleted or updated in the meantime
+     */
+    public List<QueueMessageItem> receive(int maxMessages, Duration visibilityTimeout) {
+        createIfNotExists();
+        return queueClient.receiveMessages(maxMessages, visibilityTimeout, null, com.azure.core.util.Context.NONE).stream().toList();
+    }
+
+    /**
+     * Replaces the content of a received message, hiding it again for the given time.
+     */
+    public void update(QueueMessageItem message, String content, Duration visibilityTimeout) {
+        queueClient.updateMessage(message.getMessageId(), message.getPopReceipt(), content, visibilityTimeout);
+    }
+
+    public void delete(QueueMessageItem message) {
+        queueClient.deleteMessage(message.getMessageId(), message.getPopReceipt());
+    }
+
+    private void createIfNotExists() {
+        if (!created.get()) {
+            queueClient.createIfNotExists();
+            created.set(true);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.service.UploadLaneExecutor.Lane;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of file uploads processed concurrently by this instance, with a separate quota for each
+ * {@link Lane}, so that large uploads can't take the permits of the small ones.
+ * A permit is taken before the request body is accepted and released when the response is completed, or, for the
+ * requests whose body is not the file, once the size of the file is known and until its upload completes.
+ */
+@Singleton
+@Slf4j
+public class AdmissionService {
+    @Value("${upload.admission.small.max-concurrent:8}")
+    private int smallMaxConcurrent;
+    @Value("${upload.admission.medium.max-concurrent:4}")
+    private int mediumMaxConcurrent;
+    @Value("${upload.admission.large.max-concurrent:2}")
+    private int largeMaxConcurrent;
+
+    private final UploadLaneExecutor uploadLaneExecutor;
+    private final Map<Lane, Semaphore> permits = new EnumMap<>(Lane.class);
+
+    @Inject
+    public AdmissionService(UploadLaneExecutor uploadLaneExecutor) {
+        this.uploadLaneExecutor = uploadLaneExecutor;
+    }
+
+    @PostConstruct
+    public void init() {
+        permits.put(Lane.SMALL, new Semaphore(smallMaxConcurrent));
+        permits.put(Lane.MEDIUM, new Semaphore(mediumMaxConcurrent));
+        permits.put(Lane.LARGE, new Semaphore(largeMaxConcurrent));
+    }
+
+    /**
+     * The lane of a request declaring the given content length, the large one if the length is unknown.
+     */
+    public Lane classify(long contentLength) {
+        return contentLength < 0 ? Lane.LARGE : uploadLaneExecutor.classify(contentLength);
+    }
+
+    public boolean tryAcquire(Lane lane) {
+        boolean acquired = permits.get(lane).tryAcquire();
+        if (!acquired)
+            log.warn("[AdmissionService@tryAcquire] Upload rejected, all permits of the {} lane are in use", lane);
+        return acquired;
+    }
+
+    /**
+     * Runs the upload of a file whose size is known only once the request is bound, holding a permit of the lane of
+     * the file until the upload completes.
+     * @throws AppException with status 429 if all permits of the lane are in use
+     */
+    public <T> CompletableFuture<T> admit(long sizeBytes, Supplier<CompletableFuture<T>> upload) {
+        Lane lane = classify(sizeBytes);
+        if (!tryAcquire(lane))
+            throw new AppException(HttpStatus.TOO_MANY_REQUESTS, "TOO MANY UPLOADS",
+                    String.format("Upload capacity for %s files exhausted, retry later", lane.name().toLowerCase()));
+        CompletableFuture<T> uploaded;
+        try {
+            uploaded = upload.get();
+        } catch (RuntimeException e) {
+            release(lane);
+            throw e;
+        }
+        return uploaded.whenComplete((result, failure) -> release(lane));
+    }
+
+    public void release(Lane lane) {
+        permits.get(lane).release();
+    }
+
+    public int availablePermits(Lane lane) {
+        return permits.get(lane).availablePermits();
+    }
+}
@@ -0,0 +1,272 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import com.azure.core.util.BinaryData;
+import com.azure.storage.queue.models.QueueMessageItem;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.multipart.CompletedFileUpload;
+import io.micronaut.scheduling.annotation.Scheduled;
+import it.gov.pagopa.gpd.upload.entity.Status;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.AsyncUploadMessage;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.repository.UploadQueueRepository;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Asynchronous mode: the upload request only stores the archive as sent, a PENDING Status and a work item,
+ * while unzip, parsing, validation and input materialization are done by the worker polling the work queue.
+ * <p>
+ * The worker can run in every instance or, disabling it in the API instances, only in dedicated ones.
+ * Once processed, the PENDING Status reports the Status of the resulting upload.
+ */
+@Singleton
+@Slf4j
+public class AsyncUploadService {
+    private final BlobStorageRepository blobStorageRepository;
+    private final UploadQueueRepository uploadQueueRepository;
+    private final StatusService statusService;
+    private final BlobService blobService;
+    private final CancellationService cancellationService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${upload.async.enabled:false}")
+    private boolean enabled;
+    @Value("${upload.async.worker.enabled:true}")
+    private boolean workerEnabled;
+    @Value("${upload.async.worker.batch-size:8}")
+    private int batchSize;
+    @Value("${upload.async.worker.visibility-timeout:300s}")
+    private Duration visibilityTimeout;
+    @Value("${upload.async.worker.max-attempts:5}")
+    private int maxAttempts;
+
+    @Inject
+    public AsyncUploadService(BlobStorageRepository blobStorageRepository,
+                              UploadQueueRepository uploadQueueRepository,
+                              StatusService statusService,
+                              BlobService blobService,
+                              CancellationService cancellationService) {
+        this.blobStorageRepository = blobStorageRepository;
+        this.uploadQueueRepository = uploadQueueRepository;
+        this.statusService = statusService;
+        this.blobService = blobService;
+        this.cancellationService = cancellationService;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String accept(String broker, String organizationFiscalCode, UploadOperation uploadOperation, CompletedFileUpload file, ServiceType serviceType, UploadCancellation cancellation) {
+        if (!BlobService.hasValidExtension(file.getFilename())) {
+            log.error("[Error][AsyncUploadService@accept] Invalid extension: " + file.getFilename());
+            throw new AppException(HttpStatus.BAD_REQUEST, "NOT A ZIP FILE", "Only ZIP files can be uploaded.");
+        }
+        String fileId = blobStorageRepository.newFileId(broker, organizationFiscalCode);
+        cancellation.enter(UploadCancellation.Phase.STAGING);
+        try {
+            blobStorageRepository.uploadArchive(broker, organizationFiscalCode, fileId, cancellation.guard(file.getInputStream()), file.getSize());
+            cancellation.commit();
+            return acceptArchive(fileId, broker, organizationFiscalCode, uploadOperation, serviceType);
+        } catch (IOException e) {
+            blobStorageRepository.deleteArchive(broker, organizationFiscalCode, fileId);
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Error storing the file", e);
+        } catch (RuntimeException e) {
+            blobStorageRepository.deleteArchive(broker, organizationFiscalCode, fileId);
+            throw e;
+        }
+    }
+
+    /**
+     * Accepts the upload of a client-provided blob, copied server-side as archive of the upload.
+     */
+    public String acceptFromUrl(String broker, String organizationFiscalCode, UploadOperation uploadOperation, String sourceUrl, ServiceType serviceType, UploadCancellation cancellation) {
+        String fileId = blobStorageRepository.newFileId(broker, organizationFiscalCode);
+        cancellation.enter(UploadCancellation.Phase.STAGING);
+        try {
+            blobStorageRepository.copyArchiveFromUrl(broker, organizationFiscalCode, fileId, sourceUrl);
+            cancellation.commit();
+            return acceptArchive(fileId, broker, organizationFiscalCode, uploadOperation, serviceType);
+        } catch (RuntimeException e) {
+            blobStorageRepository.deleteArchive(broker, organizationFiscalCode, fileId);
+            throw e;
+        }
+    }
+
+    /**
+     * Accepts the upload whose archive is already stored, e.g. by a resumable upload session.
+     * The archive is left to the caller if the upload is not accepted.
+     */
+    public String acceptArchive(String fileId, String broker, String organizationFiscalCode, UploadOperation uploadOperation, ServiceType serviceType) {
+        Status pending = statusService.createPendingUploadStatus(organizationFiscalCode, broker, fileId, serviceType);
+        try {
+            uploadQueueRepository.send(serialize(AsyncUploadMessage.builder()
+                    .fileId(fileId)
+                    .brokerCode(broker)
+                    .organizationFiscalCode(organizationFiscalCode)
+                    .uploadOperation(uploadOperation)
+                    .serviceType(serviceType)
+                    .build()));
+        } catch (RuntimeException e) {
+            // without its work item the upload would stay pending forever
+            log.error("[Error][AsyncUploadService@accept] Upload {} not queued: {}", fileId, e.getMessage());
+            failPendingUpload(pending, e);
+            throw e;
+        }
+        log.debug("[AsyncUploadService@accept] Upload {} accepted for processing", fileId);
+        return fileId;
+    }
+
+    @Scheduled(fixedDelay = "${upload.async.worker.poll-interval:1s}")
+    public void poll() {
+        if (!enabled || !workerEnabled)
+            return;
+
+        for (QueueMessageItem message : uploadQueueRepository.receive(batchSize, visibilityTimeout)) {
+            try {
+                if (process(objectMapper.readValue(message.getBody().toString(), AsyncUploadMessage.class), message.getDequeueCount()))
+                    uploadQueueRepository.delete(message);
+            } catch (JsonProcessingException e) {
+                log.error("[Error][AsyncUploadService@poll] Discarded invalid message {}: {}", message.getMessageId(), e.getMessage());
+                uploadQueueRepository.delete(message);
+            } catch (RuntimeException e) {
+                // the message is delivered again when its visibility timeout expires
+                log.error("[Error][AsyncUploadService@poll] Processing of message {} failed: {}", message.getMessageId(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} if the processing has to be retried
+     */
+    boolean process(AsyncUploadMessage message, long dequeueCount) {
+        String broker = message.getBrokerCode();
+        String organizationFiscalCode = message.getOrganizationFiscalCode();
+        String fileId = message.getFileId();
+
+        Status pending;
+        try {
+            pending = statusService.getStatus(organizationFiscalCode, fileId);
+        } catch (AppException e) {
+            if (e.getHttpStatus() != HttpStatus.NOT_FOUND)
+                throw e;
+            log.error("[Error][AsyncUploadService@process] Status of upload {} not found, its archive is discarded", fileId);
+            blobStorageRepository.deleteArchive(broker, organizationFiscalCode, fileId);
+            return true;
+        }
+        if (!Boolean.TRUE.equals(pending.getPending())) {
+            // already processed, the message was delivered again
+            blobStorageRepository.deleteArchive(broker, organizationFiscalCode, fileId);
+            return true;
+        }
+        String uploadId = processedUpload(pending);
+        if (uploadId == null) {
+            Optional<BinaryData> archive = blobStorageRepository.downloadArchive(broker, organizationFiscalCode, fileId);
+            if (archive.isEmpty()) {
+                log.error("[Error][AsyncUploadService@process] Archive of upload {} not found", fileId);
+                failPendingUpload(pending, new AppException(HttpStatus.NOT_FOUND, "FILE NOT FOUND", "The uploaded file is no longer available"));
+                return true;
+            }
+
+            byte[] content = archive.get().toBytes();
+            UploadCancellation cancellation = cancellationService.create("ASYNC " + fileId, content.length);
+            // recorded right before the commit, so a new attempt completes the pending upload instead of processing it again
+            cancellation.onCommit(processedUpload -> statusService.recordProcessedUpload(pending, processedUpload));
+            try {
+                // never coalesced, its commit being recorded: the fileId is known once the archive is processed
+                uploadId = blobService.processArchive(broker, organizationFiscalCode, message.getUploadOperation(), fileId,
+                        new ByteArrayInputStream(content), message.getServiceType(), cancellation).join();
+            } catch (AppException e) {
+                if (isRetryable(e) && dequeueCount < maxAttempts) {
+                    log.warn("[AsyncUploadService@process] Upload {} failed at attempt {}, it will be retried: {}", fileId, dequeueCount, e.getMessage());
+                    return false;
+                }
+                log.error("[Error][AsyncUploadService@process] Upload {} failed: {}", fileId, e.getMessage());
+                statusService.failPendingUpload(pending, e);
+                blobStorageRepository.deleteArchive(broker, organizationFiscalCode, fileId);
+                return true;
+            } catch (RuntimeException e) {
+                if (dequeueCount < maxAttempts) {
+                    log.warn("[AsyncUploadService@process] Upload {} failed at attempt {}, it will be retried: {}", fileId, dequeueCount, e.getMessage());
+                    return false;
+                }
+                log.error("[Error][AsyncUploadService@process] Upload {} failed: {}", fileId, e.getMessage(), e);
+                failPendingUpload(pending, e);
+                blobStorageRepository.deleteArchive(broker, organizationFiscalCode, fileId);
+                return true;
+            } finally {
+                // no-op once committed, discards the staged blocks otherwise
+                cancellation.cancel(UploadCancellation.Reason.REQUEST_FAILED);
+            }
+        }
+
+        try {
+            statusService.completePendingUpload(pending, uploadId);
+        } catch (RuntimeException e) {
+            // the upload is committed, only its completion is retried
+            if (dequeueCount < maxAttempts) {
+                log.warn("[AsyncUploadService@process] Upload {} not completed at attempt {}, it will be retried: {}", fileId, dequeueCount, e.getMessage());
+                return false;
+            }
+            log.error("[Error][AsyncUploadService@process] Upload {} left pending, its archive was processed into {}: {}", fileId, uploadId, e.getMessage());
+        }
+
+        blobStorageRepository.deleteArchive(broker, organizationFiscalCode, fileId);
+        return true;
+    }
+
+    /*
+     * The upload a previous attempt processed the archive into, if its Status exists: a recorded upload without a
+     * Status was rolled back after the record, and its archive is processed again.
+     */
+    private String processedUpload(Status pending) {
+        if (pending.getProcessedUpload() == null)
+            return null;
+        try {
+            statusService.getStatus(pending.getFiscalCode(), pending.getProcessedUpload());
+            return pending.getProcessedUpload();
+        } catch (AppException e) {
+            if (e.getHttpStatus() != HttpStatus.NOT_FOUND)
+                throw e;
+            log.warn("[AsyncUploadService@process] Upload {} not committed, the archive of {} is processed again", pending.getProcessedUpload(), pending.getId());
+            return null;
+        }
+    }
+
+    // throttled or temporarily unavailable, as a Cosmos 429
+    private static boolean isRetryable(AppException e) {
+        return e.getHttpStatus().getCode() >= 500 || e.getHttpStatus() == HttpStatus.TOO_MANY_REQUESTS;
+    }
+
+    private void failPendingUpload(Status pending, RuntimeException cause) {
+        AppException failure = cause instanceof AppException appException
+                ? appException
+                : new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error", cause);
+        try {
+            statusService.failPendingUpload(pending, failure);
+        } catch (RuntimeException e) {
+            log.error("[Error][AsyncUploadService@failPendingUpload] Upload {} left pending: {}", pending.getId(), e.getMessage());
+        }
+    }
+
+    private String serialize(AsyncUploadMessage message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error", e);
+        }
+    }
+}
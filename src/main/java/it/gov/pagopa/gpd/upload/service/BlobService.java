@@ -14,24 +14,40 @@ import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.UploadInput;
 import it.gov.pagopa.gpd.upload.model.UploadOperation;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
-import it.gov.pagopa.gpd.upload.model.pd.MultipleIUPDModel;
+import it.gov.pagopa.gpd.upload.model.pd.PaymentPositionModel;
 import it.gov.pagopa.gpd.upload.model.pd.PaymentPositionsModel;
 import it.gov.pagopa.gpd.upload.model.v1.UploadReport;
 import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
 import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository.StagedInput;
 import it.gov.pagopa.gpd.upload.utils.GPDValidator;
+import it.gov.pagopa.gpd.upload.utils.MultipleIUPDReader;
+import it.gov.pagopa.gpd.upload.utils.OrganizationPositionsReader;
+import it.gov.pagopa.gpd.upload.utils.ReportStream;
 import it.gov.pagopa.gpd.upload.utils.ResponseEntryDTOMapper;
+import it.gov.pagopa.gpd.upload.utils.StringArena;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
 import jakarta.annotation.PostConstruct;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.IntStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import static it.gov.pagopa.gpd.upload.config.UploadExecutorConfig.UPLOAD_EXECUTOR;
 import static it.gov.pagopa.gpd.upload.utils.Constants.INPUT_DIRECTORY;
 import static it.gov.pagopa.gpd.upload.utils.Constants.OUTPUT_DIRECTORY;
 
@@ -43,6 +59,14 @@ public class BlobService {
     private int zipMaxSize; // Max size of zip file content
     @Value("${zip.entries}")
     private int zipMaxEntries; // Maximum number of entries allowed in the zip file
+    @Value("${upload.split.threshold:0}")
+    private int splitThreshold; // Uploads with more items are split into sub-uploads, 0 disables splitting
+    @Value("${upload.split.chunk-size:10000}")
+    private int splitChunkSize; // Items of each sub-upload
+    @Value("${upload.broker.max-organizations:500}")
+    private int brokerMaxOrganizations; // Maximum number of organizations in a broker-level upload
+    @Value("${upload.report.stream-threshold-bytes:1048576}")
+    private long reportStreamThreshold; // Larger report blobs are transcoded while sent instead of being read, 0 disables it
 
     private static final List<String> ALLOWABLE_EXTENSIONS = List.of("json");
     private static final List<String> VALID_UPLOAD_EXTENSION = List.of("zip");
@@ -51,20 +75,32 @@ public class BlobService {
     private final BlobStorageRepository blobStorageRepository;
     private final StatusService statusService;
     private final GPDValidator<PaymentPositionsModel> paymentPositionsValidator;
-    private final GPDValidator<MultipleIUPDModel> multipleIUPDValidator;
     private final ResponseEntryDTOMapper responseEntryDTOMapper;
+    private final PositionHashService positionHashService;
+    private final UploadCoalescer uploadCoalescer;
+    private final UploadJournalService uploadJournalService;
+    private final ExecutorService uploadExecutor;
+    private final StatusCache statusCache;
 
     @Inject
     public BlobService(BlobStorageRepository blobStorageRepository,
                        StatusService statusService,
                        GPDValidator<PaymentPositionsModel> paymentPositionsValidator,
-                       GPDValidator<MultipleIUPDModel> multipleIUPDValidator,
-                       ResponseEntryDTOMapper responseEntryDTOMapper) {
+                       ResponseEntryDTOMapper responseEntryDTOMapper,
+                       PositionHashService positionHashService,
+                       UploadCoalescer uploadCoalescer,
+                       UploadJournalService uploadJournalService,
+                       @Named(UPLOAD_EXECUTOR) ExecutorService uploadExecutor,
+                       StatusCache statusCache) {
         this.blobStorageRepository = blobStorageRepository;
         this.statusService = statusService;
         this.paymentPositionsValidator = paymentPositionsValidator;
-        this.multipleIUPDValidator = multipleIUPDValidator;
         this.responseEntryDTOMapper = responseEntryDTOMapper;
+        this.positionHashService = positionHashService;
+        this.uploadCoalescer = uploadCoalescer;
+        this.uploadJournalService = uploadJournalService;
+        this.uploadExecutor = uploadExecutor;
+        this.statusCache = statusCache;
     }
 
     @PostConstruct
@@ -76,21 +112,65 @@ public class BlobService {
             directory.mkdir();
     }
 
-    public String upsert(String broker, String organizationFiscalCode, UploadOperation uploadOperation, CompletedFileUpload fileUpload, ServiceType serviceType) {
-        InputStream is = this.unzip(fileUpload);
+    /*
+     * The fileId is completed once the upload is committed: later than the return for a coalesced upload, whose batch
+     * is flushed at the end of its window, so the caller is not held for the window.
+     */
+    public CompletableFuture<String> upsert(String broker, String organizationFiscalCode, UploadOperation uploadOperation, CompletedFileUpload fileUpload, ServiceType serviceType, UploadCancellation cancellation) {
+        cancellation.enter(UploadCancellation.Phase.UNZIP);
+        InputStream is = this.unzip(fileUpload, cancellation);
+        return upsert(broker, organizationFiscalCode, uploadOperation, is, serviceType, cancellation);
+    }
+
+    /*
+     * Processes the archive of an upload accepted in asynchronous mode, as the upload of the same file would do.
+     */
+    public CompletableFuture<String> processArchive(String broker, String organizationFiscalCode, UploadOperation uploadOperation, String archiveName, InputStream archive, ServiceType serviceType, UploadCancellation cancellation) {
+        cancellation.enter(UploadCancellation.Phase.UNZIP);
+        InputStream is = this.unzip(archiveName, archive, cancellation);
+        return uploadOperation == UploadOperation.DELETE
+                ? CompletableFuture.completedFuture(delete(broker, organizationFiscalCode, uploadOperation, is, serviceType, cancellation))
+                : upsert(broker, organizationFiscalCode, uploadOperation, is, serviceType, cancellation);
+    }
 
+    private CompletableFuture<String> upsert(String broker, String organizationFiscalCode, UploadOperation uploadOperation, InputStream is, ServiceType serviceType, UploadCancellation cancellation) {
         try {
-            PaymentPositionsModel paymentPositionsModel = objectMapper.readValue(is, PaymentPositionsModel.class);
+            cancellation.enter(UploadCancellation.Phase.PARSE);
+            PaymentPositionsModel paymentPositionsModel = objectMapper.readValue(cancellation.guard(is), PaymentPositionsModel.class);
 
+            cancellation.enter(UploadCancellation.Phase.VALIDATION);
             paymentPositionsValidator.isValidOrElseThrow(paymentPositionsModel);
 
+            if (uploadOperation == UploadOperation.UPDATE && positionHashService.isEnabled())
+                return CompletableFuture.completedFuture(uploadChanged(paymentPositionsModel, broker, organizationFiscalCode, serviceType, cancellation));
+            // the content recorded for the positions is no longer the last one sent
+            positionHashService.forget(broker, organizationFiscalCode, serviceType, iupds(paymentPositionsModel.getPaymentPositions()));
+
+            // the fileId of a coalesced upload is known only once its batch is flushed, after the commit
+            if (uploadCoalescer.accepts(uploadOperation, paymentPositionsModel.getPaymentPositions().size()) && !cancellation.hasCommitListener()) {
+                cancellation.commit();
+                return uploadCoalescer.submit(broker, organizationFiscalCode, serviceType, uploadOperation, paymentPositionsModel.getPaymentPositions(),
+                        // the Status keeps the order of the combined positions, to locate the ones of each request
+                        positions -> upload(serialize(UploadInput.builder().uploadOperation(uploadOperation).paymentPositions(positions).build()),
+                                uploadOperation, broker, organizationFiscalCode, positions.size(), List.of(), iupds(positions), serviceType, UploadCancellation.none()));
+            }
+
+            List<PaymentPositionModel> paymentPositions = paymentPositionsModel.getPaymentPositions();
+            if (isSplit(paymentPositions.size())) {
+                return CompletableFuture.completedFuture(uploadSplit(paymentPositions.size(), (from, to) -> serialize(UploadInput.builder()
+                                .uploadOperation(uploadOperation)
+                                .paymentPositions(paymentPositions.subList(from, to))
+                                .build()),
+                        broker, organizationFiscalCode, serviceType, cancellation));
+            }
+
             UploadInput uploadInput = UploadInput.builder()
                     .uploadOperation(uploadOperation)
-                    .paymentPositions(paymentPositionsModel.getPaymentPositions())
+                    .paymentPositions(paymentPositions)
                     .build();
 
             // return upload key
-            return upload(uploadInput, broker, organizationFiscalCode, paymentPositionsModel.getPaymentPositions().size(), serviceType);
+            return CompletableFuture.completedFuture(upload(uploadInput, broker, organizationFiscalCode, paymentPositions.size(), serviceType, cancellation));
         } catch (IOException e) {
             log.error("[Error][BlobService@upload] " + e.getMessage());
 
@@ -101,25 +181,109 @@ public class BlobService {
         }
     }
 
-    public String delete(String broker, String organizationFiscalCode, UploadOperation uploadOperation, CompletedFileUpload fileUpload, ServiceType serviceType) {
-        InputStream is = this.unzip(fileUpload);
+    /*
+     * Broker-level upload: the positions are partitioned by organization and stored as one upload per organization,
+     * with its own input blob and Status, as if each organization had uploaded them.
+     * Returns the fileId of each organization upload.
+     */
+    public Map<String, String> upsert(String broker, UploadOperation uploadOperation, CompletedFileUpload fileUpload, ServiceType serviceType, UploadCancellation cancellation) {
+        cancellation.enter(UploadCancellation.Phase.UNZIP);
+        InputStream is = this.unzip(fileUpload, cancellation);
 
         try {
-            MultipleIUPDModel multipleIUPDModel = objectMapper.readValue(is, MultipleIUPDModel.class);
+            cancellation.enter(UploadCancellation.Phase.PARSE);
+            Map<String, List<PaymentPositionModel>> partitions = OrganizationPositionsReader.read(objectMapper, cancellation.guard(is), brokerMaxOrganizations);
+
+            cancellation.enter(UploadCancellation.Phase.VALIDATION);
+            for (List<PaymentPositionModel> positions : partitions.values())
+                paymentPositionsValidator.isValidOrElseThrow(PaymentPositionsModel.builder().paymentPositions(positions).build());
+            // broker-level uploads are never filtered, so the content recorded for their positions is no longer the last one
+            partitions.forEach((organizationFiscalCode, positions) -> positionHashService.forget(broker, organizationFiscalCode, serviceType, iupds(positions)));
+
+            // all the inputs are staged before committing, so a failure or a cancellation discards every organization upload
+            cancellation.enter(UploadCancellation.Phase.STAGING);
+            Map<String, String> fileIds = new LinkedHashMap<>();
+            List<CompletableFuture<StagedInput>> inputs = new ArrayList<>();
+            partitions.forEach((organizationFiscalCode, positions) -> {
+                String fileId = blobStorageRepository.newFileId(broker, organizationFiscalCode);
+                fileIds.put(organizationFiscalCode, fileId);
+                inputs.add(CompletableFuture.supplyAsync(() -> serialize(UploadInput.builder()
+                                .uploadOperation(uploadOperation)
+                                .paymentPositions(positions)
+                                .build()), uploadExecutor)
+                        .thenCompose(content -> blobStorageRepository.stage(broker, organizationFiscalCode, fileId, new ByteArrayInputStream(content), cancellation)));
+            });
+            List<StagedInput> staged;
+            try {
+                staged = awaitStaged(inputs);
+                cancellation.checkpoint();
+            } catch (RuntimeException e) {
+                cancellation.cancel(UploadCancellation.Reason.REQUEST_FAILED);
+                throw unwrap(e);
+            }
 
-            multipleIUPDValidator.isValidOrElseThrow(multipleIUPDModel);
+            // the Statuses are created only once every input is committed, any failure removes all the organization uploads
+            try {
+                cancellation.commit();
+                commitAll(staged, serviceType);
+                join(CompletableFuture.allOf(fileIds.entrySet().stream()
+                        .map(entry -> CompletableFuture.runAsync(() -> statusService.createUploadStatus(entry.getKey(), broker, entry.getValue(),
+                                partitions.get(entry.getKey()).size(), serviceType), uploadExecutor))
+                        .toArray(CompletableFuture[]::new)));
+            } catch (RuntimeException e) {
+                fileIds.forEach((organizationFiscalCode, fileId) -> rollbackUpload(broker, organizationFiscalCode, fileId));
+                throw e;
+            }
+            return fileIds;
+        } catch (IOException e) {
+            log.error("[Error][BlobService@upload] " + e.getMessage());
 
-            UploadInput uploadInput = UploadInput.builder()
-                    .uploadOperation(uploadOperation)
-                    .paymentPositionIUPDs(multipleIUPDModel.getPaymentPositionIUPDs())
-                    .build();
+            if (e instanceof JsonProcessingException)
+                throw new AppException(HttpStatus.BAD_REQUEST, "INVALID JSON", "Given JSON is invalid for required API payload: " + e.getMessage());
+
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error", e.getCause());
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(RuntimeException e) {
+        if (e instanceof CompletionException && e.getCause() instanceof RuntimeException cause)
+            return cause;
+        return e;
+    }
+
+    public String delete(String broker, String organizationFiscalCode, UploadOperation uploadOperation, CompletedFileUpload fileUpload, ServiceType serviceType, UploadCancellation cancellation) {
+        cancellation.enter(UploadCancellation.Phase.UNZIP);
+        InputStream is = this.unzip(fileUpload, cancellation);
+        return delete(broker, organizationFiscalCode, uploadOperation, is, serviceType, cancellation);
+    }
+
+    private String delete(String broker, String organizationFiscalCode, UploadOperation uploadOperation, InputStream is, ServiceType serviceType, UploadCancellation cancellation) {
+        try {
+            // IUPDs are validated while parsing and written back without building the UploadInput model
+            cancellation.enter(UploadCancellation.Phase.PARSE);
+            StringArena iupds = MultipleIUPDReader.read(objectMapper.getFactory(), cancellation.guard(is));
+            if (positionHashService.isEnabled())
+                positionHashService.forget(broker, organizationFiscalCode, serviceType, IntStream.range(0, iupds.size()).mapToObj(iupds::get).toList());
+            if (isSplit(iupds.size())) {
+                return uploadSplit(iupds.size(), (from, to) -> MultipleIUPDReader.write(objectMapper.getFactory(), uploadOperation, iupds, from, to),
+                        broker, organizationFiscalCode, serviceType, cancellation);
+            }
+            byte[] content = MultipleIUPDReader.write(objectMapper.getFactory(), uploadOperation, iupds);
 
             // return upload key
-            return upload(uploadInput, broker, organizationFiscalCode, multipleIUPDModel.getPaymentPositionIUPDs().size(), serviceType);
+            return upload(content, uploadOperation, broker, organizationFiscalCode, iupds.size(), List.of(), serviceType, cancellation);
         } catch (IOException e) {
             log.error("[Error][BlobService@upload] " + e.getMessage());
 
-            if (e instanceof JsonMappingException)
+            if (e instanceof JsonProcessingException)
                 throw new AppException(HttpStatus.BAD_REQUEST, "INVALID JSON", "Given JSON is invalid for required API payload: " + e.getMessage());
 
             throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error", "An error occurred during delete operation", e.getCause());
@@ -136,19 +300,65 @@ public class BlobService {
         }
     }
 
-    public UploadReport getReportV1(String broker, String fiscalCode, String uploadKey, ServiceType serviceType) {
-        String blobPath = String.format("/%s/%s/report%s.json", fiscalCode, OUTPUT_DIRECTORY, uploadKey);
-        BinaryData binaryDataReport = blobStorageRepository.downloadContent(broker, uploadKey, blobPath, serviceType);
+    // the report is written once the upload has ended, so it is cached as terminal
+    public BlobReport<UploadReport> getReportV1(String broker, String fiscalCode, String uploadKey, ServiceType serviceType) {
+        return statusCache.get("blob-report-v1", broker, fiscalCode, uploadKey, serviceType, () -> {
+            BlobReport<UploadReport> blobReport = downloadReport(broker, fiscalCode, uploadKey, serviceType);
+            return StatusCache.terminal(blobReport, countIUPDs(blobReport.report()));
+        });
+    }
 
-        try {
-            return objectMapper.readValue(binaryDataReport.toString(), UploadReport.class);
-        } catch (JsonProcessingException e) {
+    /*
+     * The report blob too large to be read as a whole, to be transcoded into the given shape while it is sent:
+     * unless the report was already read into the cache, as the small ones are.
+     */
+    public Optional<BlobStorageRepository.ContentBlob> getLargeReport(String broker, String fiscalCode, String uploadKey, ServiceType serviceType, ReportStream.Shape shape) {
+        if (reportStreamThreshold <= 0)
+            return Optional.empty();
+        String view = shape == ReportStream.Shape.V1 ? "blob-report-v1" : "blob-report-v2";
+        if (statusCache.getIfPresent(view, broker, fiscalCode, uploadKey, serviceType).isPresent())
+            return Optional.empty();
+        BlobStorageRepository.ContentBlob reportBlob = blobStorageRepository.getContent(broker, uploadKey, reportPath(fiscalCode, uploadKey), serviceType);
+        return reportBlob.getSize() > reportStreamThreshold ? Optional.of(reportBlob) : Optional.empty();
+    }
+
+    private static String reportPath(String fiscalCode, String uploadKey) {
+        return String.format("/%s/%s/report%s.json", fiscalCode, OUTPUT_DIRECTORY, uploadKey);
+    }
+
+    private BlobReport<UploadReport> downloadReport(String broker, String fiscalCode, String uploadKey, ServiceType serviceType) {
+        BlobStorageRepository.ContentBlob reportBlob = blobStorageRepository.getContent(broker, uploadKey, reportPath(fiscalCode, uploadKey), serviceType);
+
+        try (InputStream content = reportBlob.openInputStream()) {
+            return new BlobReport<>(objectMapper.readValue(content, UploadReport.class), reportBlob.getETag());
+        } catch (IOException e) {
             throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error", "An error occurred during report deserialization", e.getCause());
         }
     }
 
-    public UploadReportDTO getReportV2(String broker, String fiscalCode, String uploadKey, ServiceType serviceType) {
-        UploadReport uploadReport = getReportV1(broker, fiscalCode, uploadKey, serviceType);
+    public BlobReport<UploadReportDTO> getReportV2(String broker, String fiscalCode, String uploadKey, ServiceType serviceType) {
+        return statusCache.get("blob-report-v2", broker, fiscalCode, uploadKey, serviceType, () -> {
+            BlobReport<UploadReport> blobReport = downloadReport(broker, fiscalCode, uploadKey, serviceType);
+            return StatusCache.terminal(new BlobReport<>(toReportV2(blobReport.report()), blobReport.eTag()),
+                    countIUPDs(blobReport.report()));
+        });
+    }
+
+    /**
+     * A report read from its blob, along with the storage ETag of the version read.
+     */
+    public record BlobReport<T>(T report, String eTag) {
+    }
+
+    private static int countIUPDs(UploadReport uploadReport) {
+        if (uploadReport.responses == null)
+            return 0;
+        return uploadReport.responses.stream()
+                .mapToInt(responseEntry -> responseEntry.getRequestIDs() == null ? 0 : responseEntry.getRequestIDs().size())
+                .sum();
+    }
+
+    private UploadReportDTO toReportV2(UploadReport uploadReport) {
         return UploadReportDTO.builder()
                 .fileId(uploadReport.uploadID)
                 .startTime(uploadReport.startTime)
@@ -159,36 +369,216 @@ public class BlobService {
                 .build();
     }
 
-    public String upload(UploadInput uploadInput, String broker, String organizationFiscalCode, int totalItem, ServiceType serviceType) {
+    public String upload(UploadInput uploadInput, String broker, String organizationFiscalCode, int totalItem, ServiceType serviceType, UploadCancellation cancellation) {
+        return upload(serialize(uploadInput), uploadInput.getUploadOperation(), broker, organizationFiscalCode, totalItem, List.of(), null, serviceType, cancellation);
+    }
+
+    /*
+     * Only the positions changed since the last successful upload are stored, the others are recorded as skipped
+     * in the Status. If nothing changed, the upload is completed right away without an input blob.
+     */
+    private String uploadChanged(PaymentPositionsModel paymentPositionsModel, String broker, String organizationFiscalCode, ServiceType serviceType, UploadCancellation cancellation) {
+        int totalItem = paymentPositionsModel.getPaymentPositions().size();
+        PositionHashService.UpdateFilter filter = positionHashService.filterUnchanged(broker, organizationFiscalCode, serviceType, paymentPositionsModel.getPaymentPositions());
+
+        if (filter.getChanged().isEmpty()) {
+            String fileId = blobStorageRepository.newFileId(broker, organizationFiscalCode);
+            cancellation.commit(fileId);
+            statusService.createUploadStatus(organizationFiscalCode, broker, fileId, totalItem, filter.getUnchangedIUPDs(), serviceType);
+            return fileId;
+        }
+
+        UploadInput uploadInput = UploadInput.builder()
+                .uploadOperation(UploadOperation.UPDATE)
+                .paymentPositions(filter.getChanged())
+                .build();
+        String fileId = upload(serialize(uploadInput), UploadOperation.UPDATE, broker, organizationFiscalCode, totalItem, filter.getUnchangedIUPDs(), null, serviceType, cancellation);
+        positionHashService.recordAccepted(broker, organizationFiscalCode, serviceType, filter, fileId);
+        return fileId;
+    }
+
+    private static List<String> iupds(List<PaymentPositionModel> paymentPositions) {
+        return paymentPositions.stream().map(PaymentPositionModel::getIupd).toList();
+    }
+
+    private boolean isSplit(int totalItem) {
+        return splitThreshold > 0 && totalItem > splitThreshold;
+    }
+
+    /*
+     * Large uploads are stored as independent sub-uploads, each with its own input and Status, that can be processed
+     * in parallel; the returned fileId identifies a parent Status aggregating them.
+     */
+    private String uploadSplit(int totalItem, ChunkWriter chunkWriter, String broker, String organizationFiscalCode, ServiceType serviceType, UploadCancellation cancellation) throws IOException {
+        log.debug(String.format("Upload of %d items split in sub-uploads of %d items for broker %s and organization fiscal code %s",
+                totalItem, splitChunkSize, broker, organizationFiscalCode));
+
+        cancellation.enter(UploadCancellation.Phase.STAGING);
+        List<String> childIds = new ArrayList<>();
+        List<Integer> childTotals = new ArrayList<>();
+        List<CompletableFuture<StagedInput>> inputs = new ArrayList<>();
+        List<StagedInput> staged;
+        String fileId = blobStorageRepository.newFileId(broker, organizationFiscalCode);
         try {
-            log.debug(String.format("Upload operation %s was launched for broker %s and organization fiscal code %s",
-                    uploadInput.getUploadOperation(), broker, organizationFiscalCode));
+            for (int from = 0; from < totalItem; from += splitChunkSize) {
+                int to = Math.min(from + splitChunkSize, totalItem);
+                byte[] content = chunkWriter.write(from, to);
+                String childId = blobStorageRepository.newFileId(broker, organizationFiscalCode);
+                childIds.add(childId);
+                childTotals.add(to - from);
+                inputs.add(blobStorageRepository.stage(broker, organizationFiscalCode, childId, new ByteArrayInputStream(content), cancellation));
+            }
+            staged = awaitStaged(inputs);
+            cancellation.checkpoint();
+            statusService.createSplitUploadStatus(organizationFiscalCode, broker, fileId, childIds, childTotals, serviceType);
+        } catch (IOException e) {
+            // nothing is committed, the staged blocks are discarded
+            cancellation.cancel(UploadCancellation.Reason.REQUEST_FAILED);
+            throw e;
+        } catch (RuntimeException e) {
+            cancellation.cancel(UploadCancellation.Reason.REQUEST_FAILED);
+            throw unwrap(e);
+        }
 
-            // from UploadInput Object to ByteArrayInputStream
-            objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(objectMapper.writeValueAsBytes(uploadInput));
+        try {
+            cancellation.commit(fileId);
+            commitAll(staged, serviceType);
+        } catch (RuntimeException e) {
+            // the inputs committed before the failure are removed along with the Statuses
+            rollbackSplitUpload(organizationFiscalCode, broker, fileId, childIds);
+            throw e;
+        }
+        return fileId;
+    }
 
-            // upload blob
-            String fileId = blobStorageRepository.upload(broker, organizationFiscalCode, inputStream, serviceType);
-            statusService.createUploadStatus(organizationFiscalCode, broker, fileId, totalItem, serviceType);
+    /*
+     * Every input is staged before any is committed, so a failure leaves no input to be processed. The first failure
+     * is reported at once: the caller cancels the upload, which stops the other stagings at their next block.
+     */
+    private static List<StagedInput> awaitStaged(List<CompletableFuture<StagedInput>> inputs) {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        for (CompletableFuture<StagedInput> input : inputs)
+            input.whenComplete((stagedInput, ex) -> {
+                if (ex != null)
+                    failed.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            });
+        join(CompletableFuture.anyOf(CompletableFuture.allOf(inputs.toArray(CompletableFuture[]::new)), failed));
+        return inputs.stream().map(CompletableFuture::join).toList();
+    }
 
-            return fileId;
+    private void commitAll(List<StagedInput> staged, ServiceType serviceType) {
+        join(CompletableFuture.allOf(staged.stream()
+                .map(input -> CompletableFuture.runAsync(() -> blobStorageRepository.commit(input, serviceType), uploadExecutor))
+                .toArray(CompletableFuture[]::new)));
+    }
+
+    private void rollbackSplitUpload(String organizationFiscalCode, String broker, String fileId, List<String> childIds) {
+        try {
+            statusService.deleteSplitUploadStatus(organizationFiscalCode, fileId, childIds);
+        } catch (AppException e) {
+            log.error("[Error][BlobService@upload] Status of the failed split upload {} not removed: {}", fileId, e.getMessage());
+        }
+        for (String childId : childIds) {
+            try {
+                blobStorageRepository.deleteInput(broker, organizationFiscalCode, childId);
+            } catch (RuntimeException e) {
+                log.error("[Error][BlobService@upload] Input of the failed sub-upload {} not removed: {}", childId, e.getMessage());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter {
+        byte[] write(int from, int to) throws IOException;
+    }
+
+    private byte[] serialize(UploadInput uploadInput) {
+        try {
+            // from UploadInput Object to bytes
+            objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+            return objectMapper.writeValueAsBytes(uploadInput);
         } catch (IOException e) {
             log.error("[Error][BlobService@upload] " + e.getMessage());
             throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error", e.getCause());
         }
     }
 
-    private InputStream unzip(CompletedFileUpload file) {
-        int zipFiles = 0;
-        int zipSize = 0;
+    private String upload(byte[] content, UploadOperation uploadOperation, String broker, String organizationFiscalCode, int totalItem,
+                          List<String> skippedIUPDs, List<String> inputIUPDs, ServiceType serviceType, UploadCancellation cancellation) {
+        log.debug(String.format("Upload operation %s was launched for broker %s and organization fiscal code %s",
+                uploadOperation, broker, organizationFiscalCode));
 
-        if (!VALID_UPLOAD_EXTENSION.contains(getFileExtension(file.getFilename()))) {
+        if (uploadJournalService.isEnabled())
+            return uploadJournalService.accept(content, uploadOperation, broker, organizationFiscalCode, totalItem, skippedIUPDs, inputIUPDs, serviceType, cancellation);
+
+        // the input is staged while the Status is created, its block list is committed only once both succeeded
+        cancellation.enter(UploadCancellation.Phase.STAGING);
+        String fileId = blobStorageRepository.newFileId(broker, organizationFiscalCode);
+        CompletableFuture<Void> input = blobStorageRepository.upload(broker, organizationFiscalCode, fileId, new ByteArrayInputStream(content), serviceType, cancellation);
+        CompletableFuture<Void> status = CompletableFuture.runAsync(() ->
+                statusService.createUploadStatus(organizationFiscalCode, broker, fileId, totalItem, skippedIUPDs, inputIUPDs, serviceType), uploadExecutor);
+
+        try {
+            // before the commit the input completes only if its staging failed or the upload was cancelled
+            CompletableFuture.anyOf(input, status).join();
+            if (input.isDone()) {
+                join(input);
+                cancellation.checkpoint();
+            }
+            join(status);
+        } catch (RuntimeException e) {
+            // the staged blocks are discarded, the Status is removed once its creation ended
+            cancellation.cancel(UploadCancellation.Reason.REQUEST_FAILED);
+            status.thenRun(() -> rollbackUploadStatus(organizationFiscalCode, fileId));
+            throw unwrap(e);
+        }
+
+        try {
+            cancellation.commit(fileId);
+            join(input);
+        } catch (RuntimeException e) {
+            rollbackUploadStatus(organizationFiscalCode, fileId);
+            throw e;
+        }
+        return fileId;
+    }
+
+    private void rollbackUpload(String broker, String organizationFiscalCode, String fileId) {
+        rollbackUploadStatus(organizationFiscalCode, fileId);
+        try {
+            blobStorageRepository.deleteInput(broker, organizationFiscalCode, fileId);
+        } catch (RuntimeException e) {
+            log.error("[Error][BlobService@upload] Input of the failed upload {} not removed: {}", fileId, e.getMessage());
+        }
+    }
+
+    private void rollbackUploadStatus(String organizationFiscalCode, String fileId) {
+        try {
+            statusService.deleteUploadStatus(organizationFiscalCode, fileId);
+        } catch (AppException e) {
+            log.error("[Error][BlobService@upload] Status of the failed upload {} not removed: {}", fileId, e.getMessage());
+        }
+    }
+
+    private InputStream unzip(CompletedFileUpload file, UploadCancellation cancellation) {
+        if (!hasValidExtension(file.getFilename())) {
             log.error("[Error][BlobService@unzip] Invalid extension: " + file.getFilename());
             throw new AppException(HttpStatus.BAD_REQUEST, "NOT A ZIP FILE", "Only ZIP files can be uploaded.");
         }
 
-        try (ZipInputStream zis = new ZipInputStream(file.getInputStream())) {
+        try {
+            return unzip(file.getName(), file.getInputStream(), cancellation);
+        } catch (IOException e) {
+            log.error("[Error][BlobService@unzip] " + e.getMessage(), e);
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "UNZIP ERROR", "Problem to manage zip file", e);
+        }
+    }
+
+    private InputStream unzip(String name, InputStream inputStream, UploadCancellation cancellation) {
+        int zipFiles = 0;
+        int zipSize = 0;
+
+        try (ZipInputStream zis = new ZipInputStream(cancellation.guard(inputStream))) {
             ZipEntry entry;
 
             while ((entry = zis.getNextEntry()) != null) {
@@ -227,7 +617,7 @@ public class BlobService {
                 // Return the first valid file as InputStream
                 zis.closeEntry();
                 zis.close();
-                log.debug("File with name " + file.getName() + " has been unzipped");
+                log.debug("File with name " + name + " has been unzipped");
                 return new ByteArrayInputStream(baos.toByteArray());
             }
 
@@ -242,6 +632,11 @@ public class BlobService {
         }
     }
 
+    // package-private for the uploads accepted without being unzipped
+    static boolean hasValidExtension(String fileName) {
+        return VALID_UPLOAD_EXTENSION.contains(getFileExtension(fileName));
+    }
+
     private static String getFileExtension(String fileName) {
         if (fileName == null || fileName.isEmpty()) {
             return "";
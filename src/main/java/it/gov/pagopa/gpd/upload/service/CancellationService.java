@@ -0,0 +1,73 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation.Phase;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation.Reason;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Creates the {@link UploadCancellation} token of each upload request with the configured deadlines
+ * and records the uploads stopped before completion.
+ */
+@Singleton
+@Slf4j
+public class CancellationService {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${upload.deadline.total:120000}")
+    private long totalDeadline;
+    @Value("${upload.deadline.unzip:30000}")
+    private long unzipDeadline;
+    @Value("${upload.deadline.parse:30000}")
+    private long parseDeadline;
+    @Value("${upload.deadline.validation:30000}")
+    private long validationDeadline;
+    @Value("${upload.deadline.staging:60000}")
+    private long stagingDeadline;
+
+    @Inject
+    public CancellationService(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public UploadCancellation create(String fileDescription, long declaredBytes) {
+        Map<Phase, Duration> phaseBudgets = Map.of(
+                Phase.UNZIP, Duration.ofMillis(unzipDeadline),
+                Phase.PARSE, Duration.ofMillis(parseDeadline),
+                Phase.VALIDATION, Duration.ofMillis(validationDeadline),
+                Phase.STAGING, Duration.ofMillis(stagingDeadline));
+        return new UploadCancellation(Duration.ofMillis(totalDeadline), phaseBudgets,
+                (phase, reason) -> onAbort(fileDescription, declaredBytes, phase, reason));
+    }
+
+    private void onAbort(String fileDescription, long declaredBytes, Phase phase, Reason reason) {
+        // a failed request is already reported by the error handler
+        if (reason == Reason.REQUEST_FAILED)
+            return;
+
+        log.warn("[CancellationService@onAbort] Upload {} cancelled during {} phase: {}", fileDescription, phase, reason);
+        Counter.builder("gpd.upload.cancelled")
+                .description("Uploads cancelled before being accepted")
+                .tag("phase", phase.name())
+                .tag("reason", reason.name())
+                .register(meterRegistry)
+                .increment();
+        if (declaredBytes > 0) {
+            DistributionSummary.builder("gpd.upload.cancelled.bytes")
+                    .description("Request size of the uploads cancelled before being accepted")
+                    .baseUnit("bytes")
+                    .tag("phase", phase.name())
+                    .register(meterRegistry)
+                    .record(declaredBytes);
+        }
+    }
+}
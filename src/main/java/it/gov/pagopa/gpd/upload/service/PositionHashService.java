@@ -0,0 +1,200 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.entity.ResponseEntry;
+import it.gov.pagopa.gpd.upload.entity.Status;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.pd.PaymentPositionModel;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.utils.PositionHashIndex;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Drops from UPDATE uploads the payment positions whose content is the same as the last one accepted.
+ * <p>
+ * A position is skipped only if the upload that last sent the same content processed it successfully,
+ * so positions rejected downstream or still in progress are always sent again. The positions sent by any other
+ * upload are removed from the index, as their last content is no longer the one recorded.
+ */
+@Singleton
+@Slf4j
+public class PositionHashService {
+    private static final int INDEX_UPDATE_ATTEMPTS = 3;
+
+    @Value("${upload.update.skip-unchanged.enabled:false}")
+    private boolean enabled;
+
+    private final BlobStorageRepository blobStorageRepository;
+    private final StatusService statusService;
+    private final ObjectMapper canonicalMapper;
+
+    @Inject
+    public PositionHashService(BlobStorageRepository blobStorageRepository, StatusService statusService) {
+        this.blobStorageRepository = blobStorageRepository;
+        this.statusService = statusService;
+        this.canonicalMapper = JsonMapper.builder()
+                .addModule(new JavaTimeModule())
+                .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+                .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public UpdateFilter filterUnchanged(String broker, String organizationFiscalCode, ServiceType serviceType, List<PaymentPositionModel> paymentPositions) {
+        PositionHashIndex index = loadIndex(broker, organizationFiscalCode, serviceType);
+        List<byte[]> hashes = new ArrayList<>(paymentPositions.size());
+        Map<String, String> previousFileIds = new HashMap<>();
+        for (PaymentPositionModel paymentPosition : paymentPositions) {
+            byte[] hash = hash(paymentPosition);
+            hashes.add(hash);
+            index.fileIdWithSameContent(paymentPosition.getIupd(), hash)
+                    .ifPresent(fileId -> previousFileIds.put(paymentPosition.getIupd(), fileId));
+        }
+        Map<String, Set<String>> succeededByFileId = succeededIUPDs(organizationFiscalCode, new HashSet<>(previousFileIds.values()));
+
+        UpdateFilter filter = new UpdateFilter();
+        for (int i = 0; i < paymentPositions.size(); i++) {
+            PaymentPositionModel paymentPosition = paymentPositions.get(i);
+            String previousFileId = previousFileIds.get(paymentPosition.getIupd());
+            if (previousFileId != null && succeededByFileId.getOrDefault(previousFileId, Set.of()).contains(paymentPosition.getIupd())) {
+                filter.unchangedIUPDs.add(paymentPosition.getIupd());
+            } else {
+                filter.changed.add(paymentPosition);
+                filter.changedHashes.put(paymentPosition.getIupd(), hashes.get(i));
+            }
+        }
+
+        log.debug("[PositionHashService@filterUnchanged] {} of {} positions unchanged for organization {}",
+                filter.unchangedIUPDs.size(), paymentPositions.size(), organizationFiscalCode);
+        return filter;
+    }
+
+    /**
+     * Records the hashes of the positions sent with the given upload. The index is merged with concurrent updates
+     * using its ETag; if it can't be updated it is deleted, so that no position is skipped on stale data.
+     */
+    public void recordAccepted(String broker, String organizationFiscalCode, ServiceType serviceType, UpdateFilter filter, String fileId) {
+        if (filter.changedHashes.isEmpty())
+            return;
+        update(broker, organizationFiscalCode, serviceType, index -> {
+            filter.changedHashes.forEach((iupd, hash) -> index.put(iupd, hash, fileId));
+            return true;
+        });
+    }
+
+    /**
+     * Removes the positions that are created or deleted by an upload other than a filtered UPDATE, whose last content
+     * is no longer the one recorded: it must be called before the upload is accepted.
+     */
+    public void forget(String broker, String organizationFiscalCode, ServiceType serviceType, Collection<String> iupds) {
+        if (!enabled || iupds.isEmpty())
+            return;
+        update(broker, organizationFiscalCode, serviceType, index -> {
+            boolean removed = false;
+            for (String iupd : iupds)
+                removed |= index.remove(iupd);
+            return removed;
+        });
+    }
+
+    /*
+     * Applies the change to the current index, the update is skipped if the change returns false.
+     */
+    private void update(String broker, String organizationFiscalCode, ServiceType serviceType, Predicate<PositionHashIndex> change) {
+        try {
+            for (int attempt = 0; attempt < INDEX_UPDATE_ATTEMPTS; attempt++) {
+                Optional<BlobStorageRepository.IndexBlob> current = blobStorageRepository.downloadIndex(broker, organizationFiscalCode, serviceType);
+                PositionHashIndex index = current.isPresent() ? PositionHashIndex.fromBytes(current.get().getContent()) : new PositionHashIndex();
+                if (!change.test(index))
+                    return;
+
+                String eTag = current.map(BlobStorageRepository.IndexBlob::getETag).orElse(null);
+                if (blobStorageRepository.uploadIndex(broker, organizationFiscalCode, serviceType, index.toBytes(), eTag))
+                    return;
+            }
+            log.warn("[PositionHashService@update] Concurrent updates of the position hash index for organization {}", organizationFiscalCode);
+        } catch (Exception e) {
+            log.error("[Error][PositionHashService@update] Position hash index update failed for organization {}: {}", organizationFiscalCode, e.getMessage());
+        }
+        invalidate(broker, organizationFiscalCode, serviceType);
+    }
+
+    private void invalidate(String broker, String organizationFiscalCode, ServiceType serviceType) {
+        try {
+            blobStorageRepository.deleteIndex(broker, organizationFiscalCode, serviceType);
+        } catch (Exception e) {
+            log.error("[Error][PositionHashService@invalidate] Position hash index deletion failed for organization {}: {}", organizationFiscalCode, e.getMessage());
+        }
+    }
+
+    private PositionHashIndex loadIndex(String broker, String organizationFiscalCode, ServiceType serviceType) {
+        try {
+            Optional<BlobStorageRepository.IndexBlob> indexBlob = blobStorageRepository.downloadIndex(broker, organizationFiscalCode, serviceType);
+            if (indexBlob.isPresent())
+                return PositionHashIndex.fromBytes(indexBlob.get().getContent());
+        } catch (Exception e) {
+            log.error("[Error][PositionHashService@loadIndex] Position hash index unavailable for organization {}: {}", organizationFiscalCode, e.getMessage());
+        }
+        return new PositionHashIndex();
+    }
+
+    // the IUPDs processed successfully by each of the given uploads, read with a single query
+    private Map<String, Set<String>> succeededIUPDs(String organizationFiscalCode, Set<String> fileIds) {
+        if (fileIds.isEmpty())
+            return Map.of();
+        List<Status> statusList;
+        try {
+            statusList = statusService.getSucceededResponses(organizationFiscalCode, new ArrayList<>(fileIds));
+        } catch (AppException e) {
+            log.error("[Error][PositionHashService@succeededIUPDs] Status unavailable for organization {}: {}", organizationFiscalCode, e.getMessage());
+            return Map.of();
+        }
+
+        Map<String, Set<String>> succeededByFileId = new HashMap<>();
+        for (Status status : statusList) {
+            if (status.getUpload() == null || status.getUpload().getResponses() == null)
+                continue;
+            Set<String> succeeded = succeededByFileId.computeIfAbsent(status.getId(), id -> new HashSet<>());
+            for (ResponseEntry responseEntry : status.getUpload().getResponses()) {
+                if (responseEntry.getRequestIDs() != null)
+                    succeeded.addAll(responseEntry.getRequestIDs());
+            }
+        }
+        return succeededByFileId;
+    }
+
+    private byte[] hash(PaymentPositionModel paymentPosition) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonicalMapper.writeValueAsBytes(paymentPosition));
+            return Arrays.copyOf(digest, PositionHashIndex.HASH_LENGTH);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error", e);
+        }
+    }
+
+    @Getter
+    public static class UpdateFilter {
+        private final List<PaymentPositionModel> changed = new ArrayList<>();
+        private final List<String> unchangedIUPDs = new ArrayList<>();
+        private final Map<String, byte[]> changedHashes = new HashMap<>();
+    }
+}
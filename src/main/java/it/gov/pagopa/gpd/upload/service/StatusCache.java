@@ -0,0 +1,187 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micronaut.context.annotation.Value;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.utils.CoalescedFileId;
+import jakarta.annotation.PostConstruct;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of the statuses and reports returned to the clients, keyed by view, broker, organization, fileId
+ * and service type. Once its upload has ended a Status never changes, so terminal entries are kept until evicted by
+ * size, while the entries of uploads in progress expire after a short time to bound the staleness of the polling.
+ * <p>
+ * The cache is bounded by weight, i.e. the number of IUPDs of the entry, so a few large reports cannot hold the
+ * memory of many small ones. Hits, misses and evictions are exposed as the {@code gpd.upload.status.cache} metrics.
+ * <p>
+ * The values are loaded by the first request of a key outside the cache, which holds its pending future meanwhile, so
+ * the reads of Cosmos or of the blobs never block the other keys. The keys of each upload, coalesced requests included,
+ * are indexed so that its entries are discarded without scanning the cache.
+ */
+@Singleton
+public class StatusCache {
+    public static final String CACHE_NAME = "gpd.upload.status.cache";
+
+    @Value("${upload.cache.enabled:true}")
+    private boolean enabled;
+    @Value("${upload.cache.max-weight:1000000}")
+    private long maxWeight;
+    @Value("${upload.cache.terminal-ttl-ms:3600000}")
+    private long terminalTtl;
+    @Value("${upload.cache.in-progress-ttl-ms:1000}")
+    private long inProgressTtl;
+
+    private final MeterRegistry meterRegistry;
+    private AsyncCache<Key, Entry> cache;
+    private final Map<Upload, Set<Key>> keysByUpload = new ConcurrentHashMap<>();
+
+    @Inject
+    public StatusCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled)
+            return;
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Key key, Entry entry) -> entry.weight)
+                .expireAfter(new Expiry<Key, Entry>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(entry.terminal ? terminalTtl : inProgressTtl);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, entry, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .removalListener((Key key, Entry entry, RemovalCause cause) -> {
+                    if (key != null && cause != RemovalCause.REPLACED)
+                        unindex(key);
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached value of the view, loading it once for the concurrent requests of the same key.
+     * The exceptions of the loader are propagated and nothing is cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String view, String broker, String organizationFiscalCode, String fileId, ServiceType serviceType, Supplier<Entry> loader) {
+        if (cache == null)
+            return (T) loader.get().value;
+        Key key = new Key(view, broker, organizationFiscalCode, fileId, serviceType);
+        CompletableFuture<Entry> loading = new CompletableFuture<>();
+        CompletableFuture<Entry> entry = cache.get(key, (k, executor) -> loading);
+        if (entry == loading) {
+            keysByUpload.computeIfAbsent(Upload.of(key), upload -> ConcurrentHashMap.newKeySet()).add(key);
+            try {
+                loading.complete(loader.get());
+            } catch (RuntimeException e) {
+                // the failed future is discarded by the cache
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return (T) entry.join().value;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    // a value still being loaded is not present
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> getIfPresent(String view, String broker, String organizationFiscalCode, String fileId, ServiceType serviceType) {
+        if (cache == null)
+            return Optional.empty();
+        CompletableFuture<Entry> entry = cache.getIfPresent(new Key(view, broker, organizationFiscalCode, fileId, serviceType));
+        if (entry == null || !entry.isDone() || entry.isCompletedExceptionally())
+            return Optional.empty();
+        return Optional.of((T) entry.join().value);
+    }
+
+    /**
+     * Discards the entries of the upload, as well as the ones of the requests coalesced into it.
+     */
+    public void invalidate(String organizationFiscalCode, String fileId) {
+        if (cache == null)
+            return;
+        Set<Key> keys = keysByUpload.remove(Upload.of(organizationFiscalCode, fileId));
+        if (keys != null)
+            cache.synchronous().invalidateAll(keys);
+    }
+
+    // the key is kept while the cache holds it again, as when it was loaded once more after its removal
+    private void unindex(Key key) {
+        keysByUpload.computeIfPresent(Upload.of(key), (upload, keys) -> {
+            if (!cache.asMap().containsKey(key))
+                keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    public static Entry terminal(Object value, int iupds) {
+        return new Entry(value, true, iupds);
+    }
+
+    public static Entry inProgress(Object value, int iupds) {
+        return new Entry(value, false, iupds);
+    }
+
+    public static final class Entry {
+        private final Object value;
+        private final boolean terminal;
+        private final int weight;
+
+        private Entry(Object value, boolean terminal, int iupds) {
+            this.value = value;
+            this.terminal = terminal;
+            this.weight = 1 + iupds;
+        }
+    }
+
+    private record Key(String view, String broker, String organizationFiscalCode, String fileId, ServiceType serviceType) {
+    }
+
+    // the upload of the key, the combined one for a coalesced request
+    private record Upload(String organizationFiscalCode, String fileId) {
+        private static Upload of(Key key) {
+            return of(key.organizationFiscalCode(), key.fileId());
+        }
+
+        private static Upload of(String organizationFiscalCode, String fileId) {
+            return new Upload(organizationFiscalCode, CoalescedFileId.parse(fileId)
+                    .map(CoalescedFileId::getFileId)
+                    .orElse(fileId));
+        }
+    }
+}
@@ -1,105 +1,344 @@
 package it.gov.pagopa.gpd.upload.service;
 
-import com.azure.cosmos.models.CosmosQueryRequestOptions;
-import com.azure.cosmos.models.PartitionKey;
-import com.azure.cosmos.models.SqlParameter;
-import com.azure.cosmos.models.SqlQuerySpec;
+import com.azure.core.util.BinaryData;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.entity.ResponseEntry;
 import it.gov.pagopa.gpd.upload.entity.Status;
 import it.gov.pagopa.gpd.upload.entity.Upload;
 import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.FileIdListResponse;
 import it.gov.pagopa.gpd.upload.model.v1.UploadReport;
 import it.gov.pagopa.gpd.upload.model.v1.UploadStatus;
+import it.gov.pagopa.gpd.upload.model.v2.UploadOutcomesDTO;
 import it.gov.pagopa.gpd.upload.model.v2.UploadStatusDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusItemDTO;
 import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
 import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
 import it.gov.pagopa.gpd.upload.repository.StatusRepository;
+import it.gov.pagopa.gpd.upload.utils.CoalescedFileId;
+import it.gov.pagopa.gpd.upload.utils.EntityTag;
 import it.gov.pagopa.gpd.upload.utils.ResponseEntryDTOMapper;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.time.LocalTime;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 
 import static io.micronaut.http.HttpStatus.NOT_FOUND;
+import static it.gov.pagopa.gpd.upload.utils.Constants.INPUT_DIRECTORY;
 
 @Singleton
 @Slf4j
 public class StatusService {
+    public static final String SKIPPED_UNCHANGED_MESSAGE = "Skipped: payment position unchanged since the last successful upload";
+
     private StatusRepository statusRepository;
 
     private ResponseEntryDTOMapper responseEntryDTOMapper;
 
+    private BlobStorageRepository blobStorageRepository;
+
+    private StatusCache statusCache;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
     @Inject
     public StatusService(StatusRepository statusRepository,
-                         ResponseEntryDTOMapper responseEntryDTOMapper) {
+                         ResponseEntryDTOMapper responseEntryDTOMapper,
+                         BlobStorageRepository blobStorageRepository,
+                         StatusCache statusCache) {
         this.statusRepository = statusRepository;
         this.responseEntryDTOMapper = responseEntryDTOMapper;
+        this.blobStorageRepository = blobStorageRepository;
+        this.statusCache = statusCache;
     }
 
     public UploadStatus getUploadStatus(String brokerId, String fileId, String organizationFiscalCode, ServiceType serviceType) {
-        return getData(brokerId, organizationFiscalCode, fileId, serviceType, this::mapStatusV1);
+        return getData(brokerId, organizationFiscalCode, fileId, serviceType, "status-v1", true, this::mapStatusV1);
     }
 
     public UploadStatusDTO getUploadStatusV2(String brokerId, String fileId, String organizationFiscalCode, ServiceType serviceType) {
-        return getData(brokerId, organizationFiscalCode, fileId, serviceType, this::mapStatusV2);
+        return getData(brokerId, organizationFiscalCode, fileId, serviceType, "status-v2", true, this::mapStatusV2);
+    }
+
+    /**
+     * The statuses of many uploads of the organization: the ones not cached are read with a single request of point
+     * reads in the partition of the organization and mapped to their view here, only split and coalesced uploads are
+     * resolved one by one.
+     * @return the statuses in the order of the fileIds, without duplicates, the missing ones marked as not found
+     */
+    public List<UploadStatusItemDTO> getUploadStatusesV2(String brokerId, String organizationFiscalCode, List<String> fileIds, ServiceType serviceType) {
+        Set<String> distinctIds = new LinkedHashSet<>(fileIds);
+        Map<String, UploadStatusDTO> found = new HashMap<>();
+        List<String> toRead = new ArrayList<>();
+        List<String> toResolve = new ArrayList<>();
+        for (String fileId : distinctIds) {
+            Optional<UploadStatusDTO> cached = statusCache.getIfPresent("status-v2", brokerId, organizationFiscalCode, fileId, serviceType);
+            if (cached.isPresent())
+                found.put(fileId, cached.get());
+            else if (CoalescedFileId.parse(fileId).isPresent())
+                toResolve.add(fileId);
+            else
+                toRead.add(fileId);
+        }
+
+        if (!toRead.isEmpty()) {
+            for (Status status : statusRepository.findStatusesByIds(toRead, organizationFiscalCode)) {
+                if (!Objects.equals(brokerId, status.getBrokerID()) || !isServiceType(status, serviceType))
+                    continue;
+                if (status.getChildren() != null) {
+                    toResolve.add(status.getId());
+                    continue;
+                }
+                found.put(status.getId(), statusCache.get("status-v2", brokerId, organizationFiscalCode, status.getId(), serviceType,
+                        () -> toEntry(status, mapStatusV2(status), 0)));
+            }
+        }
+
+        for (String fileId : toResolve) {
+            try {
+                found.put(fileId, getUploadStatusV2(brokerId, fileId, organizationFiscalCode, serviceType));
+            } catch (AppException e) {
+                if (e.getHttpStatus() != NOT_FOUND)
+                    throw e;
+            }
+        }
+
+        return distinctIds.stream()
+                .map(fileId -> UploadStatusItemDTO.builder()
+                        .fileId(fileId)
+                        .statusCode(found.containsKey(fileId) ? HttpStatus.OK.getCode() : NOT_FOUND.getCode())
+                        .status(found.get(fileId))
+                        .build())
+                .toList();
     }
 
     public UploadReport getReportV1(String brokerCode, String orgFiscalCode, String fileId, ServiceType serviceType) {
-        return getData(brokerCode, orgFiscalCode, fileId, serviceType, this::mapReport);
+        return getData(brokerCode, orgFiscalCode, fileId, serviceType, "report-v1", false, this::mapReport);
     }
 
     public UploadReportDTO getReportV2(String brokerCode, String orgFiscalCode, String fileId, ServiceType serviceType) {
-        return getData(brokerCode, orgFiscalCode, fileId, serviceType, this::mapReportV2);
+        return getData(brokerCode, orgFiscalCode, fileId, serviceType, "report-v2", false, this::mapReportV2);
+    }
+
+    /*
+     * The ETag of the report hashes its counters only, so it is computed from the Status read without IUPDs and
+     * cached as a view of its own: a revalidation answered with 304 never reads nor maps the IUPDs of the report.
+     */
+    public String getReportETagV1(String brokerCode, String orgFiscalCode, String fileId, ServiceType serviceType) {
+        return getData(brokerCode, orgFiscalCode, fileId, serviceType, "report-etag-v1", true, status -> EntityTag.of(mapReport(status)));
+    }
+
+    public String getReportETagV2(String brokerCode, String orgFiscalCode, String fileId, ServiceType serviceType) {
+        return getData(brokerCode, orgFiscalCode, fileId, serviceType, "report-etag-v2", true, status -> EntityTag.of(mapReportV2(status)));
     }
 
     public Status getStatus(String orgFiscalCode, String fileId) {
         return statusRepository.findStatusById(fileId, orgFiscalCode);
     }
 
+    // the Statuses of the given uploads holding only their successful responses
+    public List<Status> getSucceededResponses(String orgFiscalCode, List<String> fileIds) {
+        return statusRepository.findSucceededResponsesByIds(fileIds, orgFiscalCode);
+    }
+
     public void createUploadStatus(String organizationFiscalCode, String brokerId, String fileId, int totalItem, ServiceType serviceType) {
+        createUploadStatus(organizationFiscalCode, brokerId, fileId, totalItem, List.of(), serviceType);
+    }
+
+    /**
+     * @param skippedIUPDs positions not sent for processing because unchanged, they are counted as already processed
+     */
+    public void createUploadStatus(String organizationFiscalCode, String brokerId, String fileId, int totalItem, List<String> skippedIUPDs, ServiceType serviceType) {
+        createUploadStatus(organizationFiscalCode, brokerId, fileId, totalItem, skippedIUPDs, null, serviceType);
+    }
+
+    /**
+     * @param inputIUPDs IUPDs of a combined upload in input order, null for any other upload
+     */
+    public void createUploadStatus(String organizationFiscalCode, String brokerId, String fileId, int totalItem, List<String> skippedIUPDs,
+                                   List<String> inputIUPDs, ServiceType serviceType) {
         Upload upload = Upload.builder()
                 .current(0)
                 .total(totalItem)
                 .start(LocalDateTime.now())
                 .build();
+        if (!skippedIUPDs.isEmpty()) {
+            upload.addResponse(ResponseEntry.builder()
+                    .statusCode(HttpStatus.NOT_MODIFIED.getCode())
+                    .statusMessage(SKIPPED_UNCHANGED_MESSAGE)
+                    .requestIDs(new ArrayList<>(skippedIUPDs))
+                    .build());
+            if (upload.getCurrent() == totalItem)
+                upload.setEnd(upload.getStart());
+        }
         Status status = Status.builder()
                 .id(fileId)
                 .brokerID(brokerId)
                 .fiscalCode(organizationFiscalCode)
                 .serviceType(serviceType)
                 .upload(upload)
+                .inputIUPDs(inputIUPDs)
                 .build();
 
         statusRepository.saveStatus(status);
     }
 
-    public Status upsert(Status status) {
-        return statusRepository.upsert(status);
+    // rollback of the Status of an upload whose input was not stored
+    public void deleteUploadStatus(String organizationFiscalCode, String fileId) {
+        statusRepository.delete(fileId, organizationFiscalCode);
     }
 
-    public OperationStatus getOperationStatus(Status status){
-        if(status.getUpload().getCurrent() == status.getUpload().getTotal()){
-            if(status.getUpload().getResponses() != null){
-                if(status.getUpload().getResponses().stream().allMatch(el -> el.getStatusCode() >= 400)){
-                    return OperationStatus.COMPLETED_UNSUCCESSFULLY;
-                } else if(status.getUpload().getResponses().stream().anyMatch(el -> el.getStatusCode() >= 400)){
-                    return OperationStatus.COMPLETED_WITH_WARNINGS;
-                }
+    /*
+     * The Status of an upload accepted in asynchronous mode, whose archive is not processed yet.
+     */
+    public Status createPendingUploadStatus(String organizationFiscalCode, String brokerId, String fileId, ServiceType serviceType) {
+        Status pending = Status.builder()
+                .id(fileId)
+                .brokerID(brokerId)
+                .fiscalCode(organizationFiscalCode)
+                .serviceType(serviceType)
+                .pending(true)
+                .upload(Upload.builder().current(0).total(0).start(LocalDateTime.now()).build())
+                .build();
+        statusRepository.saveStatus(pending);
+        return pending;
+    }
+
+    // a new attempt of the processing then completes the pending upload instead of processing its archive again
+    public void recordProcessedUpload(Status pending, String uploadId) {
+        statusRepository.upsert(pending.toBuilder()
+                .processedUpload(uploadId)
+                .build());
+    }
+
+    // the pending upload reports the Status of the upload its archive was processed into
+    public void completePendingUpload(Status pending, String uploadId) {
+        statusRepository.upsert(pending.toBuilder()
+                .pending(null)
+                .processedUpload(null)
+                .children(List.of(uploadId))
+                .build());
+        statusCache.invalidate(pending.getFiscalCode(), pending.getId());
+
+        // the processed upload is listed through the pending one, as the sub-uploads of a split upload;
+        // a coalesced upload shares the combined Status with other requests, which is listed on its own
+        if (CoalescedFileId.parse(uploadId).isPresent())
+            return;
+        try {
+            statusRepository.setParent(uploadId, pending.getFiscalCode(), pending.getId());
+        } catch (AppException e) {
+            // e.g. the Status of an upload still in the journal, which is then listed twice
+            log.error("[Error][StatusService@completePendingUpload] Parent of upload {} not set: {}", uploadId, e.getMessage());
+        }
+    }
+
+    public void failPendingUpload(Status pending, AppException cause) {
+        Upload upload = pending.getUpload().toBuilder().end(LocalDateTime.now()).build();
+        upload.addResponse(ResponseEntry.builder()
+                .statusCode(cause.getHttpStatus().getCode())
+                .statusMessage(cause.getTitle() + ": " + cause.getMessage())
+                .requestIDs(new ArrayList<>())
+                .build());
+        statusRepository.upsert(pending.toBuilder()
+                .pending(null)
+                .upload(upload)
+                .build());
+        statusCache.invalidate(pending.getFiscalCode(), pending.getId());
+    }
+
+    public void createSplitUploadStatus(String organizationFiscalCode, String brokerId, String fileId, List<String> childIds, List<Integer> childTotals, ServiceType serviceType) {
+        LocalDateTime start = LocalDateTime.now();
+        List<String> created = new ArrayList<>();
+        try {
+            for (int i = 0; i < childIds.size(); i++) {
+                statusRepository.saveStatus(Status.builder()
+                        .id(childIds.get(i))
+                        .brokerID(brokerId)
+                        .fiscalCode(organizationFiscalCode)
+                        .serviceType(serviceType)
+                        .parent(fileId)
+                        .upload(Upload.builder().current(0).total(childTotals.get(i)).start(start).build())
+                        .build());
+                created.add(childIds.get(i));
             }
 
-            return OperationStatus.COMPLETED;
+            // the counters of a split upload are aggregated from its sub-uploads on read, as for a processed pending upload
+            statusRepository.saveStatus(Status.builder()
+                    .id(fileId)
+                    .brokerID(brokerId)
+                    .fiscalCode(organizationFiscalCode)
+                    .serviceType(serviceType)
+                    .children(childIds)
+                    .upload(Upload.builder().current(0).total(0).start(start).build())
+                    .build());
+        } catch (AppException e) {
+            // the sub-uploads already created are removed, so no orphan is left in progress
+            for (String childId : created) {
+                try {
+                    statusRepository.delete(childId, organizationFiscalCode);
+                } catch (AppException ex) {
+                    log.error("[Error][StatusService@createSplitUploadStatus] Status of the sub-upload {} not removed: {}", childId, ex.getMessage());
+                }
+            }
+            throw e;
         }
+    }
+
+    public void deleteSplitUploadStatus(String organizationFiscalCode, String fileId, List<String> childIds) {
+        statusRepository.delete(fileId, organizationFiscalCode);
+        for (String childId : childIds)
+            statusRepository.delete(childId, organizationFiscalCode);
+    }
+
+    public Status upsert(Status status) {
+        Status upserted = statusRepository.upsert(status);
+        statusCache.invalidate(status.getFiscalCode(), status.getId());
+        return upserted;
+    }
+
+    // the Status created before the service types were introduced are GPD ones
+    private static boolean isServiceType(Status status, ServiceType serviceType) {
+        return status.getServiceType() == null && serviceType.equals(ServiceType.GPD) ||
+                Objects.equals(serviceType, status.getServiceType());
+    }
+
+    private static boolean isEnded(Status status) {
+        return status.getUpload().getEnd() != null && !Boolean.TRUE.equals(status.getPending());
+    }
 
-        return OperationStatus.IN_PROGRESS;
+    private static int countIUPDs(Status status) {
+        if (status.getUpload().getResponses() == null)
+            return 0;
+        return status.getUpload().getResponses().stream()
+                .mapToInt(responseEntry -> responseEntry.getRequestIDs() == null ? 0 : responseEntry.getRequestIDs().size())
+                .sum();
+    }
+
+    public OperationStatus getOperationStatus(Status status){
+        List<ResponseEntry> responses = status.getUpload().getResponses() != null ? status.getUpload().getResponses() : List.of();
+        return OperationStatus.of(
+                Boolean.TRUE.equals(status.getPending()),
+                status.getUpload().getCurrent() == status.getUpload().getTotal(),
+                responses.stream().anyMatch(el -> el.getStatusCode() >= 400),
+                responses.stream().anyMatch(el -> el.getStatusCode() < 400));
     }
 
     public UploadReport mapReport(Status status) {
@@ -161,6 +400,48 @@ public class StatusService {
                 serviceType
         );
 
+        return toFileIdList(page);
+    }
+
+    /**
+     * The fileIds of the uploads with the given outcome, as filtered by the Status query: the ones of the sub-uploads
+     * for a split upload.
+     */
+    public FileIdListResponse getFileIdList(
+            String brokerCode,
+            String organizationFiscalCode,
+            LocalDate from,
+            LocalDate to,
+            int size,
+            String continuationToken,
+            ServiceType serviceType,
+            OperationStatus operationStatus
+    ) {
+        return toFileIdList(statusRepository.findFileIdsPage(
+                brokerCode,
+                organizationFiscalCode,
+                from.atStartOfDay(),
+                to.atTime(LocalTime.MAX),
+                size,
+                continuationToken,
+                serviceType,
+                operationStatus
+        ));
+    }
+
+    public UploadOutcomesDTO getOutcomes(String brokerCode, String organizationFiscalCode, LocalDate from, LocalDate to, ServiceType serviceType) {
+        StatusRepository.Outcomes outcomes = statusRepository.countOutcomes(
+                brokerCode, organizationFiscalCode, from.atStartOfDay(), to.atTime(LocalTime.MAX), serviceType);
+        return UploadOutcomesDTO.builder()
+                .from(from)
+                .to(to)
+                .uploads(outcomes.uploads())
+                .succeededItem(outcomes.succeededItems())
+                .failedItem(outcomes.failedItems())
+                .build();
+    }
+
+    private static FileIdListResponse toFileIdList(StatusRepository.FileIdsPage page) {
         List<String> ids = page.getFileIds();
         String nextToken = page.getContinuationToken();
 
@@ -173,43 +454,168 @@ public class StatusService {
                 .build();
     }
 
-    private <R> R getData(String brokerCode, String orgFiscalCode, String fileId, ServiceType serviceType, Function<Status, R> mapper) {
+    /*
+     * countersOnly: the status polling needs no IUPDs, the Status and the ones of its sub-uploads are read without the
+     * IUPDs of their responses, unless the ones of a coalesced request must be located, and the view weighs as an
+     * entry without IUPDs.
+     * The mapped view is cached, until evicted once the upload has ended or for a short time while in progress.
+     */
+    private <R> R getData(String brokerCode, String orgFiscalCode, String fileId, ServiceType serviceType, String view, boolean countersOnly, Function<Status, R> mapper) {
+        return statusCache.get(view, brokerCode, orgFiscalCode, fileId, serviceType, () -> {
+            Status status = loadData(brokerCode, orgFiscalCode, fileId, serviceType, countersOnly);
+            return toEntry(status, mapper.apply(status), countersOnly ? 0 : countIUPDs(status));
+        });
+    }
+
+    private static StatusCache.Entry toEntry(Status status, Object data, int iupds) {
+        return isEnded(status)
+                ? StatusCache.terminal(data, iupds)
+                : StatusCache.inProgress(data, iupds);
+    }
 
-        Status status = getStatus(brokerCode, orgFiscalCode, fileId, serviceType);
+    private Status loadData(String brokerCode, String orgFiscalCode, String fileId, ServiceType serviceType, boolean countersOnly) {
+        Optional<CoalescedFileId> coalescedFileId = CoalescedFileId.parse(fileId);
 
-        boolean isValid = status.getServiceType() == null && serviceType.equals(ServiceType.GPD) ||
-                Objects.equals(serviceType, status.getServiceType());
+        Status status = getStatus(brokerCode, orgFiscalCode, coalescedFileId.map(CoalescedFileId::getFileId).orElse(fileId), serviceType,
+                countersOnly && coalescedFileId.isEmpty());
 
-        if (isValid) {
-            // apply the specific mapping function (mapReport or mapReportV2)
-            return mapper.apply(status);
+        if (isServiceType(status, serviceType)) {
+            if (status.getChildren() != null)
+                status = aggregateChildren(status, serviceType, countersOnly);
+            if (coalescedFileId.isPresent())
+                status = restrictToRequest(status, coalescedFileId.get(), serviceType);
+            return status;
         }
 
         throw new AppException(NOT_FOUND, "STATUS NOT FOUND", String.format("The data for given fileId %s does not exist for %s", fileId, serviceType.name()));
     }
 
 
-    private Status getStatus(String brokerCode, String orgFiscalCode, String fileId, ServiceType serviceType) {
-        String sqlQuery = "SELECT * FROM c WHERE c.id = @fileId AND c.fiscalCode = @orgFiscalCode AND c.brokerID = @brokerCode";
-        SqlQuerySpec querySpec = new SqlQuerySpec(
-                sqlQuery,
-                Arrays.asList(
-                        new SqlParameter("@fileId", fileId),
-                        new SqlParameter("@orgFiscalCode", orgFiscalCode),
-                        new SqlParameter("@brokerCode", brokerCode)
-                )
-        );
-        CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
-        options.setPartitionKey(new PartitionKey(orgFiscalCode));
-
-        List<Status> statusList = statusRepository.find(querySpec, options);
+    /*
+     * Read by id and partition key: the Status of another broker is reported as missing, as the query on the
+     * broker did.
+     */
+    private Status getStatus(String brokerCode, String orgFiscalCode, String fileId, ServiceType serviceType, boolean countersOnly) {
+        Status status;
+        try {
+            status = readStatus(fileId, orgFiscalCode, countersOnly);
+        } catch (AppException e) {
+            if (e.getHttpStatus() != NOT_FOUND)
+                throw e;
+            status = null;
+        }
 
-        if (!statusList.isEmpty()) {
-            return statusList.get(0);
+        if (status != null && Objects.equals(brokerCode, status.getBrokerID())) {
+            return status;
         }
         throw new AppException(NOT_FOUND, "STATUS NOT FOUND", String.format("The status for given fileId %s does not exist for %s", fileId, serviceType.name()));
     }
 
+    // the Status of a split upload is the sum of the ones of its sub-uploads
+    private Status aggregateChildren(Status parent, ServiceType serviceType, boolean countersOnly) {
+        Upload upload = Upload.builder()
+                .current(0)
+                .total(0)
+                .start(parent.getUpload().getStart())
+                .build();
+        int current = 0;
+        // the children are read without IUPDs when only counters are needed
+        LocalDateTime end = parent.getUpload().getStart();
+        for (String childId : parent.getChildren()) {
+            Upload child = getChildStatus(childId, parent.getFiscalCode(), serviceType, countersOnly).getUpload();
+            upload.setTotal(upload.getTotal() + child.getTotal());
+            current += child.getCurrent();
+            if (child.getResponses() != null) {
+                for (ResponseEntry responseEntry : child.getResponses())
+                    upload.addResponse(responseEntry.toBuilder()
+                            .requestIDs(countersOnly ? new ArrayList<>() : new ArrayList<>(responseEntry.getRequestIDs()))
+                            .build());
+            }
+            end = end == null || child.getEnd() == null ? null : (child.getEnd().isAfter(end) ? child.getEnd() : end);
+        }
+        upload.setCurrent(current);
+        upload.setEnd(end);
+
+        return parent.toBuilder()
+                .upload(upload)
+                .build();
+    }
+
+    // a child is any upload, e.g. the one an accepted archive was processed into
+    private Status getChildStatus(String childId, String orgFiscalCode, ServiceType serviceType, boolean countersOnly) {
+        Optional<CoalescedFileId> coalescedFileId = CoalescedFileId.parse(childId);
+        String id = coalescedFileId.map(CoalescedFileId::getFileId).orElse(childId);
+        Status child = readStatus(id, orgFiscalCode, countersOnly && coalescedFileId.isEmpty());
+        if (child.getChildren() != null)
+            child = aggregateChildren(child, serviceType, countersOnly);
+        if (coalescedFileId.isPresent())
+            child = restrictToRequest(child, coalescedFileId.get(), serviceType);
+        return child;
+    }
+
+    private Status readStatus(String fileId, String orgFiscalCode, boolean countersOnly) {
+        return countersOnly
+                ? statusRepository.findStatusCountersById(fileId, orgFiscalCode)
+                : statusRepository.findStatusById(fileId, orgFiscalCode);
+    }
+
+    /*
+     * The Status of a coalesced upload is the part of the combined one related to the request payment positions,
+     * which are located by offset and count in the combined input.
+     */
+    private Status restrictToRequest(Status combined, CoalescedFileId coalescedFileId, ServiceType serviceType) {
+        List<String> inputIUPDs = readInputIUPDs(combined, serviceType);
+        int from = Math.min(coalescedFileId.getOffset(), inputIUPDs.size());
+        int to = Math.min(coalescedFileId.getOffset() + coalescedFileId.getCount(), inputIUPDs.size());
+        Set<String> requestIUPDs = new HashSet<>(inputIUPDs.subList(from, to));
+
+        Upload upload = Upload.builder()
+                .current(0)
+                .total(coalescedFileId.getCount())
+                .start(combined.getUpload().getStart())
+                .build();
+        if (combined.getUpload().getResponses() != null) {
+            for (ResponseEntry responseEntry : combined.getUpload().getResponses()) {
+                if (responseEntry.getRequestIDs() == null)
+                    continue;
+                List<String> requestIDs = responseEntry.getRequestIDs().stream().filter(requestIUPDs::contains).toList();
+                if (!requestIDs.isEmpty())
+                    upload.addResponse(responseEntry.toBuilder().requestIDs(new ArrayList<>(requestIDs)).build());
+            }
+        }
+        if (upload.getCurrent() == upload.getTotal())
+            upload.setEnd(combined.getUpload().getEnd() != null ? combined.getUpload().getEnd() : combined.getUpload().getStart());
+
+        return combined.toBuilder()
+                .id(coalescedFileId.toString())
+                .upload(upload)
+                .build();
+    }
+
+    private List<String> readInputIUPDs(Status combined, ServiceType serviceType) {
+        if (combined.getInputIUPDs() != null)
+            return combined.getInputIUPDs();
+
+        // combined uploads created before their IUPDs were stored on the Status are located in their input
+        String blobPath = String.format("/%s/%s/%s.json", combined.getFiscalCode(), INPUT_DIRECTORY, combined.getId());
+        try {
+            BinaryData input = blobStorageRepository.downloadContent(combined.getBrokerID(), combined.getId(), blobPath, serviceType);
+            List<String> iupds = new ArrayList<>();
+            for (JsonNode paymentPosition : objectMapper.readTree(input.toStream()).path("paymentPositions"))
+                iupds.add(paymentPosition.path("iupd").asText());
+            return iupds;
+        } catch (AppException e) {
+            if (e.getHttpStatus() != HttpStatus.NOT_FOUND)
+                throw e;
+            // without the input the positions of the request can't be located
+            log.debug("[StatusService@readInputIUPDs] Combined input {} not available: {}", combined.getId(), e.getMessage());
+            return List.of();
+        } catch (IOException e) {
+            log.error("[Error][StatusService@readInputIUPDs] Combined input {} not readable: {}", combined.getId(), e.getMessage());
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error", e);
+        }
+    }
+
     private UploadStatus mapStatusV1(Status status) {
         return UploadStatus.builder()
                 .uploadID(status.getId())
@@ -0,0 +1,238 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.reactivex.rxjava3.core.BackpressureStrategy;
+import io.reactivex.rxjava3.core.Flowable;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusDTO;
+import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
+import it.gov.pagopa.gpd.upload.utils.EntityTag;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Watches the status of the uploads followed by long-poll and SSE clients: a single polling task per upload reads
+ * the status while someone is watching it and notifies every watcher of its changes, so the clients of the same
+ * upload cost one read per poll interval, whatever their number. The watch ends with the upload or with its last
+ * watcher.
+ */
+@Singleton
+@Slf4j
+public class StatusWatcher {
+    @Value("${upload.watch.poll-interval-ms:1000}")
+    private long pollInterval;
+    @Value("${upload.watch.threads:4}")
+    private int threads;
+
+    private final StatusService statusService;
+    private final MeterRegistry meterRegistry;
+    private final Map<Key, Watch> watches = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    @Inject
+    public StatusWatcher(StatusService statusService, MeterRegistry meterRegistry) {
+        this.statusService = statusService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger count = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "status-watcher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("gpd.upload.status.watches", watches, Map::size)
+                .description("Uploads whose status is watched by long-poll or SSE clients")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+    }
+
+    public interface Listener {
+        void onStatus(UploadStatusDTO status);
+
+        void onEnd();
+
+        void onError(Throwable error);
+    }
+
+    /**
+     * Starts notifying the listener of the current status and then of its changes.
+     * @return the action that stops the notifications
+     */
+    public Runnable subscribe(String broker, String organizationFiscalCode, String fileId, ServiceType serviceType, Listener listener) {
+        Key key = new Key(broker, organizationFiscalCode, fileId, serviceType);
+        while (true) {
+            Watch watch = watches.computeIfAbsent(key, Watch::new);
+            // a watch ending right now is no longer in the map, the next one is started
+            if (watch.add(listener))
+                return () -> watch.remove(listener);
+        }
+    }
+
+    /**
+     * @return the status once its ETag differs from the given one, else the last status read within the wait,
+     * null if none was read
+     */
+    public CompletableFuture<UploadStatusDTO> awaitChange(String broker, String organizationFiscalCode, String fileId, ServiceType serviceType, String etag, long waitMillis) {
+        CompletableFuture<UploadStatusDTO> change = new CompletableFuture<>();
+        AtomicReference<UploadStatusDTO> latest = new AtomicReference<>();
+        Runnable unsubscribe = subscribe(broker, organizationFiscalCode, fileId, serviceType, new Listener() {
+            @Override
+            public void onStatus(UploadStatusDTO status) {
+                latest.set(status);
+                if (!Objects.equals(etag, EntityTag.of(status)))
+                    change.complete(status);
+            }
+
+            @Override
+            public void onEnd() {
+                change.complete(latest.get());
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                change.complete(null);
+            }
+        });
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> change.complete(latest.get()), waitMillis, TimeUnit.MILLISECONDS);
+        change.whenComplete((status, error) -> {
+            timeout.cancel(false);
+            unsubscribe.run();
+        });
+        return change;
+    }
+
+    /**
+     * @return the current status followed by its changes, ending once the upload has ended or after the given time
+     */
+    public Flowable<UploadStatusDTO> watch(String broker, String organizationFiscalCode, String fileId, ServiceType serviceType, long maxMillis) {
+        return Flowable.<UploadStatusDTO>create(emitter -> {
+            Runnable unsubscribe = subscribe(broker, organizationFiscalCode, fileId, serviceType, new Listener() {
+                @Override
+                public void onStatus(UploadStatusDTO status) {
+                    emitter.onNext(status);
+                }
+
+                @Override
+                public void onEnd() {
+                    emitter.onComplete();
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    emitter.onError(error);
+                }
+            });
+            emitter.setCancellable(unsubscribe::run);
+        }, BackpressureStrategy.LATEST).take(maxMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static boolean isEnded(UploadStatusDTO status) {
+        return status.getOperationStatus() != OperationStatus.PENDING && status.getOperationStatus() != OperationStatus.IN_PROGRESS;
+    }
+
+    private record Key(String broker, String organizationFiscalCode, String fileId, ServiceType serviceType) {
+    }
+
+    private class Watch {
+        private final Key key;
+        private final List<Listener> listeners = new ArrayList<>();
+        private UploadStatusDTO last;
+        private String lastETag;
+        private ScheduledFuture<?> polling;
+        private boolean closed;
+
+        private Watch(Key key) {
+            this.key = key;
+        }
+
+        // the last status is notified holding the lock, so that it cannot follow the newer one of a poll
+        private synchronized boolean add(Listener listener) {
+            if (closed)
+                return false;
+            listeners.add(listener);
+            if (polling == null)
+                polling = scheduler.scheduleWithFixedDelay(this::poll, 0, pollInterval, TimeUnit.MILLISECONDS);
+            if (last != null)
+                listener.onStatus(last);
+            return true;
+        }
+
+        private synchronized void remove(Listener listener) {
+            listeners.remove(listener);
+            if (listeners.isEmpty())
+                close();
+        }
+
+        private void poll() {
+            UploadStatusDTO status;
+            try {
+                status = statusService.getUploadStatusV2(key.broker(), key.fileId(), key.organizationFiscalCode(), key.serviceType());
+            } catch (RuntimeException e) {
+                log.debug("[StatusWatcher@poll] Status of {} not available: {}", key.fileId(), e.getMessage());
+                closeWith(e);
+                return;
+            }
+
+            String etag = EntityTag.of(status);
+            List<Listener> toNotify;
+            boolean ended = isEnded(status);
+            synchronized (this) {
+                if (closed || etag.equals(lastETag))
+                    return;
+                last = status;
+                lastETag = etag;
+                toNotify = new ArrayList<>(listeners);
+                if (ended)
+                    close();
+            }
+            toNotify.forEach(listener -> listener.onStatus(status));
+            if (ended)
+                toNotify.forEach(Listener::onEnd);
+        }
+
+        private void closeWith(Throwable error) {
+            List<Listener> toNotify;
+            synchronized (this) {
+                if (closed)
+                    return;
+                toNotify = new ArrayList<>(listeners);
+                close();
+            }
+            toNotify.forEach(listener -> listener.onError(error));
+        }
+
+        // called holding the lock
+        private void close() {
+            closed = true;
+            if (polling != null)
+                polling.cancel(false);
+            watches.remove(key, this);
+        }
+    }
+}
@@ -71,7 +71,8 @@ public class SupportService {
     }
 
     public ProblemJson monitoring(LocalDateTime from, LocalDateTime to) {
-        String sqlQuery = "SELECT * FROM c WHERE c._ts >= @fromTs AND c._ts <= @toTs AND c.upload.current != c.upload.total";
+        // a split upload has no counters of its own, its sub-uploads are monitored
+        String sqlQuery = "SELECT * FROM c WHERE c._ts >= @fromTs AND c._ts <= @toTs AND c.upload.current != c.upload.total AND NOT IS_DEFINED(c.children)";
         SqlQuerySpec querySpec = new SqlQuerySpec(
                 sqlQuery,
                 Arrays.asList(
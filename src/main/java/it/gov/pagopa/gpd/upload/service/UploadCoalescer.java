@@ -0,0 +1,142 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micronaut.context.annotation.Value;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.pd.PaymentPositionModel;
+import it.gov.pagopa.gpd.upload.utils.CoalescedFileId;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Merges small uploads of the same broker, organization, service type and operation received within a short window
+ * into a single upload. The window is opened by the first request of a batch and closed by a scheduled flush (or as
+ * soon as the batch fills up), which uploads the combined input; every request gets a {@link CoalescedFileId}
+ * pointing into the combined upload. The requests are not held for the window: their fileIds are completed by the flush.
+ */
+@Singleton
+@Slf4j
+public class UploadCoalescer {
+    @Value("${upload.coalescing.enabled:false}")
+    private boolean enabled;
+    @Value("${upload.coalescing.window-ms:500}")
+    private long windowMillis;
+    @Value("${upload.coalescing.max-request-positions:10}")
+    private int maxRequestPositions;
+    @Value("${upload.coalescing.max-batch-positions:1000}")
+    private int maxBatchPositions;
+    @Value("${upload.coalescing.threads:2}")
+    private int threads;
+
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private static class Batch {
+        private final List<PaymentPositionModel> positions = new ArrayList<>();
+        private final Set<String> iupds = new HashSet<>();
+        private final CompletableFuture<String> fileId = new CompletableFuture<>();
+        private final Function<List<PaymentPositionModel>, String> uploader;
+        private ScheduledFuture<?> windowEnd;
+        private boolean accepting = true;
+        private boolean flushed = false;
+
+        private Batch(Function<List<PaymentPositionModel>, String> uploader) {
+            this.uploader = uploader;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger count = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "upload-coalescer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null)
+            scheduler.shutdown();
+    }
+
+    public boolean accepts(UploadOperation uploadOperation, int positions) {
+        return enabled && uploadOperation != UploadOperation.DELETE && positions <= maxRequestPositions;
+    }
+
+    /**
+     * @param uploader uploads the combined payment positions and returns the fileId of the combined upload,
+     *                 the one of the request opening the batch is used
+     * @return the {@link CoalescedFileId} of the request, completed once the batch is uploaded, exceptionally if it failed
+     */
+    public CompletableFuture<String> submit(String broker, String organizationFiscalCode, ServiceType serviceType, UploadOperation uploadOperation,
+                         List<PaymentPositionModel> paymentPositions, Function<List<PaymentPositionModel>, String> uploader) {
+        String key = String.join("|", broker, organizationFiscalCode, serviceType.name(), uploadOperation.name());
+        while (true) {
+            Batch batch = batches.computeIfAbsent(key, k -> new Batch(uploader));
+            int offset;
+            synchronized (batch) {
+                if (!batch.accepting)
+                    continue;
+                // the same IUPD twice in a combined upload would mix up the outcomes of the two requests
+                if (!batch.positions.isEmpty() && paymentPositions.stream().anyMatch(p -> batch.iupds.contains(p.getIupd()))) {
+                    seal(key, batch);
+                    continue;
+                }
+                offset = batch.positions.size();
+                batch.positions.addAll(paymentPositions);
+                paymentPositions.forEach(p -> batch.iupds.add(p.getIupd()));
+                if (offset == 0)
+                    batch.windowEnd = scheduler.schedule(() -> flush(key, batch), windowMillis, TimeUnit.MILLISECONDS);
+                if (batch.positions.size() >= maxBatchPositions)
+                    seal(key, batch);
+            }
+            return batch.fileId.thenApply(fileId -> CoalescedFileId.format(fileId, offset, paymentPositions.size()));
+        }
+    }
+
+    private void flush(String key, Batch batch) {
+        List<PaymentPositionModel> positions;
+        synchronized (batch) {
+            if (batch.flushed)
+                return;
+            batch.flushed = true;
+            close(key, batch);
+            batch.windowEnd.cancel(false);
+            positions = List.copyOf(batch.positions);
+        }
+        log.debug("[UploadCoalescer@flush] Uploading {} coalesced payment positions for {}", positions.size(), key);
+        try {
+            batch.fileId.complete(batch.uploader.apply(positions));
+        } catch (RuntimeException e) {
+            batch.fileId.completeExceptionally(e);
+        }
+    }
+
+    // must be called holding the batch lock: the batch is flushed without waiting for the end of the window
+    private void seal(String key, Batch batch) {
+        if (batch.accepting) {
+            close(key, batch);
+            scheduler.execute(() -> flush(key, batch));
+        }
+    }
+
+    // must be called holding the batch lock
+    private void close(String key, Batch batch) {
+        batch.accepting = false;
+        batches.remove(key, batch);
+    }
+}
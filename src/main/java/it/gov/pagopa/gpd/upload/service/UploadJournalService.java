@@ -0,0 +1,244 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
+import it.gov.pagopa.gpd.upload.utils.UploadJournal;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Absorbs Blob Storage and Cosmos throttling bursts: an accepted upload is appended to the local {@link UploadJournal}
+ * and acknowledged, while the drainer persists its input blob and Status retrying with exponential backoff.
+ * <p>
+ * The Status is created right away when possible, so the upload is visible immediately unless Cosmos is throttling.
+ * Records left in the journal by a restart are replayed on startup with the same fileId. A record rejected by the
+ * storage, or still failing after the maximum number of attempts, is moved aside to the dead-letter file.
+ */
+@Singleton
+@Slf4j
+public class UploadJournalService {
+    // Cosmos and Blob Storage answer these when throttling or temporarily unavailable
+    private static final Set<Integer> RETRYABLE_STATUS = Set.of(
+            HttpStatus.REQUEST_TIMEOUT.getCode(),
+            HttpStatus.TOO_MANY_REQUESTS.getCode(),
+            HttpStatus.INTERNAL_SERVER_ERROR.getCode(),
+            HttpStatus.SERVICE_UNAVAILABLE.getCode());
+
+    @Value("${upload.journal.enabled:false}")
+    private boolean enabled;
+    @Value("${upload.journal.path:upload-journal.bin}")
+    private String path;
+    @Value("${upload.journal.capacity-bytes:536870912}")
+    private int capacityBytes;
+    @Value("${upload.journal.backoff.initial-ms:1000}")
+    private long initialBackoffMillis;
+    @Value("${upload.journal.backoff.max-ms:60000}")
+    private long maxBackoffMillis;
+    @Value("${upload.journal.max-attempts:10}")
+    private int maxAttempts;
+    @Value("${upload.journal.dead-letter-path:upload-journal.dead}")
+    private String deadLetterPath;
+    @Value("${upload.journal.drainer.threads:2}")
+    private int drainerThreads;
+
+    private final BlobStorageRepository blobStorageRepository;
+    private final StatusService statusService;
+    private final MeterRegistry meterRegistry;
+    // offsets of the records being drained, so a record is never drained twice concurrently
+    private final Set<Integer> draining = ConcurrentHashMap.newKeySet();
+    private UploadJournal journal;
+    private ScheduledThreadPoolExecutor drainer;
+
+    @Inject
+    public UploadJournalService(BlobStorageRepository blobStorageRepository, StatusService statusService, MeterRegistry meterRegistry) {
+        this.blobStorageRepository = blobStorageRepository;
+        this.statusService = statusService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled)
+            return;
+        journal = new UploadJournal(Path.of(path), capacityBytes);
+        AtomicInteger threadCount = new AtomicInteger();
+        drainer = new ScheduledThreadPoolExecutor(drainerThreads, runnable -> {
+            // daemon threads: a drain stuck on storage must not prevent the shutdown, the record is replayed anyway
+            Thread thread = new Thread(runnable, "upload-journal-drainer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("gpd.upload.journal.size", journal, UploadJournal::size)
+                .description("Bytes of the local upload journal in use")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("gpd.upload.journal.draining", draining, Set::size)
+                .description("Uploads accepted but not yet persisted to Blob Storage and Cosmos")
+                .register(meterRegistry);
+
+        List<UploadJournal.Entry> recovered = journal.pending();
+        if (!recovered.isEmpty())
+            log.warn("[UploadJournalService@init] Replaying {} uploads not persisted before the restart", recovered.size());
+        recovered.forEach(entry -> schedule(entry.getFlags(), entry.getOffset(), 0, 0));
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (!enabled)
+            return;
+        // pending records stay in the journal and are replayed on the next startup
+        drainer.shutdownNow();
+        journal.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Journals the upload input and returns its fileId once durable, persisting it in background.
+     * @throws AppException with status 503 if the journal is full
+     */
+    public String accept(byte[] content, UploadOperation uploadOperation, String broker, String organizationFiscalCode, int totalItem,
+                         List<String> skippedIUPDs, List<String> inputIUPDs, ServiceType serviceType, UploadCancellation cancellation) {
+        String fileId = blobStorageRepository.newFileId(broker, organizationFiscalCode);
+        UploadJournal.Entry entry = UploadJournal.Entry.builder()
+                .fileId(fileId)
+                .broker(broker)
+                .organizationFiscalCode(organizationFiscalCode)
+                .uploadOperation(uploadOperation)
+                .serviceType(serviceType)
+                .totalItem(totalItem)
+                .skippedIUPDs(skippedIUPDs)
+                .inputIUPDs(inputIUPDs)
+                .content(content)
+                .build();
+
+        cancellation.enter(UploadCancellation.Phase.STAGING);
+        int offset;
+        try {
+            offset = journal.append(entry);
+        } catch (IOException e) {
+            log.error("[Error][UploadJournalService@accept] Journal append failed: {}", e.getMessage());
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error", e);
+        }
+        if (offset < 0) {
+            log.warn("[UploadJournalService@accept] Upload {} rejected, the journal is full", fileId);
+            throw new AppException(HttpStatus.SERVICE_UNAVAILABLE, "SERVICE UNAVAILABLE", "Too many uploads waiting to be persisted, retry later");
+        }
+        try {
+            cancellation.commit(fileId);
+        } catch (RuntimeException e) {
+            journal.markPersisted(offset, UploadJournal.PERSISTED);
+            throw e;
+        }
+
+        byte flags = 0;
+        try {
+            statusService.createUploadStatus(organizationFiscalCode, broker, fileId, totalItem, skippedIUPDs, inputIUPDs, serviceType);
+            journal.markPersisted(offset, UploadJournal.STATUS_PERSISTED);
+            flags = UploadJournal.STATUS_PERSISTED;
+        } catch (AppException e) {
+            if (!RETRYABLE_STATUS.contains(e.getHttpStatus().getCode())) {
+                journal.markPersisted(offset, UploadJournal.PERSISTED);
+                throw e;
+            }
+            log.warn("[UploadJournalService@accept] Status of upload {} deferred: {}", fileId, e.getMessage());
+        }
+
+        schedule(flags, offset, 0, 0);
+        return fileId;
+    }
+
+    // only the offset is kept until the drain, the record is read back from the journal
+    private void schedule(byte flags, int offset, int attempt, long delayMillis) {
+        draining.add(offset);
+        drainer.schedule(() -> drain(flags, offset, attempt), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // package-private for testing
+    void drain(byte flags, int offset, int attempt) {
+        UploadJournal.Entry entry = journal.read(offset);
+        try {
+            if ((flags & UploadJournal.BLOB_PERSISTED) == 0) {
+                blobStorageRepository.upload(entry.getBroker(), entry.getOrganizationFiscalCode(), entry.getFileId(),
+                        new ByteArrayInputStream(entry.getContent()), entry.getServiceType(), UploadCancellation.none()).join();
+                journal.markPersisted(offset, UploadJournal.BLOB_PERSISTED);
+                flags |= UploadJournal.BLOB_PERSISTED;
+            }
+            if ((flags & UploadJournal.STATUS_PERSISTED) == 0) {
+                createStatus(entry);
+                journal.markPersisted(offset, UploadJournal.STATUS_PERSISTED);
+            }
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (isRetryable(cause) && attempt + 1 < maxAttempts) {
+                long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt, 20));
+                log.warn("[UploadJournalService@drain] Upload {} not persisted, attempt {}, retrying in {} ms: {}",
+                        entry.getFileId(), attempt + 1, backoff, cause.getMessage());
+                schedule(flags, offset, attempt + 1, backoff);
+                return;
+            }
+            moveAside(entry, flags, attempt + 1, cause);
+        }
+        draining.remove(offset);
+        journal.compact();
+    }
+
+    private static boolean isRetryable(Throwable cause) {
+        return !(cause instanceof AppException appException) || RETRYABLE_STATUS.contains(appException.getHttpStatus().getCode());
+    }
+
+    private void moveAside(UploadJournal.Entry entry, byte flags, int attempts, Throwable cause) {
+        log.error("[Error][UploadJournalService@drain] Upload {} not persisted after {} attempts, moved to {}: {}",
+                entry.getFileId(), attempts, deadLetterPath, cause.getMessage());
+        try {
+            journal.moveAside(entry.getOffset(), Path.of(deadLetterPath));
+        } catch (IOException e) {
+            // the record stays in the journal and is replayed on the next startup
+            log.error("[Error][UploadJournalService@drain] Upload {} not moved aside: {}", entry.getFileId(), e.getMessage());
+            return;
+        }
+        if ((flags & UploadJournal.STATUS_PERSISTED) != 0 && (flags & UploadJournal.BLOB_PERSISTED) == 0) {
+            // the upload would be reported as in progress forever
+            try {
+                statusService.deleteUploadStatus(entry.getOrganizationFiscalCode(), entry.getFileId());
+            } catch (AppException e) {
+                log.error("[Error][UploadJournalService@drain] Status of upload {} not deleted: {}", entry.getFileId(), e.getMessage());
+            }
+        }
+    }
+
+    private void createStatus(UploadJournal.Entry entry) {
+        try {
+            statusService.createUploadStatus(entry.getOrganizationFiscalCode(), entry.getBroker(), entry.getFileId(),
+                    entry.getTotalItem(), entry.getSkippedIUPDs(), entry.getInputIUPDs(), entry.getServiceType());
+        } catch (AppException e) {
+            if (RETRYABLE_STATUS.contains(e.getHttpStatus().getCode()))
+                throw e;
+            // retrying a rejected Status would block the journal forever
+            log.error("[Error][UploadJournalService@drain] Status of upload {} rejected: {}", entry.getFileId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs upload processing on separate worker pools chosen by file size, so that small files
+ * are not queued behind large ones. Each lane has a bounded queue: when it is full the upload is rejected.
+ */
+@Singleton
+@Slf4j
+public class UploadLaneExecutor {
+    public enum Lane {
+        SMALL, MEDIUM, LARGE
+    }
+
+    @Value("${upload.lanes.small.max-bytes:1048576}")
+    private long smallMaxBytes;
+    @Value("${upload.lanes.medium.max-bytes:20971520}")
+    private long mediumMaxBytes;
+    @Value("${upload.lanes.small.workers:4}")
+    private int smallWorkers;
+    @Value("${upload.lanes.small.queue:16}")
+    private int smallQueue;
+    @Value("${upload.lanes.medium.workers:2}")
+    private int mediumWorkers;
+    @Value("${upload.lanes.medium.queue:8}")
+    private int mediumQueue;
+    @Value("${upload.lanes.large.workers:2}")
+    private int largeWorkers;
+    @Value("${upload.lanes.large.queue:4}")
+    private int largeQueue;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Lane, ThreadPoolExecutor> executors = new EnumMap<>(Lane.class);
+    private final Map<Lane, Timer> queueTimers = new EnumMap<>(Lane.class);
+    private final Map<Lane, Timer> serviceTimers = new EnumMap<>(Lane.class);
+
+    @Inject
+    public UploadLaneExecutor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        createLane(Lane.SMALL, smallWorkers, smallQueue);
+        createLane(Lane.MEDIUM, mediumWorkers, mediumQueue);
+        createLane(Lane.LARGE, largeWorkers, largeQueue);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(ThreadPoolExecutor::shutdown);
+    }
+
+    public Lane classify(long sizeBytes) {
+        if (sizeBytes <= smallMaxBytes)
+            return Lane.SMALL;
+        if (sizeBytes <= mediumMaxBytes)
+            return Lane.MEDIUM;
+        return Lane.LARGE;
+    }
+
+    /**
+     * Runs the task on the lane matching the given size, without waiting for it: the request thread is released
+     * while the upload is queued or processed.
+     * @return the result of the task, completed exceptionally with its failure
+     * @throws AppException with status 429 if the lane queue is full
+     */
+    public <T> CompletableFuture<T> submit(long sizeBytes, Supplier<T> task) {
+        Lane lane = classify(sizeBytes);
+        long enqueuedAt = System.nanoTime();
+
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                queueTimers.get(lane).record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                return serviceTimers.get(lane).record(task);
+            }, executors.get(lane));
+        } catch (RejectedExecutionException e) {
+            log.warn("[UploadLaneExecutor@submit] Upload of {} bytes rejected, {} lane is full", sizeBytes, lane);
+            throw new AppException(HttpStatus.TOO_MANY_REQUESTS, "TOO MANY UPLOADS",
+                    String.format("Too many %s uploads in progress, retry later", lane.name().toLowerCase()));
+        }
+    }
+
+    private void createLane(Lane lane, int workers, int queueCapacity) {
+        String name = lane.name().toLowerCase();
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "upload-lane-" + name + "-" + threadCount.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        executors.put(lane, executor);
+
+        queueTimers.put(lane, Timer.builder("gpd.upload.lane.queue")
+                .description("Time spent by an upload waiting for a lane worker")
+                .tag("lane", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+        serviceTimers.put(lane, Timer.builder("gpd.upload.lane.service")
+                .description("Time spent processing an upload on a lane worker")
+                .tag("lane", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+        Gauge.builder("gpd.upload.lane.queue.size", executor, e -> e.getQueue().size())
+                .description("Uploads waiting for a lane worker")
+                .tag("lane", name)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,226 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.ChunkRangeDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadSessionDTO;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository.ReceivedRange;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository.SessionBlob;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository.StagedChunk;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Resumable upload of a ZIP file in chunks: the client creates a session declaring the file size, sends the chunks
+ * with their offset (in any order, sending again the lost ones at the same offset) and finalizes the session once
+ * every byte was received. Each chunk is staged as a block of the archive blob of the upload, so at finalize the
+ * blocks are only committed and the file is processed as the same file uploaded as multipart.
+ * <p>
+ * The received ranges are tracked in the session descriptor, the staged blocks are listed only at finalize.
+ * The session ends once its file is accepted for processing: after a failed finalize it can be finalized again,
+ * also sending again some chunks. Staged blocks never committed are discarded by the storage after a week.
+ */
+@Singleton
+@Slf4j
+public class UploadSessionService {
+    private static final Pattern SESSION_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,200}");
+    private static final int SESSION_UPDATE_ATTEMPTS = 5;
+
+    @Value("${zip.content.size}")
+    private long maxSize;
+    @Value("${upload.session.max-chunk-bytes:8388608}")
+    private int maxChunkSize;
+
+    private final BlobStorageRepository blobStorageRepository;
+    private final BlobService blobService;
+    private final AsyncUploadService asyncUploadService;
+    private final UploadLaneExecutor uploadLaneExecutor;
+    private final StatusService statusService;
+    private final AdmissionService admissionService;
+
+    @Inject
+    public UploadSessionService(BlobStorageRepository blobStorageRepository,
+                                BlobService blobService,
+                                AsyncUploadService asyncUploadService,
+                                UploadLaneExecutor uploadLaneExecutor,
+                                StatusService statusService,
+                                AdmissionService admissionService) {
+        this.blobStorageRepository = blobStorageRepository;
+        this.blobService = blobService;
+        this.asyncUploadService = asyncUploadService;
+        this.uploadLaneExecutor = uploadLaneExecutor;
+        this.statusService = statusService;
+        this.admissionService = admissionService;
+    }
+
+    public UploadSessionDTO create(String broker, String organizationFiscalCode, long size, ServiceType serviceType) {
+        if (size > maxSize) {
+            log.error("[Error][UploadSessionService@create] Session of {} bytes too large", size);
+            throw new AppException(HttpStatus.REQUEST_ENTITY_TOO_LARGE, "FILE TOO LARGE",
+                    String.format("The file size of %d bytes exceeds the maximum file size of %d bytes", size, maxSize));
+        }
+        String sessionId = blobStorageRepository.newFileId(broker, organizationFiscalCode);
+        blobStorageRepository.createSession(broker, organizationFiscalCode, sessionId, size, serviceType);
+        return toDTO(sessionId, size, List.of());
+    }
+
+    public UploadSessionDTO get(String broker, String organizationFiscalCode, String sessionId) {
+        SessionBlob session = getSession(broker, organizationFiscalCode, sessionId);
+        return toDTO(sessionId, session.getSize(), session.getReceived());
+    }
+
+    public UploadSessionDTO putChunk(String broker, String organizationFiscalCode, String sessionId, long offset, byte[] chunk) {
+        SessionBlob session = getSession(broker, organizationFiscalCode, sessionId);
+        if (chunk == null || chunk.length == 0 || chunk.length > maxChunkSize)
+            throw invalidChunk(String.format("the chunk size must be between 1 and %d bytes", maxChunkSize));
+        if (offset < 0 || offset + chunk.length > session.getSize())
+            throw invalidChunk(String.format("the chunk at offset %d of %d bytes exceeds the file size of %d bytes", offset, chunk.length, session.getSize()));
+
+        blobStorageRepository.stageChunk(broker, organizationFiscalCode, sessionId, offset, chunk);
+
+        // chunks of the same session may be received concurrently
+        for (int attempt = 0; attempt < SESSION_UPDATE_ATTEMPTS; attempt++) {
+            List<ReceivedRange> received = merge(session.getReceived(), offset, chunk.length);
+            if (received.equals(session.getReceived())
+                    || blobStorageRepository.updateSession(broker, organizationFiscalCode, sessionId, session, received))
+                return toDTO(sessionId, session.getSize(), received);
+            session = getSession(broker, organizationFiscalCode, sessionId);
+        }
+        log.error("[Error][UploadSessionService@putChunk] Concurrent updates of session {}", sessionId);
+        throw new AppException(HttpStatus.TOO_MANY_REQUESTS, "SESSION BUSY", "Too many chunks received at the same time, send the chunk again");
+    }
+
+    /**
+     * Commits the received chunks as archive of the upload and processes it, ending the session once accepted.
+     * @return the fileId of the upload, the session id in asynchronous mode, else the fileId the archive was processed
+     * into, completed once the file is processed
+     * @throws AppException with status 409 if some bytes of the file were not received
+     */
+    public CompletableFuture<Finalized> finalizeSession(String broker, String organizationFiscalCode, String sessionId, UploadOperation uploadOperation, UploadCancellation cancellation) {
+        SessionBlob session = getSession(broker, organizationFiscalCode, sessionId);
+        List<String> blockIds = contiguousBlocks(session.getSize(), blobStorageRepository.listStagedChunks(broker, organizationFiscalCode, sessionId));
+        if (blockIds == null) {
+            log.error("[Error][UploadSessionService@finalize] Session {} incomplete", sessionId);
+            throw new AppException(HttpStatus.CONFLICT, "UPLOAD INCOMPLETE",
+                    "Some chunks of the file were not received, check the received ranges of the session");
+        }
+
+        cancellation.enter(UploadCancellation.Phase.STAGING);
+        blobStorageRepository.commitSession(broker, organizationFiscalCode, sessionId, blockIds);
+        if (asyncUploadService.isEnabled()) {
+            String fileId;
+            try {
+                fileId = asyncUploadService.acceptArchive(sessionId, broker, organizationFiscalCode, uploadOperation, session.getServiceType());
+            } catch (RuntimeException e) {
+                // the failed Status would prevent finalizing the session again with the same fileId
+                statusService.deleteUploadStatus(organizationFiscalCode, sessionId);
+                throw e;
+            }
+            // the archive now belongs to the accepted upload
+            blobStorageRepository.deleteSession(broker, organizationFiscalCode, sessionId);
+            return CompletableFuture.completedFuture(new Finalized(fileId, session.getServiceType()));
+        }
+
+        // admitted by the size declared by the session, the finalize request having no body
+        return admissionService.admit(session.getSize(), () -> uploadLaneExecutor.submit(session.getSize(),
+                                () -> blobStorageRepository.downloadArchive(broker, organizationFiscalCode, sessionId)
+                                        .map(archive -> blobService.processArchive(broker, organizationFiscalCode, uploadOperation, sessionId + ".zip",
+                                                archive.toStream(), session.getServiceType(), cancellation))
+                                        .orElseThrow(() -> sessionNotFound(sessionId)))
+                        .thenCompose(Function.identity()))
+                .thenApply(fileId -> {
+                    // on failure the session and its archive are kept, so it can be finalized again
+                    blobStorageRepository.deleteSession(broker, organizationFiscalCode, sessionId);
+                    blobStorageRepository.deleteArchive(broker, organizationFiscalCode, sessionId);
+                    return new Finalized(fileId, session.getServiceType());
+                });
+    }
+
+    private SessionBlob getSession(String broker, String organizationFiscalCode, String sessionId) {
+        if (sessionId == null || !SESSION_ID_PATTERN.matcher(sessionId).matches())
+            throw sessionNotFound(sessionId);
+        return blobStorageRepository.getSession(broker, organizationFiscalCode, sessionId)
+                .orElseThrow(() -> sessionNotFound(sessionId));
+    }
+
+    /*
+     * The chunks covering the file from the first to the last byte, null if some bytes are missing.
+     */
+    private static List<String> contiguousBlocks(long size, List<StagedChunk> chunks) {
+        Map<Long, StagedChunk> byOffset = new HashMap<>();
+        chunks.forEach(chunk -> byOffset.put(chunk.getOffset(), chunk));
+
+        List<String> blockIds = new ArrayList<>();
+        long position = 0;
+        while (position < size) {
+            StagedChunk chunk = byOffset.get(position);
+            if (chunk == null)
+                return null;
+            blockIds.add(chunk.getBlockId());
+            position += chunk.getLength();
+        }
+        return position == size ? blockIds : null;
+    }
+
+    /*
+     * The received ranges with the chunk added, merged with the adjacent or overlapping ones.
+     */
+    private static List<ReceivedRange> merge(List<ReceivedRange> received, long offset, long length) {
+        List<ReceivedRange> merged = new ArrayList<>(received.size() + 1);
+        long start = offset;
+        long end = offset + length;
+        for (ReceivedRange range : received) {
+            long rangeEnd = range.offset() + range.length();
+            if (rangeEnd < start || range.offset() > end) {
+                merged.add(range);
+            } else {
+                start = Math.min(start, range.offset());
+                end = Math.max(end, rangeEnd);
+            }
+        }
+        merged.add(new ReceivedRange(start, end - start));
+        merged.sort(Comparator.comparingLong(ReceivedRange::offset));
+        return merged;
+    }
+
+    // the received ranges are a summary for the client, the staged chunks are checked at finalize
+    private static UploadSessionDTO toDTO(String sessionId, long size, List<ReceivedRange> received) {
+        return UploadSessionDTO.builder()
+                .sessionId(sessionId)
+                .size(size)
+                .receivedRanges(received.stream().map(range -> new ChunkRangeDTO(range.offset(), range.length())).toList())
+                .complete(received.size() == 1 && received.get(0).offset() == 0 && received.get(0).length() == size)
+                .build();
+    }
+
+    private static AppException sessionNotFound(String sessionId) {
+        log.error("[Error][UploadSessionService@getSession] Session {} not found", sessionId);
+        return new AppException(HttpStatus.NOT_FOUND, "SESSION NOT FOUND", "The upload session " + sessionId + " was not found");
+    }
+
+    private static AppException invalidChunk(String detail) {
+        log.error("[Error][UploadSessionService@putChunk] Invalid chunk: {}", detail);
+        return new AppException(HttpStatus.BAD_REQUEST, "INVALID CHUNK", "The chunk is invalid: " + detail);
+    }
+
+    /**
+     * @param serviceType the service type the session was created for
+     */
+    public record Finalized(String fileId, ServiceType serviceType) {
+    }
+}
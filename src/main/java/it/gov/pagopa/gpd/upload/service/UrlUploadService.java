@@ -0,0 +1,107 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Uploads a ZIP file kept by the client in its own blob storage, given its SAS URL, so the payload never passes
+ * through the ingress tier: in asynchronous mode the file is copied server-side, otherwise it is read directly
+ * from the source and processed as the same file uploaded as multipart.
+ * <p>
+ * Only the configured hosts can be read, to avoid the service being used to reach arbitrary endpoints.
+ */
+@Singleton
+@Slf4j
+public class UrlUploadService {
+    @Value("${upload.url.allowed-hosts:}")
+    private List<String> allowedHosts; // host suffixes, e.g. .blob.core.windows.net; empty disables URL uploads
+    @Value("${upload.url.allow-http:false}")
+    private boolean allowHttp; // plain HTTP sources, only meant for local emulators as Azurite
+    @Value("${zip.content.size}")
+    private long maxSize;
+
+    private final BlobStorageRepository blobStorageRepository;
+    private final BlobService blobService;
+    private final AsyncUploadService asyncUploadService;
+    private final UploadLaneExecutor uploadLaneExecutor;
+    private final AdmissionService admissionService;
+
+    @Inject
+    public UrlUploadService(BlobStorageRepository blobStorageRepository,
+                            BlobService blobService,
+                            AsyncUploadService asyncUploadService,
+                            UploadLaneExecutor uploadLaneExecutor,
+                            AdmissionService admissionService) {
+        this.blobStorageRepository = blobStorageRepository;
+        this.blobService = blobService;
+        this.asyncUploadService = asyncUploadService;
+        this.uploadLaneExecutor = uploadLaneExecutor;
+        this.admissionService = admissionService;
+    }
+
+    public CompletableFuture<String> upload(String broker, String organizationFiscalCode, UploadOperation uploadOperation, String sourceUrl, ServiceType serviceType, UploadCancellation cancellation) {
+        validate(sourceUrl);
+        BlobStorageRepository.SourceBlob source = blobStorageRepository.getSource(sourceUrl);
+        if (!source.getName().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            log.error("[Error][UrlUploadService@upload] Invalid extension: {}", source.getName());
+            throw new AppException(HttpStatus.BAD_REQUEST, "NOT A ZIP FILE", "Only ZIP files can be uploaded.");
+        }
+        if (source.getSize() > maxSize) {
+            log.error("[Error][UrlUploadService@upload] Source of {} bytes too large", source.getSize());
+            throw new AppException(HttpStatus.REQUEST_ENTITY_TOO_LARGE, "FILE TOO LARGE",
+                    String.format("The file size of %d bytes exceeds the maximum file size of %d bytes", source.getSize(), maxSize));
+        }
+
+        if (asyncUploadService.isEnabled())
+            return CompletableFuture.completedFuture(asyncUploadService.acceptFromUrl(broker, organizationFiscalCode, uploadOperation, sourceUrl, serviceType, cancellation));
+        // admitted by the size of the source, the request body being only its URL
+        return admissionService.admit(source.getSize(), () -> uploadLaneExecutor.submit(source.getSize(), () -> {
+            try (InputStream archive = source.openInputStream()) {
+                return blobService.processArchive(broker, organizationFiscalCode, uploadOperation, source.getName(), archive, serviceType, cancellation);
+            } catch (IOException e) {
+                log.error("[Error][UrlUploadService@upload] " + e.getMessage(), e);
+                throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Error reading the file at the given URL", e);
+            }
+        }).thenCompose(Function.identity()));
+    }
+
+    // package-private for testing
+    void validate(String sourceUrl) {
+        URI uri;
+        try {
+            uri = new URI(sourceUrl);
+        } catch (URISyntaxException | NullPointerException e) {
+            throw invalidUrl("malformed URL");
+        }
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!scheme.equals("https") && !(allowHttp && scheme.equals("http")))
+            throw invalidUrl("unsupported scheme " + scheme);
+        if (uri.getUserInfo() != null)
+            throw invalidUrl("credentials are not allowed in the URL");
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.isEmpty() || allowedHosts.stream().map(h -> h.toLowerCase(Locale.ROOT)).noneMatch(h -> h.startsWith(".") ? host.endsWith(h) : host.equals(h)))
+            throw invalidUrl("host " + host + " is not allowed");
+    }
+
+    private static AppException invalidUrl(String detail) {
+        log.error("[Error][UrlUploadService@validate] Invalid URL: {}", detail);
+        return new AppException(HttpStatus.BAD_REQUEST, "INVALID URL", "The file URL is invalid: " + detail);
+    }
+}
@@ -0,0 +1,429 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import com.azure.storage.queue.models.QueueMessageItem;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.scheduling.annotation.Scheduled;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.WebhookMessage;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusDTO;
+import it.gov.pagopa.gpd.upload.model.v2.WebhookDTO;
+import it.gov.pagopa.gpd.upload.model.v2.WebhookNotificationDTO;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.repository.WebhookQueueRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Completion webhooks: instead of polling the status, a broker registers a URL, for all its uploads or for a
+ * single one, that is notified with a signed POST once the upload has ended.
+ * <p>
+ * Each watched upload is a message of the webhook queue, checked every check interval until the upload ends: the
+ * ended uploads of the same URL received together are notified in a single request, the failed deliveries are
+ * retried with exponential backoff. The deliveries run on a bounded pool, so slow receivers can't pile up requests.
+ * <p>
+ * The body is signed with the secret of the broker: {@value #SIGNATURE_HEADER} is the hex HMAC-SHA256 of
+ * {@code <timestamp>.<body>}, where the timestamp, in epoch seconds, is sent as {@value #SIGNATURE_TIMESTAMP_HEADER}.
+ */
+@Singleton
+@Slf4j
+public class WebhookService {
+    public static final String SIGNATURE_HEADER = "X-Signature";
+    public static final String SIGNATURE_TIMESTAMP_HEADER = "X-Signature-Timestamp";
+    private static final String SIGNATURE_ALGORITHM = "HmacSHA256";
+    private static final int SECRET_BYTES = 32;
+
+    private final BlobStorageRepository blobStorageRepository;
+    private final WebhookQueueRepository webhookQueueRepository;
+    private final StatusService statusService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    @Value("${upload.webhook.enabled:false}")
+    private boolean enabled;
+    @Value("${upload.webhook.allow-http:false}")
+    private boolean allowHttp; // plain HTTP receivers, only meant for local testing
+    @Value("${upload.webhook.allow-private:false}")
+    private boolean allowPrivate; // receivers on loopback or private networks, only meant for local testing
+    @Value("${upload.webhook.watch-duration:24h}")
+    private Duration watchDuration;
+    @Value("${upload.webhook.registration-ttl:60s}")
+    private Duration registrationTtl;
+    @Value("${upload.webhook.worker.enabled:true}")
+    private boolean workerEnabled;
+    @Value("${upload.webhook.worker.batch-size:32}")
+    private int batchSize;
+    @Value("${upload.webhook.worker.check-interval:5s}")
+    private Duration checkInterval;
+    @Value("${upload.webhook.worker.concurrency:4}")
+    private int concurrency;
+    @Value("${upload.webhook.worker.timeout:10s}")
+    private Duration timeout;
+    @Value("${upload.webhook.worker.max-attempts:8}")
+    private int maxAttempts;
+    @Value("${upload.webhook.worker.backoff:10s}")
+    private Duration backoff;
+    @Value("${upload.webhook.worker.max-backoff:1h}")
+    private Duration maxBackoff;
+
+    private Cache<String, Optional<WebhookDTO>> registrations;
+    private ExecutorService deliveryExecutor;
+    private HttpClient httpClient;
+
+    @Inject
+    public WebhookService(BlobStorageRepository blobStorageRepository,
+                          WebhookQueueRepository webhookQueueRepository,
+                          StatusService statusService) {
+        this.blobStorageRepository = blobStorageRepository;
+        this.webhookQueueRepository = webhookQueueRepository;
+        this.statusService = statusService;
+    }
+
+    @PostConstruct
+    public void init() {
+        registrations = Caffeine.newBuilder()
+                .expireAfterWrite(registrationTtl)
+                .maximumSize(10000)
+                .build();
+        AtomicInteger count = new AtomicInteger();
+        deliveryExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "webhook-delivery-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (deliveryExecutor != null)
+            deliveryExecutor.shutdownNow();
+    }
+
+    /**
+     * Registers the URL notified of the end of every upload of the broker accepted from now on.
+     * @return the registration, with the secret signing the notifications
+     */
+    public WebhookDTO registerBroker(String broker, String url) {
+        checkEnabled();
+        validate(url);
+        WebhookDTO registration = WebhookDTO.builder()
+                .url(url)
+                .secret(getRegistration(broker).map(WebhookDTO::getSecret).orElseGet(this::newSecret))
+                .build();
+        saveRegistration(broker, registration);
+        return registration;
+    }
+
+    public void unregisterBroker(String broker) {
+        checkEnabled();
+        Optional<WebhookDTO> registration = getRegistration(broker);
+        if (registration.isEmpty() || registration.get().getUrl() == null)
+            throw new AppException(HttpStatus.NOT_FOUND, "WEBHOOK NOT FOUND", "No webhook is registered for the broker " + broker);
+        // the secret is kept, it still signs the notifications of the single uploads
+        saveRegistration(broker, registration.get().toBuilder().url(null).build());
+    }
+
+    /**
+     * Registers the URL notified of the end of an upload already accepted.
+     * @return the registration, with the secret of the broker signing the notifications
+     */
+    public WebhookDTO registerUpload(String broker, String organizationFiscalCode, String fileId, ServiceType serviceType, String url) {
+        checkEnabled();
+        validate(url);
+        // not found if the upload doesn't exist
+        statusService.getUploadStatusV2(broker, fileId, organizationFiscalCode, serviceType);
+        Optional<WebhookDTO> registration = getRegistration(broker);
+        String secret = registration.map(WebhookDTO::getSecret).orElseGet(this::newSecret);
+        if (registration.isEmpty())
+            saveRegistration(broker, WebhookDTO.builder().secret(secret).build());
+        enqueue(broker, organizationFiscalCode, fileId, serviceType, url);
+        return WebhookDTO.builder().url(url).secret(secret).build();
+    }
+
+    /**
+     * Watches the upload just accepted if the broker registered its webhook: the failures are only logged, the
+     * upload was accepted anyway.
+     */
+    public void onAccepted(String broker, String organizationFiscalCode, String fileId, ServiceType serviceType) {
+        if (!enabled)
+            return;
+        try {
+            getRegistration(broker)
+                    .map(WebhookDTO::getUrl)
+                    .ifPresent(url -> enqueue(broker, organizationFiscalCode, fileId, serviceType, url));
+        } catch (RuntimeException e) {
+            log.error("[Error][WebhookService@onAccepted] Webhook of upload {} not registered: {}", fileId, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelay = "${upload.webhook.worker.poll-interval:1s}")
+    public void poll() {
+        if (!enabled || !workerEnabled)
+            return;
+
+        Map<Target, List<Delivery>> ended = new LinkedHashMap<>();
+        // hidden for long enough to be delivered before being received again
+        Duration visibilityTimeout = timeout.multipliedBy(2).plus(checkInterval);
+        for (QueueMessageItem item : webhookQueueRepository.receive(batchSize, visibilityTimeout)) {
+            WebhookMessage message;
+            try {
+                message = objectMapper.readValue(item.getBody().toString(), WebhookMessage.class);
+            } catch (JsonProcessingException e) {
+                log.error("[Error][WebhookService@poll] Discarded invalid message {}: {}", item.getMessageId(), e.getMessage());
+                webhookQueueRepository.delete(item);
+                continue;
+            }
+            try {
+                UploadStatusDTO status = statusService.getUploadStatusV2(message.getBrokerCode(), message.getFileId(), message.getOrganizationFiscalCode(), message.getServiceType());
+                if (StatusWatcher.isEnded(status))
+                    ended.computeIfAbsent(new Target(message.getBrokerCode(), message.getUrl()), k -> new ArrayList<>())
+                            .add(new Delivery(item, message, status));
+                else if (!expired(item, message))
+                    webhookQueueRepository.update(item, item.getBody().toString(), checkInterval);
+            } catch (RuntimeException e) {
+                // e.g. the Status of a journaled upload not yet persisted: checked again until the watch expires
+                log.debug("[WebhookService@poll] Status of {} not available: {}", message.getFileId(), e.getMessage());
+                expired(item, message);
+            }
+        }
+
+        CompletableFuture.allOf(ended.entrySet().stream()
+                .map(entry -> CompletableFuture.runAsync(() -> deliver(entry.getKey(), entry.getValue()), deliveryExecutor))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    private boolean expired(QueueMessageItem item, WebhookMessage message) {
+        if (System.currentTimeMillis() < message.getWatchUntil())
+            return false;
+        log.warn("[WebhookService@poll] Upload {} not ended within the watch, its webhook is discarded", message.getFileId());
+        webhookQueueRepository.delete(item);
+        return true;
+    }
+
+    private void deliver(Target target, List<Delivery> deliveries) {
+        try {
+            Optional<String> secret = getRegistration(target.broker()).map(WebhookDTO::getSecret);
+            if (secret.isEmpty()) {
+                log.warn("[WebhookService@deliver] Broker {} has no webhook secret, {} notifications discarded", target.broker(), deliveries.size());
+                deliveries.forEach(delivery -> webhookQueueRepository.delete(delivery.item()));
+                return;
+            }
+            List<WebhookNotificationDTO> notifications = deliveries.stream().map(delivery -> toNotification(delivery.message(), delivery.status())).toList();
+            if (send(target.url(), secret.get(), objectMapper.writeValueAsString(notifications))) {
+                deliveries.forEach(delivery -> webhookQueueRepository.delete(delivery.item()));
+                return;
+            }
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.error("[Error][WebhookService@deliver] Delivery to {} failed: {}", target.url(), e.getMessage());
+        }
+        deliveries.forEach(this::retry);
+    }
+
+    private boolean send(String url, String secret, String body) {
+        try {
+            checkPublicHost(URI.create(url).getHost());
+        } catch (AppException e) {
+            log.warn("[WebhookService@send] Webhook {} not delivered: {}", url, e.getMessage());
+            return false;
+        }
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .header(SIGNATURE_TIMESTAMP_HEADER, timestamp)
+                .header(SIGNATURE_HEADER, sign(secret, timestamp + "." + body))
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+        try {
+            int statusCode = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (statusCode / 100 == 2)
+                return true;
+            log.warn("[WebhookService@send] Webhook {} answered {}", url, statusCode);
+        } catch (IOException e) {
+            log.warn("[WebhookService@send] Webhook {} not reachable: {}", url, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private void retry(Delivery delivery) {
+        try {
+            WebhookMessage message = delivery.message().toBuilder().attempts(delivery.message().getAttempts() + 1).build();
+            if (message.getAttempts() >= maxAttempts) {
+                log.error("[Error][WebhookService@retry] Webhook of upload {} not delivered after {} attempts", message.getFileId(), message.getAttempts());
+                webhookQueueRepository.delete(delivery.item());
+                return;
+            }
+            Duration delay = backoff.multipliedBy(1L << Math.min(message.getAttempts() - 1, 20));
+            webhookQueueRepository.update(delivery.item(), serialize(message), delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay);
+        } catch (RuntimeException e) {
+            // delivered again when its visibility timeout expires
+            log.error("[Error][WebhookService@retry] Retry of {} not scheduled: {}", delivery.message().getFileId(), e.getMessage());
+        }
+    }
+
+    private void enqueue(String broker, String organizationFiscalCode, String fileId, ServiceType serviceType, String url) {
+        webhookQueueRepository.send(serialize(WebhookMessage.builder()
+                .fileId(fileId)
+                .brokerCode(broker)
+                .organizationFiscalCode(organizationFiscalCode)
+                .serviceType(serviceType)
+                .url(url)
+                .watchUntil(System.currentTimeMillis() + watchDuration.toMillis())
+                .build()));
+        log.debug("[WebhookService@enqueue] Upload {} watched for its webhook", fileId);
+    }
+
+    private Optional<WebhookDTO> getRegistration(String broker) {
+        return registrations.get(broker, key -> blobStorageRepository.downloadWebhook(key).map(content -> {
+            try {
+                return objectMapper.readValue(content.toBytes(), WebhookDTO.class);
+            } catch (IOException e) {
+                log.error("[Error][WebhookService@getRegistration] Invalid webhook of broker {}: {}", key, e.getMessage());
+                return null;
+            }
+        }));
+    }
+
+    private void saveRegistration(String broker, WebhookDTO registration) {
+        try {
+            blobStorageRepository.uploadWebhook(broker, objectMapper.writeValueAsBytes(registration));
+        } catch (JsonProcessingException e) {
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error", e);
+        }
+        registrations.put(broker, Optional.of(registration));
+    }
+
+    private String newSecret() {
+        byte[] secret = new byte[SECRET_BYTES];
+        secureRandom.nextBytes(secret);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+    }
+
+    static String sign(String secret, String payload) {
+        try {
+            Mac mac = Mac.getInstance(SIGNATURE_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), SIGNATURE_ALGORITHM));
+            return HexFormat.of().formatHex(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(SIGNATURE_ALGORITHM + " not available", e);
+        }
+    }
+
+    private static WebhookNotificationDTO toNotification(WebhookMessage message, UploadStatusDTO status) {
+        return WebhookNotificationDTO.builder()
+                .fileId(message.getFileId())
+                .brokerCode(message.getBrokerCode())
+                .organizationFiscalCode(message.getOrganizationFiscalCode())
+                .serviceType(message.getServiceType())
+                .operationStatus(status.getOperationStatus())
+                .processedItem(status.getProcessedItem())
+                .submittedItem(status.getSubmittedItem())
+                .build();
+    }
+
+    private void checkEnabled() {
+        if (!enabled)
+            throw new AppException(HttpStatus.NOT_IMPLEMENTED, "WEBHOOKS NOT ENABLED", "Completion webhooks are not enabled");
+    }
+
+    // package-private for testing
+    void validate(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException | NullPointerException e) {
+            throw invalidUrl("malformed URL");
+        }
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!scheme.equals("https") && !(allowHttp && scheme.equals("http")))
+            throw invalidUrl("unsupported scheme " + scheme);
+        if (uri.getUserInfo() != null)
+            throw invalidUrl("credentials are not allowed in the URL");
+        if (uri.getHost() == null || uri.getHost().isEmpty())
+            throw invalidUrl("missing host");
+        checkPublicHost(uri.getHost());
+    }
+
+    /*
+     * The service must not be usable to reach its own network: checked at registration and again before each
+     * delivery, as the host may resolve differently in the meantime.
+     */
+    private void checkPublicHost(String host) {
+        if (allowPrivate)
+            return;
+        InetAddress[] addresses;
+        try {
+            addresses = InetAddress.getAllByName(host);
+        } catch (UnknownHostException e) {
+            throw invalidUrl("host " + host + " can't be resolved");
+        }
+        for (InetAddress address : addresses) {
+            // IPv6 unique local addresses, fc00::/7, are not reported as site local
+            boolean uniqueLocal = address instanceof Inet6Address && (address.getAddress()[0] & 0xfe) == 0xfc;
+            if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                    || address.isSiteLocalAddress() || address.isMulticastAddress() || uniqueLocal)
+                throw invalidUrl("host " + host + " resolves to the not public address " + address.getHostAddress());
+        }
+    }
+
+    private String serialize(WebhookMessage message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error", e);
+        }
+    }
+
+    private static AppException invalidUrl(String detail) {
+        log.error("[Error][WebhookService@validate] Invalid webhook URL: {}", detail);
+        return new AppException(HttpStatus.BAD_REQUEST, "INVALID URL", "The webhook URL is invalid: " + detail);
+    }
+
+    private record Target(String broker, String url) {
+    }
+
+    private record Delivery(QueueMessageItem item, WebhookMessage message, UploadStatusDTO status) {
+    }
+}
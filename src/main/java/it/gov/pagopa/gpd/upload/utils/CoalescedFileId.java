@@ -0,0 +1,43 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import lombok.Getter;
+
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Identifier returned for an upload merged into a combined one: {@code <combined fileId>-<offset>-<count>},
+ * where offset and count locate the request payment positions in the combined input.
+ */
+@Getter
+public final class CoalescedFileId {
+    // plain fileIds always end with the random part, never with "-<number>-<number>"
+    private static final Pattern PATTERN = Pattern.compile("^(.+)-(\\d{1,9})-(\\d{1,9})$");
+
+    private final String fileId;
+    private final int offset;
+    private final int count;
+
+    private CoalescedFileId(String fileId, int offset, int count) {
+        this.fileId = fileId;
+        this.offset = offset;
+        this.count = count;
+    }
+
+    public static String format(String fileId, int offset, int count) {
+        return fileId + "-" + offset + "-" + count;
+    }
+
+    public static Optional<CoalescedFileId> parse(String id) {
+        Matcher matcher = PATTERN.matcher(id);
+        if (!matcher.matches())
+            return Optional.empty();
+        return Optional.of(new CoalescedFileId(matcher.group(1), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3))));
+    }
+
+    @Override
+    public String toString() {
+        return format(fileId, offset, count);
+    }
+}
@@ -4,8 +4,14 @@ public class Constants {
     private Constants(){}
 
     public static final String SERVICE_TYPE_METADATA = "serviceType";
+    public static final String SESSION_SIZE_METADATA = "size";
     public static final String INPUT_DIRECTORY = "input";
     public static final String OUTPUT_DIRECTORY = "output";
+    public static final String INDEX_DIRECTORY = "index";
+    public static final String ARCHIVE_DIRECTORY = "archive";
+    public static final String SESSION_DIRECTORY = "session";
+    public static final String POSITION_HASH_INDEX = "position-hashes-%s.bin"; // one index per service type
+    public static final String WEBHOOK_BLOB = "webhook.json";
 
     private static final String TAB = "&nbsp;&nbsp;&nbsp;&nbsp;";
 
@@ -82,4 +88,15 @@ public class Constants {
             TAB + "]<br>" +
             "}<br>" +
             "<br>";
+
+    public static final String BROKER_FILE_DESCRIPTION = "ZIP File to be uploaded containing a JSON according to <pre><br>" +
+            "{<br>" +
+            TAB + "\"organizations\": [<br>" +
+            TAB + "  {<br>" +
+            TAB + TAB + "\"organizationFiscalCode\": \"string\",<br>" +
+            TAB + TAB + "\"paymentPositions\": [ ... ]<br>" +
+            TAB + "  }<br>" +
+            TAB + "]<br>" +
+            "}<br>" +
+            "<br>where each payment position is as in the organization-level upload.";
 }
@@ -0,0 +1,83 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.model.v1.UploadReport;
+import it.gov.pagopa.gpd.upload.model.v1.UploadStatus;
+import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Strong ETags of the status and report responses, so that the pollers can send them back as If-None-Match and get
+ * 304 while nothing changed. The tag hashes the progress of the upload (counters, start and end) instead of the body:
+ * the IUPDs of a report are only added along with the counters, so hashing the counters is enough.
+ * <p>
+ * A report read from its blob, written once the upload ended, is tagged by the version of the blob instead, whether
+ * it is streamed or read into the cache: a large blob is sent without being read before, so its counters are unknown.
+ */
+public final class EntityTag {
+    private EntityTag() {
+    }
+
+    public static String of(UploadStatus status) {
+        return of("status-v1", status.getUploadID(), status.getProcessedItem(), status.getSubmittedItem(), status.getStartTime());
+    }
+
+    public static String of(UploadStatusDTO status) {
+        return of("status-v2", status.getFileId(), status.getProcessedItem(), status.getSubmittedItem(), status.getStartTime(),
+                status.getOperationStatus());
+    }
+
+    public static String of(UploadReport report) {
+        return of("report-v1", report.uploadID, report.processedItem, report.submittedItem, report.startTime, report.endTime);
+    }
+
+    public static String of(UploadReportDTO report) {
+        return of("report-v2", report.getFileId(), report.getProcessedItem(), report.getSubmittedItem(), report.getStartTime(),
+                report.getEndTime());
+    }
+
+    public static String of(ReportStream.Shape shape, String blobETag) {
+        return of(shape == ReportStream.Shape.V1 ? "blob-report-v1" : "blob-report-v2", blobETag);
+    }
+
+    /**
+     * @param ifNoneMatch the If-None-Match header, a list of tags, weak or strong, that are compared weakly as for a GET
+     * @return true if the header lists the tag (the "*" wildcard is not honoured, so a 200 is returned instead)
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null)
+            return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    public static <T> HttpResponse<T> notModified(String etag) {
+        return HttpResponse.<T>status(HttpStatus.NOT_MODIFIED).header(HttpHeaders.ETAG, etag);
+    }
+
+    private static String of(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
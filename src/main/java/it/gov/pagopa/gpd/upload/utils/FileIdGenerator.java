@@ -0,0 +1,88 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ULID-style identifiers of the uploads: 48 bits of epoch milliseconds followed by 80 random bits, encoded as
+ * 26 Crockford base32 characters, so identifiers sort lexicographically by creation time.
+ * <p>
+ * Identifiers generated in the same millisecond (or while the clock moves backwards) increment the random part of
+ * the last one, so they are strictly increasing within the instance. The last identifier is swapped with a CAS
+ * instead of a lock, and the random part comes from {@link ThreadLocalRandom}, so generation is not contended.
+ */
+public final class FileIdGenerator {
+    public static final int LENGTH = 26;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final long RANDOM_HIGH_MASK = 0xFFFFL; // random bits in the most significant long
+
+    private static final AtomicReference<Id> last = new AtomicReference<>(new Id(0, 0));
+
+    private FileIdGenerator() {
+    }
+
+    public static String next() {
+        return next(System.currentTimeMillis());
+    }
+
+    // package-private for testing
+    static String next(long timestamp) {
+        while (true) {
+            Id previous = last.get();
+            Id current = timestamp > previous.timestamp() ? random(timestamp) : previous.increment();
+            if (last.compareAndSet(previous, current))
+                return encode(current.msb, current.lsb);
+        }
+    }
+
+    /**
+     * @return the smallest identifier generated at the given epoch millisecond
+     */
+    public static String lowerBound(long timestamp) {
+        return encode(timestamp << 16, 0L);
+    }
+
+    /**
+     * @return the greatest identifier generated at the given epoch millisecond
+     */
+    public static String upperBound(long timestamp) {
+        return encode(timestamp << 16 | RANDOM_HIGH_MASK, -1L);
+    }
+
+    private static Id random(long timestamp) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new Id(timestamp << 16 | (random.nextLong() & RANDOM_HIGH_MASK), random.nextLong());
+    }
+
+    private static String encode(long msb, long lsb) {
+        // 128 bits in 26 characters of 5 bits, the first one holding the 3 most significant bits
+        char[] chars = new char[LENGTH];
+        long high = msb;
+        long low = lsb;
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (low & 31)];
+            low = (low >>> 5) | (high << 59);
+            high >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    private static final class Id {
+        private final long msb;
+        private final long lsb;
+
+        private Id(long msb, long lsb) {
+            this.msb = msb;
+            this.lsb = lsb;
+        }
+
+        private long timestamp() {
+            return msb >>> 16;
+        }
+
+        // an overflow of the random part carries into the timestamp, still keeping the order
+        private Id increment() {
+            return lsb == -1L ? new Id(msb + 1, 0L) : new Id(msb, lsb + 1);
+        }
+    }
+}
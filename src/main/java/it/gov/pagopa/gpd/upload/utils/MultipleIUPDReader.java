@@ -0,0 +1,94 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.pd.MultipleIUPDModel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming counterpart of {@link MultipleIUPDModel} deserialization and validation, used by the DELETE upload:
+ * the IUPD array is read token by token into a {@link StringArena}, rejecting duplicates and oversized lists
+ * as soon as they are found, and the blob content is written straight from the arena.
+ */
+@Slf4j
+public class MultipleIUPDReader {
+    private static final String IUPDS_FIELD = "paymentPositionIUPDs";
+    private static final int AVERAGE_IUPD_LENGTH = 35;
+
+    private MultipleIUPDReader() {}
+
+    public static StringArena read(JsonFactory jsonFactory, InputStream inputStream) throws IOException {
+        int expectedEntries = Math.min(MultipleIUPDModel.MAX_IUPD, Math.max(16, inputStream.available() / AVERAGE_IUPD_LENGTH));
+        StringArena iupds = null;
+        try (JsonParser parser = jsonFactory.createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw invalidJson("expected a JSON object");
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                if (!IUPDS_FIELD.equals(fieldName) || iupds != null)
+                    throw invalidJson("unexpected field " + fieldName);
+                iupds = readArray(parser, expectedEntries);
+            }
+        }
+
+        if (iupds == null || iupds.size() == 0)
+            throw invalidPositions("the list of payment positions IUPD must contain at least one element");
+        return iupds;
+    }
+
+    public static byte[] write(JsonFactory jsonFactory, UploadOperation uploadOperation, StringArena iupds) throws IOException {
+        return write(jsonFactory, uploadOperation, iupds, 0, iupds.size());
+    }
+
+    public static byte[] write(JsonFactory jsonFactory, UploadOperation uploadOperation, StringArena iupds, int from, int to) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream((to - from) * (AVERAGE_IUPD_LENGTH + 3) + 64);
+        try (JsonGenerator generator = jsonFactory.createGenerator(outputStream)) {
+            generator.writeStartObject();
+            generator.writeStringField("operation", uploadOperation.name());
+            generator.writeNullField("paymentPositions");
+            generator.writeArrayFieldStart(IUPDS_FIELD);
+            iupds.writeTo(generator, from, to);
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static StringArena readArray(JsonParser parser, int expectedEntries) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY)
+            throw invalidPositions("the list of payment positions IUPD is missing");
+
+        StringArena iupds = new StringArena(expectedEntries, expectedEntries * AVERAGE_IUPD_LENGTH);
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.VALUE_STRING)
+                throw invalidJson("the list of payment positions IUPD must contain only strings");
+            if (iupds.size() == MultipleIUPDModel.MAX_IUPD)
+                throw invalidPositions("the list of payment positions IUPD must contain at the most " + MultipleIUPDModel.MAX_IUPD + " elements");
+            if (!iupds.addIfAbsent(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()))
+                throw invalidPositions("there are duplicates in the list: " + parser.getText());
+        }
+        return iupds;
+    }
+
+    private static AppException invalidJson(String detail) {
+        log.error("[Error][MultipleIUPDReader@read] Invalid JSON: {}", detail);
+        return new AppException(HttpStatus.BAD_REQUEST, "INVALID JSON", "Given JSON is invalid for required API payload: " + detail);
+    }
+
+    private static AppException invalidPositions(String detail) {
+        log.error("[Error][MultipleIUPDReader@read] Invalid IUPD list: {}", detail);
+        return new AppException(HttpStatus.BAD_REQUEST, "INVALID DEBT POSITIONS",
+                "Debt positions format is invalid or duplicates were found. Invalid values: [" + detail + "]");
+    }
+}
@@ -0,0 +1,112 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.pd.PaymentPositionModel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the broker-level upload, partitioning the payment positions by organization fiscal code in a single
+ * streaming pass over
+ * <pre>
+ * {"organizations": [{"organizationFiscalCode": "...", "paymentPositions": [...]}, ...]}
+ * </pre>
+ * Positions are bound one at a time, so the whole document tree is never built; an organization listed more
+ * than once gets the positions of all its entries.
+ */
+@Slf4j
+public class OrganizationPositionsReader {
+    private static final String ORGANIZATIONS_FIELD = "organizations";
+    private static final String FISCAL_CODE_FIELD = "organizationFiscalCode";
+    private static final String POSITIONS_FIELD = "paymentPositions";
+    // the fileId is built as <broker>_<organization>_<id>, so codes can't contain the '_' separator
+    private static final Pattern CODE_PATTERN = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+    private OrganizationPositionsReader() {}
+
+    public static Map<String, List<PaymentPositionModel>> read(ObjectMapper objectMapper, InputStream inputStream, int maxOrganizations) throws IOException {
+        Map<String, List<PaymentPositionModel>> partitions = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw invalidJson("expected a JSON object");
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                if (!ORGANIZATIONS_FIELD.equals(fieldName) || partitions != null)
+                    throw invalidJson("unexpected field " + fieldName);
+                partitions = readOrganizations(objectMapper, parser, maxOrganizations);
+            }
+        }
+
+        if (partitions == null || partitions.isEmpty())
+            throw invalidPositions("the list of organizations must contain at least one element");
+        return partitions;
+    }
+
+    private static Map<String, List<PaymentPositionModel>> readOrganizations(ObjectMapper objectMapper, JsonParser parser, int maxOrganizations) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY)
+            throw invalidJson("the list of organizations is missing");
+
+        Map<String, List<PaymentPositionModel>> partitions = new LinkedHashMap<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT)
+                throw invalidJson("the list of organizations must contain only objects");
+
+            String organizationFiscalCode = null;
+            List<PaymentPositionModel> positions = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                if (FISCAL_CODE_FIELD.equals(fieldName)) {
+                    parser.nextToken();
+                    organizationFiscalCode = parser.getValueAsString();
+                } else if (POSITIONS_FIELD.equals(fieldName)) {
+                    readPositions(objectMapper, parser, positions);
+                } else {
+                    throw invalidJson("unexpected field " + fieldName);
+                }
+            }
+
+            if (organizationFiscalCode == null || !CODE_PATTERN.matcher(organizationFiscalCode).matches())
+                throw invalidPositions("invalid organization fiscal code " + organizationFiscalCode);
+            if (!partitions.containsKey(organizationFiscalCode) && partitions.size() == maxOrganizations)
+                throw invalidPositions("the list of organizations must contain at the most " + maxOrganizations + " elements");
+            partitions.computeIfAbsent(organizationFiscalCode, k -> new ArrayList<>()).addAll(positions);
+        }
+        return partitions;
+    }
+
+    private static void readPositions(ObjectMapper objectMapper, JsonParser parser, List<PaymentPositionModel> positions) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY)
+            throw invalidJson("the list of payment positions is missing");
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT)
+                throw invalidJson("the list of payment positions must contain only objects");
+            positions.add(objectMapper.readValue(parser, PaymentPositionModel.class));
+        }
+    }
+
+    private static AppException invalidJson(String detail) {
+        log.error("[Error][OrganizationPositionsReader@read] Invalid JSON: {}", detail);
+        return new AppException(HttpStatus.BAD_REQUEST, "INVALID JSON", "Given JSON is invalid for required API payload: " + detail);
+    }
+
+    private static AppException invalidPositions(String detail) {
+        log.error("[Error][OrganizationPositionsReader@read] Invalid organization list: {}", detail);
+        return new AppException(HttpStatus.BAD_REQUEST, "INVALID DEBT POSITIONS",
+                "Debt positions format is invalid or duplicates were found. Invalid values: [" + detail + "]");
+    }
+}
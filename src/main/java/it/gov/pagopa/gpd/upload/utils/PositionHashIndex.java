@@ -0,0 +1,106 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Per-organization and service type index of the last content hash accepted for each IUPD, with the fileId of the upload that sent it.
+ * <p>
+ * Serialized form: a magic number, the table of the referenced fileIds, then one record per IUPD made of
+ * the IUPD, the truncated hash and the position of its fileId in the table.
+ */
+public class PositionHashIndex {
+    public static final int HASH_LENGTH = 16;
+    private static final int MAGIC = 0x50484931; // PHI1
+
+    private final List<String> fileIds = new ArrayList<>();
+    private final Map<String, Integer> fileIdPositions = new HashMap<>();
+    private final Map<String, Entry> entries;
+
+    private record Entry(byte[] hash, int fileIdPosition) {}
+
+    public PositionHashIndex() {
+        this.entries = new HashMap<>();
+    }
+
+    private PositionHashIndex(int expectedEntries) {
+        this.entries = new HashMap<>(expectedEntries * 4 / 3 + 1);
+    }
+
+    public static PositionHashIndex fromBytes(byte[] content) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Unknown position hash index format");
+            int fileIdCount = in.readInt();
+            List<String> fileIdTable = new ArrayList<>(fileIdCount);
+            for (int i = 0; i < fileIdCount; i++)
+                fileIdTable.add(in.readUTF());
+
+            int entryCount = in.readInt();
+            PositionHashIndex index = new PositionHashIndex(entryCount);
+            for (int i = 0; i < entryCount; i++) {
+                String iupd = in.readUTF();
+                byte[] hash = new byte[HASH_LENGTH];
+                in.readFully(hash);
+                index.put(iupd, hash, fileIdTable.get(in.readInt()));
+            }
+            return index;
+        }
+    }
+
+    public byte[] toBytes() throws IOException {
+        // only the fileIds still referenced are written
+        Map<Integer, Integer> remapped = new HashMap<>();
+        List<String> referenced = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            remapped.computeIfAbsent(entry.fileIdPosition(), position -> {
+                referenced.add(fileIds.get(position));
+                return referenced.size() - 1;
+            });
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * (HASH_LENGTH + 40) + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(referenced.size());
+            for (String fileId : referenced)
+                out.writeUTF(fileId);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.write(entry.getValue().hash());
+                out.writeInt(remapped.get(entry.getValue().fileIdPosition()));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the fileId of the upload that sent the same content for the IUPD, empty if the content changed
+     */
+    public Optional<String> fileIdWithSameContent(String iupd, byte[] hash) {
+        Entry entry = entries.get(iupd);
+        if (entry == null || !Arrays.equals(entry.hash(), hash))
+            return Optional.empty();
+        return Optional.of(fileIds.get(entry.fileIdPosition()));
+    }
+
+    public void put(String iupd, byte[] hash, String fileId) {
+        int position = fileIdPositions.computeIfAbsent(fileId, id -> {
+            fileIds.add(id);
+            return fileIds.size() - 1;
+        });
+        entries.put(iupd, new Entry(hash, position));
+    }
+
+    /**
+     * @return {@code true} if the IUPD was in the index
+     */
+    public boolean remove(String iupd) {
+        return entries.remove(iupd) != null;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
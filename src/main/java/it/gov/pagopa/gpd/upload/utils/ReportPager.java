@@ -0,0 +1,291 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.v2.ResponseEntryDTO;
+import it.gov.pagopa.gpd.upload.model.v2.ResponseSummaryDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadReportPageDTO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pages of the IUPDs of a v2 report, restricted to the responses matching a status code class and a message, so that
+ * a client gets only the outcomes it acts on. The cursor is the position of the next IUPD in the matching responses,
+ * along with a hash of the filters and the ETag of the report it was issued for: a cursor sent with other filters is
+ * rejected, and a report changed in between, e.g. by a recovery, is not paged from a stale position.
+ * <p>
+ * A report blob too large to be read as a whole is paged while it is parsed, holding the IUPDs of the page only.
+ */
+public final class ReportPager {
+    private static final Pattern STATUS_CLASS = Pattern.compile("^([1-5])xx$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CURSOR = Pattern.compile("^(\\d{1,9}):(\\d{1,9}):([0-9a-f]{16}):(.+)$");
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private ReportPager() {
+    }
+
+    public static UploadReportPageDTO page(UploadReportDTO report, String statusClass, String statusMessage,
+                                           String cursor, int size, boolean summaryOnly) {
+        return page(report, EntityTag.of(report), statusClass, statusMessage, cursor, size, summaryOnly);
+    }
+
+    /**
+     * @param etag          the ETag of the report, which the cursor is bound to
+     * @param statusClass   the class of the status codes, as 4xx, or null for any
+     * @param statusMessage a text the status message contains, ignoring the case, or null for any
+     * @param cursor        the continuation token of the previous page, or null for the first one
+     * @param summaryOnly   true to return the counts by status code and message only, without IUPDs
+     */
+    public static UploadReportPageDTO page(UploadReportDTO report, String etag, String statusClass, String statusMessage,
+                                           String cursor, int size, boolean summaryOnly) {
+        Paging paging = new Paging(etag, statusClass, statusMessage, cursor, size, summaryOnly);
+        if (report.getResponses() != null) {
+            for (ResponseEntryDTO entry : report.getResponses()) {
+                if (!paging.matches(entry.getStatusCode(), entry.getStatusMessage()))
+                    continue;
+                List<String> iupds = iupds(entry);
+                List<String> window = null;
+                if (paging.collecting()) {
+                    int from = Math.min(paging.from(), iupds.size());
+                    window = new ArrayList<>(iupds.subList(from, Math.min(paging.to(), iupds.size())));
+                }
+                paging.add(entry.getStatusCode(), entry.getStatusMessage(), iupds.size(), window);
+            }
+        }
+        return paging.build(UploadReportPageDTO.builder()
+                .fileId(report.getFileId())
+                .processedItem(report.getProcessedItem())
+                .submittedItem(report.getSubmittedItem())
+                .startTime(report.getStartTime())
+                .endTime(report.getEndTime()));
+    }
+
+    /**
+     * @param blobReport the report blob, in the v1 shape written by the blob-consumer function: its fields and the ones
+     *                   of its responses may come in any order, the IUPDs of a response are kept while they are read
+     *                   if they fall in the page, whether the response then matches or not
+     */
+    public static UploadReportPageDTO page(InputStream blobReport, String etag, String statusClass, String statusMessage,
+                                           String cursor, int size, boolean summaryOnly) {
+        UploadReportPageDTO.UploadReportPageDTOBuilder page = UploadReportPageDTO.builder();
+        try (blobReport; JsonParser parser = JSON.createParser(blobReport)) {
+            Paging paging = new Paging(etag, statusClass, statusMessage, cursor, size, summaryOnly);
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IOException("The report is not a JSON object");
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_NULL)
+                    continue;
+                switch (name) {
+                    case "uploadID" -> page.fileId(parser.getText());
+                    case "processedItem" -> page.processedItem(parser.getIntValue());
+                    case "submittedItem" -> page.submittedItem(parser.getIntValue());
+                    case "startTime" -> page.startTime(LocalDateTime.parse(parser.getText()));
+                    case "endTime" -> page.endTime(LocalDateTime.parse(parser.getText()));
+                    case "responses" -> readEntries(parser, paging);
+                    default -> parser.skipChildren();
+                }
+            }
+            return paging.build(page);
+        } catch (IOException | DateTimeParseException e) {
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error", "An error occurred during report deserialization", e);
+        }
+    }
+
+    private static void readEntries(JsonParser parser, Paging paging) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Integer statusCode = null;
+            String statusMessage = null;
+            int count = 0;
+            List<String> window = paging.collecting() ? new ArrayList<>() : null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_NULL)
+                    continue;
+                switch (name) {
+                    case "statusCode" -> statusCode = parser.getIntValue();
+                    case "statusMessage" -> statusMessage = parser.getText();
+                    case "requestIDs" -> {
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            if (window != null && count >= paging.from() && count < paging.to())
+                                window.add(parser.getText());
+                            count++;
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (paging.matches(statusCode, statusMessage))
+                paging.add(statusCode, statusMessage, count, window);
+        }
+    }
+
+    private static List<String> iupds(ResponseEntryDTO entry) {
+        return entry.getIupds() != null ? entry.getIupds() : List.of();
+    }
+
+    /*
+     * The page being built from the matching responses, in order: their counts, and the IUPDs from the cursor position
+     * until the page is full. The position moves past an entry once all its IUPDs are in a page, so the next matching
+     * entry starts from the position the cursor resumes from.
+     */
+    private static final class Paging {
+        private final String etag;
+        private final String filters;
+        private final Integer codeClass;
+        private final String message;
+        private final int size;
+        private final boolean summaryOnly;
+        private final List<ResponseSummaryDTO> summary = new ArrayList<>();
+        private final List<ResponseEntryDTO> responses = new ArrayList<>();
+        // the index of the next matching entry, and the position of the next IUPD of the page
+        private int matchIndex;
+        private int entryIndex;
+        private int offset;
+        private int count;
+        private boolean hasMore;
+
+        private Paging(String etag, String statusClass, String statusMessage, String cursor, int size, boolean summaryOnly) {
+            this.etag = etag;
+            this.codeClass = parseStatusClass(statusClass);
+            this.message = statusMessage == null || statusMessage.isBlank() ? null : statusMessage.toLowerCase(Locale.ROOT);
+            this.filters = hashFilters(codeClass, message);
+            this.size = size;
+            this.summaryOnly = summaryOnly;
+            if (!summaryOnly && cursor != null && !cursor.isBlank()) {
+                int[] position = parseCursor(cursor, filters, etag);
+                entryIndex = position[0];
+                offset = position[1];
+            }
+        }
+
+        private boolean matches(Integer statusCode, String statusMessage) {
+            if (codeClass != null && (statusCode == null || statusCode / 100 != codeClass))
+                return false;
+            return message == null || statusMessage != null && statusMessage.toLowerCase(Locale.ROOT).contains(message);
+        }
+
+        // true if the IUPDs of the next matching entry from the range [from, to) are in the page
+        private boolean collecting() {
+            return !summaryOnly && count < size && matchIndex == entryIndex;
+        }
+
+        private int from() {
+            return offset;
+        }
+
+        private int to() {
+            return offset + size - count;
+        }
+
+        /**
+         * @param iupds  the number of IUPDs of the matching entry
+         * @param window its IUPDs in the range [from, to) when collecting, else null
+         */
+        private void add(Integer statusCode, String statusMessage, int iupds, List<String> window) {
+            summary.add(ResponseSummaryDTO.builder()
+                    .statusCode(statusCode)
+                    .statusMessage(statusMessage)
+                    .count(iupds)
+                    .build());
+            if (!summaryOnly && matchIndex >= entryIndex) {
+                if (window != null) {
+                    int to = Math.min(iupds, to());
+                    if (offset < to) {
+                        responses.add(ResponseEntryDTO.builder()
+                                .statusCode(statusCode)
+                                .statusMessage(statusMessage)
+                                .iupds(window)
+                                .build());
+                        count += to - offset;
+                    }
+                    if (to < iupds) {
+                        offset = to;
+                        hasMore = true;
+                    } else {
+                        entryIndex++;
+                        offset = 0;
+                    }
+                } else if (iupds > (matchIndex == entryIndex ? offset : 0)) {
+                    // the remaining entries may have no IUPDs, as the failure of a whole upload
+                    hasMore = true;
+                }
+            }
+            matchIndex++;
+        }
+
+        private UploadReportPageDTO build(UploadReportPageDTO.UploadReportPageDTOBuilder page) {
+            page.summary(summary);
+            if (summaryOnly)
+                return page.build();
+            return page
+                    .responses(responses)
+                    .size(count)
+                    .hasMore(hasMore)
+                    .continuationToken(hasMore ? formatCursor(entryIndex, offset, filters, etag) : null)
+                    .build();
+        }
+    }
+
+    private static Integer parseStatusClass(String statusClass) {
+        if (statusClass == null || statusClass.isBlank())
+            return null;
+        Matcher matcher = STATUS_CLASS.matcher(statusClass.trim());
+        if (!matcher.matches())
+            throw new AppException(HttpStatus.BAD_REQUEST, "BAD_REQUEST", "Invalid status class: must be one of 1xx, 2xx, 3xx, 4xx, 5xx");
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    // the position of a cursor is in the responses matching the filters it was issued for
+    private static String hashFilters(Integer codeClass, String message) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(codeClass).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String formatCursor(int entryIndex, int offset, String filters, String etag) {
+        String cursor = entryIndex + ":" + offset + ":" + filters + ":" + etag;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int[] parseCursor(String cursor, String filters, String etag) {
+        Matcher matcher;
+        try {
+            matcher = CURSOR.matcher(new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new AppException(HttpStatus.BAD_REQUEST, "BAD_REQUEST", "Invalid continuation token");
+        }
+        if (!matcher.matches())
+            throw new AppException(HttpStatus.BAD_REQUEST, "BAD_REQUEST", "Invalid continuation token");
+        if (!matcher.group(3).equals(filters))
+            throw new AppException(HttpStatus.BAD_REQUEST, "BAD_REQUEST", "Invalid continuation token: it was issued for other statusClass or statusMessage filters");
+        if (!matcher.group(4).equals(etag))
+            throw new AppException(HttpStatus.CONFLICT, "REPORT CHANGED", "The report changed since the continuation token was issued, restart from the first page");
+        return new int[]{Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))};
+    }
+}
@@ -0,0 +1,350 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.server.types.files.StreamedFile;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.v1.UploadReport;
+import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The JSON of a report rendered while the response is sent, a chunk at a time, so that a report of hundreds of
+ * thousands of IUPDs is never held as a whole body: either written from the report already read, or transcoded token
+ * by token from the report blob into the v1 or v2 shape, in which case the heap used does not depend on the size of
+ * the report. As the bodies serialized by Micronaut, null and empty values are omitted.
+ */
+public final class ReportStream extends InputStream {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // the tokens transcoded, or IUPDs written, between two checks of the chunk size
+    private static final int STEP = 512;
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+    /**
+     * The names of the report fields which differ between v1 and v2, the others are the same.
+     */
+    public enum Shape {
+        V1("uploadID", "requestIDs"),
+        V2("fileId", "iupds");
+
+        private final String idField;
+        private final String iupdsField;
+
+        Shape(String idField, String iupdsField) {
+            this.idField = idField;
+            this.iupdsField = iupdsField;
+        }
+    }
+
+    private interface Source {
+        // writes the next part of the report, false once it is all written
+        boolean write(JsonGenerator generator) throws IOException;
+
+        default void close() throws IOException {
+        }
+    }
+
+    private static final class Chunk extends ByteArrayOutputStream {
+        private Chunk() {
+            super(CHUNK_SIZE + CHUNK_SIZE / 4);
+        }
+
+        // the buffer itself, without the copy of toByteArray
+        private byte[] bytes() {
+            return buf;
+        }
+    }
+
+    private final Source source;
+    private final Chunk chunk = new Chunk();
+    private final JsonGenerator generator;
+    private int position;
+    private boolean ended;
+
+    private ReportStream(Source source) {
+        this.source = source;
+        try {
+            this.generator = JSON.createGenerator(chunk);
+        } catch (IOException e) {
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error", "An error occurred during report serialization", e);
+        }
+    }
+
+    public static ReportStream of(UploadReport report) {
+        List<Entry> entries = report.getResponses() == null ? null : report.getResponses().stream()
+                .map(entry -> new Entry(entry.getStatusCode(), entry.getStatusMessage(), entry.getRequestIDs()))
+                .toList();
+        return new ReportStream(new ReportSource(Shape.V1, report.getUploadID(), report.getProcessedItem(),
+                report.getSubmittedItem(), entries, report.getStartTime(), report.getEndTime()));
+    }
+
+    public static ReportStream of(UploadReportDTO report) {
+        List<Entry> entries = report.getResponses() == null ? null : report.getResponses().stream()
+                .map(entry -> new Entry(entry.getStatusCode(), entry.getStatusMessage(), entry.getIupds()))
+                .toList();
+        return new ReportStream(new ReportSource(Shape.V2, report.getFileId(), report.getProcessedItem(),
+                report.getSubmittedItem(), entries, report.getStartTime(), report.getEndTime()));
+    }
+
+    /**
+     * @param blobReport the report blob, in the v1 shape written by the blob-consumer function: only the fields of the
+     *                   report are copied
+     */
+    public static ReportStream transcode(InputStream blobReport, Shape shape) {
+        try {
+            return new ReportStream(new TranscodingSource(JSON.createParser(blobReport), shape));
+        } catch (IOException e) {
+            throw new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "Internal Server Error", "An error occurred during report deserialization", e);
+        }
+    }
+
+    /**
+     * @return the 200 response sending the report in chunks while it is rendered, with the given ETag: the report
+     * may change, so the client revalidates it before reusing it
+     */
+    public MutableHttpResponse<StreamedFile> toResponse(String etag) {
+        return HttpResponse.ok(new StreamedFile(this, MediaType.APPLICATION_JSON_TYPE))
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache");
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return chunk.bytes()[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int count = Math.min(length, chunk.size() - position);
+        System.arraycopy(chunk.bytes(), position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return chunk.size() - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ended = true;
+        source.close();
+    }
+
+    // the chunk is written again once read, until the report is all written
+    private boolean fill() throws IOException {
+        if (position < chunk.size())
+            return true;
+        chunk.reset();
+        position = 0;
+        while (!ended && chunk.size() < CHUNK_SIZE) {
+            if (source.write(generator)) {
+                generator.flush();
+            } else {
+                ended = true;
+                generator.close();
+                source.close();
+            }
+        }
+        return chunk.size() > 0;
+    }
+
+    private record Entry(Integer statusCode, String statusMessage, List<String> iupds) {
+    }
+
+    // a report already read: its fields, then the IUPDs of its entries a step at a time
+    private static final class ReportSource implements Source {
+        private final Shape shape;
+        private final String id;
+        private final int processedItem;
+        private final int submittedItem;
+        private final List<Entry> entries;
+        private final LocalDateTime startTime;
+        private final LocalDateTime endTime;
+        private boolean started;
+        private Iterator<Entry> nextEntries;
+        private Iterator<String> nextIupds;
+
+        private ReportSource(Shape shape, String id, int processedItem, int submittedItem, List<Entry> entries,
+                             LocalDateTime startTime, LocalDateTime endTime) {
+            this.shape = shape;
+            this.id = id;
+            this.processedItem = processedItem;
+            this.submittedItem = submittedItem;
+            this.entries = entries;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        @Override
+        public boolean write(JsonGenerator generator) throws IOException {
+            if (!started) {
+                started = true;
+                generator.writeStartObject();
+                writeString(generator, shape.idField, id);
+                generator.writeNumberField("processedItem", processedItem);
+                generator.writeNumberField("submittedItem", submittedItem);
+                if (entries != null && !entries.isEmpty()) {
+                    generator.writeArrayFieldStart("responses");
+                    nextEntries = entries.iterator();
+                }
+                return true;
+            }
+            if (nextEntries != null) {
+                if (nextEntries.hasNext() || nextIupds != null) {
+                    writeEntries(generator);
+                    return true;
+                }
+                generator.writeEndArray();
+                nextEntries = null;
+            }
+            writeDateTime(generator, "startTime", startTime);
+            writeDateTime(generator, "endTime", endTime);
+            generator.writeEndObject();
+            return false;
+        }
+
+        private void writeEntries(JsonGenerator generator) throws IOException {
+            if (nextIupds == null) {
+                Entry entry = nextEntries.next();
+                generator.writeStartObject();
+                if (entry.statusCode() != null)
+                    generator.writeNumberField("statusCode", entry.statusCode());
+                writeString(generator, "statusMessage", entry.statusMessage());
+                if (entry.iupds() == null || entry.iupds().isEmpty()) {
+                    generator.writeEndObject();
+                    return;
+                }
+                generator.writeArrayFieldStart(shape.iupdsField);
+                nextIupds = entry.iupds().iterator();
+            }
+            for (int i = 0; i < STEP && nextIupds.hasNext(); i++)
+                generator.writeString(nextIupds.next());
+            if (!nextIupds.hasNext()) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+                nextIupds = null;
+            }
+        }
+
+        private static void writeString(JsonGenerator generator, String field, String value) throws IOException {
+            if (value != null && !value.isEmpty())
+                generator.writeStringField(field, value);
+        }
+
+        private static void writeDateTime(JsonGenerator generator, String field, LocalDateTime dateTime) throws IOException {
+            if (dateTime != null)
+                generator.writeStringField(field, DATE_TIME.format(dateTime));
+        }
+    }
+
+    /*
+     * The report blob copied token by token: only the names of the id and of the IUPDs differ between the shapes, and
+     * the function writes the dates in the format of the reports, which binding them required.
+     */
+    private static final class TranscodingSource implements Source {
+        private static final Set<String> REPORT_FIELDS = Set.of("processedItem", "submittedItem", "responses", "startTime", "endTime");
+        private static final Set<String> ENTRY_FIELDS = Set.of("statusCode", "statusMessage");
+        // the depth of the report object and of the objects of its responses
+        private static final int REPORT_DEPTH = 1;
+        private static final int ENTRY_DEPTH = 3;
+
+        private final JsonParser parser;
+        private final Shape shape;
+        private int depth;
+
+        private TranscodingSource(JsonParser parser, Shape shape) {
+            this.parser = parser;
+            this.shape = shape;
+        }
+
+        @Override
+        public boolean write(JsonGenerator generator) throws IOException {
+            for (int i = 0; i < STEP; i++) {
+                JsonToken token = parser.nextToken();
+                if (token == null)
+                    return false;
+                if (token == JsonToken.FIELD_NAME)
+                    writeField(generator);
+                else
+                    copy(generator, token);
+            }
+            return true;
+        }
+
+        // the field with its value when it is not empty, else its value alone is skipped
+        private void writeField(JsonGenerator generator) throws IOException {
+            String name = rename(parser.currentName());
+            JsonToken token = parser.nextToken();
+            if (name == null) {
+                parser.skipChildren();
+                return;
+            }
+            if (token == JsonToken.VALUE_NULL || (token == JsonToken.VALUE_STRING && parser.getTextLength() == 0))
+                return;
+            if (token == JsonToken.START_ARRAY) {
+                JsonToken first = parser.nextToken();
+                if (first == JsonToken.END_ARRAY)
+                    return;
+                generator.writeArrayFieldStart(name);
+                depth++;
+                copy(generator, first);
+                return;
+            }
+            generator.writeFieldName(name);
+            copy(generator, token);
+        }
+
+        private void copy(JsonGenerator generator, JsonToken token) throws IOException {
+            if (token.isStructStart())
+                depth++;
+            else if (token.isStructEnd())
+                depth--;
+            generator.copyCurrentEvent(parser);
+        }
+
+        // null for the fields which are not part of the report
+        private String rename(String name) {
+            if (depth == REPORT_DEPTH) {
+                if (name.equals("uploadID"))
+                    return shape.idField;
+                return REPORT_FIELDS.contains(name) ? name : null;
+            }
+            if (depth == ENTRY_DEPTH) {
+                if (name.equals("requestIDs"))
+                    return shape.iupdsField;
+                return ENTRY_FIELDS.contains(name) ? name : null;
+            }
+            return name;
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+}
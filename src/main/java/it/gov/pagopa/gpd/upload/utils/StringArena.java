@@ -0,0 +1,100 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Append-only set of strings stored back to back in a single {@code char[]}.
+ * <p>
+ * Entries are addressed by index through an offsets table and deduplicated with an open addressing
+ * hash table of entry indexes, so no {@link String} is allocated per entry.
+ */
+public class StringArena {
+    private char[] chars;
+    private int length;
+    private int[] offsets;
+    private int count;
+    private int[] table; // entry index + 1, 0 means empty slot
+
+    public StringArena(int expectedEntries, int expectedChars) {
+        this.chars = new char[Math.max(16, expectedChars)];
+        this.offsets = new int[Math.max(16, expectedEntries) + 1];
+        this.table = new int[tableSizeFor(Math.max(16, expectedEntries))];
+    }
+
+    /**
+     * @return {@code false} if the arena already contains the given characters
+     */
+    public boolean addIfAbsent(char[] buffer, int offset, int len) {
+        int hash = hash(buffer, offset, len);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            if (matches(table[slot] - 1, buffer, offset, len))
+                return false;
+            slot = (slot + 1) & mask;
+        }
+
+        if (length + len > chars.length)
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + len));
+        if (count + 2 > offsets.length)
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        System.arraycopy(buffer, offset, chars, length, len);
+        offsets[count] = length;
+        length += len;
+        offsets[++count] = length;
+        table[slot] = count;
+
+        if (count * 2 > table.length)
+            rehash();
+        return true;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String get(int index) {
+        return new String(chars, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    public void writeTo(JsonGenerator generator) throws IOException {
+        writeTo(generator, 0, count);
+    }
+
+    public void writeTo(JsonGenerator generator, int from, int to) throws IOException {
+        for (int i = from; i < to; i++)
+            generator.writeString(chars, offsets[i], offsets[i + 1] - offsets[i]);
+    }
+
+    private boolean matches(int index, char[] buffer, int offset, int len) {
+        int start = offsets[index];
+        return offsets[index + 1] - start == len
+                && Arrays.equals(chars, start, start + len, buffer, offset, offset + len);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int i = 0; i < count; i++) {
+            int start = offsets[i];
+            int slot = hash(chars, start, offsets[i + 1] - start) & mask;
+            while (table[slot] != 0)
+                slot = (slot + 1) & mask;
+            table[slot] = i + 1;
+        }
+    }
+
+    private static int hash(char[] buffer, int offset, int len) {
+        int h = 0;
+        for (int i = offset; i < offset + len; i++)
+            h = 31 * h + buffer[i];
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int entries) {
+        return Integer.highestOneBit(entries * 2 - 1) << 1;
+    }
+}
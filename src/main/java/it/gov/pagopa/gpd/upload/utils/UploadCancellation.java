@@ -0,0 +1,198 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import it.gov.pagopa.gpd.upload.exception.AppError;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Cooperative cancellation token for a single file upload.
+ * <p>
+ * The token is {@code ACTIVE} while the request is processed, it becomes {@code COMMITTED} once the upload is
+ * accepted (right before the Status document is created) or {@code CANCELLED} if the client disconnects,
+ * a phase deadline expires or the request fails. Block staging waits for the {@link #decision()} before
+ * committing the block list, so a cancelled upload never leaves a committed blob.
+ */
+public class UploadCancellation {
+    public static final String ATTRIBUTE = "gpd.upload.cancellation";
+
+    public enum Phase {
+        RECEIVE, UNZIP, PARSE, VALIDATION, STAGING
+    }
+
+    public enum Reason {
+        CLIENT_DISCONNECTED, DEADLINE_EXCEEDED, REQUEST_FAILED
+    }
+
+    private enum State {
+        ACTIVE, COMMITTED, CANCELLED
+    }
+
+    private static final UploadCancellation NONE = new UploadCancellation();
+
+    private final AtomicReference<State> state;
+    private final CompletableFuture<Boolean> decision = new CompletableFuture<>();
+    private final Map<Phase, Duration> phaseBudgets;
+    private final long deadlineNanos;
+    private final BiConsumer<Phase, Reason> onAbort;
+    private volatile Phase phase = Phase.RECEIVE;
+    private volatile long phaseDeadlineNanos;
+    private volatile Reason reason;
+    private volatile Consumer<String> commitListener;
+
+    public UploadCancellation(Duration total, Map<Phase, Duration> phaseBudgets, BiConsumer<Phase, Reason> onAbort) {
+        this.state = new AtomicReference<>(State.ACTIVE);
+        this.phaseBudgets = new EnumMap<>(phaseBudgets);
+        this.deadlineNanos = System.nanoTime() + total.toNanos();
+        this.phaseDeadlineNanos = deadlineNanos;
+        this.onAbort = onAbort;
+    }
+
+    // already committed token, used when processing is not bound to a client request
+    private UploadCancellation() {
+        this.state = new AtomicReference<>(State.COMMITTED);
+        this.phaseBudgets = Map.of();
+        this.deadlineNanos = Long.MAX_VALUE;
+        this.onAbort = (p, r) -> {};
+        this.decision.complete(true);
+    }
+
+    public static UploadCancellation none() {
+        return NONE;
+    }
+
+    public void enter(Phase next) {
+        if (state.get() != State.ACTIVE)
+            return;
+        checkpoint();
+        phase = next;
+        Duration budget = phaseBudgets.get(next);
+        long now = System.nanoTime();
+        phaseDeadlineNanos = budget == null ? deadlineNanos : Math.min(deadlineNanos, now + budget.toNanos());
+    }
+
+    /**
+     * @throws AppException if the upload was cancelled or the current phase deadline has passed
+     */
+    public void checkpoint() {
+        State current = state.get();
+        if (current == State.ACTIVE && System.nanoTime() - phaseDeadlineNanos >= 0) {
+            cancel(Reason.DEADLINE_EXCEEDED);
+            current = state.get();
+        }
+        if (current == State.CANCELLED)
+            throw new AppException(AppError.UPLOAD_CANCELLED, phase, reason);
+    }
+
+    /**
+     * Checkpoint of the block staging, which may still run once the upload is committed: its deadline then fails
+     * the staging instead of cancelling the upload, so the block list is never committed late.
+     * @throws AppException if the upload was cancelled or the staging deadline has passed
+     */
+    public void stagingCheckpoint() {
+        checkpoint();
+        // the phase and its deadline are no longer updated after the commit
+        if (phase == Phase.STAGING && System.nanoTime() - phaseDeadlineNanos >= 0)
+            throw new AppException(AppError.UPLOAD_CANCELLED, Phase.STAGING, Reason.DEADLINE_EXCEEDED);
+    }
+
+    public void cancel(Reason cancelReason) {
+        if (state.compareAndSet(State.ACTIVE, State.CANCELLED)) {
+            reason = cancelReason;
+            decision.complete(false);
+            onAbort.accept(phase, cancelReason);
+        }
+    }
+
+    /**
+     * Marks the upload as accepted: from now on it can no longer be cancelled.
+     * @throws AppException if the upload was cancelled before
+     */
+    public void commit() {
+        checkpoint();
+        if (state.compareAndSet(State.ACTIVE, State.COMMITTED))
+            decision.complete(true);
+        else
+            checkpoint(); // cancelled concurrently
+    }
+
+    /**
+     * Marks the upload with the given fileId as accepted, once the commit listener, if any, has run with it.
+     * @throws AppException if the upload was cancelled before
+     * @throws RuntimeException the failure of the commit listener, which cancels the upload
+     */
+    public void commit(String fileId) {
+        checkpoint();
+        Consumer<String> listener = commitListener;
+        if (listener != null) {
+            try {
+                listener.accept(fileId);
+            } catch (RuntimeException e) {
+                cancel(Reason.REQUEST_FAILED);
+                throw e;
+            }
+        }
+        commit();
+    }
+
+    /**
+     * Registers the action run with the fileId of the upload right before its commit, e.g. to record it elsewhere.
+     */
+    public void onCommit(Consumer<String> listener) {
+        if (this == NONE)
+            throw new IllegalStateException("The shared committed token has no commit");
+        this.commitListener = listener;
+    }
+
+    /**
+     * @return {@code true} if the fileId of the upload has to be known when it is committed
+     */
+    public boolean hasCommitListener() {
+        return commitListener != null;
+    }
+
+    public boolean isCancelled() {
+        return state.get() == State.CANCELLED;
+    }
+
+    /**
+     * @return a future completed with {@code true} when the upload is committed, {@code false} when it is cancelled
+     */
+    public CompletableFuture<Boolean> decision() {
+        return decision;
+    }
+
+    public InputStream guard(InputStream inputStream) {
+        return new CancellableInputStream(inputStream, this);
+    }
+
+    private static class CancellableInputStream extends FilterInputStream {
+        private final UploadCancellation cancellation;
+
+        CancellableInputStream(InputStream in, UploadCancellation cancellation) {
+            super(in);
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public int read() throws IOException {
+            cancellation.checkpoint();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            cancellation.checkpoint();
+            return super.read(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory-mapped, append-only journal of the uploads accepted but not yet persisted to Blob Storage and Cosmos.
+ * <p>
+ * Each record is {@code MAGIC, length, flags, payload}: the flags are updated in place as the input blob and the
+ * Status are persisted, and the journal is rewound once every record is persisted. The magic number of a record
+ * is written only after the rest of the record is flushed, so a crash never leaves a partial record before the end marker.
+ * Records that cannot be persisted are moved aside to a dead-letter file in the same format.
+ */
+public class UploadJournal implements Closeable {
+    public static final byte BLOB_PERSISTED = 1;
+    public static final byte STATUS_PERSISTED = 2;
+    public static final byte PERSISTED = BLOB_PERSISTED | STATUS_PERSISTED;
+
+    private static final int MAGIC = 0x554A5231; // "UJR1"
+    private static final int HEADER_LENGTH = Integer.BYTES * 2 + 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+
+    public UploadJournal(Path file, int capacity) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        position = scanEnd();
+    }
+
+    /**
+     * @return the offset of the record, or {@code -1} if the journal is full
+     */
+    public synchronized int append(Entry entry) throws IOException {
+        byte[] payload = serialize(entry);
+        int length = HEADER_LENGTH + payload.length;
+        // an int is left for the end marker
+        if (position + length + Integer.BYTES > buffer.capacity())
+            return -1;
+
+        int offset = position;
+        buffer.put(offset + HEADER_LENGTH, payload);
+        buffer.put(offset + Integer.BYTES * 2, (byte) 0);
+        buffer.putInt(offset + Integer.BYTES, length);
+        buffer.putInt(offset + length, 0);
+        // the magic number makes the record visible on recovery, so it is written once the record is on disk:
+        // a single flush may persist the pages in any order
+        buffer.force();
+        buffer.putInt(offset, MAGIC);
+        buffer.force();
+        position = offset + length;
+        return offset;
+    }
+
+    public synchronized void markPersisted(int offset, byte flag) {
+        buffer.put(offset + Integer.BYTES * 2, (byte) (buffer.get(offset + Integer.BYTES * 2) | flag));
+        buffer.force();
+    }
+
+    /**
+     * Reads the record back from the journal, so its content is not held in memory while waiting to be persisted.
+     */
+    public synchronized Entry read(int offset) {
+        int length = buffer.getInt(offset + Integer.BYTES);
+        byte flags = buffer.get(offset + Integer.BYTES * 2);
+        return deserialize(offset, flags, buffer.slice(offset + HEADER_LENGTH, length - HEADER_LENGTH));
+    }
+
+    /**
+     * Appends the record to the dead-letter file and marks it as persisted, so it no longer blocks the journal.
+     */
+    public synchronized void moveAside(int offset, Path deadLetters) throws IOException {
+        int length = buffer.getInt(offset + Integer.BYTES);
+        try (FileChannel out = FileChannel.open(deadLetters, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer record = buffer.slice(offset, length);
+            while (record.hasRemaining())
+                out.write(record);
+            out.force(true);
+        }
+        markPersisted(offset, PERSISTED);
+    }
+
+    /**
+     * @return the records not completely persisted, e.g. to be replayed after a restart
+     */
+    public synchronized List<Entry> pending() {
+        List<Entry> entries = new ArrayList<>();
+        int offset = 0;
+        while (offset < position) {
+            int length = buffer.getInt(offset + Integer.BYTES);
+            byte flags = buffer.get(offset + Integer.BYTES * 2);
+            if (flags != PERSISTED)
+                entries.add(deserialize(offset, flags, buffer.slice(offset + HEADER_LENGTH, length - HEADER_LENGTH)));
+            offset += length;
+        }
+        return entries;
+    }
+
+    /**
+     * Rewinds the journal if every record is persisted.
+     * @return {@code true} if the journal is empty
+     */
+    public synchronized boolean compact() {
+        int offset = 0;
+        while (offset < position) {
+            if (buffer.get(offset + Integer.BYTES * 2) != PERSISTED)
+                return false;
+            offset += buffer.getInt(offset + Integer.BYTES);
+        }
+        buffer.putInt(0, 0);
+        buffer.force();
+        position = 0;
+        return true;
+    }
+
+    public synchronized int size() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int scanEnd() {
+        int offset = 0;
+        while (offset + HEADER_LENGTH <= buffer.capacity() && buffer.getInt(offset) == MAGIC) {
+            int length = buffer.getInt(offset + Integer.BYTES);
+            if (length < HEADER_LENGTH || offset + length > buffer.capacity())
+                break;
+            offset += length;
+        }
+        return offset;
+    }
+
+    private static byte[] serialize(Entry entry) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(entry.getContent().length + 256);
+        try (DataOutputStream out = new DataOutputStream(outputStream)) {
+            out.writeUTF(entry.getFileId());
+            out.writeUTF(entry.getBroker());
+            out.writeUTF(entry.getOrganizationFiscalCode());
+            out.writeUTF(entry.getUploadOperation().name());
+            out.writeUTF(entry.getServiceType().name());
+            out.writeInt(entry.getTotalItem());
+            out.writeInt(entry.getSkippedIUPDs().size());
+            for (String iupd : entry.getSkippedIUPDs())
+                out.writeUTF(iupd);
+            out.writeInt(entry.getContent().length);
+            out.write(entry.getContent());
+            // written after the content, so the records journaled before they were added are still readable
+            if (entry.getInputIUPDs() != null) {
+                out.writeInt(entry.getInputIUPDs().size());
+                for (String iupd : entry.getInputIUPDs())
+                    out.writeUTF(iupd);
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static Entry deserialize(int offset, byte flags, ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            Entry.EntryBuilder builder = Entry.builder()
+                    .offset(offset)
+                    .flags(flags)
+                    .fileId(in.readUTF())
+                    .broker(in.readUTF())
+                    .organizationFiscalCode(in.readUTF())
+                    .uploadOperation(UploadOperation.valueOf(in.readUTF()))
+                    .serviceType(ServiceType.valueOf(in.readUTF()))
+                    .totalItem(in.readInt());
+            int skipped = in.readInt();
+            List<String> skippedIUPDs = new ArrayList<>(skipped);
+            for (int i = 0; i < skipped; i++)
+                skippedIUPDs.add(in.readUTF());
+            byte[] content = new byte[in.readInt()];
+            in.readFully(content);
+            List<String> inputIUPDs = null;
+            if (in.available() > 0) {
+                int count = in.readInt();
+                inputIUPDs = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                    inputIUPDs.add(in.readUTF());
+            }
+            return builder.skippedIUPDs(skippedIUPDs).inputIUPDs(inputIUPDs).content(content).build();
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Corrupted upload journal record at offset " + offset, e);
+        }
+    }
+
+    @Builder
+    @Getter
+    public static class Entry {
+        private final int offset;
+        private final byte flags;
+        private final String fileId;
+        private final String broker;
+        private final String organizationFiscalCode;
+        private final UploadOperation uploadOperation;
+        private final ServiceType serviceType;
+        private final int totalItem;
+        private final List<String> skippedIUPDs;
+        // IUPDs of a combined upload in input order, null for any other upload
+        private final List<String> inputIUPDs;
+        private final byte[] content;
+    }
+}
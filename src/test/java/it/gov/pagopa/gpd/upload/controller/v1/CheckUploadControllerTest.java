@@ -118,7 +118,7 @@ class CheckUploadControllerTest {
         AppException ex = new AppException(NOT_FOUND, "error", "error");
         when(statusServiceMock.getReportV1(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD)).thenThrow(ex);
         when(blobServiceMock.getReportV1(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD))
-                .thenReturn(UploadReport.builder().uploadID(FILE_ID).build());
+                .thenReturn(new BlobService.BlobReport<>(UploadReport.builder().uploadID(FILE_ID).build(), "\"0x8DC\""));
 
         HttpRequest httpRequest = HttpRequest.create(HttpMethod.GET, URI_V1 + "/" + FILE_ID + "/report" + QUERY_PARAM_SERVICE_TYPE_GPD);
         HttpResponse<UploadStatus> response = client.toBlocking().exchange(httpRequest);
@@ -23,6 +23,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
 
 import static io.micronaut.http.HttpStatus.ACCEPTED;
 import static it.gov.pagopa.gpd.upload.utils.TestConstants.QUERY_PARAM_SERVICE_TYPE_GPD;
@@ -52,7 +53,7 @@ class FileUploadControllerTest {
     @BeforeEach
     void beforeEach() {
         Mockito.when(statusService.getReportV1(anyString(), anyString(), anyString(), any())).thenReturn(UploadReport.builder().build());
-        Mockito.when(blobService.upsert(anyString(), anyString(), any(), any(), any())).thenReturn(UPLOAD_KEY);
+        Mockito.when(blobService.upsert(anyString(), anyString(), any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(UPLOAD_KEY));
     }
 
     @Test
@@ -10,19 +10,33 @@ import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.FileIdListResponse;
 import it.gov.pagopa.gpd.upload.model.ProblemJson;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.UploadOutcomesDTO;
+import it.gov.pagopa.gpd.upload.model.v2.ResponseEntryDTO;
 import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadReportPageDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusBatchDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusBatchModel;
 import it.gov.pagopa.gpd.upload.model.v2.UploadStatusDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusItemDTO;
+import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
 import it.gov.pagopa.gpd.upload.service.BlobService;
 import it.gov.pagopa.gpd.upload.service.StatusService;
+import it.gov.pagopa.gpd.upload.utils.EntityTag;
+import it.gov.pagopa.gpd.upload.utils.ReportStream;
 import jakarta.inject.Inject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import static io.micronaut.http.HttpStatus.NOT_FOUND;
 import static io.micronaut.http.HttpStatus.OK;
@@ -37,6 +51,7 @@ class CheckUploadControllerTest {
     public static final String FILE_ID = "fileID";
     public static final String BROKER_ID = "broker-ID";
     public static final String ORG_FISCAL_CODE = "fiscal-code";
+    private static final String STATUSES_URI = "v2/brokers/broker-ID/organizations/fiscal-code/debtpositions/files/status";
 
     @Inject
     @Client("/")
@@ -72,6 +87,42 @@ class CheckUploadControllerTest {
         assertEquals(FILE_ID, response.getBody(UploadStatusDTO.class).get().getFileId());
     }
 
+    @Test
+    void getUploadStatuses_OK() {
+        when(statusServiceMock.getUploadStatusesV2(BROKER_ID, ORG_FISCAL_CODE, List.of(FILE_ID, "missing"), ServiceType.GPD))
+                .thenReturn(List.of(
+                        UploadStatusItemDTO.builder().fileId(FILE_ID).statusCode(200).status(UploadStatusDTO.builder().fileId(FILE_ID).build()).build(),
+                        UploadStatusItemDTO.builder().fileId("missing").statusCode(404).build()));
+
+        HttpRequest<UploadStatusBatchModel> httpRequest = HttpRequest.POST(STATUSES_URI + QUERY_PARAM_SERVICE_TYPE_GPD,
+                UploadStatusBatchModel.builder().fileIds(List.of(FILE_ID, "missing")).build());
+        HttpResponse<UploadStatusBatchDTO> response = client.toBlocking().exchange(httpRequest, UploadStatusBatchDTO.class);
+
+        assertEquals(OK, response.getStatus());
+        assertEquals(2, response.body().getStatuses().size());
+        assertEquals(404, response.body().getStatuses().get(1).getStatusCode());
+    }
+
+    @Test
+    void getUploadStatuses_Empty_KO() {
+        HttpRequest<UploadStatusBatchModel> httpRequest = HttpRequest.POST(STATUSES_URI + QUERY_PARAM_SERVICE_TYPE_GPD,
+                UploadStatusBatchModel.builder().fileIds(List.of()).build());
+        HttpClientResponseException exception = assertThrows(HttpClientResponseException.class, () -> client.toBlocking().exchange(httpRequest));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        verify(statusServiceMock, never()).getUploadStatusesV2(any(), any(), any(), any());
+    }
+
+    @Test
+    void getUploadStatuses_BlankFileId_KO() {
+        HttpRequest<UploadStatusBatchModel> httpRequest = HttpRequest.POST(STATUSES_URI + QUERY_PARAM_SERVICE_TYPE_GPD,
+                UploadStatusBatchModel.builder().fileIds(List.of(FILE_ID, " ")).build());
+        HttpClientResponseException exception = assertThrows(HttpClientResponseException.class, () -> client.toBlocking().exchange(httpRequest));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        verify(statusServiceMock, never()).getUploadStatusesV2(any(), any(), any(), any());
+    }
+
     @Test
     void getUploadStatus_KO() {
         when(statusServiceMock.getUploadStatusV2(
@@ -113,12 +164,87 @@ class CheckUploadControllerTest {
         assertEquals(FILE_ID, response.getBody(UploadReportDTO.class).get().getFileId());
     }
 
+    @Test
+    void getUploadStatus_NotModified() {
+        UploadStatusDTO uploadStatus = UploadStatusDTO.builder().fileId(FILE_ID).processedItem(1).submittedItem(2).build();
+        when(statusServiceMock.getUploadStatusV2(BROKER_ID, FILE_ID, ORG_FISCAL_CODE, ServiceType.GPD)).thenReturn(uploadStatus);
+        String etag = EntityTag.of(uploadStatus);
+
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.GET, URI_V2 + "/" + FILE_ID + "/status" + QUERY_PARAM_SERVICE_TYPE_GPD)
+                .header(HttpHeaders.IF_NONE_MATCH, etag);
+        HttpResponse<UploadStatusDTO> response = client.toBlocking().exchange(httpRequest);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatus());
+        assertEquals(etag, response.getHeaders().get(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void getUploadStatus_Modified_OK() {
+        UploadStatusDTO uploadStatus = UploadStatusDTO.builder().fileId(FILE_ID).processedItem(1).submittedItem(2).build();
+        when(statusServiceMock.getUploadStatusV2(BROKER_ID, FILE_ID, ORG_FISCAL_CODE, ServiceType.GPD)).thenReturn(uploadStatus);
+        String previous = EntityTag.of(uploadStatus.toBuilder().processedItem(0).build());
+
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.GET, URI_V2 + "/" + FILE_ID + "/status" + QUERY_PARAM_SERVICE_TYPE_GPD)
+                .header(HttpHeaders.IF_NONE_MATCH, previous);
+        HttpResponse<UploadStatusDTO> response = client.toBlocking().exchange(httpRequest, UploadStatusDTO.class);
+
+        assertEquals(OK, response.getStatus());
+        assertEquals(EntityTag.of(uploadStatus), response.getHeaders().get(HttpHeaders.ETAG));
+        assertEquals(1, response.getBody().get().getProcessedItem());
+    }
+
+    @Test
+    void getUploadStatus_WaitForChange_OK() {
+        UploadStatusDTO inProgress = UploadStatusDTO.builder().fileId(FILE_ID).processedItem(1).submittedItem(2).operationStatus(OperationStatus.IN_PROGRESS).build();
+        UploadStatusDTO completed = inProgress.toBuilder().processedItem(2).operationStatus(OperationStatus.COMPLETED).build();
+        when(statusServiceMock.getUploadStatusV2(BROKER_ID, FILE_ID, ORG_FISCAL_CODE, ServiceType.GPD)).thenReturn(inProgress, completed);
+
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.GET, URI_V2 + "/" + FILE_ID + "/status" + QUERY_PARAM_SERVICE_TYPE_GPD + "&waitForChangeMs=5000");
+        HttpResponse<UploadStatusDTO> response = client.toBlocking().exchange(httpRequest, UploadStatusDTO.class);
+
+        assertEquals(OK, response.getStatus());
+        assertEquals(OperationStatus.COMPLETED, response.getBody().get().getOperationStatus());
+        assertEquals(EntityTag.of(completed), response.getHeaders().get(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void getUploadReport_NotModified() {
+        String etag = EntityTag.of(UploadReportDTO.builder().fileId(FILE_ID).endTime(LocalDateTime.now()).build());
+        when(statusServiceMock.getReportETagV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD)).thenReturn(etag);
+
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.GET, URI_V2 + "/" + FILE_ID + "/report" + QUERY_PARAM_SERVICE_TYPE_GPD)
+                .header(HttpHeaders.IF_NONE_MATCH, etag);
+        HttpResponse<UploadReportDTO> response = client.toBlocking().exchange(httpRequest);
+
+        verify(statusServiceMock, never()).getReportV2(any(), any(), any(), any());
+        verify(blobServiceMock, never()).getReportV2(any(), any(), any(), any());
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatus());
+        assertEquals(etag, response.getHeaders().get(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void getUploadReport_withoutStatusNotModified() {
+        UploadReportDTO uploadReport = UploadReportDTO.builder().fileId(FILE_ID).endTime(LocalDateTime.now()).build();
+        AppException ex = new AppException(NOT_FOUND, "error", "error");
+        when(statusServiceMock.getReportETagV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD)).thenThrow(ex);
+        when(statusServiceMock.getReportV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD)).thenThrow(ex);
+        when(blobServiceMock.getReportV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD))
+                .thenReturn(new BlobService.BlobReport<>(uploadReport, "\"0x8DC\""));
+
+        // the report blob is tagged by its version, as when it is streamed
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.GET, URI_V2 + "/" + FILE_ID + "/report" + QUERY_PARAM_SERVICE_TYPE_GPD)
+                .header(HttpHeaders.IF_NONE_MATCH, EntityTag.of(ReportStream.Shape.V2, "\"0x8DC\""));
+        HttpResponse<UploadReportDTO> response = client.toBlocking().exchange(httpRequest);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatus());
+    }
+
     @Test
     void getUploadReport_withoutStatusRetrieveBlobReport_OK() {
         AppException ex = new AppException(NOT_FOUND, "error", "error");
         when(statusServiceMock.getReportV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD)).thenThrow(ex);
         when(blobServiceMock.getReportV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD))
-                .thenReturn(UploadReportDTO.builder().fileId(FILE_ID).endTime(LocalDateTime.now()).build());
+                .thenReturn(new BlobService.BlobReport<>(UploadReportDTO.builder().fileId(FILE_ID).endTime(LocalDateTime.now()).build(), "\"0x8DC\""));
 
         HttpRequest httpRequest = HttpRequest.create(HttpMethod.GET, URI_V2 + "/" + FILE_ID + "/report" + QUERY_PARAM_SERVICE_TYPE_GPD);
         HttpResponse<UploadStatusDTO> response = client.toBlocking().exchange(httpRequest);
@@ -131,6 +257,46 @@ class CheckUploadControllerTest {
         assertEquals(FILE_ID, response.getBody(UploadReportDTO.class).get().getFileId());
     }
 
+    @Test
+    void getUploadReport_withoutStatusLargeBlobReport_Streamed() {
+        AppException ex = new AppException(NOT_FOUND, "error", "error");
+        when(statusServiceMock.getReportV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD)).thenThrow(ex);
+        BlobStorageRepository.ContentBlob reportBlob = mock(BlobStorageRepository.ContentBlob.class);
+        when(reportBlob.getETag()).thenReturn("\"0x8DC\"");
+        when(reportBlob.openInputStream()).thenReturn(new ByteArrayInputStream(("{\"uploadID\":\"" + FILE_ID + "\",\"processedItem\":1,\"submittedItem\":1,"
+                + "\"responses\":[{\"statusCode\":201,\"statusMessage\":\"Created\",\"requestIDs\":[\"IUPD1\"]}],"
+                + "\"startTime\":\"2025-09-01T10:00:00.000\",\"endTime\":\"2025-09-01T10:01:00.000\"}").getBytes(StandardCharsets.UTF_8)));
+        when(blobServiceMock.getLargeReport(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD, ReportStream.Shape.V2))
+                .thenReturn(Optional.of(reportBlob));
+
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.GET, URI_V2 + "/" + FILE_ID + "/report" + QUERY_PARAM_SERVICE_TYPE_GPD);
+        HttpResponse<UploadReportDTO> response = client.toBlocking().exchange(httpRequest, UploadReportDTO.class);
+
+        verify(blobServiceMock, never()).getReportV2(any(), any(), any(), any());
+        assertEquals(OK, response.getStatus());
+        assertEquals(EntityTag.of(ReportStream.Shape.V2, "\"0x8DC\""), response.getHeaders().get(HttpHeaders.ETAG));
+        assertEquals(FILE_ID, response.body().getFileId());
+        assertEquals(List.of("IUPD1"), response.body().getResponses().get(0).getIupds());
+    }
+
+    @Test
+    void getUploadReport_withoutStatusLargeBlobReport_NotModified() {
+        AppException ex = new AppException(NOT_FOUND, "error", "error");
+        when(statusServiceMock.getReportETagV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD)).thenThrow(ex);
+        when(statusServiceMock.getReportV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD)).thenThrow(ex);
+        BlobStorageRepository.ContentBlob reportBlob = mock(BlobStorageRepository.ContentBlob.class);
+        when(reportBlob.getETag()).thenReturn("\"0x8DC\"");
+        when(blobServiceMock.getLargeReport(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD, ReportStream.Shape.V2))
+                .thenReturn(Optional.of(reportBlob));
+
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.GET, URI_V2 + "/" + FILE_ID + "/report" + QUERY_PARAM_SERVICE_TYPE_GPD)
+                .header(HttpHeaders.IF_NONE_MATCH, EntityTag.of(ReportStream.Shape.V2, "\"0x8DC\""));
+        HttpResponse<UploadReportDTO> response = client.toBlocking().exchange(httpRequest);
+
+        verify(reportBlob, never()).openInputStream();
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatus());
+    }
+
     @Test
     void getUploadReport_byStatus_KO() {
         when(statusServiceMock.getReportV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD)).thenThrow(AppException.class);
@@ -176,6 +342,65 @@ class CheckUploadControllerTest {
         verify(statusServiceMock, times(1)).getReportV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD);
     }
 
+    @Test
+    void getUploadReportPage_OK() {
+        when(statusServiceMock.getReportV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD))
+                .thenReturn(UploadReportDTO.builder()
+                        .fileId(FILE_ID)
+                        .endTime(LocalDateTime.now())
+                        .responses(List.of(
+                                ResponseEntryDTO.builder().statusCode(201).statusMessage("Created").iupds(List.of("IUPD1")).build(),
+                                ResponseEntryDTO.builder().statusCode(400).statusMessage("Bad request").iupds(List.of("IUPD2", "IUPD3")).build()))
+                        .build());
+
+        HttpRequest<?> httpRequest = HttpRequest.GET(URI_V2 + "/" + FILE_ID + "/report/responses?statusClass=4xx&size=1");
+        HttpResponse<UploadReportPageDTO> response = client.toBlocking().exchange(httpRequest, UploadReportPageDTO.class);
+
+        assertEquals(OK, response.getStatus());
+        UploadReportPageDTO page = response.getBody().orElseThrow();
+        assertEquals(List.of("IUPD2"), page.getResponses().get(0).getIupds());
+        assertEquals(2, page.getSummary().get(0).getCount());
+        assertTrue(page.isHasMore());
+        assertNotNull(response.getHeaders().get("x-continuation-token"));
+    }
+
+    @Test
+    void getUploadReportPage_withoutStatusLargeBlobReport_PagedFromStream() {
+        AppException ex = new AppException(NOT_FOUND, "error", "error");
+        when(statusServiceMock.getReportV2(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD)).thenThrow(ex);
+        BlobStorageRepository.ContentBlob reportBlob = mock(BlobStorageRepository.ContentBlob.class);
+        when(reportBlob.getETag()).thenReturn("\"0x8DC\"");
+        when(reportBlob.openInputStream()).thenReturn(new ByteArrayInputStream(("{\"uploadID\":\"" + FILE_ID + "\",\"processedItem\":3,\"submittedItem\":3,"
+                + "\"responses\":[{\"statusCode\":201,\"statusMessage\":\"Created\",\"requestIDs\":[\"IUPD1\"]},"
+                + "{\"statusCode\":400,\"statusMessage\":\"Bad request\",\"requestIDs\":[\"IUPD2\",\"IUPD3\"]}],"
+                + "\"startTime\":\"2025-09-01T10:00:00.000\",\"endTime\":\"2025-09-01T10:01:00.000\"}").getBytes(StandardCharsets.UTF_8)));
+        when(blobServiceMock.getLargeReport(BROKER_ID, ORG_FISCAL_CODE, FILE_ID, ServiceType.GPD, ReportStream.Shape.V2))
+                .thenReturn(Optional.of(reportBlob));
+
+        HttpRequest<?> httpRequest = HttpRequest.GET(URI_V2 + "/" + FILE_ID + "/report/responses?statusClass=4xx&size=1");
+        HttpResponse<UploadReportPageDTO> response = client.toBlocking().exchange(httpRequest, UploadReportPageDTO.class);
+
+        verify(blobServiceMock, never()).getReportV2(any(), any(), any(), any());
+        assertEquals(OK, response.getStatus());
+        assertEquals(EntityTag.of(ReportStream.Shape.V2, "\"0x8DC\""), response.getHeaders().get(HttpHeaders.ETAG));
+        UploadReportPageDTO page = response.getBody().orElseThrow();
+        assertEquals(FILE_ID, page.getFileId());
+        assertEquals(List.of("IUPD2"), page.getResponses().get(0).getIupds());
+        assertEquals(2, page.getSummary().get(0).getCount());
+        assertTrue(page.isHasMore());
+    }
+
+    @Test
+    void getUploadReportPage_InvalidSize_KO() {
+        HttpRequest<?> httpRequest = HttpRequest.GET(URI_V2 + "/" + FILE_ID + "/report/responses?size=0");
+        BlockingHttpClient blockingClient = client.toBlocking();
+
+        HttpClientResponseException response = assertThrows(HttpClientResponseException.class, () -> blockingClient.exchange(httpRequest));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+        verifyNoInteractions(statusServiceMock);
+    }
+
     @Test
     void getFileIdList_shouldReturn200WithBodyAndContinuationHeader() {
         FileIdListResponse stub = FileIdListResponse.builder()
@@ -371,4 +596,49 @@ class CheckUploadControllerTest {
         // Controller should reject before calling the service
         verifyNoInteractions(statusServiceMock);
     }
+
+    @Test
+    void getFileIdListByOutcome_OK() {
+        when(statusServiceMock.getFileIdList(eq(BROKER_ID), eq(ORG_FISCAL_CODE), any(LocalDate.class), any(LocalDate.class),
+                eq(100), isNull(), eq(ServiceType.GPD), eq(OperationStatus.COMPLETED_UNSUCCESSFULLY)))
+                .thenReturn(FileIdListResponse.builder().fileIds(List.of("id1")).size(1).hasMore(false).build());
+
+        LocalDate today = LocalDate.now(ZoneId.of("Europe/Rome"));
+        String url = String.format("%ss/outcomes/COMPLETED_UNSUCCESSFULLY?from=%s&to=%s&size=100", URI_V2, today.minusDays(6), today);
+        HttpResponse<FileIdListResponse> resp = client.toBlocking().exchange(HttpRequest.GET(url), FileIdListResponse.class);
+
+        assertEquals(HttpStatus.OK, resp.getStatus());
+        assertEquals(List.of("id1"), resp.getBody().get().getFileIds());
+    }
+
+    @Test
+    void getOutcomes_OK() {
+        when(statusServiceMock.getOutcomes(eq(BROKER_ID), eq(ORG_FISCAL_CODE), any(LocalDate.class), any(LocalDate.class), eq(ServiceType.GPD)))
+                .thenReturn(UploadOutcomesDTO.builder()
+                        .uploads(Map.of(OperationStatus.COMPLETED_WITH_WARNINGS, 2L))
+                        .succeededItem(10)
+                        .failedItem(1)
+                        .build());
+
+        LocalDate today = LocalDate.now(ZoneId.of("Europe/Rome"));
+        String url = String.format("%ss/outcomes?from=%s&to=%s", URI_V2, today.minusDays(6), today);
+        HttpResponse<UploadOutcomesDTO> resp = client.toBlocking().exchange(HttpRequest.GET(url), UploadOutcomesDTO.class);
+
+        assertEquals(HttpStatus.OK, resp.getStatus());
+        assertEquals(2L, resp.getBody().get().getUploads().get(OperationStatus.COMPLETED_WITH_WARNINGS));
+        assertEquals(1, resp.getBody().get().getFailedItem());
+    }
+
+    @Test
+    void getOutcomes_RangeTooLarge_KO() {
+        String url = URI_V2 + "s/outcomes?from=2025-09-01&to=2025-09-10";
+        BlockingHttpClient blockingClient = client.toBlocking();
+        HttpRequest<?> req = HttpRequest.GET(url);
+
+        HttpClientResponseException ex = assertThrows(HttpClientResponseException.class,
+                () -> blockingClient.exchange(req, UploadOutcomesDTO.class));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatus());
+        verifyNoInteractions(statusServiceMock);
+    }
 }
@@ -7,11 +7,16 @@ import io.micronaut.http.HttpResponse;
 import io.micronaut.http.MediaType;
 import io.micronaut.http.client.HttpClient;
 import io.micronaut.http.client.annotation.Client;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
 import io.micronaut.http.client.multipart.MultipartBody;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
 import it.gov.pagopa.gpd.upload.model.v1.UploadReport;
+import it.gov.pagopa.gpd.upload.model.v2.BrokerUploadDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadUrlModel;
 import it.gov.pagopa.gpd.upload.service.BlobService;
 import it.gov.pagopa.gpd.upload.service.StatusService;
+import it.gov.pagopa.gpd.upload.service.UrlUploadService;
 import jakarta.inject.Inject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,16 +28,21 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static io.micronaut.http.HttpStatus.ACCEPTED;
+import static io.micronaut.http.HttpStatus.BAD_REQUEST;
 import static it.gov.pagopa.gpd.upload.utils.TestConstants.QUERY_PARAM_SERVICE_TYPE_GPD;
 import static it.gov.pagopa.gpd.upload.utils.TestConstants.URI_V2;
 import static java.nio.file.attribute.PosixFilePermission.OWNER_READ;
 import static java.nio.file.attribute.PosixFilePermission.OWNER_WRITE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 
 @MicronautTest
 class FileUploadControllerTest {
@@ -48,11 +58,15 @@ class FileUploadControllerTest {
     StatusService statusService;
     @Inject
     BlobService blobService;
+    @Inject
+    UrlUploadService urlUploadService;
 
     @BeforeEach
     void beforeEach() {
         Mockito.when(statusService.getReportV1(anyString(), anyString(), anyString(), any())).thenReturn(UploadReport.builder().build());
-        Mockito.when(blobService.upsert(anyString(), anyString(), any(), any(), any())).thenReturn(UPLOAD_KEY);
+        Mockito.when(blobService.upsert(anyString(), anyString(), any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(UPLOAD_KEY));
+        Mockito.when(blobService.upsert(anyString(), any(UploadOperation.class), any(), any(), any())).thenReturn(Map.of("fiscal-code", UPLOAD_KEY));
+        Mockito.when(urlUploadService.upload(anyString(), anyString(), any(), anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(UPLOAD_KEY));
     }
 
     @Test
@@ -103,6 +117,89 @@ class FileUploadControllerTest {
         file.delete();
     }
 
+    @Test
+    void createDebtPositionsByFile_InvalidBrokerCode_KO() throws IOException {
+        File file = getTempFile();
+
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.POST, "v2/brokers/broker_ID/organizations/fiscal-code/debtpositions/file" + QUERY_PARAM_SERVICE_TYPE_GPD)
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(MultipartBody.builder()
+                        .addPart("file", file.getName(), file)
+                        .build());
+        HttpClientResponseException response = assertThrows(HttpClientResponseException.class, () -> client.toBlocking().exchange(httpRequest));
+
+        assertEquals(BAD_REQUEST, response.getStatus());
+        file.delete();
+    }
+
+    @Test
+    void createDebtPositionsByFile_InvalidServiceType_KO() throws IOException {
+        File file = getTempFile();
+
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.POST, URI_V2 + "?serviceType=XYZ")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(MultipartBody.builder()
+                        .addPart("file", file.getName(), file)
+                        .build());
+        HttpClientResponseException response = assertThrows(HttpClientResponseException.class, () -> client.toBlocking().exchange(httpRequest));
+
+        assertEquals(BAD_REQUEST, response.getStatus());
+        file.delete();
+    }
+
+    @Test
+    void createBrokerDebtPositionsByFile_OK() throws IOException {
+        File file = getTempFile();
+
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.POST, "v2/brokers/broker-ID/debtpositions/file" + QUERY_PARAM_SERVICE_TYPE_GPD)
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(MultipartBody.builder()
+                        .addPart("file", file.getName(), file)
+                        .build());
+        HttpResponse<BrokerUploadDTO> response = client.toBlocking().exchange(httpRequest, BrokerUploadDTO.class);
+
+        assertNotNull(response);
+        assertEquals(ACCEPTED, response.getStatus());
+        assertEquals(Map.of("fiscal-code", UPLOAD_KEY), response.body().getFileIds());
+        file.delete();
+    }
+
+    @Test
+    void updateBrokerDebtPositionsByFile_InvalidBrokerCode_KO() throws IOException {
+        File file = getTempFile();
+
+        HttpRequest httpRequest = HttpRequest.create(HttpMethod.PUT, "v2/brokers/broker_ID/debtpositions/file" + QUERY_PARAM_SERVICE_TYPE_GPD)
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(MultipartBody.builder()
+                        .addPart("file", file.getName(), file)
+                        .build());
+        HttpClientResponseException response = assertThrows(HttpClientResponseException.class, () -> client.toBlocking().exchange(httpRequest));
+
+        assertEquals(BAD_REQUEST, response.getStatus());
+        file.delete();
+    }
+
+    @Test
+    void createDebtPositionsByUrl_OK() {
+        HttpRequest<UploadUrlModel> httpRequest = HttpRequest.POST("v2/brokers/broker-ID/organizations/fiscal-code/debtpositions/url" + QUERY_PARAM_SERVICE_TYPE_GPD,
+                UploadUrlModel.builder().url("https://account.blob.core.windows.net/container/file.zip?sig=sas").build());
+        HttpResponse<?> response = client.toBlocking().exchange(httpRequest);
+
+        assertNotNull(response);
+        assertEquals(ACCEPTED, response.getStatus());
+        Mockito.verify(urlUploadService).upload(eq("broker-ID"), eq("fiscal-code"), eq(UploadOperation.CREATE),
+                eq("https://account.blob.core.windows.net/container/file.zip?sig=sas"), any(), any());
+    }
+
+    @Test
+    void deleteDebtPositionsByUrl_MissingUrl_KO() {
+        HttpRequest<UploadUrlModel> httpRequest = HttpRequest.DELETE("v2/brokers/broker-ID/organizations/fiscal-code/debtpositions/url" + QUERY_PARAM_SERVICE_TYPE_GPD,
+                UploadUrlModel.builder().build());
+        HttpClientResponseException response = assertThrows(HttpClientResponseException.class, () -> client.toBlocking().exchange(httpRequest));
+
+        assertEquals(BAD_REQUEST, response.getStatus());
+    }
+
     File getTempFile() throws IOException {
         // Warning: This will fail on Windows as it doesn't support PosixFilePermissions.
         return Files.createTempFile(
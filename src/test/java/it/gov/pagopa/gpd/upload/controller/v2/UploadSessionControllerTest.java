@@ -0,0 +1,94 @@
+package it.gov.pagopa.gpd.upload.controller.v2;
+
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.UploadSessionDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadSessionModel;
+import it.gov.pagopa.gpd.upload.service.UploadSessionService;
+import it.gov.pagopa.gpd.upload.service.WebhookService;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static io.micronaut.http.HttpStatus.ACCEPTED;
+import static io.micronaut.http.HttpStatus.BAD_REQUEST;
+import static io.micronaut.http.HttpStatus.CREATED;
+import static io.micronaut.http.HttpStatus.OK;
+import static it.gov.pagopa.gpd.upload.utils.TestConstants.QUERY_PARAM_SERVICE_TYPE_GPD;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+@MicronautTest
+class UploadSessionControllerTest {
+    private static final String SESSION_ID = "broker-ID_fiscal-code_0123456789abcdef";
+    private static final String URI = "v2/brokers/broker-ID/organizations/fiscal-code/debtpositions/sessions";
+
+    @Inject
+    @Client("/")
+    HttpClient client;
+    @Inject
+    UploadSessionService uploadSessionService;
+    @Inject
+    WebhookService webhookService;
+
+    @BeforeEach
+    void beforeEach() {
+        UploadSessionDTO session = UploadSessionDTO.builder().sessionId(SESSION_ID).size(10).receivedRanges(List.of()).build();
+        Mockito.when(uploadSessionService.create(anyString(), anyString(), anyLong(), any())).thenReturn(session);
+        Mockito.when(uploadSessionService.putChunk(anyString(), anyString(), anyString(), anyLong(), any())).thenReturn(session);
+        Mockito.when(uploadSessionService.finalizeSession(anyString(), anyString(), anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(new UploadSessionService.Finalized(SESSION_ID, ServiceType.ACA)));
+    }
+
+    @Test
+    void createUploadSession_OK() {
+        HttpRequest<UploadSessionModel> httpRequest = HttpRequest.POST(URI + QUERY_PARAM_SERVICE_TYPE_GPD, UploadSessionModel.builder().size(10L).build());
+        HttpResponse<UploadSessionDTO> response = client.toBlocking().exchange(httpRequest, UploadSessionDTO.class);
+
+        assertEquals(CREATED, response.getStatus());
+        assertEquals(SESSION_ID, response.body().getSessionId());
+    }
+
+    @Test
+    void createUploadSession_InvalidSize_KO() {
+        HttpRequest<UploadSessionModel> httpRequest = HttpRequest.POST(URI + QUERY_PARAM_SERVICE_TYPE_GPD, UploadSessionModel.builder().size(0L).build());
+        HttpClientResponseException response = assertThrows(HttpClientResponseException.class, () -> client.toBlocking().exchange(httpRequest));
+
+        assertEquals(BAD_REQUEST, response.getStatus());
+    }
+
+    @Test
+    void putUploadSessionChunk_OK() {
+        HttpRequest<byte[]> httpRequest = HttpRequest.PUT(URI + "/" + SESSION_ID + "/chunks?offset=5", new byte[]{1, 2, 3, 4, 5})
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+        HttpResponse<UploadSessionDTO> response = client.toBlocking().exchange(httpRequest, UploadSessionDTO.class);
+
+        assertEquals(OK, response.getStatus());
+        Mockito.verify(uploadSessionService).putChunk(eq("broker-ID"), eq("fiscal-code"), eq(SESSION_ID), eq(5L), any());
+    }
+
+    @Test
+    void finalizeUploadSession_OK() {
+        HttpRequest<?> httpRequest = HttpRequest.POST(URI + "/" + SESSION_ID + "/finalize?operation=UPDATE", "");
+        HttpResponse<?> response = client.toBlocking().exchange(httpRequest);
+
+        assertEquals(ACCEPTED, response.getStatus());
+        Mockito.verify(uploadSessionService).finalizeSession(eq("broker-ID"), eq("fiscal-code"), eq(SESSION_ID), eq(UploadOperation.UPDATE), any());
+        // the service type of the session, not the default of the missing query parameter
+        Mockito.verify(webhookService).onAccepted("broker-ID", "fiscal-code", SESSION_ID, ServiceType.ACA);
+    }
+}
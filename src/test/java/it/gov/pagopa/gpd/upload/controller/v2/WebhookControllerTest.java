@@ -0,0 +1,88 @@
+package it.gov.pagopa.gpd.upload.controller.v2;
+
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.WebhookDTO;
+import it.gov.pagopa.gpd.upload.model.v2.WebhookModel;
+import it.gov.pagopa.gpd.upload.service.WebhookService;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static io.micronaut.http.HttpStatus.BAD_REQUEST;
+import static io.micronaut.http.HttpStatus.NOT_IMPLEMENTED;
+import static io.micronaut.http.HttpStatus.NO_CONTENT;
+import static io.micronaut.http.HttpStatus.OK;
+import static it.gov.pagopa.gpd.upload.utils.TestConstants.QUERY_PARAM_SERVICE_TYPE_GPD;
+import static it.gov.pagopa.gpd.upload.utils.TestConstants.URI_V2;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@MicronautTest
+class WebhookControllerTest {
+    private static final String BROKER_URI = "v2/brokers/broker-ID/webhook";
+    private static final String URL = "https://broker.example.com/webhook";
+
+    @Inject
+    @Client("/")
+    HttpClient client;
+    @Inject
+    WebhookService webhookService;
+
+    @Test
+    void putBrokerWebhook_OK() {
+        Mockito.when(webhookService.registerBroker("broker-ID", URL)).thenReturn(WebhookDTO.builder().url(URL).secret("secret").build());
+
+        HttpRequest<WebhookModel> httpRequest = HttpRequest.PUT(BROKER_URI, WebhookModel.builder().url(URL).build());
+        HttpResponse<WebhookDTO> response = client.toBlocking().exchange(httpRequest, WebhookDTO.class);
+
+        assertEquals(OK, response.getStatus());
+        assertEquals("secret", response.body().getSecret());
+    }
+
+    @Test
+    void putBrokerWebhook_MissingUrl_KO() {
+        HttpRequest<WebhookModel> httpRequest = HttpRequest.PUT(BROKER_URI, WebhookModel.builder().build());
+        HttpClientResponseException response = assertThrows(HttpClientResponseException.class, () -> client.toBlocking().exchange(httpRequest));
+
+        assertEquals(BAD_REQUEST, response.getStatus());
+    }
+
+    @Test
+    void deleteBrokerWebhook_OK() {
+        HttpResponse<?> response = client.toBlocking().exchange(HttpRequest.DELETE(BROKER_URI));
+
+        assertEquals(NO_CONTENT, response.getStatus());
+        Mockito.verify(webhookService).unregisterBroker("broker-ID");
+    }
+
+    @Test
+    void putUploadWebhook_OK() {
+        Mockito.when(webhookService.registerUpload("broker-ID", "fiscal-code", "fileId", ServiceType.GPD, URL))
+                .thenReturn(WebhookDTO.builder().url(URL).secret("secret").build());
+
+        HttpRequest<WebhookModel> httpRequest = HttpRequest.PUT(URI_V2 + "/fileId/webhook" + QUERY_PARAM_SERVICE_TYPE_GPD, WebhookModel.builder().url(URL).build());
+        HttpResponse<WebhookDTO> response = client.toBlocking().exchange(httpRequest, WebhookDTO.class);
+
+        assertEquals(OK, response.getStatus());
+        assertEquals(URL, response.body().getUrl());
+    }
+
+    @Test
+    void putUploadWebhook_Disabled_KO() {
+        Mockito.when(webhookService.registerUpload("broker-ID", "fiscal-code", "disabled", ServiceType.GPD, URL))
+                .thenThrow(new AppException(HttpStatus.NOT_IMPLEMENTED, "WEBHOOKS NOT ENABLED", "Completion webhooks are not enabled"));
+
+        HttpRequest<WebhookModel> httpRequest = HttpRequest.PUT(URI_V2 + "/disabled/webhook" + QUERY_PARAM_SERVICE_TYPE_GPD, WebhookModel.builder().url(URL).build());
+        HttpClientResponseException response = assertThrows(HttpClientResponseException.class, () -> client.toBlocking().exchange(httpRequest));
+
+        assertEquals(NOT_IMPLEMENTED, response.getStatus());
+    }
+}
@@ -0,0 +1,107 @@
+package it.gov.pagopa.gpd.upload.entity;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadTest {
+    private static final int IUPDS = 100_000;
+
+    @Test
+    void addResponse_MergedByStatusAndMessage() {
+        Upload upload = Upload.builder().current(0).total(3).build();
+        List<String> given = List.of("IUPD1");
+
+        upload.addResponse(entry(201, "created", given));
+        upload.addResponse(entry(400, "bad request", List.of("IUPD2")));
+        upload.addResponse(entry(201, "created", List.of("IUPD3")));
+
+        assertEquals(3, upload.getCurrent());
+        assertEquals(2, upload.getResponses().size());
+        assertEquals(List.of("IUPD1", "IUPD3"), upload.getResponses().get(0).getRequestIDs());
+        assertEquals(List.of("IUPD2"), upload.getResponses().get(1).getRequestIDs());
+        // the lists of the callers are not appended to
+        assertEquals(List.of("IUPD1"), given);
+    }
+
+    @Test
+    void addResponse_ReplacedResponses_Reindexed() {
+        Upload upload = Upload.builder().current(0).total(3).build();
+        upload.addResponse(entry(201, "created", List.of("IUPD1")));
+
+        upload.setResponses(new ArrayList<>(List.of(entry(400, "bad request", List.of("IUPD2")))));
+        upload.addResponse(entry(400, "bad request", List.of("IUPD3")));
+
+        assertEquals(1, upload.getResponses().size());
+        assertEquals(List.of("IUPD2", "IUPD3"), upload.getResponses().get(0).getRequestIDs());
+    }
+
+    @Test
+    void addResponse_100kIUPDs_Linear() {
+        Upload upload = Upload.builder().current(0).total(IUPDS).start(LocalDateTime.now()).build();
+
+        upload.addResponse(entry(201, "created", List.of("IUPD0")));
+        upload.addResponse(entry(400, "bad request", List.of("IUPD1")));
+        upload.addResponse(entry(201, "created", List.of("IUPD2")));
+        upload.addResponse(entry(400, "bad request", List.of("IUPD3")));
+        List<String> succeeded = upload.getResponses().get(0).getRequestIDs();
+        List<String> failed = upload.getResponses().get(1).getRequestIDs();
+
+        // one IUPD per batch, the worst case of the merge: quadratic when each merge copied the IUPDs of the entry
+        for (int i = 4; i < IUPDS; i++)
+            upload.addResponse(entry(i % 10 == 0 ? 400 : 201, i % 10 == 0 ? "bad request" : "created", List.of("IUPD" + i)));
+
+        // each entry copies the list of its first caller once, then appends to its own list
+        assertSame(succeeded, upload.getResponses().get(0).getRequestIDs());
+        assertSame(failed, upload.getResponses().get(1).getRequestIDs());
+        assertEquals(IUPDS, upload.getCurrent());
+        assertEquals(2, upload.getResponses().size());
+        assertEquals(IUPDS * 9 / 10 - 1, succeeded.size());
+        assertEquals(IUPDS / 10 + 1, failed.size());
+    }
+
+    @Test
+    void addResponse_Concurrent_OK() throws InterruptedException {
+        Upload upload = Upload.builder().current(0).total(IUPDS).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            int offset = thread * IUPDS / 4;
+            executor.submit(() -> {
+                for (int i = offset; i < offset + IUPDS / 4; i++)
+                    upload.addResponse(entry(201, "created", List.of("IUPD" + i)));
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(IUPDS, upload.getCurrent());
+        assertEquals(IUPDS, upload.getResponses().get(0).getRequestIDs().size());
+    }
+
+    @Test
+    void serialize_SameShape() throws Exception {
+        Upload upload = Upload.builder().current(0).total(2).build();
+        upload.addResponse(entry(201, "created", List.of("IUPD1")));
+        upload.addResponse(entry(201, "created", List.of("IUPD2")));
+
+        JsonNode json = new ObjectMapper().findAndRegisterModules().valueToTree(upload);
+
+        assertFalse(json.has("index"));
+        assertFalse(json.has("succeededCount"));
+        assertEquals(2, json.path("responses").get(0).path("requestIDs").size());
+        assertEquals(201, json.path("responses").get(0).path("statusCode").asInt());
+    }
+
+    private static ResponseEntry entry(int statusCode, String statusMessage, List<String> requestIDs) {
+        return ResponseEntry.builder().statusCode(statusCode).statusMessage(statusMessage).requestIDs(requestIDs).build();
+    }
+}
@@ -5,17 +5,25 @@ import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.models.BlobProperties;
 import com.azure.storage.blob.specialized.BlockBlobClient;
+import io.micronaut.http.HttpStatus;
 import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 
 import static it.gov.pagopa.gpd.upload.utils.Constants.*;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -27,9 +35,10 @@ class BlobStorageRepositoryTest {
     private static final String UPLOAD_CONTAINER_PATH = BROKER_ID + "/" + FISCAL_CODE + "/" + INPUT_DIRECTORY;
     private static final String DOWNLOAD_CONTAINER_PATH = BROKER_ID + "/" + FISCAL_CODE + "/" + OUTPUT_DIRECTORY;
     private static final String BLOB_NAME = "blobName";
+    private static final String FILE_ID = "fileId";
 
     BlobServiceClient blobServiceClientMock = mock(BlobServiceClient.class);
-    BlobStorageRepository blobStorageRepository = new BlobStorageRepository(blobServiceClientMock);
+    BlobStorageRepository blobStorageRepository = new BlobStorageRepository(blobServiceClientMock, ForkJoinPool.commonPool());
 
     @Test
     void upload_OK() {
@@ -41,7 +50,6 @@ class BlobStorageRepositoryTest {
         when(blockBlobClient.getBlobName()).thenReturn(BLOB_NAME);
 
         BlobClient blobClient = mock(BlobClient.class);
-        when(blobClient.exists()).thenReturn(false);
         when(blobClient.getBlockBlobClient()).thenReturn(blockBlobClient);
         doNothing().when(blobClient).setMetadata(Map.of(SERVICE_TYPE_METADATA, ServiceType.GPD.name()));
 
@@ -51,13 +59,13 @@ class BlobStorageRepositoryTest {
         Mockito.when(blobServiceClientMock.createBlobContainerIfNotExists(anyString())).thenReturn(null);
         Mockito.when(blobServiceClientMock.getBlobContainerClient(UPLOAD_CONTAINER_PATH)).thenReturn(blobContainerClient);
 
-        assertDoesNotThrow(() -> blobStorageRepository.upload(BROKER_ID, FISCAL_CODE, inputStream, ServiceType.GPD));
+        assertDoesNotThrow(() -> blobStorageRepository.upload(BROKER_ID, FISCAL_CODE, FILE_ID, inputStream, ServiceType.GPD, UploadCancellation.none()).join());
 
         verify(blobServiceClientMock, times(1)).createBlobContainerIfNotExists(anyString());
         verify(blobServiceClientMock, times(1)).getBlobContainerClient(UPLOAD_CONTAINER_PATH);
         verify(blobContainerClient, atLeast(1)).getBlobClient(anyString());
-        verify(blobClient, times(1)).exists();
         verify(blobClient, times(1)).getBlockBlobClient();
+        verify(blockBlobClient, times(1)).commitBlockList(any());
     }
 
     @Test
@@ -68,7 +76,6 @@ class BlobStorageRepositoryTest {
         BlockBlobClient blockBlobClient = mock(BlockBlobClient.class);
 
         BlobClient blobClient = mock(BlobClient.class);
-        when(blobClient.exists()).thenReturn(false);
         when(blobClient.getBlockBlobClient()).thenReturn(blockBlobClient);
         doNothing().when(blobClient).setMetadata(Map.of(SERVICE_TYPE_METADATA, ServiceType.GPD.name()));
 
@@ -78,12 +85,14 @@ class BlobStorageRepositoryTest {
         Mockito.when(blobServiceClientMock.createBlobContainerIfNotExists(anyString())).thenReturn(null);
         Mockito.when(blobServiceClientMock.getBlobContainerClient(UPLOAD_CONTAINER_PATH)).thenReturn(blobContainerClient);
 
-        blobStorageRepository.upload(BROKER_ID, FISCAL_CODE, inputStream, ServiceType.GPD);
+        CompletableFuture<Void> upload = blobStorageRepository.upload(BROKER_ID, FISCAL_CODE, FILE_ID, inputStream, ServiceType.GPD, UploadCancellation.none());
 
+        // the staging failure is reported to the caller
+        CompletionException exception = assertThrows(CompletionException.class, upload::join);
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ((AppException) exception.getCause()).getHttpStatus());
         verify(blobServiceClientMock, times(1)).createBlobContainerIfNotExists(anyString());
         verify(blobServiceClientMock, times(1)).getBlobContainerClient(UPLOAD_CONTAINER_PATH);
         verify(blobContainerClient, times(1)).getBlobClient(anyString());
-        verify(blobClient, times(1)).exists();
         verify(blobClient, times(1)).getBlockBlobClient();
         verify(blobClient, never()).setMetadata(Map.of(SERVICE_TYPE_METADATA, ServiceType.GPD.name()));
         verify(blockBlobClient, never()).stageBlock(anyString(), any(), anyLong());
@@ -91,6 +100,93 @@ class BlobStorageRepositoryTest {
         verify(blockBlobClient, never()).getBlobName();
     }
 
+    @Test
+    void upload_CommitAfterAcceptance() {
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(), (phase, reason) -> {});
+        BlockBlobClient blockBlobClient = mockUploadContainer();
+
+        blobStorageRepository.upload(BROKER_ID, FISCAL_CODE, FILE_ID, new ByteArrayInputStream(new byte[10]), ServiceType.GPD, cancellation);
+
+        verify(blockBlobClient, timeout(1000)).stageBlock(anyString(), any(), anyLong());
+        verify(blockBlobClient, never()).commitBlockList(any());
+
+        cancellation.commit();
+
+        verify(blockBlobClient, timeout(1000)).commitBlockList(any());
+    }
+
+    @Test
+    void upload_CancelledDiscardsBlocks() {
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(), (phase, reason) -> {});
+        BlockBlobClient blockBlobClient = mockUploadContainer();
+
+        blobStorageRepository.upload(BROKER_ID, FISCAL_CODE, FILE_ID, new ByteArrayInputStream(new byte[10]), ServiceType.GPD, cancellation);
+        cancellation.cancel(UploadCancellation.Reason.CLIENT_DISCONNECTED);
+
+        verify(blockBlobClient, after(200).never()).commitBlockList(any());
+    }
+
+    @Test
+    void upload_StagingDeadlineAfterCommit_KO() {
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(UploadCancellation.Phase.STAGING, Duration.ofMillis(100)), (phase, reason) -> {});
+        cancellation.enter(UploadCancellation.Phase.STAGING);
+        cancellation.commit();
+        BlockBlobClient blockBlobClient = mockUploadContainer();
+        CompletableFuture<Void> staging = new CompletableFuture<>();
+        // the staging is slower than its deadline
+        doAnswer(invocation -> staging.join()).when(blockBlobClient).stageBlock(anyString(), any(), anyLong());
+
+        CompletableFuture<Void> upload = blobStorageRepository.upload(BROKER_ID, FISCAL_CODE, FILE_ID, new ByteArrayInputStream(new byte[10]), ServiceType.GPD, cancellation);
+        verify(blockBlobClient, timeout(1000)).stageBlock(anyString(), any(), anyLong());
+        await(Duration.ofMillis(150));
+        staging.complete(null);
+
+        CompletionException exception = assertThrows(CompletionException.class, upload::join);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ((AppException) exception.getCause()).getHttpStatus());
+        verify(blockBlobClient, never()).commitBlockList(any());
+    }
+
+    @Test
+    void stage_NotCommittedUntilCommit() {
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(), (phase, reason) -> {});
+        BlockBlobClient blockBlobClient = mockUploadContainer();
+
+        BlobStorageRepository.StagedInput input = blobStorageRepository.stage(BROKER_ID, FISCAL_CODE, FILE_ID, new ByteArrayInputStream(new byte[10]), cancellation).join();
+
+        // the upload being committed does not commit a staged input
+        cancellation.commit();
+        verify(blockBlobClient, times(1)).stageBlock(anyString(), any(), anyLong());
+        verify(blockBlobClient, after(200).never()).commitBlockList(any());
+
+        blobStorageRepository.commit(input, ServiceType.GPD);
+
+        verify(blockBlobClient, times(1)).commitBlockList(input.blockIds());
+        verify(input.blobClient()).setMetadata(Map.of(SERVICE_TYPE_METADATA, ServiceType.GPD.name()));
+    }
+
+    private static void await(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private BlockBlobClient mockUploadContainer() {
+        BlockBlobClient blockBlobClient = mock(BlockBlobClient.class);
+        when(blockBlobClient.getBlobName()).thenReturn(BLOB_NAME);
+
+        BlobClient blobClient = mock(BlobClient.class);
+        when(blobClient.exists()).thenReturn(false);
+        when(blobClient.getBlockBlobClient()).thenReturn(blockBlobClient);
+
+        BlobContainerClient blobContainerClient = mock(BlobContainerClient.class);
+        when(blobContainerClient.getBlobClient(anyString())).thenReturn(blobClient);
+
+        Mockito.when(blobServiceClientMock.getBlobContainerClient(UPLOAD_CONTAINER_PATH)).thenReturn(blobContainerClient);
+        return blockBlobClient;
+    }
+
     @Test
     void downloadContent_OK() {
         BlobProperties blobProperties = mock(BlobProperties.class);
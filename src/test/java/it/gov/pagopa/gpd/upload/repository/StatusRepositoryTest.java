@@ -8,8 +8,11 @@ import io.micronaut.http.HttpStatus;
 import it.gov.pagopa.gpd.upload.entity.Status;
 import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import java.lang.reflect.Field;
 import java.time.LocalDateTime;
 import java.util.Iterator;
 import java.util.List;
@@ -269,6 +272,55 @@ class StatusRepositoryTest {
         verify(cosmosContainerMock, times(1)).queryItems(any(SqlQuerySpec.class), any(), any());
     }
 
+    @Test
+    void findStatusCountersById_OK() {
+        Status status = Status.builder().id(STATUS_ID).build();
+        CosmosPagedIterable cosmosPagedResponse = mock(CosmosPagedIterable.class);
+        when(cosmosPagedResponse.stream()).thenReturn(Stream.of(status));
+        when(cosmosContainerMock.queryItems(any(SqlQuerySpec.class), any(), any())).thenReturn(cosmosPagedResponse);
+
+        assertEquals(status, statusRepository.findStatusCountersById(STATUS_ID, FISCAL_CODE));
+        ArgumentCaptor<SqlQuerySpec> spec = ArgumentCaptor.forClass(SqlQuerySpec.class);
+        verify(cosmosContainerMock).queryItems(spec.capture(), any(), any());
+        // the IUPDs of the responses are not read
+        assertFalse(spec.getValue().getQueryText().contains("r.requestIDs"));
+        verify(cosmosContainerMock, never()).readItem(any(), any(), any(Class.class));
+    }
+
+    @Test
+    void findStatusCountersById_NOT_FOUND_KO() {
+        CosmosPagedIterable cosmosPagedResponse = mock(CosmosPagedIterable.class);
+        when(cosmosPagedResponse.stream()).thenReturn(Stream.empty());
+        when(cosmosContainerMock.queryItems(any(SqlQuerySpec.class), any(), any())).thenReturn(cosmosPagedResponse);
+
+        AppException exception = assertThrows(AppException.class, () -> statusRepository.findStatusCountersById(STATUS_ID, FISCAL_CODE));
+        assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+    }
+
+    @Test
+    void findStatusesByIds_OK() {
+        Status status = Status.builder().id(STATUS_ID).build();
+        FeedResponse<Status> feedResponse = mock(FeedResponse.class);
+        when(feedResponse.getResults()).thenReturn(List.of(status));
+        when(cosmosContainerMock.readMany(anyList(), eq(Status.class))).thenReturn(feedResponse);
+
+        assertEquals(List.of(status), statusRepository.findStatusesByIds(List.of(STATUS_ID, "missing"), FISCAL_CODE));
+        ArgumentCaptor<List<CosmosItemIdentity>> identities = ArgumentCaptor.forClass(List.class);
+        verify(cosmosContainerMock, times(1)).readMany(identities.capture(), eq(Status.class));
+        assertEquals(List.of(STATUS_ID, "missing"), identities.getValue().stream().map(CosmosItemIdentity::getId).toList());
+        assertTrue(identities.getValue().stream().allMatch(identity -> identity.getPartitionKey().equals(new PartitionKey(FISCAL_CODE))));
+        verify(cosmosContainerMock, never()).queryItems(any(SqlQuerySpec.class), any(), any());
+    }
+
+    @Test
+    void findStatusesByIds_KO() {
+        CosmosException exception = mock(CosmosException.class);
+        when(exception.getStatusCode()).thenReturn(HttpStatus.INTERNAL_SERVER_ERROR.getCode());
+        when(cosmosContainerMock.readMany(anyList(), eq(Status.class))).thenThrow(exception);
+
+        assertThrows(AppException.class, () -> statusRepository.findStatusesByIds(List.of(STATUS_ID), FISCAL_CODE));
+    }
+
     @Test
     void findFileIdsPage_OK() {
         Iterable<FeedResponse<String>> page = mock(Iterable.class);
@@ -290,6 +342,91 @@ class StatusRepositoryTest {
         assertEquals(NEXT_TOKEN, response.getContinuationToken());
     }
 
+    @Test
+    void findFileIdsPage_ListById_OK() throws NoSuchFieldException, IllegalAccessException {
+        Field listByIdField = StatusRepository.class.getDeclaredField("listById");
+        listByIdField.setAccessible(true);
+        listByIdField.setBoolean(statusRepository, true);
+        Iterable<FeedResponse<String>> page = mock(Iterable.class);
+        when(page.iterator()).thenReturn(List.<FeedResponse<String>>of().iterator());
+        CosmosPagedIterable cosmosPagedResponse = mock(CosmosPagedIterable.class);
+        when(cosmosPagedResponse.iterableByPage(CONTINUATION_TOKEN, PAGE_SIZE)).thenReturn(page);
+        when(cosmosContainerMock.queryItems(any(SqlQuerySpec.class), any(), any())).thenReturn(cosmosPagedResponse);
+
+        StatusRepository.FileIdsPage response = statusRepository.findFileIdsPage(BROKER_CODE, ORG_FISCAL_CODE, DATE_NOW.minusDays(1), DATE_NOW, PAGE_SIZE, CONTINUATION_TOKEN, ServiceType.GPD);
+
+        assertTrue(response.getFileIds().isEmpty());
+        ArgumentCaptor<SqlQuerySpec> spec = ArgumentCaptor.forClass(SqlQuerySpec.class);
+        verify(cosmosContainerMock).queryItems(spec.capture(), any(), any());
+        assertTrue(spec.getValue().getQueryText().contains("ORDER BY c.id DESC"));
+        assertFalse(spec.getValue().getQueryText().contains("c.upload.start"));
+        String fromId = spec.getValue().getParameters().stream().filter(p -> p.getName().equals("@fromId")).findFirst().orElseThrow().getValue(String.class);
+        String toId = spec.getValue().getParameters().stream().filter(p -> p.getName().equals("@toId")).findFirst().orElseThrow().getValue(String.class);
+        assertTrue(fromId.startsWith(BROKER_CODE + "_" + ORG_FISCAL_CODE + "_"));
+        assertTrue(fromId.compareTo(toId) < 0);
+    }
+
+    @Test
+    void findFileIdsPage_ByOutcome_OK() {
+        Iterable<FeedResponse<String>> page = mock(Iterable.class);
+        when(page.iterator()).thenReturn(List.<FeedResponse<String>>of().iterator());
+        CosmosPagedIterable cosmosPagedResponse = mock(CosmosPagedIterable.class);
+        when(cosmosPagedResponse.iterableByPage(CONTINUATION_TOKEN, PAGE_SIZE)).thenReturn(page);
+        when(cosmosContainerMock.queryItems(any(SqlQuerySpec.class), any(), any())).thenReturn(cosmosPagedResponse);
+
+        statusRepository.findFileIdsPage(BROKER_CODE, ORG_FISCAL_CODE, DATE_NOW, DATE_NOW, PAGE_SIZE, CONTINUATION_TOKEN, ServiceType.GPD, OperationStatus.COMPLETED_UNSUCCESSFULLY);
+
+        ArgumentCaptor<SqlQuerySpec> spec = ArgumentCaptor.forClass(SqlQuerySpec.class);
+        verify(cosmosContainerMock).queryItems(spec.capture(), any(), any());
+        // the sub-uploads are listed in place of the split upload
+        assertTrue(spec.getValue().getQueryText().contains("NOT IS_DEFINED(c.children)"));
+        assertFalse(spec.getValue().getQueryText().contains("NOT IS_DEFINED(c.parent)"));
+        assertTrue(spec.getValue().getQueryText().contains("r.statusCode >= 400"));
+    }
+
+    @Test
+    void countOutcomes_OK() {
+        CosmosPagedIterable cosmosPagedResponse = mock(CosmosPagedIterable.class);
+        when(cosmosPagedResponse.stream()).thenAnswer(invocation -> Stream.of(
+                new StatusRepository.OutcomeRow(null, 3, 3, List.of(new StatusRepository.OutcomeRow.Response(201, 3))),
+                new StatusRepository.OutcomeRow(null, 3, 3, List.of(
+                        new StatusRepository.OutcomeRow.Response(304, 1),
+                        new StatusRepository.OutcomeRow.Response(400, 2))),
+                new StatusRepository.OutcomeRow(null, 2, 2, List.of(new StatusRepository.OutcomeRow.Response(500, 2))),
+                new StatusRepository.OutcomeRow(null, 1, 4, List.of(new StatusRepository.OutcomeRow.Response(201, 1))),
+                new StatusRepository.OutcomeRow(true, 0, 0, null)));
+        when(cosmosContainerMock.queryItems(any(SqlQuerySpec.class), any(), any())).thenReturn(cosmosPagedResponse);
+
+        StatusRepository.Outcomes outcomes = statusRepository.countOutcomes(BROKER_CODE, ORG_FISCAL_CODE, DATE_NOW, DATE_NOW, ServiceType.GPD);
+
+        assertEquals(OperationStatus.values().length, outcomes.uploads().size());
+        assertEquals(1L, outcomes.uploads().get(OperationStatus.COMPLETED));
+        assertEquals(1L, outcomes.uploads().get(OperationStatus.COMPLETED_WITH_WARNINGS));
+        assertEquals(1L, outcomes.uploads().get(OperationStatus.COMPLETED_UNSUCCESSFULLY));
+        assertEquals(1L, outcomes.uploads().get(OperationStatus.IN_PROGRESS));
+        assertEquals(1L, outcomes.uploads().get(OperationStatus.PENDING));
+        assertEquals(5L, outcomes.succeededItems());
+        assertEquals(4L, outcomes.failedItems());
+        // a single query, the uploads are grouped by outcome in memory
+        ArgumentCaptor<SqlQuerySpec> spec = ArgumentCaptor.forClass(SqlQuerySpec.class);
+        verify(cosmosContainerMock, times(1)).queryItems(spec.capture(), any(), any());
+        assertTrue(spec.getValue().getQueryText().contains("c.fiscalCode = @org"));
+        assertTrue(spec.getValue().getQueryText().contains("NOT IS_DEFINED(c.children)"));
+    }
+
+    @Test
+    void countOutcomes_NoUploads_Zero() {
+        CosmosPagedIterable cosmosPagedResponse = mock(CosmosPagedIterable.class);
+        when(cosmosPagedResponse.stream()).thenAnswer(invocation -> Stream.empty());
+        when(cosmosContainerMock.queryItems(any(SqlQuerySpec.class), any(), any())).thenReturn(cosmosPagedResponse);
+
+        StatusRepository.Outcomes outcomes = statusRepository.countOutcomes(BROKER_CODE, ORG_FISCAL_CODE, DATE_NOW, DATE_NOW, ServiceType.GPD);
+
+        assertTrue(outcomes.uploads().values().stream().allMatch(count -> count == 0L));
+        assertEquals(0L, outcomes.succeededItems());
+        assertEquals(0L, outcomes.failedItems());
+    }
+
     @Test
     void findFileIdsPage_INTERNAL_SERVER_ERROR_KO() {
         CosmosException exception = mock(CosmosException.class);
@@ -0,0 +1,90 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.service.UploadLaneExecutor.Lane;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AdmissionServiceTest {
+    private final UploadLaneExecutor uploadLaneExecutor = mock(UploadLaneExecutor.class);
+    private final AdmissionService admissionService = new AdmissionService(uploadLaneExecutor);
+
+    @BeforeEach
+    void beforeEach() throws NoSuchFieldException, IllegalAccessException {
+        Map<String, Integer> config = Map.of("smallMaxConcurrent", 2, "mediumMaxConcurrent", 1, "largeMaxConcurrent", 1);
+        for (Map.Entry<String, Integer> entry : config.entrySet()) {
+            Field field = AdmissionService.class.getDeclaredField(entry.getKey());
+            field.setAccessible(true);
+            field.setInt(admissionService, entry.getValue());
+        }
+        admissionService.init();
+    }
+
+    @Test
+    void classify_OK() {
+        when(uploadLaneExecutor.classify(100)).thenReturn(Lane.SMALL);
+
+        assertEquals(Lane.SMALL, admissionService.classify(100));
+        assertEquals(Lane.LARGE, admissionService.classify(-1));
+    }
+
+    @Test
+    void tryAcquire_LargeLaneFull_SmallLaneAvailable() {
+        assertTrue(admissionService.tryAcquire(Lane.LARGE));
+        assertFalse(admissionService.tryAcquire(Lane.LARGE));
+
+        assertTrue(admissionService.tryAcquire(Lane.SMALL));
+        assertEquals(1, admissionService.availablePermits(Lane.SMALL));
+    }
+
+    @Test
+    void admit_PermitHeldUntilUploaded() {
+        when(uploadLaneExecutor.classify(100)).thenReturn(Lane.MEDIUM);
+        CompletableFuture<String> upload = new CompletableFuture<>();
+
+        CompletableFuture<String> admitted = admissionService.admit(100, () -> upload);
+        assertEquals(0, admissionService.availablePermits(Lane.MEDIUM));
+        upload.complete("fileId");
+
+        assertEquals("fileId", admitted.join());
+        assertEquals(1, admissionService.availablePermits(Lane.MEDIUM));
+    }
+
+    @Test
+    void admit_LaneFull_KO() {
+        when(uploadLaneExecutor.classify(100)).thenReturn(Lane.LARGE);
+        assertTrue(admissionService.tryAcquire(Lane.LARGE));
+
+        AppException exception = assertThrows(AppException.class, () -> admissionService.admit(100, () -> CompletableFuture.completedFuture("fileId")));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getHttpStatus());
+    }
+
+    @Test
+    void admit_UploadNotStarted_PermitReleased() {
+        when(uploadLaneExecutor.classify(100)).thenReturn(Lane.SMALL);
+
+        assertThrows(AppException.class, () -> admissionService.admit(100, () -> {
+            throw new AppException(HttpStatus.TOO_MANY_REQUESTS, "TOO MANY UPLOADS", "lane full");
+        }));
+
+        assertEquals(2, admissionService.availablePermits(Lane.SMALL));
+    }
+
+    @Test
+    void release_OK() {
+        assertTrue(admissionService.tryAcquire(Lane.MEDIUM));
+        admissionService.release(Lane.MEDIUM);
+
+        assertEquals(1, admissionService.availablePermits(Lane.MEDIUM));
+    }
+}
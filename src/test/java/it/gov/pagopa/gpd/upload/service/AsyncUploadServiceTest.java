@@ -0,0 +1,280 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import com.azure.core.util.BinaryData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.multipart.CompletedFileUpload;
+import it.gov.pagopa.gpd.upload.entity.Status;
+import it.gov.pagopa.gpd.upload.entity.Upload;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.AsyncUploadMessage;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.repository.UploadQueueRepository;
+import it.gov.pagopa.gpd.upload.utils.FileUtils;
+import it.gov.pagopa.gpd.upload.utils.GPDCompletedFileUpload;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AsyncUploadServiceTest {
+    private static final String BROKER_CODE = "broker-code";
+    private static final String FISCAL_CODE = "fiscal-code";
+    private static final String FILE_ID = "fileId";
+    private static final String UPLOAD_ID = "uploadId";
+
+    private final BlobStorageRepository blobStorageRepository = mock(BlobStorageRepository.class);
+    private final UploadQueueRepository uploadQueueRepository = mock(UploadQueueRepository.class);
+    private final StatusService statusService = mock(StatusService.class);
+    private final BlobService blobService = mock(BlobService.class);
+    private final AsyncUploadService asyncUploadService = new AsyncUploadService(blobStorageRepository, uploadQueueRepository,
+            statusService, blobService, new CancellationService(new SimpleMeterRegistry()));
+
+    @BeforeEach
+    void beforeEach() throws NoSuchFieldException, IllegalAccessException {
+        Field maxAttemptsField = AsyncUploadService.class.getDeclaredField("maxAttempts");
+        maxAttemptsField.setAccessible(true);
+        maxAttemptsField.setInt(asyncUploadService, 3);
+
+        when(blobStorageRepository.newFileId(BROKER_CODE, FISCAL_CODE)).thenReturn(FILE_ID);
+        when(blobStorageRepository.downloadArchive(BROKER_CODE, FISCAL_CODE, FILE_ID)).thenReturn(Optional.of(BinaryData.fromBytes(new byte[]{1, 2, 3})));
+    }
+
+    @Test
+    void accept_OK() throws IOException {
+        String fileId = asyncUploadService.accept(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, FileUtils.getUpsertFile(), ServiceType.GPD, UploadCancellation.none());
+
+        assertEquals(FILE_ID, fileId);
+        verify(blobStorageRepository).uploadArchive(eq(BROKER_CODE), eq(FISCAL_CODE), eq(FILE_ID), any(), anyLong());
+        verify(statusService).createPendingUploadStatus(FISCAL_CODE, BROKER_CODE, FILE_ID, ServiceType.GPD);
+        verify(uploadQueueRepository).send(contains(FILE_ID));
+        verifyNoInteractions(blobService);
+    }
+
+    @Test
+    void accept_StoreFailed_KO() throws IOException {
+        doThrow(new RuntimeException("unavailable")).when(blobStorageRepository).uploadArchive(any(), any(), any(), any(), anyLong());
+
+        assertThrows(RuntimeException.class, () -> asyncUploadService.accept(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, FileUtils.getUpsertFile(), ServiceType.GPD, UploadCancellation.none()));
+
+        verify(blobStorageRepository).deleteArchive(BROKER_CODE, FISCAL_CODE, FILE_ID);
+        verify(statusService, never()).createPendingUploadStatus(any(), any(), any(), any());
+        verify(uploadQueueRepository, never()).send(any());
+    }
+
+    @Test
+    void accept_NotZip_KO() {
+        CompletedFileUpload file = new GPDCompletedFileUpload("test.json", MediaType.of("application/json"), new byte[]{1});
+
+        AppException exception = assertThrows(AppException.class, () -> asyncUploadService.accept(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, UploadCancellation.none()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+        verify(blobStorageRepository, never()).uploadArchive(any(), any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void accept_QueueFailed_PendingFailed() throws IOException {
+        Status pending = pendingStatus();
+        when(statusService.createPendingUploadStatus(FISCAL_CODE, BROKER_CODE, FILE_ID, ServiceType.GPD)).thenReturn(pending);
+        doThrow(new RuntimeException("unavailable")).when(uploadQueueRepository).send(any());
+
+        assertThrows(RuntimeException.class, () -> asyncUploadService.accept(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, FileUtils.getUpsertFile(), ServiceType.GPD, UploadCancellation.none()));
+
+        ArgumentCaptor<AppException> cause = ArgumentCaptor.forClass(AppException.class);
+        verify(statusService).failPendingUpload(eq(pending), cause.capture());
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, cause.getValue().getHttpStatus());
+        verify(blobStorageRepository).deleteArchive(BROKER_CODE, FISCAL_CODE, FILE_ID);
+    }
+
+    @Test
+    void acceptFromUrl_OK() {
+        String url = "https://account.blob.core.windows.net/container/file.zip?sig=sas";
+
+        String fileId = asyncUploadService.acceptFromUrl(BROKER_CODE, FISCAL_CODE, UploadOperation.UPDATE, url, ServiceType.GPD, UploadCancellation.none());
+
+        assertEquals(FILE_ID, fileId);
+        verify(blobStorageRepository).copyArchiveFromUrl(BROKER_CODE, FISCAL_CODE, FILE_ID, url);
+        verify(statusService).createPendingUploadStatus(FISCAL_CODE, BROKER_CODE, FILE_ID, ServiceType.GPD);
+        verify(uploadQueueRepository).send(contains(FILE_ID));
+    }
+
+    @Test
+    void process_OK() {
+        Status pending = pendingStatus();
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenReturn(pending);
+        when(blobService.processArchive(eq(BROKER_CODE), eq(FISCAL_CODE), eq(UploadOperation.CREATE), eq(FILE_ID), any(), eq(ServiceType.GPD), any())).thenReturn(CompletableFuture.completedFuture(UPLOAD_ID));
+
+        assertTrue(asyncUploadService.process(message(), 1));
+
+        verify(statusService).completePendingUpload(pending, UPLOAD_ID);
+        verify(blobStorageRepository).deleteArchive(BROKER_CODE, FISCAL_CODE, FILE_ID);
+    }
+
+    @Test
+    void process_InvalidFile_Failed() {
+        Status pending = pendingStatus();
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenReturn(pending);
+        AppException invalid = new AppException(HttpStatus.BAD_REQUEST, "INVALID FILE", "No valid file found in ZIP.");
+        when(blobService.processArchive(any(), any(), any(), any(), any(), any(), any())).thenThrow(invalid);
+
+        assertTrue(asyncUploadService.process(message(), 1));
+
+        verify(statusService).failPendingUpload(pending, invalid);
+        verify(statusService, never()).completePendingUpload(any(), any());
+        verify(blobStorageRepository).deleteArchive(BROKER_CODE, FISCAL_CODE, FILE_ID);
+    }
+
+    @Test
+    void process_ServerError_Retried() {
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenReturn(pendingStatus());
+        when(blobService.processArchive(any(), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error"));
+
+        assertFalse(asyncUploadService.process(message(), 1));
+        assertTrue(asyncUploadService.process(message(), 3));
+
+        ArgumentCaptor<AppException> cause = ArgumentCaptor.forClass(AppException.class);
+        verify(statusService, times(1)).failPendingUpload(any(), cause.capture());
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, cause.getValue().getHttpStatus());
+        verify(blobStorageRepository, times(1)).deleteArchive(BROKER_CODE, FISCAL_CODE, FILE_ID);
+    }
+
+    @Test
+    void process_Throttled_Retried() {
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenReturn(pendingStatus());
+        when(blobService.processArchive(any(), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new AppException(HttpStatus.TOO_MANY_REQUESTS, "429", "Status saving failed"));
+
+        assertFalse(asyncUploadService.process(message(), 1));
+
+        verify(statusService, never()).failPendingUpload(any(), any());
+        verify(blobStorageRepository, never()).deleteArchive(any(), any(), any());
+    }
+
+    @Test
+    void process_CompletionFailed_NotProcessedAgain() {
+        Status pending = pendingStatus();
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenReturn(pending);
+        when(blobService.processArchive(any(), any(), any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            invocation.getArgument(6, UploadCancellation.class).commit(UPLOAD_ID);
+            return CompletableFuture.completedFuture(UPLOAD_ID);
+        });
+        doThrow(new AppException(HttpStatus.SERVICE_UNAVAILABLE, "503", "Status upsert failed"))
+                .doNothing()
+                .when(statusService).completePendingUpload(pending, UPLOAD_ID);
+
+        assertFalse(asyncUploadService.process(message(), 1));
+        // the upload was recorded before its commit
+        verify(statusService).recordProcessedUpload(pending, UPLOAD_ID);
+        verify(blobStorageRepository, never()).deleteArchive(any(), any(), any());
+
+        Status recorded = pendingStatus();
+        recorded.setProcessedUpload(UPLOAD_ID);
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenReturn(recorded);
+        when(statusService.getStatus(FISCAL_CODE, UPLOAD_ID)).thenReturn(Status.builder().id(UPLOAD_ID).build());
+
+        assertTrue(asyncUploadService.process(message(), 2));
+
+        verify(blobService, times(1)).processArchive(any(), any(), any(), any(), any(), any(), any());
+        verify(statusService).completePendingUpload(recorded, UPLOAD_ID);
+        verify(blobStorageRepository).deleteArchive(BROKER_CODE, FISCAL_CODE, FILE_ID);
+    }
+
+    @Test
+    void process_RecordedNotCommitted_ProcessedAgain() {
+        Status recorded = pendingStatus();
+        recorded.setProcessedUpload("rolledBack");
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenReturn(recorded);
+        when(statusService.getStatus(FISCAL_CODE, "rolledBack")).thenThrow(new AppException(HttpStatus.NOT_FOUND, "STATUS NOT FOUND", "not found"));
+        when(blobService.processArchive(any(), any(), any(), any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(UPLOAD_ID));
+
+        assertTrue(asyncUploadService.process(message(), 2));
+
+        verify(statusService).completePendingUpload(recorded, UPLOAD_ID);
+    }
+
+    @Test
+    void process_UnexpectedError_FailedAtLastAttempt() {
+        Status pending = pendingStatus();
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenReturn(pending);
+        when(blobService.processArchive(any(), any(), any(), any(), any(), any(), any())).thenThrow(new IllegalStateException("unexpected"));
+
+        assertFalse(asyncUploadService.process(message(), 2));
+        verify(statusService, never()).failPendingUpload(any(), any());
+
+        assertTrue(asyncUploadService.process(message(), 3));
+        ArgumentCaptor<AppException> cause = ArgumentCaptor.forClass(AppException.class);
+        verify(statusService).failPendingUpload(eq(pending), cause.capture());
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, cause.getValue().getHttpStatus());
+        verify(blobStorageRepository).deleteArchive(BROKER_CODE, FISCAL_CODE, FILE_ID);
+    }
+
+    @Test
+    void process_ArchiveNotFound_Failed() {
+        Status pending = pendingStatus();
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenReturn(pending);
+        when(blobStorageRepository.downloadArchive(BROKER_CODE, FISCAL_CODE, FILE_ID)).thenReturn(Optional.empty());
+
+        assertTrue(asyncUploadService.process(message(), 1));
+
+        ArgumentCaptor<AppException> cause = ArgumentCaptor.forClass(AppException.class);
+        verify(statusService).failPendingUpload(eq(pending), cause.capture());
+        assertEquals(HttpStatus.NOT_FOUND, cause.getValue().getHttpStatus());
+        verifyNoInteractions(blobService);
+    }
+
+    @Test
+    void process_StatusNotFound_Discarded() {
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenThrow(new AppException(HttpStatus.NOT_FOUND, "STATUS NOT FOUND", "not found"));
+
+        assertTrue(asyncUploadService.process(message(), 1));
+
+        verifyNoInteractions(blobService);
+        verify(blobStorageRepository).deleteArchive(BROKER_CODE, FISCAL_CODE, FILE_ID);
+    }
+
+    @Test
+    void process_AlreadyProcessed_Discarded() {
+        Status processed = pendingStatus();
+        processed.setPending(null);
+        when(statusService.getStatus(FISCAL_CODE, FILE_ID)).thenReturn(processed);
+
+        assertTrue(asyncUploadService.process(message(), 2));
+
+        verifyNoInteractions(blobService);
+        verify(blobStorageRepository).deleteArchive(BROKER_CODE, FISCAL_CODE, FILE_ID);
+    }
+
+    private static AsyncUploadMessage message() {
+        return AsyncUploadMessage.builder()
+                .fileId(FILE_ID)
+                .brokerCode(BROKER_CODE)
+                .organizationFiscalCode(FISCAL_CODE)
+                .uploadOperation(UploadOperation.CREATE)
+                .serviceType(ServiceType.GPD)
+                .build();
+    }
+
+    private static Status pendingStatus() {
+        return Status.builder()
+                .id(FILE_ID)
+                .brokerID(BROKER_CODE)
+                .fiscalCode(FISCAL_CODE)
+                .pending(true)
+                .upload(Upload.builder().current(0).total(0).start(LocalDateTime.now()).build())
+                .build();
+    }
+}
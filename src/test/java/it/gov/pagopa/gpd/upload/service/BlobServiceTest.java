@@ -1,40 +1,62 @@
 package it.gov.pagopa.gpd.upload.service;
 
 import com.azure.core.util.BinaryData;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.specialized.BlockBlobClient;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.micronaut.http.HttpStatus;
 import io.micronaut.http.multipart.CompletedFileUpload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.gov.pagopa.gpd.upload.entity.ResponseEntry;
 import it.gov.pagopa.gpd.upload.exception.AppException;
 import it.gov.pagopa.gpd.upload.model.UploadInput;
 import it.gov.pagopa.gpd.upload.model.UploadOperation;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
-import it.gov.pagopa.gpd.upload.model.pd.MultipleIUPDModel;
+import it.gov.pagopa.gpd.upload.model.pd.PaymentPositionModel;
 import it.gov.pagopa.gpd.upload.model.pd.PaymentPositionsModel;
 import it.gov.pagopa.gpd.upload.model.v1.UploadReport;
 import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
 import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository.StagedInput;
 import it.gov.pagopa.gpd.upload.utils.FileUtils;
 import it.gov.pagopa.gpd.upload.utils.GPDValidator;
+import it.gov.pagopa.gpd.upload.utils.PaymentPositionUtils;
+import it.gov.pagopa.gpd.upload.utils.ReportStream;
 import it.gov.pagopa.gpd.upload.utils.ResponseEntryDTOMapperImpl;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import static it.gov.pagopa.gpd.upload.utils.Constants.INPUT_DIRECTORY;
 import static it.gov.pagopa.gpd.upload.utils.Constants.OUTPUT_DIRECTORY;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class BlobServiceTest {
@@ -43,11 +65,14 @@ class BlobServiceTest {
     private static final String FILE_ID = "fileId";
     private static final String IUPD_1 = "IUPD1";
     private static final String IUPD_2 = "IUPD2";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
     private static final BinaryData binaryData = mock(BinaryData.class);
     private static final BlobStorageRepository blobStorageRepository = mock(BlobStorageRepository.class);
     private static final StatusService statusService = mock(StatusService.class);
-    private static final BlobService blobService = new BlobService(blobStorageRepository, statusService, new GPDValidator<PaymentPositionsModel>(), new GPDValidator<MultipleIUPDModel>(), new ResponseEntryDTOMapperImpl());
+    private static final PositionHashService positionHashService = mock(PositionHashService.class);
+    private static final UploadCoalescer uploadCoalescer = mock(UploadCoalescer.class);
+    private static final UploadJournalService uploadJournalService = mock(UploadJournalService.class);
+    private static final BlobService blobService = new BlobService(blobStorageRepository, statusService, new GPDValidator<PaymentPositionsModel>(), new ResponseEntryDTOMapperImpl(), positionHashService, uploadCoalescer, uploadJournalService, ForkJoinPool.commonPool(), new StatusCache(new SimpleMeterRegistry()));
 
     @BeforeAll
     static void beforeAll() throws NoSuchFieldException, IllegalAccessException {
@@ -59,73 +84,445 @@ class BlobServiceTest {
         zipMaxEntriesField.setAccessible(true);
         zipMaxEntriesField.setInt(blobService, 2);
 
+        Field brokerMaxOrganizationsField = BlobService.class.getDeclaredField("brokerMaxOrganizations");
+        brokerMaxOrganizationsField.setAccessible(true);
+        brokerMaxOrganizationsField.setInt(blobService, 10);
+
+        Field reportStreamThresholdField = BlobService.class.getDeclaredField("reportStreamThreshold");
+        reportStreamThresholdField.setAccessible(true);
+        reportStreamThresholdField.setLong(blobService, 1024);
+
         blobService.init();
     }
 
     @BeforeEach
     void beforeEach(){
-        reset(blobStorageRepository, statusService);
+        reset(blobStorageRepository, statusService, positionHashService, uploadCoalescer, uploadJournalService);
     }
 
     @Test
     void upsert_OK() throws IOException {
-        when(blobStorageRepository.upload(anyString(), anyString(), any(), any())).thenReturn(FISCAL_CODE);
+        stubUpload(FILE_ID);
+        CompletedFileUpload file = FileUtils.getUpsertFile();
+        String uploadKey = blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, UploadCancellation.none()).join();
+
+        Assertions.assertEquals(FILE_ID, uploadKey);
+        verify(statusService).createUploadStatus(FISCAL_CODE, BROKER_CODE, FILE_ID, 1, List.of(), null, ServiceType.GPD);
+        verify(blobStorageRepository).upload(eq(BROKER_CODE), eq(FISCAL_CODE), eq(FILE_ID), any(), eq(ServiceType.GPD), any());
+    }
+
+    @Test
+    void upsert_StatusFailed_KO() throws IOException {
+        CompletableFuture<Boolean> staged = new CompletableFuture<>();
+        stubUpload(FILE_ID);
+        doThrow(new AppException(HttpStatus.TOO_MANY_REQUESTS, "429", "Status saving failed"))
+                .when(statusService).createUploadStatus(anyString(), anyString(), anyString(), anyInt(), anyList(), any(), any());
         CompletedFileUpload file = FileUtils.getUpsertFile();
-        String uploadKey = blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD);
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(), (phase, reason) -> {});
+        cancellation.decision().thenAccept(staged::complete);
+
+        AppException exception = assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, cancellation));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getHttpStatus());
+        // the staged blocks are discarded
+        assertFalse(staged.join());
+        verify(statusService, never()).deleteUploadStatus(anyString(), anyString());
+    }
+
+    @Test
+    void upsert_StagingFailed_KO() throws IOException {
+        when(blobStorageRepository.newFileId(BROKER_CODE, FISCAL_CODE)).thenReturn(FILE_ID);
+        when(blobStorageRepository.upload(anyString(), anyString(), anyString(), any(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL_SERVER_ERROR", "Error uploading file asynchronously")));
+        CompletedFileUpload file = FileUtils.getUpsertFile();
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(), (phase, reason) -> {});
+
+        AppException exception = assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, cancellation));
 
-        Assertions.assertEquals(FISCAL_CODE, uploadKey);
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getHttpStatus());
+        assertTrue(cancellation.isCancelled());
+        // the Status created concurrently is rolled back
+        verify(statusService, timeout(1000)).deleteUploadStatus(FISCAL_CODE, FILE_ID);
     }
 
     @Test
     void upsert_InvalidPaymentPosition_KO() throws IOException {
-        when(blobStorageRepository.upload(anyString(), anyString(), any(), any())).thenReturn(FISCAL_CODE);
+        stubUpload(FILE_ID);
         CompletedFileUpload file = FileUtils.getUpsertFileInvalidPaymentPosition();
 
-        assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD));
+        assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, UploadCancellation.none()));
     }
 
     @Test
     void upsert_InvalidFile_KO() throws IOException {
-        when(blobStorageRepository.upload(anyString(), anyString(), any(), any())).thenReturn(FISCAL_CODE);
+        stubUpload(FILE_ID);
         CompletedFileUpload file = FileUtils.getDeleteFile();
 
-        assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD));
+        assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, UploadCancellation.none()));
+    }
+
+    @Test
+    void upsert_Cancelled_KO() throws IOException {
+        stubUpload(FILE_ID);
+        CompletedFileUpload file = FileUtils.getUpsertFile();
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(), (phase, reason) -> {});
+        cancellation.cancel(UploadCancellation.Reason.CLIENT_DISCONNECTED);
+
+        AppException exception = assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, cancellation));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getHttpStatus());
+        verify(blobStorageRepository, never()).upload(anyString(), anyString(), anyString(), any(), any(), any());
+        verify(statusService, never()).createUploadStatus(anyString(), anyString(), anyString(), anyInt(), anyList(), any(), any());
+    }
+
+    @Test
+    void upsert_PhaseDeadlineExceeded_KO() throws IOException {
+        stubUpload(FILE_ID);
+        when(blobStorageRepository.upload(anyString(), anyString(), anyString(), any(), any(), any())).thenReturn(new CompletableFuture<>());
+        CompletedFileUpload file = FileUtils.getUpsertFile();
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(UploadCancellation.Phase.STAGING, Duration.ZERO), (phase, reason) -> {});
+
+        assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, cancellation));
+
+        assertTrue(cancellation.isCancelled());
+        // the upload is never committed, so the Status created while staging is rolled back
+        verify(statusService, timeout(1000)).deleteUploadStatus(FISCAL_CODE, FILE_ID);
+    }
+
+    @Test
+    void upsert_UpdateUnchangedSkipped_OK() throws IOException {
+        PaymentPositionsModel paymentPositionsModel = objectMapper.readValue(PaymentPositionUtils.createPaymentPositionsJSON(FISCAL_CODE, 2), PaymentPositionsModel.class);
+        List<String> iupds = paymentPositionsModel.getPaymentPositions().stream().map(PaymentPositionModel::getIupd).toList();
+        PositionHashService.UpdateFilter filter = new PositionHashService.UpdateFilter();
+        filter.getUnchangedIUPDs().addAll(iupds);
+        when(positionHashService.isEnabled()).thenReturn(true);
+        when(positionHashService.filterUnchanged(eq(BROKER_CODE), eq(FISCAL_CODE), eq(ServiceType.GPD), anyList())).thenReturn(filter);
+        when(blobStorageRepository.newFileId(BROKER_CODE, FISCAL_CODE)).thenReturn(FILE_ID);
+
+        String uploadKey = blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.UPDATE, FileUtils.getUpsertFile(paymentPositionsModel), ServiceType.GPD, UploadCancellation.none()).join();
+
+        assertEquals(FILE_ID, uploadKey);
+        verify(blobStorageRepository, never()).upload(anyString(), anyString(), anyString(), any(), any(), any());
+        verify(statusService).createUploadStatus(FISCAL_CODE, BROKER_CODE, FILE_ID, 2, iupds, null, ServiceType.GPD);
+    }
+
+    @Test
+    void upsert_UpdateChangedOnly_OK() throws IOException {
+        PaymentPositionsModel paymentPositionsModel = objectMapper.readValue(PaymentPositionUtils.createPaymentPositionsJSON(FISCAL_CODE, 2), PaymentPositionsModel.class);
+        PaymentPositionModel changed = paymentPositionsModel.getPaymentPositions().get(1);
+        PositionHashService.UpdateFilter filter = new PositionHashService.UpdateFilter();
+        filter.getUnchangedIUPDs().add(paymentPositionsModel.getPaymentPositions().get(0).getIupd());
+        filter.getChanged().add(changed);
+        when(positionHashService.isEnabled()).thenReturn(true);
+        when(positionHashService.filterUnchanged(eq(BROKER_CODE), eq(FISCAL_CODE), eq(ServiceType.GPD), anyList())).thenReturn(filter);
+        stubUpload(FILE_ID);
+
+        blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.UPDATE, FileUtils.getUpsertFile(paymentPositionsModel), ServiceType.GPD, UploadCancellation.none()).join();
+
+        ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+        verify(blobStorageRepository).upload(eq(BROKER_CODE), eq(FISCAL_CODE), eq(FILE_ID), content.capture(), eq(ServiceType.GPD), any());
+        UploadInput uploadInput = objectMapper.readValue(content.getValue(), UploadInput.class);
+        assertEquals(1, uploadInput.getPaymentPositions().size());
+        assertEquals(changed.getIupd(), uploadInput.getPaymentPositions().get(0).getIupd());
+        verify(statusService).createUploadStatus(FISCAL_CODE, BROKER_CODE, FILE_ID, 2, filter.getUnchangedIUPDs(), null, ServiceType.GPD);
+        verify(positionHashService).recordAccepted(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, filter, FILE_ID);
+    }
+
+    @Test
+    void upsert_CreateForgetsRecordedContent_OK() throws IOException {
+        PaymentPositionsModel paymentPositionsModel = objectMapper.readValue(PaymentPositionUtils.createPaymentPositionsJSON(FISCAL_CODE, 2), PaymentPositionsModel.class);
+        List<String> iupds = paymentPositionsModel.getPaymentPositions().stream().map(PaymentPositionModel::getIupd).toList();
+        when(positionHashService.isEnabled()).thenReturn(true);
+        stubUpload(FILE_ID);
+
+        blobService.upsert(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, FileUtils.getUpsertFile(paymentPositionsModel), ServiceType.GPD, UploadCancellation.none()).join();
+
+        verify(positionHashService).forget(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, iupds);
+        verify(positionHashService, never()).filterUnchanged(anyString(), anyString(), any(), anyList());
+    }
+
+    @Test
+    void upsertBroker_OK() throws IOException {
+        when(blobStorageRepository.newFileId(BROKER_CODE, "org1")).thenReturn("fileId1");
+        when(blobStorageRepository.newFileId(BROKER_CODE, "org2")).thenReturn("fileId2");
+        when(blobStorageRepository.stage(anyString(), anyString(), anyString(), any(), any())).thenAnswer(invocation -> CompletableFuture.completedFuture(stagedInput()));
+        CompletedFileUpload file = FileUtils.getBrokerFile("org1", "org2", "org1");
+
+        Map<String, String> fileIds = blobService.upsert(BROKER_CODE, UploadOperation.CREATE, file, ServiceType.GPD, UploadCancellation.none());
+
+        assertEquals(Map.of("org1", "fileId1", "org2", "fileId2"), fileIds);
+        ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+        verify(blobStorageRepository).stage(eq(BROKER_CODE), eq("org1"), eq("fileId1"), content.capture(), any());
+        assertEquals(2, objectMapper.readValue(content.getValue(), UploadInput.class).getPaymentPositions().size());
+        verify(blobStorageRepository, times(2)).commit(any(), eq(ServiceType.GPD));
+        verify(statusService).createUploadStatus("org1", BROKER_CODE, "fileId1", 2, ServiceType.GPD);
+        verify(statusService).createUploadStatus("org2", BROKER_CODE, "fileId2", 1, ServiceType.GPD);
+    }
+
+    @Test
+    void upsertBroker_CommitFailed_KO() throws IOException {
+        when(blobStorageRepository.newFileId(BROKER_CODE, "org1")).thenReturn("fileId1");
+        when(blobStorageRepository.newFileId(BROKER_CODE, "org2")).thenReturn("fileId2");
+        when(blobStorageRepository.stage(anyString(), eq("org1"), anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(stagedInput()));
+        StagedInput org2 = stagedInput();
+        when(blobStorageRepository.stage(anyString(), eq("org2"), anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(org2));
+        // the input of org2 fails to commit its block list
+        doThrow(new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL_SERVER_ERROR", "Error uploading file asynchronously"))
+                .when(blobStorageRepository).commit(org2, ServiceType.GPD);
+        CompletedFileUpload file = FileUtils.getBrokerFile("org1", "org2");
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(), (phase, reason) -> {});
+
+        AppException exception = assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, UploadOperation.CREATE, file, ServiceType.GPD, cancellation));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getHttpStatus());
+        // no Status is created, the input committed is removed
+        verify(statusService, never()).createUploadStatus(anyString(), anyString(), anyString(), anyInt(), any());
+        verify(blobStorageRepository).deleteInput(BROKER_CODE, "org1", "fileId1");
+    }
+
+    @Test
+    void upsertBroker_StatusFailed_KO() throws IOException {
+        when(blobStorageRepository.newFileId(BROKER_CODE, "org1")).thenReturn("fileId1");
+        when(blobStorageRepository.newFileId(BROKER_CODE, "org2")).thenReturn("fileId2");
+        when(blobStorageRepository.stage(anyString(), anyString(), anyString(), any(), any())).thenAnswer(invocation -> CompletableFuture.completedFuture(stagedInput()));
+        doThrow(new AppException(HttpStatus.TOO_MANY_REQUESTS, "429", "Status saving failed"))
+                .when(statusService).createUploadStatus(eq("org2"), anyString(), anyString(), anyInt(), any());
+        CompletedFileUpload file = FileUtils.getBrokerFile("org1", "org2");
+
+        AppException exception = assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, UploadOperation.CREATE, file, ServiceType.GPD, UploadCancellation.none()));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getHttpStatus());
+        verify(statusService).deleteUploadStatus("org1", "fileId1");
+        verify(blobStorageRepository).deleteInput(BROKER_CODE, "org1", "fileId1");
+        verify(blobStorageRepository).deleteInput(BROKER_CODE, "org2", "fileId2");
+    }
+
+    @Test
+    void upsertBroker_InvalidOrganization_KO() throws IOException {
+        CompletedFileUpload file = FileUtils.getBrokerFile("org_1");
+
+        AppException exception = assertThrows(AppException.class, () -> blobService.upsert(BROKER_CODE, UploadOperation.CREATE, file, ServiceType.GPD, UploadCancellation.none()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+        verify(blobStorageRepository, never()).stage(anyString(), anyString(), anyString(), any(), any());
     }
 
     @Test
     void delete_OK() throws IOException {
-        when(blobStorageRepository.upload(anyString(), anyString(), any(), any())).thenReturn(FISCAL_CODE);
+        stubUpload(FILE_ID);
         CompletedFileUpload file = FileUtils.getDeleteFile();
-        String uploadKey = blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD);
+        String uploadKey = blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, UploadCancellation.none());
+
+        Assertions.assertEquals(FILE_ID, uploadKey);
+    }
+
+    @Test
+    void delete_StoredContent_OK() throws IOException {
+        stubUpload(FILE_ID);
+        CompletedFileUpload file = FileUtils.getDeleteFile(3);
+        blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.DELETE, file, ServiceType.GPD, UploadCancellation.none());
+
+        ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+        verify(blobStorageRepository).upload(eq(BROKER_CODE), eq(FISCAL_CODE), eq(FILE_ID), content.capture(), eq(ServiceType.GPD), any());
+        UploadInput uploadInput = objectMapper.readValue(content.getValue(), UploadInput.class);
+        assertEquals(UploadOperation.DELETE, uploadInput.getUploadOperation());
+        assertNull(uploadInput.getPaymentPositions());
+        assertEquals(3, uploadInput.getPaymentPositionIUPDs().size());
+        assertEquals("IUPD-2-UNIT-TEST-77777777777", uploadInput.getPaymentPositionIUPDs().get(2));
+        verify(statusService).createUploadStatus(FISCAL_CODE, BROKER_CODE, FILE_ID, 3, List.of(), null, ServiceType.GPD);
+    }
+
+    @Test
+    void delete_ForgetsRecordedContent_OK() throws IOException {
+        when(positionHashService.isEnabled()).thenReturn(true);
+        stubUpload(FILE_ID);
+        CompletedFileUpload file = FileUtils.getDeleteFile(3);
+
+        blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.DELETE, file, ServiceType.GPD, UploadCancellation.none());
+
+        ArgumentCaptor<List<String>> iupds = ArgumentCaptor.forClass(List.class);
+        verify(positionHashService).forget(eq(BROKER_CODE), eq(FISCAL_CODE), eq(ServiceType.GPD), iupds.capture());
+        assertEquals(3, iupds.getValue().size());
+    }
+
+    @Test
+    void delete_Split_OK() throws IOException, NoSuchFieldException, IllegalAccessException {
+        when(blobStorageRepository.newFileId(BROKER_CODE, FISCAL_CODE)).thenReturn(FILE_ID, "child1", "child2");
+        StagedInput child1 = stagedInput();
+        StagedInput child2 = stagedInput();
+        when(blobStorageRepository.stage(anyString(), anyString(), anyString(), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(child1), CompletableFuture.completedFuture(child2));
+        CompletedFileUpload file = FileUtils.getDeleteFile(3);
+        setSplit(2, 2);
+        try {
+            String uploadKey = blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.DELETE, file, ServiceType.GPD, UploadCancellation.none());
+
+            assertEquals(FILE_ID, uploadKey);
+            ArgumentCaptor<InputStream> content = ArgumentCaptor.forClass(InputStream.class);
+            verify(blobStorageRepository).stage(eq(BROKER_CODE), eq(FISCAL_CODE), eq("child1"), content.capture(), any());
+            verify(blobStorageRepository).stage(eq(BROKER_CODE), eq(FISCAL_CODE), eq("child2"), content.capture(), any());
+            assertEquals(2, objectMapper.readValue(content.getAllValues().get(0), UploadInput.class).getPaymentPositionIUPDs().size());
+            assertEquals(List.of("IUPD-2-UNIT-TEST-77777777777"), objectMapper.readValue(content.getAllValues().get(1), UploadInput.class).getPaymentPositionIUPDs());
+            verify(statusService).createSplitUploadStatus(FISCAL_CODE, BROKER_CODE, FILE_ID, List.of("child1", "child2"), List.of(2, 1), ServiceType.GPD);
+            verify(statusService, never()).createUploadStatus(anyString(), anyString(), anyString(), anyInt(), anyList(), any(), any());
+            verify(blobStorageRepository).commit(child1, ServiceType.GPD);
+            verify(blobStorageRepository).commit(child2, ServiceType.GPD);
+        } finally {
+            setSplit(0, 10000);
+        }
+    }
+
+    @Test
+    void delete_SplitCommitFailed_KO() throws IOException, NoSuchFieldException, IllegalAccessException {
+        when(blobStorageRepository.newFileId(BROKER_CODE, FISCAL_CODE)).thenReturn(FILE_ID, "child1", "child2");
+        StagedInput child2 = stagedInput();
+        when(blobStorageRepository.stage(anyString(), anyString(), anyString(), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(stagedInput()), CompletableFuture.completedFuture(child2));
+        // the second input fails to commit its block list
+        doThrow(new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL_SERVER_ERROR", "Error uploading file asynchronously"))
+                .when(blobStorageRepository).commit(child2, ServiceType.GPD);
+        CompletedFileUpload file = FileUtils.getDeleteFile(3);
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(), (phase, reason) -> {});
+        setSplit(2, 2);
+        try {
+            AppException exception = assertThrows(AppException.class, () -> blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.DELETE, file, ServiceType.GPD, cancellation));
+
+            assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getHttpStatus());
+            verify(statusService).deleteSplitUploadStatus(FISCAL_CODE, FILE_ID, List.of("child1", "child2"));
+            verify(blobStorageRepository).deleteInput(BROKER_CODE, FISCAL_CODE, "child1");
+            verify(blobStorageRepository).deleteInput(BROKER_CODE, FISCAL_CODE, "child2");
+        } finally {
+            setSplit(0, 10000);
+        }
+    }
+
+    @Test
+    void delete_SplitStagingFailed_KO() throws IOException, NoSuchFieldException, IllegalAccessException {
+        when(blobStorageRepository.newFileId(BROKER_CODE, FISCAL_CODE)).thenReturn(FILE_ID, "child1", "child2");
+        // the first input is still staging when the second fails
+        when(blobStorageRepository.stage(anyString(), anyString(), anyString(), any(), any()))
+                .thenReturn(new CompletableFuture<>(), CompletableFuture.failedFuture(new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL_SERVER_ERROR", "Error uploading file asynchronously")));
+        CompletedFileUpload file = FileUtils.getDeleteFile(3);
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(), (phase, reason) -> {});
+        setSplit(2, 2);
+        try {
+            AppException exception = assertThrows(AppException.class, () -> blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.DELETE, file, ServiceType.GPD, cancellation));
+
+            assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getHttpStatus());
+            assertTrue(cancellation.isCancelled());
+            // nothing was committed nor created
+            verify(statusService, never()).createSplitUploadStatus(anyString(), anyString(), anyString(), anyList(), anyList(), any());
+            verify(blobStorageRepository, never()).commit(any(), any());
+        } finally {
+            setSplit(0, 10000);
+        }
+    }
 
-        Assertions.assertEquals(FISCAL_CODE, uploadKey);
+    @Test
+    void delete_SplitSlowStaging_CommittedOnceAllStaged() throws Exception {
+        when(blobStorageRepository.newFileId(BROKER_CODE, FISCAL_CODE)).thenReturn(FILE_ID, "child1", "child2");
+        CompletableFuture<StagedInput> slow = new CompletableFuture<>();
+        when(blobStorageRepository.stage(anyString(), anyString(), anyString(), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(stagedInput()), slow);
+        CompletedFileUpload file = FileUtils.getDeleteFile(3);
+        UploadCancellation cancellation = new UploadCancellation(Duration.ofMinutes(1), Map.of(), (phase, reason) -> {});
+        setSplit(2, 2);
+        try {
+            CompletableFuture<String> upload = CompletableFuture.supplyAsync(() ->
+                    blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.DELETE, file, ServiceType.GPD, cancellation));
+            verify(blobStorageRepository, timeout(1000).times(2)).stage(anyString(), anyString(), anyString(), any(), any());
+
+            // the staged input is not committed while the other one is still staging
+            assertFalse(upload.isDone());
+            verify(blobStorageRepository, never()).commit(any(), any());
+
+            slow.complete(stagedInput());
+            assertEquals(FILE_ID, upload.get(1, TimeUnit.SECONDS));
+            verify(blobStorageRepository, times(2)).commit(any(), eq(ServiceType.GPD));
+        } finally {
+            setSplit(0, 10000);
+        }
+    }
+
+    private static StagedInput stagedInput() {
+        return new StagedInput(mock(BlobClient.class), mock(BlockBlobClient.class), List.of());
+    }
+
+    private static void stubUpload(String fileId) {
+        when(blobStorageRepository.newFileId(BROKER_CODE, FISCAL_CODE)).thenReturn(fileId);
+        when(blobStorageRepository.upload(anyString(), anyString(), anyString(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    private static void setSplit(int threshold, int chunkSize) throws NoSuchFieldException, IllegalAccessException {
+        Field splitThresholdField = BlobService.class.getDeclaredField("splitThreshold");
+        splitThresholdField.setAccessible(true);
+        splitThresholdField.setInt(blobService, threshold);
+
+        Field splitChunkSizeField = BlobService.class.getDeclaredField("splitChunkSize");
+        splitChunkSizeField.setAccessible(true);
+        splitChunkSizeField.setInt(blobService, chunkSize);
+    }
+
+    @Test
+    void delete_DuplicateIupd_KO() throws IOException {
+        CompletedFileUpload file = FileUtils.getDeleteFileDuplicateIUPD();
+
+        AppException exception = assertThrows(AppException.class, () -> blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.DELETE, file, ServiceType.GPD, UploadCancellation.none()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+        verify(blobStorageRepository, never()).upload(anyString(), anyString(), anyString(), any(), any(), any());
+    }
+
+    @Test
+    void delete_NonStringIupd_KO() throws IOException {
+        CompletedFileUpload file = FileUtils.getDeleteFileNumericIUPD();
+
+        AppException exception = assertThrows(AppException.class, () -> blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.DELETE, file, ServiceType.GPD, UploadCancellation.none()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+        verify(blobStorageRepository, never()).upload(anyString(), anyString(), anyString(), any(), any(), any());
     }
 
     @Test
     void delete_InvalidMultipleIupd_KO() throws IOException {
-        when(blobStorageRepository.upload(anyString(), anyString(), any(), any())).thenReturn(FISCAL_CODE);
+        stubUpload(FILE_ID);
         CompletedFileUpload file = FileUtils.getDeleteFileInvalidMultipleIUPD();
-        assertThrows(AppException.class, () -> blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD));
+        assertThrows(AppException.class, () -> blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, UploadCancellation.none()));
     }
 
     @Test
     void delete_InvalidFile_KO() throws IOException {
-        when(blobStorageRepository.upload(anyString(), anyString(), any(), any())).thenReturn(FISCAL_CODE);
+        stubUpload(FILE_ID);
         CompletedFileUpload file = FileUtils.getUpsertFile();
 
-        assertThrows(AppException.class, () -> blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD));
+        assertThrows(AppException.class, () -> blobService.delete(BROKER_CODE, FISCAL_CODE, UploadOperation.CREATE, file, ServiceType.GPD, UploadCancellation.none()));
     }
 
     @Test
     void getReportV1_OK() throws JsonProcessingException {
         UploadReport uploadReport = UploadReport.builder().uploadID(FILE_ID).build();
-        when(binaryData.toString()).thenReturn(objectMapper.writeValueAsString(uploadReport));
+        stubReportBlob(uploadReport);
+
+        BlobService.BlobReport<UploadReport> response = blobService.getReportV1(BROKER_CODE, FISCAL_CODE, FILE_ID, ServiceType.GPD);
+        assertEquals(uploadReport.getUploadID(), response.report().getUploadID());
+        assertEquals("\"etag\"", response.eTag());
+    }
 
-        when(blobStorageRepository.downloadContent(BROKER_CODE, FILE_ID, String.format("/%s/%s/report%s.json", FISCAL_CODE, OUTPUT_DIRECTORY, FILE_ID), ServiceType.GPD)).thenReturn(binaryData);
+    @Test
+    void getLargeReport_OK() {
+        BlobStorageRepository.ContentBlob reportBlob = new BlobStorageRepository.ContentBlob(null, 2048, "\"etag\"");
+        when(blobStorageRepository.getContent(BROKER_CODE, FILE_ID, String.format("/%s/%s/report%s.json", FISCAL_CODE, OUTPUT_DIRECTORY, FILE_ID), ServiceType.GPD)).thenReturn(reportBlob);
 
-        UploadReport response = blobService.getReportV1(BROKER_CODE, FISCAL_CODE, FILE_ID, ServiceType.GPD);
-        assertEquals(uploadReport.getUploadID(), response.getUploadID());
-        verify(blobStorageRepository, times(1)).downloadContent(BROKER_CODE, FILE_ID, String.format("/%s/%s/report%s.json", FISCAL_CODE, OUTPUT_DIRECTORY, FILE_ID), ServiceType.GPD);
+        assertEquals(Optional.of(reportBlob), blobService.getLargeReport(BROKER_CODE, FISCAL_CODE, FILE_ID, ServiceType.GPD, ReportStream.Shape.V2));
+    }
+
+    @Test
+    void getLargeReport_SmallReport_Empty() {
+        BlobStorageRepository.ContentBlob reportBlob = new BlobStorageRepository.ContentBlob(null, 512, "\"etag\"");
+        when(blobStorageRepository.getContent(BROKER_CODE, FILE_ID, String.format("/%s/%s/report%s.json", FISCAL_CODE, OUTPUT_DIRECTORY, FILE_ID), ServiceType.GPD)).thenReturn(reportBlob);
+
+        assertTrue(blobService.getLargeReport(BROKER_CODE, FISCAL_CODE, FILE_ID, ServiceType.GPD, ReportStream.Shape.V2).isEmpty());
+        verify(blobStorageRepository, never()).downloadContent(any(), any(), any(), any());
     }
 
     @Test
@@ -137,15 +534,20 @@ class BlobServiceTest {
                         ResponseEntry.builder().requestIDs(Collections.singletonList(IUPD_2)).statusCode(HttpStatus.INTERNAL_SERVER_ERROR.getCode()).build()
                 )))
                 .build();
-        when(binaryData.toString()).thenReturn(objectMapper.writeValueAsString(uploadReport));
+        stubReportBlob(uploadReport);
 
-        when(blobStorageRepository.downloadContent(BROKER_CODE, FILE_ID, String.format("/%s/%s/report%s.json", FISCAL_CODE, OUTPUT_DIRECTORY, FILE_ID), ServiceType.GPD)).thenReturn(binaryData);
+        BlobService.BlobReport<UploadReportDTO> response = blobService.getReportV2(BROKER_CODE, FISCAL_CODE, FILE_ID, ServiceType.GPD);
+        assertEquals(uploadReport.getUploadID(), response.report().getFileId());
+        Assertions.assertTrue(response.report().getResponses().get(0).getIupds().contains(IUPD_1));
+        Assertions.assertTrue(response.report().getResponses().get(1).getIupds().contains(IUPD_2));
+        assertEquals("\"etag\"", response.eTag());
+    }
 
-        UploadReportDTO response = blobService.getReportV2(BROKER_CODE, FISCAL_CODE, FILE_ID, ServiceType.GPD);
-        assertEquals(uploadReport.getUploadID(), response.getFileId());
-        Assertions.assertTrue(response.getResponses().get(0).getIupds().contains(IUPD_1));
-        Assertions.assertTrue(response.getResponses().get(1).getIupds().contains(IUPD_2));
-        verify(blobStorageRepository, times(1)).downloadContent(BROKER_CODE, FILE_ID, String.format("/%s/%s/report%s.json", FISCAL_CODE, OUTPUT_DIRECTORY, FILE_ID), ServiceType.GPD);
+    private void stubReportBlob(UploadReport uploadReport) throws JsonProcessingException {
+        BlobStorageRepository.ContentBlob reportBlob = mock(BlobStorageRepository.ContentBlob.class);
+        when(reportBlob.getETag()).thenReturn("\"etag\"");
+        when(reportBlob.openInputStream()).thenReturn(new ByteArrayInputStream(objectMapper.writeValueAsBytes(uploadReport)));
+        when(blobStorageRepository.getContent(BROKER_CODE, FILE_ID, String.format("/%s/%s/report%s.json", FISCAL_CODE, OUTPUT_DIRECTORY, FILE_ID), ServiceType.GPD)).thenReturn(reportBlob);
     }
 
     @Test
@@ -0,0 +1,150 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import it.gov.pagopa.gpd.upload.entity.ResponseEntry;
+import it.gov.pagopa.gpd.upload.entity.Status;
+import it.gov.pagopa.gpd.upload.entity.Upload;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.pd.PaymentPositionModel;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PositionHashServiceTest {
+    private static final String BROKER_CODE = "broker-code";
+    private static final String FISCAL_CODE = "fiscal-code";
+    private static final String FILE_ID = "fileId";
+    private static final String IUPD_1 = "IUPD1";
+    private static final String IUPD_2 = "IUPD2";
+
+    private final BlobStorageRepository blobStorageRepository = mock(BlobStorageRepository.class);
+    private final StatusService statusService = mock(StatusService.class);
+    private final PositionHashService positionHashService = new PositionHashService(blobStorageRepository, statusService);
+
+    @BeforeEach
+    void beforeEach() {
+        when(blobStorageRepository.downloadIndex(BROKER_CODE, FISCAL_CODE, ServiceType.GPD)).thenReturn(Optional.empty());
+        when(blobStorageRepository.uploadIndex(eq(BROKER_CODE), eq(FISCAL_CODE), eq(ServiceType.GPD), any(), any())).thenReturn(true);
+    }
+
+    @Test
+    void filterUnchanged_NoIndex_AllChanged() {
+        PositionHashService.UpdateFilter filter = positionHashService.filterUnchanged(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, positions("A", "B"));
+
+        assertEquals(2, filter.getChanged().size());
+        assertEquals(0, filter.getUnchangedIUPDs().size());
+    }
+
+    @Test
+    void filterUnchanged_SkipsOnlySucceededAndUnchanged() {
+        recordIndex(positions("A", "B"));
+        // only the successful responses are read
+        when(statusService.getSucceededResponses(FISCAL_CODE, List.of(FILE_ID))).thenReturn(List.of(statusWith(
+                ResponseEntry.builder().statusCode(201).statusMessage("Created").requestIDs(List.of(IUPD_1)).build())));
+
+        PositionHashService.UpdateFilter unchanged = positionHashService.filterUnchanged(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, positions("A", "B"));
+        PositionHashService.UpdateFilter modified = positionHashService.filterUnchanged(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, positions("A-modified", "B"));
+
+        assertEquals(List.of(IUPD_1), unchanged.getUnchangedIUPDs());
+        assertEquals(IUPD_2, unchanged.getChanged().get(0).getIupd());
+        assertEquals(0, modified.getUnchangedIUPDs().size());
+        assertEquals(2, modified.getChanged().size());
+        // a single read per filter
+        verify(statusService, times(2)).getSucceededResponses(FISCAL_CODE, List.of(FILE_ID));
+    }
+
+    @Test
+    void filterUnchanged_OtherServiceType_AllChanged() {
+        recordIndex(positions("A", "B"));
+
+        PositionHashService.UpdateFilter filter = positionHashService.filterUnchanged(BROKER_CODE, FISCAL_CODE, ServiceType.ACA, positions("A", "B"));
+
+        assertEquals(2, filter.getChanged().size());
+        verify(statusService, never()).getSucceededResponses(anyString(), anyList());
+    }
+
+    @Test
+    void forget_DeletedPosition_NotSkipped() throws NoSuchFieldException, IllegalAccessException {
+        setEnabled();
+        recordIndex(positions("A", "B"));
+        when(statusService.getSucceededResponses(FISCAL_CODE, List.of(FILE_ID))).thenReturn(List.of(statusWith(
+                ResponseEntry.builder().statusCode(200).statusMessage("OK").requestIDs(List.of(IUPD_1, IUPD_2)).build())));
+
+        positionHashService.forget(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, List.of(IUPD_1));
+
+        ArgumentCaptor<byte[]> content = ArgumentCaptor.forClass(byte[].class);
+        verify(blobStorageRepository).uploadIndex(eq(BROKER_CODE), eq(FISCAL_CODE), eq(ServiceType.GPD), content.capture(), eq("etag"));
+        when(blobStorageRepository.downloadIndex(BROKER_CODE, FISCAL_CODE, ServiceType.GPD))
+                .thenReturn(Optional.of(new BlobStorageRepository.IndexBlob(content.getValue(), "etag2")));
+        PositionHashService.UpdateFilter filter = positionHashService.filterUnchanged(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, positions("A", "B"));
+
+        // the same content sent again after the delete is not skipped
+        assertEquals(IUPD_1, filter.getChanged().get(0).getIupd());
+        assertEquals(List.of(IUPD_2), filter.getUnchangedIUPDs());
+    }
+
+    @Test
+    void forget_NotIndexed_IndexNotWritten() throws NoSuchFieldException, IllegalAccessException {
+        setEnabled();
+
+        positionHashService.forget(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, List.of(IUPD_1));
+
+        verify(blobStorageRepository, never()).uploadIndex(any(), any(), any(), any(), any());
+        verify(blobStorageRepository, never()).deleteIndex(any(), any(), any());
+    }
+
+    @Test
+    void recordAccepted_ConcurrentUpdates_IndexInvalidated() {
+        when(blobStorageRepository.uploadIndex(eq(BROKER_CODE), eq(FISCAL_CODE), eq(ServiceType.GPD), any(), any())).thenReturn(false);
+        PositionHashService.UpdateFilter filter = positionHashService.filterUnchanged(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, positions("A", "B"));
+
+        positionHashService.recordAccepted(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, filter, FILE_ID);
+
+        verify(blobStorageRepository, times(3)).uploadIndex(eq(BROKER_CODE), eq(FISCAL_CODE), eq(ServiceType.GPD), any(), isNull());
+        verify(blobStorageRepository).deleteIndex(BROKER_CODE, FISCAL_CODE, ServiceType.GPD);
+    }
+
+    private void setEnabled() throws NoSuchFieldException, IllegalAccessException {
+        Field enabledField = PositionHashService.class.getDeclaredField("enabled");
+        enabledField.setAccessible(true);
+        enabledField.setBoolean(positionHashService, true);
+    }
+
+    private void recordIndex(List<PaymentPositionModel> paymentPositions) {
+        PositionHashService.UpdateFilter filter = positionHashService.filterUnchanged(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, paymentPositions);
+        positionHashService.recordAccepted(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, filter, FILE_ID);
+
+        ArgumentCaptor<byte[]> content = ArgumentCaptor.forClass(byte[].class);
+        verify(blobStorageRepository).uploadIndex(eq(BROKER_CODE), eq(FISCAL_CODE), eq(ServiceType.GPD), content.capture(), isNull());
+        when(blobStorageRepository.downloadIndex(BROKER_CODE, FISCAL_CODE, ServiceType.GPD))
+                .thenReturn(Optional.of(new BlobStorageRepository.IndexBlob(content.getValue(), "etag")));
+    }
+
+    private static List<PaymentPositionModel> positions(String firstCompanyName, String secondCompanyName) {
+        List<PaymentPositionModel> paymentPositions = new ArrayList<>();
+        paymentPositions.add(PaymentPositionModel.builder().iupd(IUPD_1).companyName(firstCompanyName).build());
+        paymentPositions.add(PaymentPositionModel.builder().iupd(IUPD_2).companyName(secondCompanyName).build());
+        return paymentPositions;
+    }
+
+    private static Status statusWith(ResponseEntry... responses) {
+        return Status.builder()
+                .id(FILE_ID)
+                .fiscalCode(FISCAL_CODE)
+                .upload(Upload.builder()
+                        .current(responses.length)
+                        .total(responses.length)
+                        .responses(new ArrayList<>(List.of(responses)))
+                        .build())
+                .build();
+    }
+}
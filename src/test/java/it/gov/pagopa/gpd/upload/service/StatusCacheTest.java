@@ -0,0 +1,143 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusCacheTest {
+    private static final String BROKER = "broker";
+    private static final String FISCAL_CODE = "fiscal-code";
+    private static final String FILE_ID = "fileId";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private StatusCache statusCache;
+
+    @BeforeEach
+    void beforeEach() throws NoSuchFieldException, IllegalAccessException {
+        statusCache = newStatusCache(Map.of("enabled", true, "maxWeight", 1000L, "terminalTtl", 60000L, "inProgressTtl", 0L));
+    }
+
+    @Test
+    void get_Terminal_OK() {
+        assertEquals("report", getTerminal(FILE_ID));
+        assertEquals("report", getTerminal(FILE_ID));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", StatusCache.CACHE_NAME).tag("result", "hit").functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", StatusCache.CACHE_NAME).tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void get_InProgress_Expired() {
+        for (int i = 0; i < 2; i++) {
+            statusCache.get("status-v2", BROKER, FISCAL_CODE, FILE_ID, ServiceType.GPD, () -> {
+                loads.incrementAndGet();
+                return StatusCache.inProgress("status", 0);
+            });
+        }
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_OtherView_OK() {
+        getTerminal(FILE_ID);
+        statusCache.get("report-v1", BROKER, FISCAL_CODE, FILE_ID, ServiceType.GPD, () -> {
+            loads.incrementAndGet();
+            return StatusCache.terminal("report-v1", 0);
+        });
+        statusCache.get("report-v2", BROKER, FISCAL_CODE, FILE_ID, ServiceType.ACA, () -> {
+            loads.incrementAndGet();
+            return StatusCache.terminal("report-aca", 0);
+        });
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void get_LoaderFailed_NotCached() {
+        assertThrows(AppException.class, () -> statusCache.get("report-v2", BROKER, FISCAL_CODE, FILE_ID, ServiceType.GPD, () -> {
+            loads.incrementAndGet();
+            throw new AppException(HttpStatus.NOT_FOUND, "STATUS NOT FOUND", "not found");
+        }));
+        assertEquals("report", getTerminal(FILE_ID));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_LoaderReadsOtherKey_OK() {
+        // the values are loaded outside the cache, so a loader may read other keys
+        String status = statusCache.get("status-v2", BROKER, FISCAL_CODE, FILE_ID, ServiceType.GPD, () -> {
+            loads.incrementAndGet();
+            return StatusCache.terminal(getTerminal(FILE_ID) + "-status", 0);
+        });
+
+        assertEquals("report-status", status);
+        assertEquals(Optional.of("report"), statusCache.getIfPresent("report-v2", BROKER, FISCAL_CODE, FILE_ID, ServiceType.GPD));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_Disabled_OK() throws NoSuchFieldException, IllegalAccessException {
+        statusCache = newStatusCache(Map.of("enabled", false));
+
+        getTerminal(FILE_ID);
+        getTerminal(FILE_ID);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidate_OK() {
+        getTerminal(FILE_ID);
+        getTerminal(FILE_ID + "-0-10");
+        getTerminal("otherId");
+
+        statusCache.invalidate(FISCAL_CODE, FILE_ID);
+        getTerminal(FILE_ID);
+        getTerminal(FILE_ID + "-0-10");
+        getTerminal("otherId");
+
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    void invalidate_OtherOrganization_Kept() {
+        getTerminal(FILE_ID);
+
+        statusCache.invalidate("other-fiscal-code", FILE_ID);
+        statusCache.invalidate(FISCAL_CODE, FILE_ID + "0");
+
+        assertTrue(statusCache.getIfPresent("report-v2", BROKER, FISCAL_CODE, FILE_ID, ServiceType.GPD).isPresent());
+    }
+
+    private String getTerminal(String fileId) {
+        return statusCache.get("report-v2", BROKER, FISCAL_CODE, fileId, ServiceType.GPD, () -> {
+            loads.incrementAndGet();
+            return StatusCache.terminal("report", 10);
+        });
+    }
+
+    private StatusCache newStatusCache(Map<String, Object> config) throws NoSuchFieldException, IllegalAccessException {
+        StatusCache cache = new StatusCache(meterRegistry);
+        for (Map.Entry<String, Object> entry : config.entrySet()) {
+            Field field = StatusCache.class.getDeclaredField(entry.getKey());
+            field.setAccessible(true);
+            field.set(cache, entry.getValue());
+        }
+        cache.init();
+        return cache;
+    }
+}
@@ -1,6 +1,7 @@
 package it.gov.pagopa.gpd.upload.service;
 
 import io.micronaut.http.HttpStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.gov.pagopa.gpd.upload.entity.ResponseEntry;
 import it.gov.pagopa.gpd.upload.entity.Status;
 import it.gov.pagopa.gpd.upload.entity.Upload;
@@ -9,22 +10,28 @@ import it.gov.pagopa.gpd.upload.model.FileIdListResponse;
 import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
 import it.gov.pagopa.gpd.upload.model.v1.UploadReport;
 import it.gov.pagopa.gpd.upload.model.v1.UploadStatus;
+import it.gov.pagopa.gpd.upload.model.v2.UploadOutcomesDTO;
 import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
 import it.gov.pagopa.gpd.upload.model.v2.UploadStatusDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusItemDTO;
 import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
 import it.gov.pagopa.gpd.upload.repository.StatusRepository;
+import it.gov.pagopa.gpd.upload.utils.EntityTag;
 import it.gov.pagopa.gpd.upload.utils.ResponseEntryDTOMapperImpl;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.lang.reflect.Field;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.mock;
@@ -36,7 +43,8 @@ class StatusServiceTest {
 
     StatusRepository statusRepository = mock(StatusRepository.class);
     ResponseEntryDTOMapperImpl responseEntryDTOMapper = new ResponseEntryDTOMapperImpl();
-    StatusService statusService = new StatusService(statusRepository, responseEntryDTOMapper);
+    BlobStorageRepository blobStorageRepository = mock(BlobStorageRepository.class);
+    StatusService statusService = new StatusService(statusRepository, responseEntryDTOMapper, blobStorageRepository, new StatusCache(new SimpleMeterRegistry()));
 
     @Test
     void getUploadStatusV1_OK() {
@@ -49,7 +57,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         UploadStatus uploadStatus = statusService.getUploadStatus("brokerCode", "fileId", "organizationFiscalCode", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadStatus.getUploadID());
@@ -65,7 +73,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         UploadStatus uploadStatus = statusService.getUploadStatus("brokerCode", "fileId", "organizationFiscalCode", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadStatus.getUploadID());
@@ -81,7 +89,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         Assertions.assertThrows(AppException.class, () -> statusService.getUploadStatus("brokerCode", "fileId", "organizationFiscalCode", ServiceType.ACA));
     }
 
@@ -96,7 +104,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         Assertions.assertThrows(AppException.class, () -> statusService.getUploadStatus("brokerCode", "fileId", "organizationFiscalCode", ServiceType.GPD));
     }
 
@@ -111,7 +119,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         UploadStatusDTO uploadStatus = statusService.getUploadStatusV2("brokerCode", "fileId", "organizationFiscalCode", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadStatus.getFileId());
@@ -129,7 +137,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         UploadStatusDTO uploadStatus = statusService.getUploadStatusV2("brokerCode", "fileId", "organizationFiscalCode", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadStatus.getFileId());
@@ -151,7 +159,7 @@ class StatusServiceTest {
                         )))
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         UploadStatusDTO uploadStatus = statusService.getUploadStatusV2("brokerCode", "fileId", "organizationFiscalCode", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadStatus.getFileId());
@@ -173,7 +181,7 @@ class StatusServiceTest {
                         )))
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         UploadStatusDTO uploadStatus = statusService.getUploadStatusV2("brokerCode", "fileId", "organizationFiscalCode", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadStatus.getFileId());
@@ -190,7 +198,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         UploadStatusDTO uploadStatus = statusService.getUploadStatusV2("brokerCode", "fileId", "organizationFiscalCode", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadStatus.getFileId());
@@ -206,7 +214,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         Assertions.assertThrows(AppException.class, () -> statusService.getUploadStatusV2("brokerCode", "fileId", "organizationFiscalCode", ServiceType.ACA));
     }
 
@@ -221,7 +229,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
         Assertions.assertThrows(AppException.class, () -> statusService.getUploadStatusV2("brokerCode", "fileId", "organizationFiscalCode", ServiceType.GPD));
     }
 
@@ -236,7 +244,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
         UploadReport uploadReport = statusService.getReportV1("brokerCode", "organizationFiscalCode", "fileId", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadReport.getUploadID());
@@ -252,7 +260,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
         UploadReport uploadReport = statusService.getReportV1("brokerCode", "organizationFiscalCode", "fileId", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadReport.getUploadID());
@@ -268,7 +276,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
         Assertions.assertThrows(AppException.class, () -> statusService.getReportV1("brokerCode", "organizationFiscalCode", "fileId", ServiceType.ACA));
     }
 
@@ -283,7 +291,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
         Assertions.assertThrows(AppException.class, () -> statusService.getReportV1("brokerCode", "organizationFiscalCode", "fileId", ServiceType.GPD));
     }
 
@@ -302,7 +310,7 @@ class StatusServiceTest {
                         )))
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
         UploadReportDTO uploadReport = statusService.getReportV2("brokerCode", "organizationFiscalCode", "fileId", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadReport.getFileId());
@@ -310,6 +318,36 @@ class StatusServiceTest {
         Assertions.assertTrue(uploadReport.getResponses().get(1).getIupds().contains(IUPD_2));
     }
 
+    @Test
+    void getReportETagV2_OK() throws NoSuchFieldException, IllegalAccessException {
+        StatusService cachingStatusService = cachingStatusService();
+        Upload upload = Upload.builder()
+                .current(10)
+                .total(10)
+                .start(LocalDateTime.now())
+                .end(LocalDateTime.now())
+                .responses(new ArrayList<>(List.of(
+                        ResponseEntry.builder().requestIDs(Collections.singletonList(IUPD_1)).statusCode(HttpStatus.OK.getCode()).build())))
+                .build();
+        Status status = Status.builder().id(UPLOAD_KEY).serviceType(ServiceType.GPD).upload(upload).build();
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status.toBuilder()
+                .upload(upload.toBuilder()
+                        .responses(new ArrayList<>(List.of(
+                                ResponseEntry.builder().requestIDs(new ArrayList<>()).statusCode(HttpStatus.OK.getCode()).build())))
+                        .build())
+                .build()));
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
+
+        String etag = cachingStatusService.getReportETagV2("brokerCode", "organizationFiscalCode", "fileId", ServiceType.GPD);
+        // a revalidation is answered from the cached tag, without reading the IUPDs
+        Assertions.assertEquals(etag, cachingStatusService.getReportETagV2("brokerCode", "organizationFiscalCode", "fileId", ServiceType.GPD));
+        Mockito.verify(statusRepository, Mockito.times(1)).findStatusCountersById(any(), any());
+        Mockito.verify(statusRepository, Mockito.never()).findStatusById(any(), any());
+
+        // the tag of the full report, sent along with its body, is the same
+        Assertions.assertEquals(EntityTag.of(cachingStatusService.getReportV2("brokerCode", "organizationFiscalCode", "fileId", ServiceType.GPD)), etag);
+    }
+
     @Test
     void getReportV2_EmptyServiceTypeAndGPD_OK() {
         Status status = Status.builder()
@@ -320,7 +358,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
         UploadReportDTO uploadReport = statusService.getReportV2("brokerCode", "organizationFiscalCode", "fileId", ServiceType.GPD);
 
         Assertions.assertEquals(UPLOAD_KEY, uploadReport.getFileId());
@@ -336,7 +374,7 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
         Assertions.assertThrows(AppException.class, () -> statusService.getReportV2("brokerCode", "organizationFiscalCode", "fileId", ServiceType.ACA));
     }
 
@@ -351,10 +389,293 @@ class StatusServiceTest {
                         .start(LocalDateTime.now())
                         .build())
                 .build();
-        Mockito.when(statusRepository.find(any(), any())).thenReturn(List.of(status));
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
         Assertions.assertThrows(AppException.class, () -> statusService.getReportV2("brokerCode", "organizationFiscalCode", "fileId", ServiceType.GPD));
     }
 
+    @Test
+    void getUploadStatusV2_CoalescedUpload_OK() {
+        Status status = Status.builder()
+                .id(UPLOAD_KEY)
+                .brokerID("brokerCode")
+                .fiscalCode("organizationFiscalCode")
+                .serviceType(ServiceType.GPD)
+                .upload(Upload.builder()
+                        .current(2)
+                        .total(3)
+                        .start(LocalDateTime.now())
+                        .responses(new ArrayList<>(List.of(
+                                ResponseEntry.builder().statusCode(HttpStatus.CREATED.getCode()).statusMessage("Created").requestIDs(List.of(IUPD_1)).build(),
+                                ResponseEntry.builder().statusCode(HttpStatus.BAD_REQUEST.getCode()).statusMessage("Bad request").requestIDs(List.of(IUPD_2)).build())))
+                        .build())
+                .inputIUPDs(List.of(IUPD_1, IUPD_2, "IUPD3"))
+                .build();
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
+
+        UploadStatusDTO first = statusService.getUploadStatusV2("brokerCode", UPLOAD_KEY + "-0-1", "organizationFiscalCode", ServiceType.GPD);
+        UploadStatusDTO second = statusService.getUploadStatusV2("brokerCode", UPLOAD_KEY + "-1-2", "organizationFiscalCode", ServiceType.GPD);
+
+        Assertions.assertEquals(UPLOAD_KEY + "-0-1", first.getFileId());
+        Assertions.assertEquals(1, first.getSubmittedItem());
+        Assertions.assertEquals(OperationStatus.COMPLETED, first.getOperationStatus());
+        Assertions.assertEquals(2, second.getSubmittedItem());
+        Assertions.assertEquals(1, second.getProcessedItem());
+        Assertions.assertEquals(OperationStatus.IN_PROGRESS, second.getOperationStatus());
+        Mockito.verify(blobStorageRepository, Mockito.never()).downloadContent(any(), any(), any(), any());
+    }
+
+    @Test
+    void getUploadStatusV2_CoalescedUploadInputNotReadable_KO() {
+        Status status = Status.builder()
+                .id(UPLOAD_KEY)
+                .brokerID("brokerCode")
+                .fiscalCode("organizationFiscalCode")
+                .serviceType(ServiceType.GPD)
+                .upload(Upload.builder().current(0).total(3).start(LocalDateTime.now()).build())
+                .build();
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(status));
+        Mockito.when(blobStorageRepository.downloadContent(any(), any(), any(), any()))
+                .thenThrow(new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Internal server error"));
+
+        AppException exception = Assertions.assertThrows(AppException.class,
+                () -> statusService.getUploadStatusV2("brokerCode", UPLOAD_KEY + "-0-1", "organizationFiscalCode", ServiceType.GPD));
+        Assertions.assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getHttpStatus());
+    }
+
+    @Test
+    void getUploadStatusV2_SplitUpload_Aggregated() {
+        LocalDateTime start = LocalDateTime.now();
+        Status parent = Status.builder()
+                .id(UPLOAD_KEY)
+                .fiscalCode("organizationFiscalCode")
+                .serviceType(ServiceType.GPD)
+                .children(List.of("child1", "child2"))
+                .upload(Upload.builder().current(0).total(3).start(start).build())
+                .build();
+        Status child1 = Status.builder()
+                .id("child1")
+                .upload(Upload.builder()
+                        .current(2)
+                        .total(2)
+                        .start(start)
+                        .end(start.plusSeconds(5))
+                        .responses(new ArrayList<>(List.of(
+                                ResponseEntry.builder().statusCode(HttpStatus.CREATED.getCode()).statusMessage("created").requestIDs(List.of(IUPD_1, IUPD_2)).build())))
+                        .build())
+                .build();
+        Status child2 = Status.builder()
+                .id("child2")
+                .upload(Upload.builder()
+                        .current(0)
+                        .total(1)
+                        .start(start)
+                        .build())
+                .build();
+        Mockito.when(statusRepository.findStatusById(any(), any())).thenReturn(ofBroker(parent));
+        Mockito.when(statusRepository.findStatusById("child1", "organizationFiscalCode")).thenReturn(child1);
+        Mockito.when(statusRepository.findStatusById("child2", "organizationFiscalCode")).thenReturn(child2);
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(parent));
+        Mockito.when(statusRepository.findStatusCountersById("child1", "organizationFiscalCode")).thenReturn(child1.toBuilder()
+                .upload(child1.getUpload().toBuilder()
+                        .responses(new ArrayList<>(List.of(
+                                ResponseEntry.builder().statusCode(HttpStatus.CREATED.getCode()).statusMessage("created").requestIDs(new ArrayList<>()).build())))
+                        .build())
+                .build());
+        Mockito.when(statusRepository.findStatusCountersById("child2", "organizationFiscalCode")).thenReturn(child2);
+
+        UploadStatusDTO inProgress = statusService.getUploadStatusV2("brokerCode", UPLOAD_KEY, "organizationFiscalCode", ServiceType.GPD);
+        Assertions.assertEquals(UPLOAD_KEY, inProgress.getFileId());
+        Assertions.assertEquals(2, inProgress.getProcessedItem());
+        Assertions.assertEquals(3, inProgress.getSubmittedItem());
+        Assertions.assertEquals(OperationStatus.IN_PROGRESS, inProgress.getOperationStatus());
+        // the status poll reads the children without their IUPDs
+        Mockito.verify(statusRepository, Mockito.never()).findStatusById(any(), any());
+
+        child2.getUpload().addResponse(ResponseEntry.builder().statusCode(HttpStatus.CREATED.getCode()).statusMessage("created").requestIDs(List.of("IUPD3")).build());
+        child2.getUpload().setEnd(start.plusSeconds(10));
+        UploadReportDTO report = statusService.getReportV2("brokerCode", "organizationFiscalCode", UPLOAD_KEY, ServiceType.GPD);
+        Assertions.assertEquals(3, report.getProcessedItem());
+        Assertions.assertEquals(1, report.getResponses().size());
+        Assertions.assertEquals(List.of(IUPD_1, IUPD_2, "IUPD3"), report.getResponses().get(0).getIupds());
+        Assertions.assertEquals(start.plusSeconds(10), report.getEndTime());
+        // children are not changed by the aggregation
+        Assertions.assertEquals(List.of(IUPD_1, IUPD_2), child1.getUpload().getResponses().get(0).getRequestIDs());
+    }
+
+    @Test
+    void createSplitUploadStatus_OK() {
+        statusService.createSplitUploadStatus("organizationFiscalCode", "brokerCode", UPLOAD_KEY, List.of("child1", "child2"), List.of(2, 1), ServiceType.GPD);
+
+        ArgumentCaptor<Status> captor = ArgumentCaptor.forClass(Status.class);
+        Mockito.verify(statusRepository, Mockito.times(3)).saveStatus(captor.capture());
+        List<Status> saved = captor.getAllValues();
+        Assertions.assertEquals(UPLOAD_KEY, saved.get(0).getParent());
+        Assertions.assertEquals(2, saved.get(0).getUpload().getTotal());
+        Assertions.assertEquals(1, saved.get(1).getUpload().getTotal());
+        Assertions.assertEquals(UPLOAD_KEY, saved.get(2).getId());
+        Assertions.assertEquals(List.of("child1", "child2"), saved.get(2).getChildren());
+        // the counters are the ones of the children
+        Assertions.assertEquals(0, saved.get(2).getUpload().getTotal());
+    }
+
+    @Test
+    void createSplitUploadStatus_ChildFailed_KO() {
+        Mockito.when(statusRepository.saveStatus(any()))
+                .thenReturn(null)
+                .thenThrow(new AppException(HttpStatus.TOO_MANY_REQUESTS, "429", "Status saving failed"));
+
+        Assertions.assertThrows(AppException.class, () -> statusService.createSplitUploadStatus("organizationFiscalCode", "brokerCode", UPLOAD_KEY, List.of("child1", "child2"), List.of(2, 1), ServiceType.GPD));
+
+        // the child already created is removed
+        Mockito.verify(statusRepository).delete("child1", "organizationFiscalCode");
+        Mockito.verify(statusRepository, Mockito.never()).delete("child2", "organizationFiscalCode");
+    }
+
+    @Test
+    void getUploadStatusV2_Pending_OK() {
+        Status status = Status.builder()
+                .id(UPLOAD_KEY)
+                .serviceType(ServiceType.GPD)
+                .pending(true)
+                .upload(Upload.builder().current(0).total(0).start(LocalDateTime.now()).build())
+                .build();
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(status));
+        UploadStatusDTO uploadStatus = statusService.getUploadStatusV2("brokerCode", UPLOAD_KEY, "organizationFiscalCode", ServiceType.GPD);
+
+        Assertions.assertEquals(OperationStatus.PENDING, uploadStatus.getOperationStatus());
+    }
+
+    @Test
+    void completePendingUpload_ReportsProcessedUpload() {
+        Status pending = Status.builder()
+                .id(UPLOAD_KEY)
+                .fiscalCode("organizationFiscalCode")
+                .serviceType(ServiceType.GPD)
+                .pending(true)
+                .upload(Upload.builder().current(0).total(0).start(LocalDateTime.now()).build())
+                .build();
+        statusService.completePendingUpload(pending, "uploadId");
+
+        ArgumentCaptor<Status> captor = ArgumentCaptor.forClass(Status.class);
+        Mockito.verify(statusRepository).upsert(captor.capture());
+        Status completed = captor.getValue();
+        Assertions.assertNull(completed.getPending());
+        Assertions.assertEquals(List.of("uploadId"), completed.getChildren());
+        Mockito.verify(statusRepository).setParent("uploadId", "organizationFiscalCode", UPLOAD_KEY);
+
+        Mockito.when(statusRepository.findStatusCountersById(any(), any())).thenReturn(ofBroker(completed));
+        Mockito.when(statusRepository.findStatusCountersById("uploadId", "organizationFiscalCode")).thenReturn(Status.builder()
+                .id("uploadId")
+                .upload(Upload.builder().current(1).total(2).start(LocalDateTime.now()).build())
+                .build());
+        UploadStatusDTO uploadStatus = statusService.getUploadStatusV2("brokerCode", UPLOAD_KEY, "organizationFiscalCode", ServiceType.GPD);
+        Assertions.assertEquals(UPLOAD_KEY, uploadStatus.getFileId());
+        Assertions.assertEquals(2, uploadStatus.getSubmittedItem());
+        Assertions.assertEquals(OperationStatus.IN_PROGRESS, uploadStatus.getOperationStatus());
+    }
+
+    @Test
+    void failPendingUpload_CompletedUnsuccessfully() {
+        Status pending = Status.builder()
+                .id(UPLOAD_KEY)
+                .pending(true)
+                .upload(Upload.builder().current(0).total(0).start(LocalDateTime.now()).build())
+                .build();
+        statusService.failPendingUpload(pending, new AppException(HttpStatus.BAD_REQUEST, "INVALID FILE", "No valid file found in ZIP."));
+
+        ArgumentCaptor<Status> captor = ArgumentCaptor.forClass(Status.class);
+        Mockito.verify(statusRepository).upsert(captor.capture());
+        Assertions.assertNotNull(captor.getValue().getUpload().getEnd());
+        Assertions.assertEquals(HttpStatus.BAD_REQUEST.getCode(), captor.getValue().getUpload().getResponses().get(0).getStatusCode());
+        Assertions.assertEquals(OperationStatus.COMPLETED_UNSUCCESSFULLY, statusService.getOperationStatus(captor.getValue()));
+    }
+
+    @Test
+    void createUploadStatus_AllSkipped_Completed() {
+        statusService.createUploadStatus("organizationFiscalCode", "brokerCode", UPLOAD_KEY, 2, List.of(IUPD_1, IUPD_2), ServiceType.GPD);
+
+        ArgumentCaptor<Status> captor = ArgumentCaptor.forClass(Status.class);
+        Mockito.verify(statusRepository).saveStatus(captor.capture());
+        Upload upload = captor.getValue().getUpload();
+        Assertions.assertEquals(2, upload.getCurrent());
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED.getCode(), upload.getResponses().get(0).getStatusCode());
+        Assertions.assertEquals(List.of(IUPD_1, IUPD_2), upload.getResponses().get(0).getRequestIDs());
+        Assertions.assertNotNull(upload.getEnd());
+        Assertions.assertEquals(OperationStatus.COMPLETED, statusService.getOperationStatus(captor.getValue()));
+    }
+
+    @Test
+    void createUploadStatus_PartiallySkipped_InProgress() {
+        statusService.createUploadStatus("organizationFiscalCode", "brokerCode", UPLOAD_KEY, 2, List.of(IUPD_1), ServiceType.GPD);
+
+        ArgumentCaptor<Status> captor = ArgumentCaptor.forClass(Status.class);
+        Mockito.verify(statusRepository).saveStatus(captor.capture());
+        Assertions.assertEquals(1, captor.getValue().getUpload().getCurrent());
+        Assertions.assertNull(captor.getValue().getUpload().getEnd());
+        Assertions.assertEquals(OperationStatus.IN_PROGRESS, statusService.getOperationStatus(captor.getValue()));
+    }
+
+    @Test
+    void getOperationStatus_NoResponses_Completed() {
+        Upload upload = Upload.builder()
+                .current(0)
+                .total(0)
+                .start(LocalDateTime.now())
+                .responses(new ArrayList<>())
+                .build();
+
+        // the same outcome as the one of the Status queries
+        Assertions.assertEquals(OperationStatus.COMPLETED, statusService.getOperationStatus(Status.builder().upload(upload).build()));
+        Assertions.assertEquals(OperationStatus.COMPLETED, new StatusRepository.OutcomeRow(null, 0, 0, List.of()).outcome());
+    }
+
+    @Test
+    void getOperationStatus_AllFailed_Unsuccessfully() {
+        Upload upload = Upload.builder()
+                .current(10)
+                .total(10)
+                .start(LocalDateTime.now())
+                .responses(new ArrayList<>(List.of(
+                        ResponseEntry.builder().statusCode(HttpStatus.INTERNAL_SERVER_ERROR.getCode()).requestIDs(List.of(IUPD_1)).build()
+                )))
+                .build();
+
+        Assertions.assertEquals(OperationStatus.COMPLETED_UNSUCCESSFULLY, statusService.getOperationStatus(Status.builder().upload(upload).build()));
+    }
+
+    @Test
+    void getFileIdList_ByOutcome_OK() {
+        Mockito.when(statusRepository.findFileIdsPage(
+                anyString(), anyString(),
+                any(LocalDateTime.class), any(LocalDateTime.class),
+                anyInt(), any(), any(ServiceType.class), any(OperationStatus.class)
+        )).thenReturn(new StatusRepository.FileIdsPage(List.of("failed"), null));
+
+        FileIdListResponse res = statusService.getFileIdList(
+                "brokerA", "orgCF", LocalDate.parse("2025-09-01"), LocalDate.parse("2025-09-06"),
+                100, null, ServiceType.GPD, OperationStatus.COMPLETED_UNSUCCESSFULLY
+        );
+
+        Assertions.assertEquals(List.of("failed"), res.getFileIds());
+        Assertions.assertFalse(res.isHasMore());
+        Mockito.verify(statusRepository).findFileIdsPage(
+                Mockito.eq("brokerA"), Mockito.eq("orgCF"), any(LocalDateTime.class), any(LocalDateTime.class),
+                Mockito.eq(100), Mockito.isNull(), Mockito.eq(ServiceType.GPD), Mockito.eq(OperationStatus.COMPLETED_UNSUCCESSFULLY));
+    }
+
+    @Test
+    void getOutcomes_OK() {
+        Mockito.when(statusRepository.countOutcomes(anyString(), anyString(), any(LocalDateTime.class), any(LocalDateTime.class), any(ServiceType.class)))
+                .thenReturn(new StatusRepository.Outcomes(Map.of(OperationStatus.COMPLETED, 3L), 30, 2));
+
+        UploadOutcomesDTO outcomes = statusService.getOutcomes("brokerA", "orgCF", LocalDate.parse("2025-09-01"), LocalDate.parse("2025-09-06"), ServiceType.GPD);
+
+        Assertions.assertEquals(3L, outcomes.getUploads().get(OperationStatus.COMPLETED));
+        Assertions.assertEquals(30, outcomes.getSucceededItem());
+        Assertions.assertEquals(2, outcomes.getFailedItem());
+        Assertions.assertEquals(LocalDate.parse("2025-09-06"), outcomes.getTo());
+    }
+
     @Test
     void getFileIdList_hasMore_and_token_propagated() {
 
@@ -422,4 +743,106 @@ class StatusServiceTest {
         Assertions.assertFalse(res.isHasMore());
         Assertions.assertNull(res.getContinuationToken());
     }
+
+    @Test
+    void getUploadStatusV2_OtherBroker_NotFound() {
+        Status status = Status.builder()
+                .id(UPLOAD_KEY)
+                .brokerID("otherBrokerCode")
+                .serviceType(ServiceType.GPD)
+                .upload(Upload.builder().current(0).total(1).start(LocalDateTime.now()).build())
+                .build();
+        Mockito.when(statusRepository.findStatusCountersById(UPLOAD_KEY, "organizationFiscalCode")).thenReturn(status);
+
+        AppException exception = Assertions.assertThrows(AppException.class, () -> statusService.getUploadStatusV2("brokerCode", UPLOAD_KEY, "organizationFiscalCode", ServiceType.GPD));
+
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+        // the status poll reads the counters only
+        Mockito.verify(statusRepository, Mockito.never()).findStatusById(any(), any());
+    }
+
+    @Test
+    void getReportV2_Missing_NotFound() {
+        Mockito.when(statusRepository.findStatusById(UPLOAD_KEY, "organizationFiscalCode"))
+                .thenThrow(new AppException(HttpStatus.NOT_FOUND, "STATUS NOT FOUND", "The Status for given fileId key does not exist"));
+
+        AppException exception = Assertions.assertThrows(AppException.class, () -> statusService.getReportV2("brokerCode", "organizationFiscalCode", UPLOAD_KEY, ServiceType.GPD));
+
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+        Assertions.assertTrue(exception.getMessage().contains(ServiceType.GPD.name()));
+    }
+
+    @Test
+    void getUploadStatusesV2_OK() {
+        LocalDateTime start = LocalDateTime.now();
+        Status completed = ofBroker(Status.builder()
+                .id("completed")
+                .fiscalCode("organizationFiscalCode")
+                .upload(Upload.builder().current(1).total(1).start(start).end(start).build())
+                .build());
+        Status otherBroker = Status.builder()
+                .id("otherBroker")
+                .brokerID("otherBrokerCode")
+                .upload(Upload.builder().current(0).total(1).start(start).build())
+                .build();
+        Status parent = ofBroker(Status.builder()
+                .id("parent")
+                .fiscalCode("organizationFiscalCode")
+                .children(List.of("child"))
+                .upload(Upload.builder().current(0).total(2).start(start).build())
+                .build());
+        Mockito.when(statusRepository.findStatusesByIds(any(), eq("organizationFiscalCode"))).thenReturn(List.of(completed, otherBroker, parent));
+        Mockito.when(statusRepository.findStatusCountersById("parent", "organizationFiscalCode")).thenReturn(parent);
+        Mockito.when(statusRepository.findStatusCountersById("child", "organizationFiscalCode")).thenReturn(Status.builder()
+                .id("child")
+                .upload(Upload.builder().current(1).total(2).start(start).build())
+                .build());
+
+        List<UploadStatusItemDTO> statuses = statusService.getUploadStatusesV2("brokerCode", "organizationFiscalCode",
+                List.of("completed", "missing", "otherBroker", "parent", "completed"), ServiceType.GPD);
+
+        Assertions.assertEquals(List.of("completed", "missing", "otherBroker", "parent"), statuses.stream().map(UploadStatusItemDTO::getFileId).toList());
+        Assertions.assertEquals(List.of(200, 404, 404, 200), statuses.stream().map(UploadStatusItemDTO::getStatusCode).toList());
+        Assertions.assertEquals(OperationStatus.COMPLETED, statuses.get(0).getStatus().getOperationStatus());
+        Assertions.assertNull(statuses.get(1).getStatus());
+        // the split upload is aggregated from its children
+        Assertions.assertEquals(1, statuses.get(3).getStatus().getProcessedItem());
+        Mockito.verify(statusRepository).findStatusesByIds(List.of("completed", "missing", "otherBroker", "parent"), "organizationFiscalCode");
+        Mockito.verify(statusRepository, Mockito.never()).findStatusById("completed", "organizationFiscalCode");
+    }
+
+    @Test
+    void getUploadStatusesV2_Cached_NotRead() throws NoSuchFieldException, IllegalAccessException {
+        StatusService cachingStatusService = cachingStatusService();
+        LocalDateTime start = LocalDateTime.now();
+        Mockito.when(statusRepository.findStatusesByIds(any(), any())).thenReturn(List.of(ofBroker(Status.builder()
+                .id(UPLOAD_KEY)
+                .upload(Upload.builder().current(1).total(1).start(start).end(start).build())
+                .build())));
+
+        cachingStatusService.getUploadStatusesV2("brokerCode", "organizationFiscalCode", List.of(UPLOAD_KEY), ServiceType.GPD);
+        List<UploadStatusItemDTO> statuses = cachingStatusService.getUploadStatusesV2("brokerCode", "organizationFiscalCode", List.of(UPLOAD_KEY), ServiceType.GPD);
+
+        Assertions.assertEquals(200, statuses.get(0).getStatusCode());
+        Mockito.verify(statusRepository, Mockito.times(1)).findStatusesByIds(any(), any());
+    }
+
+    private StatusService cachingStatusService() throws NoSuchFieldException, IllegalAccessException {
+        StatusCache statusCache = new StatusCache(new SimpleMeterRegistry());
+        Field enabled = StatusCache.class.getDeclaredField("enabled");
+        enabled.setAccessible(true);
+        enabled.setBoolean(statusCache, true);
+        Field maxWeight = StatusCache.class.getDeclaredField("maxWeight");
+        maxWeight.setAccessible(true);
+        maxWeight.setLong(statusCache, 1000);
+        Field terminalTtl = StatusCache.class.getDeclaredField("terminalTtl");
+        terminalTtl.setAccessible(true);
+        terminalTtl.setLong(statusCache, 60000);
+        statusCache.init();
+        return new StatusService(statusRepository, responseEntryDTOMapper, blobStorageRepository, statusCache);
+    }
+
+    private static Status ofBroker(Status status) {
+        return status.toBuilder().brokerID("brokerCode").build();
+    }
 }
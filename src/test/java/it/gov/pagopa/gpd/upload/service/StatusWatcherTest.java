@@ -0,0 +1,116 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusDTO;
+import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
+import it.gov.pagopa.gpd.upload.utils.EntityTag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class StatusWatcherTest {
+    private static final String BROKER = "broker";
+    private static final String FISCAL_CODE = "fiscal-code";
+    private static final String FILE_ID = "fileId";
+
+    private final StatusService statusService = mock(StatusService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StatusWatcher statusWatcher;
+
+    @BeforeEach
+    void beforeEach() throws NoSuchFieldException, IllegalAccessException {
+        statusWatcher = new StatusWatcher(statusService, meterRegistry);
+        Field pollInterval = StatusWatcher.class.getDeclaredField("pollInterval");
+        pollInterval.setAccessible(true);
+        pollInterval.setLong(statusWatcher, 50);
+        Field threads = StatusWatcher.class.getDeclaredField("threads");
+        threads.setAccessible(true);
+        threads.setInt(statusWatcher, 1);
+        statusWatcher.init();
+    }
+
+    @AfterEach
+    void afterEach() {
+        statusWatcher.shutdown();
+    }
+
+    @Test
+    void awaitChange_Changed_OK() throws Exception {
+        UploadStatusDTO first = status(1, OperationStatus.IN_PROGRESS);
+        UploadStatusDTO second = status(2, OperationStatus.IN_PROGRESS);
+        when(statusService.getUploadStatusV2(any(), any(), any(), any())).thenReturn(first, first, second);
+
+        UploadStatusDTO changed = awaitChange(EntityTag.of(first), 5000).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, changed.getProcessedItem());
+    }
+
+    @Test
+    void awaitChange_Unchanged_OK() throws Exception {
+        UploadStatusDTO first = status(1, OperationStatus.IN_PROGRESS);
+        when(statusService.getUploadStatusV2(any(), any(), any(), any())).thenReturn(first);
+
+        UploadStatusDTO unchanged = awaitChange(EntityTag.of(first), 200).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, unchanged.getProcessedItem());
+    }
+
+    @Test
+    void awaitChange_Shared_OK() throws Exception {
+        UploadStatusDTO first = status(1, OperationStatus.IN_PROGRESS);
+        when(statusService.getUploadStatusV2(any(), any(), any(), any())).thenReturn(first);
+
+        CompletableFuture<UploadStatusDTO> one = awaitChange(EntityTag.of(first), 300);
+        CompletableFuture<UploadStatusDTO> other = awaitChange(EntityTag.of(first), 300);
+        assertEquals(1, meterRegistry.get("gpd.upload.status.watches").gauge().value());
+
+        assertEquals(1, one.get(5, TimeUnit.SECONDS).getProcessedItem());
+        assertEquals(1, other.get(5, TimeUnit.SECONDS).getProcessedItem());
+    }
+
+    @Test
+    void awaitChange_NotFound_KO() throws Exception {
+        when(statusService.getUploadStatusV2(any(), any(), any(), any()))
+                .thenThrow(new AppException(HttpStatus.NOT_FOUND, "STATUS NOT FOUND", "not found"));
+
+        assertNull(awaitChange("\"etag\"", 5000).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void watch_EndsWithUpload_OK() {
+        when(statusService.getUploadStatusV2(any(), any(), any(), any()))
+                .thenReturn(status(1, OperationStatus.IN_PROGRESS), status(1, OperationStatus.IN_PROGRESS), status(2, OperationStatus.COMPLETED));
+
+        List<UploadStatusDTO> statuses = statusWatcher.watch(BROKER, FISCAL_CODE, FILE_ID, ServiceType.GPD, 5000)
+                .toList()
+                .blockingGet();
+
+        assertEquals(2, statuses.size());
+        assertEquals(OperationStatus.COMPLETED, statuses.get(1).getOperationStatus());
+    }
+
+    private CompletableFuture<UploadStatusDTO> awaitChange(String etag, long waitMillis) {
+        return statusWatcher.awaitChange(BROKER, FISCAL_CODE, FILE_ID, ServiceType.GPD, etag, waitMillis);
+    }
+
+    private static UploadStatusDTO status(int processedItem, OperationStatus operationStatus) {
+        return UploadStatusDTO.builder()
+                .fileId(FILE_ID)
+                .processedItem(processedItem)
+                .submittedItem(2)
+                .operationStatus(operationStatus)
+                .build();
+    }
+}
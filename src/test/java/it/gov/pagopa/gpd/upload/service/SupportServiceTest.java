@@ -230,7 +230,7 @@ class SupportServiceTest {
         verify(statusRepository).find(queryCaptor.capture(), optionsCaptor.capture());
 
         SqlQuerySpec capturedQuery = queryCaptor.getValue();
-        assertEquals("SELECT * FROM c WHERE c._ts >= @fromTs AND c._ts <= @toTs AND c.upload.current != c.upload.total", capturedQuery.getQueryText());
+        assertEquals("SELECT * FROM c WHERE c._ts >= @fromTs AND c._ts <= @toTs AND c.upload.current != c.upload.total AND NOT IS_DEFINED(c.children)", capturedQuery.getQueryText());
 
         Long expectedFromTs = fromTime.atZone(zone).toEpochSecond();
         Long expectedToTs = toTime.atZone(zone).toEpochSecond();
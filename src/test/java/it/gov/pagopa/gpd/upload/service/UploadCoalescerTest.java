@@ -0,0 +1,146 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.pd.PaymentPositionModel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadCoalescerTest {
+    private static final String BROKER_CODE = "broker-code";
+    private static final String FISCAL_CODE = "fiscal-code";
+    private static final String FILE_ID = "broker-code_fiscal-code_0123456789abcdef0123456789abcdef";
+
+    private final UploadCoalescer uploadCoalescer = new UploadCoalescer();
+    private final List<List<PaymentPositionModel>> uploads = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void beforeEach() throws NoSuchFieldException, IllegalAccessException {
+        setField("enabled", true);
+        setField("windowMillis", 10L);
+        setField("maxRequestPositions", 10);
+        setField("maxBatchPositions", 3);
+        setField("threads", 1);
+        uploadCoalescer.init();
+    }
+
+    @AfterEach
+    void afterEach() {
+        uploadCoalescer.shutdown();
+    }
+
+    @Test
+    void accepts_OnlySmallCreateAndUpdate() {
+        assertTrue(uploadCoalescer.accepts(UploadOperation.CREATE, 10));
+        assertTrue(uploadCoalescer.accepts(UploadOperation.UPDATE, 1));
+        assertFalse(uploadCoalescer.accepts(UploadOperation.CREATE, 11));
+        assertFalse(uploadCoalescer.accepts(UploadOperation.DELETE, 1));
+    }
+
+    @Test
+    void submit_RequestsInWindowCombined() throws Exception {
+        // the window never ends within the test: the batch is flushed by the request filling it
+        setField("windowMillis", 60_000L);
+        CompletableFuture<String> first = submit("IUPD1");
+        CompletableFuture<String> second = submit("IUPD2");
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        CompletableFuture<String> third = submit("IUPD3");
+
+        assertEquals(FILE_ID + "-0-1", first.get(5, TimeUnit.SECONDS));
+        assertEquals(FILE_ID + "-1-1", second.get(5, TimeUnit.SECONDS));
+        assertEquals(FILE_ID + "-2-1", third.get(5, TimeUnit.SECONDS));
+        assertEquals(1, uploads.size());
+        assertEquals(List.of("IUPD1", "IUPD2", "IUPD3"), uploads.get(0).stream().map(PaymentPositionModel::getIupd).toList());
+    }
+
+    @Test
+    void submit_DuplicateIupdStartsNewBatch() throws Exception {
+        setField("windowMillis", 60_000L);
+        CompletableFuture<String> first = submit("IUPD1");
+        CompletableFuture<String> second = submit("IUPD1");
+
+        // the first batch is flushed without waiting for its window, the second one is open
+        assertEquals(FILE_ID + "-0-1", first.get(5, TimeUnit.SECONDS));
+        assertFalse(second.isDone());
+        assertEquals(1, uploads.size());
+
+        submit("IUPD2", "IUPD3");
+        assertEquals(FILE_ID + "-0-1", second.get(5, TimeUnit.SECONDS));
+        assertEquals(2, uploads.size());
+    }
+
+    @Test
+    void submit_FullBatchFlushedBeforeWindow() throws Exception {
+        setField("windowMillis", 60_000L);
+
+        assertEquals(FILE_ID + "-0-3", submit("IUPD1", "IUPD2", "IUPD3").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void submit_CallerNotHeldForUpload() throws Exception {
+        CountDownLatch uploadStarted = new CountDownLatch(1);
+        CountDownLatch uploadReleased = new CountDownLatch(1);
+        List<String> uploaders = Collections.synchronizedList(new ArrayList<>());
+        List<PaymentPositionModel> positions = List.of(PaymentPositionModel.builder().iupd("IUPD1").build());
+
+        CompletableFuture<String> fileId = uploadCoalescer.submit(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, UploadOperation.CREATE, positions, combined -> {
+            uploaders.add(Thread.currentThread().getName());
+            uploadStarted.countDown();
+            try {
+                uploadReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return FILE_ID;
+        });
+
+        // the batch is flushed at the end of its window, on the scheduler, while the caller already returned
+        assertTrue(uploadStarted.await(5, TimeUnit.SECONDS));
+        assertFalse(fileId.isDone());
+        uploadReleased.countDown();
+        assertEquals(FILE_ID + "-0-1", fileId.get(5, TimeUnit.SECONDS));
+        assertTrue(uploaders.get(0).startsWith("upload-coalescer-"));
+    }
+
+    @Test
+    void submit_UploadFailed_CompletedExceptionally() {
+        List<PaymentPositionModel> positions = List.of(PaymentPositionModel.builder().iupd("IUPD1").build());
+        IllegalStateException failure = new IllegalStateException("upload failed");
+
+        CompletableFuture<String> fileId = uploadCoalescer.submit(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, UploadOperation.CREATE, positions, combined -> {
+            throw failure;
+        });
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> fileId.get(5, TimeUnit.SECONDS));
+        assertSame(failure, exception.getCause());
+    }
+
+    private CompletableFuture<String> submit(String... iupds) {
+        List<PaymentPositionModel> positions = new ArrayList<>();
+        for (String iupd : iupds)
+            positions.add(PaymentPositionModel.builder().iupd(iupd).build());
+        return uploadCoalescer.submit(BROKER_CODE, FISCAL_CODE, ServiceType.GPD, UploadOperation.CREATE, positions, combined -> {
+            uploads.add(combined);
+            return FILE_ID;
+        });
+    }
+
+    private void setField(String name, Object value) throws NoSuchFieldException, IllegalAccessException {
+        Field field = UploadCoalescer.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(uploadCoalescer, value);
+    }
+}
@@ -0,0 +1,157 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UploadJournalServiceTest {
+    private static final String BROKER_CODE = "broker-code";
+    private static final String FISCAL_CODE = "fiscal-code";
+    private static final String FILE_ID = "fileId";
+    private static final byte[] CONTENT = "{}".getBytes();
+
+    @TempDir
+    Path directory;
+
+    private final BlobStorageRepository blobStorageRepository = mock(BlobStorageRepository.class);
+    private final StatusService statusService = mock(StatusService.class);
+    private UploadJournalService uploadJournalService;
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        when(blobStorageRepository.newFileId(BROKER_CODE, FISCAL_CODE)).thenReturn(FILE_ID);
+        when(blobStorageRepository.upload(any(), any(), any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        uploadJournalService = create();
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        uploadJournalService.shutdown();
+    }
+
+    @Test
+    void accept_OK() {
+        String fileId = accept();
+
+        assertEquals(FILE_ID, fileId);
+        verify(statusService).createUploadStatus(FISCAL_CODE, BROKER_CODE, FILE_ID, 1, List.of(), null, ServiceType.GPD);
+        verify(blobStorageRepository, timeout(1000)).upload(eq(BROKER_CODE), eq(FISCAL_CODE), eq(FILE_ID), any(), eq(ServiceType.GPD), any());
+    }
+
+    @Test
+    void accept_StatusThrottled_Deferred() {
+        doThrow(new AppException(HttpStatus.TOO_MANY_REQUESTS, "429", "Status saving failed"))
+                .doNothing()
+                .when(statusService).createUploadStatus(any(), any(), any(), anyInt(), anyList(), any(), any());
+
+        assertEquals(FILE_ID, accept());
+
+        // retried by the drainer after the backoff
+        verify(statusService, timeout(1000).times(2)).createUploadStatus(FISCAL_CODE, BROKER_CODE, FILE_ID, 1, List.of(), null, ServiceType.GPD);
+    }
+
+    @Test
+    void accept_StatusRejected_KO() {
+        doThrow(new AppException(HttpStatus.BAD_REQUEST, "400", "Status saving failed"))
+                .when(statusService).createUploadStatus(any(), any(), any(), anyInt(), anyList(), any(), any());
+
+        AppException exception = assertThrows(AppException.class, this::accept);
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+        verify(blobStorageRepository, after(200).never()).upload(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void drain_BlobThrottled_Retried() {
+        AppException throttled = new AppException(HttpStatus.SERVICE_UNAVAILABLE, "503", "Server busy");
+        when(blobStorageRepository.upload(any(), any(), any(), any(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(throttled))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        accept();
+
+        verify(blobStorageRepository, timeout(1000).times(2)).upload(eq(BROKER_CODE), eq(FISCAL_CODE), eq(FILE_ID), any(), eq(ServiceType.GPD), any());
+    }
+
+    @Test
+    void drain_BlobRejected_MovedAside() throws IOException {
+        when(blobStorageRepository.upload(any(), any(), any(), any(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new AppException(HttpStatus.BAD_REQUEST, "400", "Invalid blob")));
+
+        accept();
+
+        verify(statusService, timeout(1000)).deleteUploadStatus(FISCAL_CODE, FILE_ID);
+        verify(blobStorageRepository).upload(any(), any(), any(), any(), any(), any());
+        assertTrue(Files.size(directory.resolve("journal.dead")) > 0);
+    }
+
+    @Test
+    void drain_BlobThrottled_MovedAsideAfterMaxAttempts() throws IOException {
+        when(blobStorageRepository.upload(any(), any(), any(), any(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new AppException(HttpStatus.SERVICE_UNAVAILABLE, "503", "Server busy")));
+
+        accept();
+
+        verify(statusService, timeout(1000)).deleteUploadStatus(FISCAL_CODE, FILE_ID);
+        verify(blobStorageRepository, times(3)).upload(any(), any(), any(), any(), any(), any());
+        assertTrue(Files.size(directory.resolve("journal.dead")) > 0);
+    }
+
+    @Test
+    void init_Restart_Replayed() throws Exception {
+        when(blobStorageRepository.upload(any(), any(), any(), any(), any(), any())).thenReturn(new CompletableFuture<>());
+        accept();
+        uploadJournalService.shutdown();
+        reset(blobStorageRepository, statusService);
+        when(blobStorageRepository.upload(any(), any(), any(), any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        uploadJournalService = create();
+
+        verify(blobStorageRepository, timeout(1000)).upload(eq(BROKER_CODE), eq(FISCAL_CODE), eq(FILE_ID), any(), eq(ServiceType.GPD), any());
+        // the Status was already created before the restart
+        verify(statusService, never()).createUploadStatus(any(), any(), any(), anyInt(), anyList(), any(), any());
+    }
+
+    private String accept() {
+        return uploadJournalService.accept(CONTENT, UploadOperation.CREATE, BROKER_CODE, FISCAL_CODE, 1, List.of(), null, ServiceType.GPD, UploadCancellation.none());
+    }
+
+    private UploadJournalService create() throws Exception {
+        UploadJournalService service = new UploadJournalService(blobStorageRepository, statusService, new SimpleMeterRegistry());
+        setField(service, "enabled", true);
+        setField(service, "path", directory.resolve("journal.bin").toString());
+        setField(service, "capacityBytes", 4096);
+        setField(service, "initialBackoffMillis", 10L);
+        setField(service, "maxBackoffMillis", 100L);
+        setField(service, "maxAttempts", 3);
+        setField(service, "deadLetterPath", directory.resolve("journal.dead").toString());
+        setField(service, "drainerThreads", 1);
+        service.init();
+        return service;
+    }
+
+    private static void setField(Object target, String name, Object value) throws NoSuchFieldException, IllegalAccessException {
+        Field field = UploadJournalService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
@@ -0,0 +1,119 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadLaneExecutorTest {
+    private static final long SMALL = 1024;
+    private static final long MEDIUM = 10 * 1024;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private UploadLaneExecutor uploadLaneExecutor;
+
+    @BeforeEach
+    void beforeEach() throws NoSuchFieldException, IllegalAccessException {
+        uploadLaneExecutor = new UploadLaneExecutor(meterRegistry);
+        Map<String, Number> config = Map.of(
+                "smallMaxBytes", SMALL, "mediumMaxBytes", MEDIUM,
+                "smallWorkers", 1, "smallQueue", 1,
+                "mediumWorkers", 1, "mediumQueue", 1,
+                "largeWorkers", 1, "largeQueue", 1);
+        for (Map.Entry<String, Number> entry : config.entrySet()) {
+            Field field = UploadLaneExecutor.class.getDeclaredField(entry.getKey());
+            field.setAccessible(true);
+            if (field.getType() == long.class)
+                field.setLong(uploadLaneExecutor, entry.getValue().longValue());
+            else
+                field.setInt(uploadLaneExecutor, entry.getValue().intValue());
+        }
+        uploadLaneExecutor.init();
+    }
+
+    @AfterEach
+    void afterEach() {
+        uploadLaneExecutor.shutdown();
+    }
+
+    @Test
+    void classify_OK() {
+        assertEquals(UploadLaneExecutor.Lane.SMALL, uploadLaneExecutor.classify(SMALL));
+        assertEquals(UploadLaneExecutor.Lane.MEDIUM, uploadLaneExecutor.classify(SMALL + 1));
+        assertEquals(UploadLaneExecutor.Lane.LARGE, uploadLaneExecutor.classify(MEDIUM + 1));
+    }
+
+    @Test
+    void submit_OK() {
+        assertEquals("fileId", uploadLaneExecutor.submit(SMALL, () -> "fileId").join());
+        assertEquals(1, meterRegistry.get("gpd.upload.lane.service").tag("lane", "small").timer().count());
+        assertEquals(1, meterRegistry.get("gpd.upload.lane.queue").tag("lane", "small").timer().count());
+    }
+
+    @Test
+    void submit_PropagatesAppException() {
+        CompletableFuture<String> future = uploadLaneExecutor.submit(SMALL, () -> {
+            throw new AppException(HttpStatus.BAD_REQUEST, "INVALID FILE", "Invalid file");
+        });
+
+        CompletionException exception = assertThrows(CompletionException.class, future::join);
+        assertEquals(HttpStatus.BAD_REQUEST, ((AppException) exception.getCause()).getHttpStatus());
+    }
+
+    @Test
+    void submit_DoesNotWaitForTheTask() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> future = uploadLaneExecutor.submit(SMALL, () -> await(release));
+
+        assertFalse(future.isDone());
+        release.countDown();
+        assertEquals("released", future.join());
+    }
+
+    @Test
+    void submit_LargeLaneFull_SmallLaneAvailable() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // one running and one queued upload fill the large lane
+        uploadLaneExecutor.submit(MEDIUM + 1, () -> {
+            started.countDown();
+            return await(release);
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        uploadLaneExecutor.submit(MEDIUM + 1, () -> "queued");
+        waitForQueued(UploadLaneExecutor.Lane.LARGE);
+
+        AppException exception = assertThrows(AppException.class, () -> uploadLaneExecutor.submit(MEDIUM + 1, () -> "rejected"));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getHttpStatus());
+        assertEquals("small", uploadLaneExecutor.submit(SMALL, () -> "small").join());
+
+        release.countDown();
+    }
+
+    private void waitForQueued(UploadLaneExecutor.Lane lane) throws InterruptedException {
+        String tag = lane.name().toLowerCase();
+        for (int i = 0; i < 100 && meterRegistry.get("gpd.upload.lane.queue.size").tag("lane", tag).gauge().value() < 1; i++)
+            Thread.sleep(10);
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "released";
+    }
+}
@@ -0,0 +1,218 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import com.azure.core.util.BinaryData;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.ChunkRangeDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadSessionDTO;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository.ReceivedRange;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository.SessionBlob;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository.StagedChunk;
+import it.gov.pagopa.gpd.upload.utils.UploadCancellation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UploadSessionServiceTest {
+    private static final String BROKER_CODE = "broker-code";
+    private static final String FISCAL_CODE = "fiscal-code";
+    private static final String SESSION_ID = "broker-code_fiscal-code_0123456789abcdef";
+    private static final String UPLOAD_ID = "uploadId";
+
+    private final BlobStorageRepository blobStorageRepository = mock(BlobStorageRepository.class);
+    private final BlobService blobService = mock(BlobService.class);
+    private final AsyncUploadService asyncUploadService = mock(AsyncUploadService.class);
+    private final UploadLaneExecutor uploadLaneExecutor = mock(UploadLaneExecutor.class);
+    private final StatusService statusService = mock(StatusService.class);
+    private final AdmissionService admissionService = mock(AdmissionService.class);
+    private final UploadSessionService uploadSessionService = new UploadSessionService(blobStorageRepository, blobService, asyncUploadService, uploadLaneExecutor, statusService, admissionService);
+
+    @BeforeEach
+    void beforeEach() throws NoSuchFieldException, IllegalAccessException {
+        setField("maxSize", 100L);
+        setField("maxChunkSize", 10);
+        when(blobStorageRepository.newFileId(BROKER_CODE, FISCAL_CODE)).thenReturn(SESSION_ID);
+        when(blobStorageRepository.updateSession(any(), any(), any(), any(), any())).thenReturn(true);
+        when(uploadLaneExecutor.submit(anyLong(), any())).thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.<Supplier<?>>getArgument(1).get()));
+        when(admissionService.admit(anyLong(), any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+    }
+
+    @Test
+    void create_OK() {
+        UploadSessionDTO session = uploadSessionService.create(BROKER_CODE, FISCAL_CODE, 20, ServiceType.GPD);
+
+        assertEquals(SESSION_ID, session.getSessionId());
+        assertTrue(session.getReceivedRanges().isEmpty());
+        assertFalse(session.isComplete());
+        verify(blobStorageRepository).createSession(BROKER_CODE, FISCAL_CODE, SESSION_ID, 20, ServiceType.GPD);
+    }
+
+    @Test
+    void create_TooLarge_KO() {
+        AppException exception = assertThrows(AppException.class, () -> uploadSessionService.create(BROKER_CODE, FISCAL_CODE, 101, ServiceType.GPD));
+
+        assertEquals(HttpStatus.REQUEST_ENTITY_TOO_LARGE, exception.getHttpStatus());
+    }
+
+    @Test
+    void putChunk_ReceivedRanges_OK() {
+        givenSession(25, chunk(0, 10), chunk(20, 5));
+
+        UploadSessionDTO session = uploadSessionService.putChunk(BROKER_CODE, FISCAL_CODE, SESSION_ID, 10, new byte[10]);
+
+        verify(blobStorageRepository).stageChunk(eq(BROKER_CODE), eq(FISCAL_CODE), eq(SESSION_ID), eq(10L), any());
+        verify(blobStorageRepository).updateSession(eq(BROKER_CODE), eq(FISCAL_CODE), eq(SESSION_ID), any(), eq(List.of(new ReceivedRange(0, 25))));
+        verify(blobStorageRepository, never()).listStagedChunks(any(), any(), any());
+        assertEquals(List.of(new ChunkRangeDTO(0, 25)), session.getReceivedRanges());
+        assertTrue(session.isComplete());
+    }
+
+    @Test
+    void putChunk_ConcurrentUpdate_Retried() {
+        givenSession(25, chunk(0, 10));
+        when(blobStorageRepository.updateSession(any(), any(), any(), any(), any())).thenReturn(false).thenReturn(true);
+
+        UploadSessionDTO session = uploadSessionService.putChunk(BROKER_CODE, FISCAL_CODE, SESSION_ID, 20, new byte[5]);
+
+        verify(blobStorageRepository, times(2)).getSession(BROKER_CODE, FISCAL_CODE, SESSION_ID);
+        assertEquals(List.of(new ChunkRangeDTO(0, 10), new ChunkRangeDTO(20, 5)), session.getReceivedRanges());
+        assertFalse(session.isComplete());
+    }
+
+    @Test
+    void putChunk_BeyondSize_KO() {
+        givenSession(15);
+
+        AppException exception = assertThrows(AppException.class,
+                () -> uploadSessionService.putChunk(BROKER_CODE, FISCAL_CODE, SESSION_ID, 10, new byte[10]));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+        verify(blobStorageRepository, never()).stageChunk(any(), any(), any(), anyLong(), any());
+    }
+
+    @Test
+    void get_NotFound_KO() {
+        when(blobStorageRepository.getSession(BROKER_CODE, FISCAL_CODE, SESSION_ID)).thenReturn(Optional.empty());
+
+        AppException exception = assertThrows(AppException.class, () -> uploadSessionService.get(BROKER_CODE, FISCAL_CODE, SESSION_ID));
+
+        assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+    }
+
+    @Test
+    void finalize_OK() {
+        givenSession(15, chunk(10, 5), chunk(0, 10));
+        when(blobStorageRepository.downloadArchive(BROKER_CODE, FISCAL_CODE, SESSION_ID)).thenReturn(Optional.of(BinaryData.fromBytes(new byte[15])));
+        when(blobService.processArchive(eq(BROKER_CODE), eq(FISCAL_CODE), eq(UploadOperation.CREATE), any(), any(), eq(ServiceType.GPD), any())).thenReturn(CompletableFuture.completedFuture(UPLOAD_ID));
+
+        String uploadId = uploadSessionService.finalizeSession(BROKER_CODE, FISCAL_CODE, SESSION_ID, UploadOperation.CREATE, UploadCancellation.none()).join().fileId();
+
+        assertEquals(UPLOAD_ID, uploadId);
+        verify(admissionService).admit(eq(15L), any());
+        verify(blobStorageRepository).commitSession(BROKER_CODE, FISCAL_CODE, SESSION_ID, List.of("block-0", "block-10"));
+        verify(blobStorageRepository).deleteSession(BROKER_CODE, FISCAL_CODE, SESSION_ID);
+        verify(blobStorageRepository).deleteArchive(BROKER_CODE, FISCAL_CODE, SESSION_ID);
+    }
+
+    @Test
+    void finalize_Async_Accepted() {
+        givenSession(10, chunk(0, 10));
+        when(asyncUploadService.isEnabled()).thenReturn(true);
+        when(asyncUploadService.acceptArchive(SESSION_ID, BROKER_CODE, FISCAL_CODE, UploadOperation.DELETE, ServiceType.GPD)).thenReturn(SESSION_ID);
+
+        String uploadId = uploadSessionService.finalizeSession(BROKER_CODE, FISCAL_CODE, SESSION_ID, UploadOperation.DELETE, UploadCancellation.none()).join().fileId();
+
+        assertEquals(SESSION_ID, uploadId);
+        verify(blobStorageRepository).commitSession(BROKER_CODE, FISCAL_CODE, SESSION_ID, List.of("block-0"));
+        verify(blobStorageRepository).deleteSession(BROKER_CODE, FISCAL_CODE, SESSION_ID);
+        verify(blobStorageRepository, never()).deleteArchive(any(), any(), any());
+        verifyNoInteractions(blobService);
+    }
+
+    @Test
+    void finalize_NotAdmitted_SessionKept() {
+        givenSession(10, chunk(0, 10));
+        when(admissionService.admit(anyLong(), any())).thenThrow(new AppException(HttpStatus.TOO_MANY_REQUESTS, "TOO MANY UPLOADS", "Upload capacity for small files exhausted, retry later"));
+
+        AppException exception = assertThrows(AppException.class,
+                () -> uploadSessionService.finalizeSession(BROKER_CODE, FISCAL_CODE, SESSION_ID, UploadOperation.CREATE, UploadCancellation.none()));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getHttpStatus());
+        verifyNoInteractions(blobService);
+        verify(blobStorageRepository, never()).deleteSession(any(), any(), any());
+    }
+
+    @Test
+    void finalize_ProcessingFailed_SessionKept() {
+        givenSession(10, chunk(0, 10));
+        when(blobStorageRepository.downloadArchive(BROKER_CODE, FISCAL_CODE, SESSION_ID)).thenReturn(Optional.of(BinaryData.fromBytes(new byte[10])));
+        when(blobService.processArchive(any(), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new AppException(HttpStatus.SERVICE_UNAVAILABLE, "SERVICE UNAVAILABLE", "Server busy"));
+
+        assertThrows(AppException.class,
+                () -> uploadSessionService.finalizeSession(BROKER_CODE, FISCAL_CODE, SESSION_ID, UploadOperation.CREATE, UploadCancellation.none()));
+
+        verify(blobStorageRepository, never()).deleteSession(any(), any(), any());
+        verify(blobStorageRepository, never()).deleteArchive(any(), any(), any());
+    }
+
+    @Test
+    void finalize_AsyncNotQueued_SessionKept() {
+        givenSession(10, chunk(0, 10));
+        when(asyncUploadService.isEnabled()).thenReturn(true);
+        when(asyncUploadService.acceptArchive(any(), any(), any(), any(), any()))
+                .thenThrow(new AppException(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL SERVER ERROR", "Queue not available"));
+
+        assertThrows(AppException.class,
+                () -> uploadSessionService.finalizeSession(BROKER_CODE, FISCAL_CODE, SESSION_ID, UploadOperation.CREATE, UploadCancellation.none()));
+
+        verify(statusService).deleteUploadStatus(FISCAL_CODE, SESSION_ID);
+        verify(blobStorageRepository, never()).deleteSession(any(), any(), any());
+        verify(blobStorageRepository, never()).deleteArchive(any(), any(), any());
+    }
+
+    @Test
+    void finalize_Incomplete_KO() {
+        givenSession(25, chunk(0, 10), chunk(20, 5));
+
+        AppException exception = assertThrows(AppException.class,
+                () -> uploadSessionService.finalizeSession(BROKER_CODE, FISCAL_CODE, SESSION_ID, UploadOperation.CREATE, UploadCancellation.none()));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getHttpStatus());
+        verify(blobStorageRepository, never()).commitSession(any(), any(), any(), any());
+    }
+
+    private void givenSession(long size, StagedChunk... chunks) {
+        List<ReceivedRange> received = Arrays.stream(chunks)
+                .sorted(Comparator.comparingLong(StagedChunk::getOffset))
+                .map(chunk -> new ReceivedRange(chunk.getOffset(), chunk.getLength()))
+                .toList();
+        when(blobStorageRepository.getSession(BROKER_CODE, FISCAL_CODE, SESSION_ID))
+                .thenReturn(Optional.of(new SessionBlob(size, ServiceType.GPD, received, "etag")));
+        when(blobStorageRepository.listStagedChunks(BROKER_CODE, FISCAL_CODE, SESSION_ID)).thenReturn(List.of(chunks));
+    }
+
+    private static StagedChunk chunk(long offset, long length) {
+        return new StagedChunk("block-" + offset, offset, length);
+    }
+
+    private void setField(String name, Object value) throws NoSuchFieldException, IllegalAccessException {
+        Field field = UploadSessionService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(uploadSessionService, value);
+    }
+}
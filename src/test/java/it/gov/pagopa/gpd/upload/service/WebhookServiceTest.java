@@ -0,0 +1,260 @@
+package it.gov.pagopa.gpd.upload.service;
+
+import com.azure.core.util.BinaryData;
+import com.azure.storage.queue.models.QueueMessageItem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.WebhookMessage;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import it.gov.pagopa.gpd.upload.model.v2.UploadStatusDTO;
+import it.gov.pagopa.gpd.upload.model.v2.WebhookDTO;
+import it.gov.pagopa.gpd.upload.model.v2.enumeration.OperationStatus;
+import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
+import it.gov.pagopa.gpd.upload.repository.WebhookQueueRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WebhookServiceTest {
+    private static final String BROKER_CODE = "broker-code";
+    private static final String FISCAL_CODE = "fiscal-code";
+    private static final String FILE_ID = "fileId";
+    private static final String SECRET = "secret";
+
+    private final BlobStorageRepository blobStorageRepository = mock(BlobStorageRepository.class);
+    private final WebhookQueueRepository webhookQueueRepository = mock(WebhookQueueRepository.class);
+    private final StatusService statusService = mock(StatusService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Received> received = new CopyOnWriteArrayList<>();
+    private final AtomicInteger responseCode = new AtomicInteger(200);
+    private WebhookService webhookService;
+    private HttpServer server;
+    private String url;
+
+    private record Received(String signature, String timestamp, String body) {
+    }
+
+    @BeforeEach
+    void beforeEach() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/webhook", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                received.add(new Received(exchange.getRequestHeaders().getFirst(WebhookService.SIGNATURE_HEADER),
+                        exchange.getRequestHeaders().getFirst(WebhookService.SIGNATURE_TIMESTAMP_HEADER),
+                        new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+            }
+            exchange.sendResponseHeaders(responseCode.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/webhook";
+
+        webhookService = new WebhookService(blobStorageRepository, webhookQueueRepository, statusService);
+        Map<String, Object> config = Map.ofEntries(
+                Map.entry("enabled", true),
+                Map.entry("allowHttp", true),
+                Map.entry("allowPrivate", true),
+                Map.entry("watchDuration", Duration.ofHours(1)),
+                Map.entry("registrationTtl", Duration.ofMinutes(1)),
+                Map.entry("workerEnabled", true),
+                Map.entry("batchSize", 32),
+                Map.entry("checkInterval", Duration.ofSeconds(5)),
+                Map.entry("concurrency", 2),
+                Map.entry("timeout", Duration.ofSeconds(5)),
+                Map.entry("maxAttempts", 3),
+                Map.entry("backoff", Duration.ofSeconds(10)),
+                Map.entry("maxBackoff", Duration.ofHours(1)));
+        for (Map.Entry<String, Object> entry : config.entrySet()) {
+            Field field = WebhookService.class.getDeclaredField(entry.getKey());
+            field.setAccessible(true);
+            field.set(webhookService, entry.getValue());
+        }
+        webhookService.init();
+
+        when(blobStorageRepository.downloadWebhook(BROKER_CODE))
+                .thenReturn(Optional.of(BinaryData.fromBytes(objectMapper.writeValueAsBytes(WebhookDTO.builder().url(url).secret(SECRET).build()))));
+    }
+
+    @AfterEach
+    void afterEach() {
+        webhookService.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void onAccepted_Registered_OK() {
+        webhookService.onAccepted(BROKER_CODE, FISCAL_CODE, FILE_ID, ServiceType.GPD);
+
+        verify(webhookQueueRepository).send(argThat(message -> message.contains(FILE_ID) && message.contains(url)));
+    }
+
+    @Test
+    void onAccepted_NotRegistered_OK() {
+        when(blobStorageRepository.downloadWebhook("other")).thenReturn(Optional.empty());
+
+        webhookService.onAccepted("other", FISCAL_CODE, FILE_ID, ServiceType.GPD);
+
+        verify(webhookQueueRepository, never()).send(any());
+    }
+
+    @Test
+    void registerBroker_KeepsSecret_OK() {
+        WebhookDTO registration = webhookService.registerBroker(BROKER_CODE, "https://broker.example.com/other");
+
+        assertEquals(SECRET, registration.getSecret());
+        verify(blobStorageRepository).uploadWebhook(eq(BROKER_CODE), any());
+    }
+
+    @Test
+    void registerBroker_InvalidUrl_KO() {
+        AppException exception = assertThrows(AppException.class, () -> webhookService.registerBroker(BROKER_CODE, "ftp://broker.example.com"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+    }
+
+    @Test
+    void registerBroker_PrivateAddress_KO() throws Exception {
+        setField("allowPrivate", false);
+
+        for (String privateUrl : List.of("https://127.0.0.1/webhook", "https://localhost/webhook", "https://10.1.2.3/webhook",
+                "https://169.254.169.254/latest/meta-data", "https://[fd00::1]/webhook")) {
+            AppException exception = assertThrows(AppException.class, () -> webhookService.registerBroker(BROKER_CODE, privateUrl));
+            assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+        }
+        verify(blobStorageRepository, never()).uploadWebhook(any(), any());
+    }
+
+    @Test
+    void registerUpload_NewBroker_OK() {
+        when(blobStorageRepository.downloadWebhook("other")).thenReturn(Optional.empty());
+
+        WebhookDTO registration = webhookService.registerUpload("other", FISCAL_CODE, FILE_ID, ServiceType.GPD, url);
+
+        assertNotNull(registration.getSecret());
+        verify(statusService).getUploadStatusV2("other", FILE_ID, FISCAL_CODE, ServiceType.GPD);
+        verify(blobStorageRepository).uploadWebhook(eq("other"), any());
+        verify(webhookQueueRepository).send(contains(FILE_ID));
+    }
+
+    @Test
+    void poll_Ended_Delivered() throws Exception {
+        QueueMessageItem first = message(FILE_ID, 0);
+        QueueMessageItem second = message("otherId", 0);
+        when(webhookQueueRepository.receive(anyInt(), any())).thenReturn(List.of(first, second));
+        when(statusService.getUploadStatusV2(any(), any(), any(), any())).thenReturn(status(OperationStatus.COMPLETED));
+
+        webhookService.poll();
+
+        assertEquals(1, received.size());
+        Received request = received.get(0);
+        assertEquals(WebhookService.sign(SECRET, request.timestamp() + "." + request.body()), request.signature());
+        assertEquals(2, objectMapper.readTree(request.body()).size());
+        verify(webhookQueueRepository).delete(first);
+        verify(webhookQueueRepository).delete(second);
+    }
+
+    @Test
+    void poll_InProgress_CheckedAgain() throws Exception {
+        QueueMessageItem item = message(FILE_ID, 0);
+        when(webhookQueueRepository.receive(anyInt(), any())).thenReturn(List.of(item));
+        when(statusService.getUploadStatusV2(any(), any(), any(), any())).thenReturn(status(OperationStatus.IN_PROGRESS));
+
+        webhookService.poll();
+
+        assertTrue(received.isEmpty());
+        verify(webhookQueueRepository).update(item, item.getBody().toString(), Duration.ofSeconds(5));
+        verify(webhookQueueRepository, never()).delete(any());
+    }
+
+    @Test
+    void poll_DeliveryFailed_Retried() throws Exception {
+        responseCode.set(503);
+        QueueMessageItem item = message(FILE_ID, 0);
+        when(webhookQueueRepository.receive(anyInt(), any())).thenReturn(List.of(item));
+        when(statusService.getUploadStatusV2(any(), any(), any(), any())).thenReturn(status(OperationStatus.COMPLETED));
+
+        webhookService.poll();
+
+        ArgumentCaptor<String> content = ArgumentCaptor.forClass(String.class);
+        verify(webhookQueueRepository).update(eq(item), content.capture(), eq(Duration.ofSeconds(10)));
+        assertEquals(1, objectMapper.readValue(content.getValue(), WebhookMessage.class).getAttempts());
+        verify(webhookQueueRepository, never()).delete(any());
+    }
+
+    @Test
+    void poll_MaxAttempts_Discarded() throws Exception {
+        responseCode.set(500);
+        QueueMessageItem item = message(FILE_ID, 2);
+        when(webhookQueueRepository.receive(anyInt(), any())).thenReturn(List.of(item));
+        when(statusService.getUploadStatusV2(any(), any(), any(), any())).thenReturn(status(OperationStatus.COMPLETED));
+
+        webhookService.poll();
+
+        verify(webhookQueueRepository).delete(item);
+        verify(webhookQueueRepository, never()).update(any(), any(), any());
+    }
+
+    @Test
+    void poll_PrivateAddress_NotDelivered() throws Exception {
+        // e.g. the host of a registered webhook now resolves to a private address
+        setField("allowPrivate", false);
+        QueueMessageItem item = message(FILE_ID, 0);
+        when(webhookQueueRepository.receive(anyInt(), any())).thenReturn(List.of(item));
+        when(statusService.getUploadStatusV2(any(), any(), any(), any())).thenReturn(status(OperationStatus.COMPLETED));
+
+        webhookService.poll();
+
+        assertTrue(received.isEmpty());
+        verify(webhookQueueRepository).update(eq(item), any(), eq(Duration.ofSeconds(10)));
+    }
+
+    private void setField(String name, Object value) throws NoSuchFieldException, IllegalAccessException {
+        Field field = WebhookService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(webhookService, value);
+    }
+
+    private QueueMessageItem message(String fileId, int attempts) throws IOException {
+        WebhookMessage message = WebhookMessage.builder()
+                .fileId(fileId)
+                .brokerCode(BROKER_CODE)
+                .organizationFiscalCode(FISCAL_CODE)
+                .serviceType(ServiceType.GPD)
+                .url(url)
+                .watchUntil(System.currentTimeMillis() + 60000)
+                .attempts(attempts)
+                .build();
+        return new QueueMessageItem()
+                .setMessageId(fileId)
+                .setPopReceipt("pop-receipt")
+                .setBody(BinaryData.fromString(objectMapper.writeValueAsString(message)));
+    }
+
+    private static UploadStatusDTO status(OperationStatus operationStatus) {
+        return UploadStatusDTO.builder()
+                .fileId(FILE_ID)
+                .processedItem(2)
+                .submittedItem(2)
+                .operationStatus(operationStatus)
+                .build();
+    }
+}
@@ -0,0 +1,54 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import it.gov.pagopa.gpd.upload.model.v1.UploadReport;
+import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityTagTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 10, 8, 14, 55, 16);
+
+    @Test
+    void of_Report_OK() {
+        UploadReportDTO report = UploadReportDTO.builder().fileId("fileId").processedItem(1).submittedItem(2).startTime(START).build();
+
+        String etag = EntityTag.of(report);
+
+        assertTrue(etag.matches("\"[0-9a-f]{32}\""));
+        assertEquals(etag, EntityTag.of(report.toBuilder().build()));
+        assertNotEquals(etag, EntityTag.of(report.toBuilder().processedItem(2).build()));
+        assertNotEquals(etag, EntityTag.of(report.toBuilder().endTime(START).build()));
+    }
+
+    @Test
+    void of_ReportVersions_Differ() {
+        UploadReport reportV1 = UploadReport.builder().uploadID("fileId").processedItem(1).submittedItem(2).startTime(START).build();
+        UploadReportDTO reportV2 = UploadReportDTO.builder().fileId("fileId").processedItem(1).submittedItem(2).startTime(START).build();
+
+        assertNotEquals(EntityTag.of(reportV1), EntityTag.of(reportV2));
+    }
+
+    @Test
+    void of_BlobReport_ByVersionAndShape() {
+        String etag = EntityTag.of(ReportStream.Shape.V2, "\"0x8DC\"");
+
+        assertTrue(etag.matches("\"[0-9a-f]{32}\""));
+        assertNotEquals(etag, EntityTag.of(ReportStream.Shape.V1, "\"0x8DC\""));
+        assertNotEquals(etag, EntityTag.of(ReportStream.Shape.V2, "\"0x8DD\""));
+    }
+
+    @Test
+    void matches_OK() {
+        String etag = EntityTag.of(UploadReportDTO.builder().fileId("fileId").build());
+
+        assertTrue(EntityTag.matches(etag, etag));
+        assertTrue(EntityTag.matches("\"other\", W/" + etag, etag));
+        assertFalse(EntityTag.matches("\"other\"", etag));
+        assertFalse(EntityTag.matches("*", etag));
+        assertFalse(EntityTag.matches(null, etag));
+        assertFalse(EntityTag.matches(etag, null));
+    }
+}
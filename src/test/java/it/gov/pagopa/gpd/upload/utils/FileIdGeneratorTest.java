@@ -0,0 +1,52 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileIdGeneratorTest {
+
+    @Test
+    void next_Format_OK() {
+        String id = FileIdGenerator.next();
+
+        assertEquals(FileIdGenerator.LENGTH, id.length());
+        assertTrue(id.matches("[0-9A-HJKMNP-TV-Z]+"));
+    }
+
+    @Test
+    void next_TimeOrdered_OK() {
+        long now = System.currentTimeMillis() + 60_000;
+        String first = FileIdGenerator.next(now);
+        String second = FileIdGenerator.next(now + 1);
+
+        assertTrue(first.compareTo(second) < 0);
+        assertTrue(FileIdGenerator.lowerBound(now).compareTo(first) <= 0);
+        assertTrue(FileIdGenerator.upperBound(now).compareTo(first) >= 0);
+        assertTrue(FileIdGenerator.upperBound(now).compareTo(second) < 0);
+    }
+
+    @Test
+    void next_SameMillisecond_Monotonic() {
+        long now = System.currentTimeMillis() + 120_000;
+        List<String> ids = IntStream.range(0, 100).mapToObj(i -> FileIdGenerator.next(now)).toList();
+
+        for (int i = 1; i < ids.size(); i++)
+            assertTrue(ids.get(i - 1).compareTo(ids.get(i)) < 0);
+        // the clock moving backwards keeps the order
+        assertTrue(ids.get(ids.size() - 1).compareTo(FileIdGenerator.next(now - 1000)) < 0);
+    }
+
+    @Test
+    void next_Concurrent_Unique() {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        IntStream.range(0, 10_000).parallel().forEach(i -> ids.add(FileIdGenerator.next()));
+
+        assertEquals(10_000, ids.size());
+    }
+}
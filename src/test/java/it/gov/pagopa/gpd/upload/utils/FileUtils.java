@@ -1,7 +1,12 @@
 package it.gov.pagopa.gpd.upload.utils;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.micronaut.http.MediaType;
 import io.micronaut.http.multipart.CompletedFileUpload;
+import it.gov.pagopa.gpd.upload.model.pd.PaymentPositionsModel;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -16,16 +21,50 @@ public class FileUtils {
                 fromJSONtoZip(PaymentPositionUtils.createPaymentPositionsJSON("77777777777", 1)));
     }
 
+    public static CompletedFileUpload getUpsertFile(PaymentPositionsModel paymentPositionsModel) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        return new GPDCompletedFileUpload("test.zip", MediaType.of("application/zip"),
+                fromJSONtoZip(objectMapper.writeValueAsString(paymentPositionsModel)));
+    }
+
     public static CompletedFileUpload getUpsertFileInvalidPaymentPosition() throws IOException {
         return new GPDCompletedFileUpload("test.zip", MediaType.of("application/zip"),
                 fromJSONtoZip(PaymentPositionUtils.createInvalidPaymentPositionsJSON("77777777777", 1)));
     }
 
+    public static CompletedFileUpload getBrokerFile(String... organizationFiscalCodes) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode organizations = root.putArray("organizations");
+        for (String organizationFiscalCode : organizationFiscalCodes) {
+            ObjectNode organization = (ObjectNode) objectMapper.readTree(PaymentPositionUtils.createPaymentPositionsJSON(organizationFiscalCode, 1));
+            organization.put("organizationFiscalCode", organizationFiscalCode);
+            organizations.add(organization);
+        }
+        return new GPDCompletedFileUpload("test.zip", MediaType.of("application/zip"),
+                fromJSONtoZip(objectMapper.writeValueAsString(root)));
+    }
+
     public static CompletedFileUpload getDeleteFile() throws IOException {
         return new GPDCompletedFileUpload("test.zip", MediaType.of("application/zip"),
                 fromJSONtoZip(PaymentPositionUtils.createMultipleIUPDJSON("77777777777", 1)));
     }
 
+    public static CompletedFileUpload getDeleteFile(int n) throws IOException {
+        return new GPDCompletedFileUpload("test.zip", MediaType.of("application/zip"),
+                fromJSONtoZip(PaymentPositionUtils.createMultipleIUPDJSON("77777777777", n)));
+    }
+
+    public static CompletedFileUpload getDeleteFileDuplicateIUPD() throws IOException {
+        return new GPDCompletedFileUpload("test.zip", MediaType.of("application/zip"),
+                fromJSONtoZip("{\"paymentPositionIUPDs\":[\"IUPD-1\",\"IUPD-2\",\"IUPD-1\"]}"));
+    }
+
+    public static CompletedFileUpload getDeleteFileNumericIUPD() throws IOException {
+        return new GPDCompletedFileUpload("test.zip", MediaType.of("application/zip"),
+                fromJSONtoZip("{\"paymentPositionIUPDs\":[\"IUPD-1\",2,true]}"));
+    }
+
     public static CompletedFileUpload getDeleteFileInvalidMultipleIUPD() throws IOException {
         return new GPDCompletedFileUpload("test.zip", MediaType.of("application/zip"),
                 fromJSONtoZip(PaymentPositionUtils.createInvalidMultipleIUPDJSON()));
@@ -0,0 +1,162 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import io.micronaut.http.HttpStatus;
+import it.gov.pagopa.gpd.upload.exception.AppException;
+import it.gov.pagopa.gpd.upload.model.v2.ResponseEntryDTO;
+import it.gov.pagopa.gpd.upload.model.v2.ResponseSummaryDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadReportPageDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportPagerTest {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 9, 1, 10, 0);
+
+    private final UploadReportDTO report = UploadReportDTO.builder()
+            .fileId("fileId")
+            .processedItem(6)
+            .submittedItem(6)
+            .startTime(START)
+            .endTime(START.plusMinutes(1))
+            .responses(List.of(
+                    entry(201, "Created", "IUPD1", "IUPD2"),
+                    entry(400, "Bad request caused by invalid email address", "IUPD3", "IUPD4", "IUPD5"),
+                    entry(500, "Internal server error", "IUPD6")))
+            .build();
+
+    @Test
+    void page_AllPages_OK() {
+        List<String> iupds = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            UploadReportPageDTO page = ReportPager.page(report, null, null, cursor, 4, false);
+            page.getResponses().forEach(entry -> iupds.addAll(entry.getIupds()));
+            cursor = page.getContinuationToken();
+            assertEquals(page.isHasMore(), cursor != null);
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(2, pages);
+        assertEquals(List.of("IUPD1", "IUPD2", "IUPD3", "IUPD4", "IUPD5", "IUPD6"), iupds);
+    }
+
+    @Test
+    void page_SplitEntry_OK() {
+        UploadReportPageDTO first = ReportPager.page(report, null, null, null, 3, false);
+
+        assertEquals(3, first.getSize());
+        assertEquals(List.of("IUPD3"), first.getResponses().get(1).getIupds());
+        UploadReportPageDTO second = ReportPager.page(report, null, null, first.getContinuationToken(), 3, false);
+        assertEquals(400, second.getResponses().get(0).getStatusCode());
+        assertEquals(List.of("IUPD4", "IUPD5"), second.getResponses().get(0).getIupds());
+        assertFalse(second.isHasMore());
+    }
+
+    @Test
+    void page_StatusClassAndMessage_Filtered() {
+        UploadReportPageDTO failures = ReportPager.page(report, "4XX", null, null, 100, false);
+        assertEquals(1, failures.getResponses().size());
+        assertEquals(3, failures.getSize());
+
+        UploadReportPageDTO byMessage = ReportPager.page(report, null, "INVALID EMAIL", null, 100, false);
+        assertEquals(List.of("IUPD3", "IUPD4", "IUPD5"), byMessage.getResponses().get(0).getIupds());
+    }
+
+    @Test
+    void page_SummaryOnly_OK() {
+        UploadReportPageDTO summary = ReportPager.page(report, "5xx", null, null, 100, true);
+
+        assertNull(summary.getResponses());
+        assertNull(summary.getContinuationToken());
+        assertEquals(List.of(1), summary.getSummary().stream().map(ResponseSummaryDTO::getCount).toList());
+        assertEquals(6, summary.getProcessedItem());
+    }
+
+    @Test
+    void page_InvalidStatusClass_KO() {
+        AppException e = assertThrows(AppException.class, () -> ReportPager.page(report, "6xx", null, null, 100, false));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getHttpStatus());
+    }
+
+    @Test
+    void page_InvalidCursor_KO() {
+        AppException e = assertThrows(AppException.class, () -> ReportPager.page(report, null, null, "not a cursor", 100, false));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getHttpStatus());
+    }
+
+    @Test
+    void page_CursorOfOtherFilters_KO() {
+        String cursor = ReportPager.page(report, "4xx", null, null, 1, false).getContinuationToken();
+
+        AppException e = assertThrows(AppException.class, () -> ReportPager.page(report, "2xx", null, cursor, 1, false));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getHttpStatus());
+        e = assertThrows(AppException.class, () -> ReportPager.page(report, "4xx", "email", cursor, 1, false));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getHttpStatus());
+        // the filters are compared as they are applied
+        assertNotNull(ReportPager.page(report, "4XX", " ", cursor, 1, false).getResponses());
+    }
+
+    @Test
+    void page_ChangedReport_KO() {
+        String cursor = ReportPager.page(report, null, null, null, 2, false).getContinuationToken();
+        UploadReportDTO changed = report.toBuilder().processedItem(7).submittedItem(7).build();
+
+        AppException e = assertThrows(AppException.class, () -> ReportPager.page(changed, null, null, cursor, 2, false));
+        assertEquals(HttpStatus.CONFLICT, e.getHttpStatus());
+    }
+
+    @Test
+    void page_BlobReport_AsRead() {
+        String etag = EntityTag.of(ReportStream.Shape.V2, "\"0x8DC\"");
+        String cursor = null;
+        do {
+            UploadReportPageDTO read = ReportPager.page(report, etag, null, null, cursor, 2, false);
+            UploadReportPageDTO streamed = ReportPager.page(blob(), etag, null, null, cursor, 2, false);
+            assertEquals(read.toString(), streamed.toString());
+            cursor = streamed.getContinuationToken();
+        } while (cursor != null);
+    }
+
+    @Test
+    void page_BlobReportFieldsInAnyOrder_OK() {
+        String blob = "{\"responses\":[{\"requestIDs\":[\"IUPD1\",\"IUPD2\"],\"other\":{\"a\":[1]},\"statusCode\":400,\"statusMessage\":\"Bad request\"},"
+                + "{\"requestIDs\":[\"IUPD3\"],\"statusCode\":201}],\"endTime\":\"2025-09-01T10:01:00.000\",\"uploadID\":\"fileId\",\"processedItem\":3}";
+
+        UploadReportPageDTO page = ReportPager.page(new ByteArrayInputStream(blob.getBytes(StandardCharsets.UTF_8)),
+                "\"etag\"", "4xx", null, null, 100, false);
+
+        assertEquals("fileId", page.getFileId());
+        assertEquals(START.plusMinutes(1), page.getEndTime());
+        assertEquals(1, page.getResponses().size());
+        assertEquals(List.of("IUPD1", "IUPD2"), page.getResponses().get(0).getIupds());
+        assertFalse(page.isHasMore());
+    }
+
+    // the report as written to its blob by the blob-consumer function, in the v1 shape
+    private InputStream blob() {
+        StringBuilder json = new StringBuilder("{\"uploadID\":\"fileId\",\"processedItem\":6,\"submittedItem\":6,\"responses\":[");
+        for (ResponseEntryDTO entry : report.getResponses()) {
+            json.append(json.charAt(json.length() - 1) == '[' ? "" : ",")
+                    .append("{\"statusCode\":").append(entry.getStatusCode())
+                    .append(",\"statusMessage\":\"").append(entry.getStatusMessage())
+                    .append("\",\"requestIDs\":[")
+                    .append(String.join(",", entry.getIupds().stream().map(iupd -> "\"" + iupd + "\"").toList()))
+                    .append("]}");
+        }
+        json.append("],\"startTime\":\"2025-09-01T10:00:00.000\",\"endTime\":\"2025-09-01T10:01:00.000\"}");
+        return new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ResponseEntryDTO entry(int statusCode, String statusMessage, String... iupds) {
+        return ResponseEntryDTO.builder().statusCode(statusCode).statusMessage(statusMessage).iupds(List.of(iupds)).build();
+    }
+}
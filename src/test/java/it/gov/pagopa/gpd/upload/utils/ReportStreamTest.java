@@ -0,0 +1,130 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import it.gov.pagopa.gpd.upload.entity.ResponseEntry;
+import it.gov.pagopa.gpd.upload.model.v1.UploadReport;
+import it.gov.pagopa.gpd.upload.model.v2.ResponseEntryDTO;
+import it.gov.pagopa.gpd.upload.model.v2.UploadReportDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportStreamTest {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 9, 1, 10, 0, 0, 123_000_000);
+    // the bodies serialized by Micronaut omit the null and empty values
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+
+    private final List<String> iupds = IntStream.range(0, 100_000).mapToObj(i -> "IUPD" + i).toList();
+    private final UploadReport report = UploadReport.builder()
+            .uploadID("fileId")
+            .processedItem(100_003)
+            .submittedItem(100_003)
+            .startTime(START)
+            .endTime(START.plusMinutes(1))
+            .responses(List.of(
+                    ResponseEntry.builder().statusCode(201).statusMessage("Created").requestIDs(iupds).build(),
+                    ResponseEntry.builder().statusCode(400).statusMessage("Bad \"request\"").requestIDs(List.of("IUPD-A", "IUPD-B")).build(),
+                    ResponseEntry.builder().statusCode(500).requestIDs(List.of()).build(),
+                    ResponseEntry.builder().statusMessage("").requestIDs(List.of("IUPD-C")).build()))
+            .build();
+
+    @Test
+    void of_V1_AsSerialized() throws IOException {
+        assertEquals(objectMapper.writeValueAsString(report), read(ReportStream.of(report)));
+    }
+
+    @Test
+    void of_V2_AsSerialized() throws IOException {
+        UploadReportDTO dto = toV2(report);
+
+        assertEquals(objectMapper.writeValueAsString(dto), read(ReportStream.of(dto)));
+    }
+
+    @Test
+    void of_WithoutResponses_AsSerialized() throws IOException {
+        UploadReport empty = UploadReport.builder().uploadID("fileId").responses(List.of()).startTime(START).build();
+
+        assertEquals(objectMapper.writeValueAsString(empty), read(ReportStream.of(empty)));
+    }
+
+    @Test
+    void transcode_V1_AsBound() throws IOException {
+        byte[] blob = new ObjectMapper().registerModule(new JavaTimeModule()).writeValueAsBytes(report);
+
+        String transcoded = read(ReportStream.transcode(new ByteArrayInputStream(blob), ReportStream.Shape.V1));
+
+        assertEquals(objectMapper.writeValueAsString(objectMapper.readValue(blob, UploadReport.class)), transcoded);
+    }
+
+    @Test
+    void transcode_V2_AsBound() throws IOException {
+        byte[] blob = new ObjectMapper().registerModule(new JavaTimeModule()).writeValueAsBytes(report);
+
+        String transcoded = read(ReportStream.transcode(new ByteArrayInputStream(blob), ReportStream.Shape.V2));
+
+        assertEquals(objectMapper.writeValueAsString(toV2(objectMapper.readValue(blob, UploadReport.class))), transcoded);
+        UploadReportDTO dto = objectMapper.readValue(transcoded, UploadReportDTO.class);
+        assertEquals("fileId", dto.getFileId());
+        assertEquals(iupds, dto.getResponses().get(0).getIupds());
+    }
+
+    @Test
+    void transcode_UnknownFields_Dropped() throws IOException {
+        String blob = "{\"id\":\"x\",\"uploadID\":\"fileId\",\"processedItem\":1,\"submittedItem\":1,"
+                + "\"responses\":[{\"statusCode\":201,\"statusMessage\":\"Created\",\"other\":{\"a\":[1]},\"requestIDs\":[\"IUPD1\"]}],"
+                + "\"startTime\":\"2025-09-01T10:00:00.123\",\"endTime\":null,\"_ts\":1}";
+
+        String transcoded = read(ReportStream.transcode(new ByteArrayInputStream(blob.getBytes(StandardCharsets.UTF_8)), ReportStream.Shape.V2));
+
+        assertEquals("{\"fileId\":\"fileId\",\"processedItem\":1,\"submittedItem\":1,"
+                + "\"responses\":[{\"statusCode\":201,\"statusMessage\":\"Created\",\"iupds\":[\"IUPD1\"]}],"
+                + "\"startTime\":\"2025-09-01T10:00:00.123\"}", transcoded);
+    }
+
+    @Test
+    void read_ByteByByte_OK() throws IOException {
+        InputStream stream = ReportStream.of(report);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int read;
+        while ((read = stream.read()) >= 0)
+            bytes.write(read);
+
+        assertEquals(objectMapper.writeValueAsString(report), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    private static String read(ReportStream stream) throws IOException {
+        try (stream) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static UploadReportDTO toV2(UploadReport report) {
+        return UploadReportDTO.builder()
+                .fileId(report.uploadID)
+                .processedItem(report.processedItem)
+                .submittedItem(report.submittedItem)
+                .startTime(report.startTime)
+                .endTime(report.endTime)
+                .responses(report.responses.stream()
+                        .map(entry -> ResponseEntryDTO.builder()
+                                .statusCode(entry.statusCode)
+                                .statusMessage(entry.statusMessage)
+                                .iupds(entry.requestIDs)
+                                .build())
+                        .toList())
+                .build();
+    }
+}
@@ -4,9 +4,13 @@ import io.micronaut.context.annotation.Factory;
 import io.micronaut.context.annotation.Replaces;
 import it.gov.pagopa.gpd.upload.repository.BlobStorageRepository;
 import it.gov.pagopa.gpd.upload.repository.StatusRepository;
+import it.gov.pagopa.gpd.upload.service.AsyncUploadService;
 import it.gov.pagopa.gpd.upload.service.BlobService;
 import it.gov.pagopa.gpd.upload.service.SupportService;
 import it.gov.pagopa.gpd.upload.service.StatusService;
+import it.gov.pagopa.gpd.upload.service.UploadSessionService;
+import it.gov.pagopa.gpd.upload.service.UrlUploadService;
+import it.gov.pagopa.gpd.upload.service.WebhookService;
 import jakarta.inject.Singleton;
 
 import static org.mockito.Mockito.mock;
@@ -26,6 +30,30 @@ class TestMockFactory {
         return mock(BlobService.class);
     }
 
+    @Singleton
+    @Replaces(AsyncUploadService.class)
+    AsyncUploadService asyncUploadServiceMock() {
+        return mock(AsyncUploadService.class);
+    }
+
+    @Singleton
+    @Replaces(UrlUploadService.class)
+    UrlUploadService urlUploadServiceMock() {
+        return mock(UrlUploadService.class);
+    }
+
+    @Singleton
+    @Replaces(UploadSessionService.class)
+    UploadSessionService uploadSessionServiceMock() {
+        return mock(UploadSessionService.class);
+    }
+
+    @Singleton
+    @Replaces(WebhookService.class)
+    WebhookService webhookServiceMock() {
+        return mock(WebhookService.class);
+    }
+
     @Singleton
     @Replaces(SupportService.class)
     public SupportService recoveryService() {
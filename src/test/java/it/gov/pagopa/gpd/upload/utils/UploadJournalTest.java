@@ -0,0 +1,138 @@
+package it.gov.pagopa.gpd.upload.utils;
+
+import it.gov.pagopa.gpd.upload.model.UploadOperation;
+import it.gov.pagopa.gpd.upload.model.enumeration.ServiceType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void append_Pending_OK() throws IOException {
+        try (UploadJournal journal = new UploadJournal(directory.resolve("journal.bin"), 4096)) {
+            int offset = journal.append(entry("fileId-1"));
+
+            List<UploadJournal.Entry> pending = journal.pending();
+            assertEquals(1, pending.size());
+            assertEquals(offset, pending.get(0).getOffset());
+            assertEquals("fileId-1", pending.get(0).getFileId());
+            assertEquals(UploadOperation.CREATE, pending.get(0).getUploadOperation());
+            assertEquals(List.of("iupd-1"), pending.get(0).getSkippedIUPDs());
+            assertEquals("content", new String(pending.get(0).getContent(), StandardCharsets.UTF_8));
+            assertNull(pending.get(0).getInputIUPDs());
+        }
+    }
+
+    @Test
+    void append_InputIUPDs_OK() throws IOException {
+        try (UploadJournal journal = new UploadJournal(directory.resolve("journal.bin"), 4096)) {
+            UploadJournal.Entry entry = entry("fileId-1");
+            journal.append(UploadJournal.Entry.builder()
+                    .fileId(entry.getFileId())
+                    .broker(entry.getBroker())
+                    .organizationFiscalCode(entry.getOrganizationFiscalCode())
+                    .uploadOperation(entry.getUploadOperation())
+                    .serviceType(entry.getServiceType())
+                    .totalItem(entry.getTotalItem())
+                    .skippedIUPDs(List.of())
+                    .inputIUPDs(List.of("iupd-1", "iupd-2"))
+                    .content(entry.getContent())
+                    .build());
+
+            UploadJournal.Entry pending = journal.pending().get(0);
+            assertEquals(List.of("iupd-1", "iupd-2"), pending.getInputIUPDs());
+            assertEquals("content", new String(pending.getContent(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void markPersisted_Compact_OK() throws IOException {
+        try (UploadJournal journal = new UploadJournal(directory.resolve("journal.bin"), 4096)) {
+            int first = journal.append(entry("fileId-1"));
+            int second = journal.append(entry("fileId-2"));
+
+            journal.markPersisted(first, UploadJournal.PERSISTED);
+            journal.markPersisted(second, UploadJournal.BLOB_PERSISTED);
+            assertEquals(1, journal.pending().size());
+            assertEquals(UploadJournal.BLOB_PERSISTED, journal.pending().get(0).getFlags());
+            assertFalse(journal.compact());
+
+            journal.markPersisted(second, UploadJournal.STATUS_PERSISTED);
+            assertTrue(journal.compact());
+            assertEquals(0, journal.size());
+            assertTrue(journal.pending().isEmpty());
+        }
+    }
+
+    @Test
+    void moveAside_OK() throws IOException {
+        Path deadLetters = directory.resolve("journal.dead");
+        try (UploadJournal journal = new UploadJournal(directory.resolve("journal.bin"), 4096)) {
+            int offset = journal.append(entry("fileId-1"));
+            journal.markPersisted(offset, UploadJournal.STATUS_PERSISTED);
+            assertEquals("fileId-1", journal.read(offset).getFileId());
+
+            journal.moveAside(offset, deadLetters);
+
+            assertTrue(journal.pending().isEmpty());
+            assertTrue(journal.compact());
+        }
+        // the dead letters are records in the journal format
+        try (UploadJournal dead = new UploadJournal(deadLetters, 4096)) {
+            List<UploadJournal.Entry> entries = dead.pending();
+            assertEquals(1, entries.size());
+            assertEquals("fileId-1", entries.get(0).getFileId());
+            assertEquals(UploadJournal.STATUS_PERSISTED, entries.get(0).getFlags());
+        }
+    }
+
+    @Test
+    void append_Full_Rejected() throws IOException {
+        try (UploadJournal journal = new UploadJournal(directory.resolve("journal.bin"), 128)) {
+            assertTrue(journal.append(entry("fileId-1")) >= 0);
+            assertEquals(-1, journal.append(entry("fileId-2")));
+        }
+    }
+
+    @Test
+    void reopen_Recovered_OK() throws IOException {
+        Path file = directory.resolve("journal.bin");
+        try (UploadJournal journal = new UploadJournal(file, 4096)) {
+            journal.markPersisted(journal.append(entry("fileId-1")), UploadJournal.PERSISTED);
+            journal.append(entry("fileId-2"));
+        }
+
+        try (UploadJournal journal = new UploadJournal(file, 4096)) {
+            List<UploadJournal.Entry> pending = journal.pending();
+            assertEquals(1, pending.size());
+            assertEquals("fileId-2", pending.get(0).getFileId());
+
+            // new records are appended after the recovered ones
+            int offset = journal.append(entry("fileId-3"));
+            assertTrue(offset > pending.get(0).getOffset());
+            assertEquals(2, journal.pending().size());
+        }
+    }
+
+    private static UploadJournal.Entry entry(String fileId) {
+        return UploadJournal.Entry.builder()
+                .fileId(fileId)
+                .broker("broker-code")
+                .organizationFiscalCode("fiscal-code")
+                .uploadOperation(UploadOperation.CREATE)
+                .serviceType(ServiceType.GPD)
+                .totalItem(2)
+                .skippedIUPDs(List.of("iupd-1"))
+                .content("content".getBytes(StandardCharsets.UTF_8))
+                .build();
+    }
+}